@@ -2,13 +2,21 @@ package com.echo.api.controller;
 
 import com.echo.api.dto.SessionSummaryDto;
 import com.echo.api.dto.TrafficRecordDto;
+import com.echo.api.service.TrafficImportService;
 import com.echo.api.service.TrafficQueryService;
 import lombok.RequiredArgsConstructor;
 import lombok.extern.slf4j.Slf4j;
+import org.springframework.http.ContentDisposition;
+import org.springframework.http.HttpHeaders;
+import org.springframework.http.MediaType;
 import org.springframework.http.ResponseEntity;
 import org.springframework.web.bind.annotation.*;
+import org.springframework.web.servlet.mvc.method.annotation.StreamingResponseBody;
 
+import java.io.IOException;
+import java.io.InputStream;
 import java.util.List;
+import java.util.Map;
 
 /**
  * REST controller for managing and querying recorded traffic.
@@ -20,17 +28,21 @@ import java.util.List;
 public class TrafficController {
 
     private final TrafficQueryService trafficQueryService;
+    private final TrafficImportService trafficImportService;
 
     /**
      * Retrieves all recorded traffic for a specific session.
      *
      * @param sessionId Session identifier
+     * @param decodeBodies Whether to send text bodies as decoded text instead of Base64 bytes
      * @return List of traffic records
      */
     @GetMapping("/sessions/{sessionId}/traffic")
-    public ResponseEntity<List<TrafficRecordDto>> getTrafficBySession(@PathVariable String sessionId) {
+    public ResponseEntity<List<TrafficRecordDto>> getTrafficBySession(
+            @PathVariable String sessionId,
+            @RequestParam(defaultValue = "false") boolean decodeBodies) {
         log.info("GET /api/v1/sessions/{}/traffic", sessionId);
-        List<TrafficRecordDto> traffic = trafficQueryService.getTrafficBySession(sessionId);
+        List<TrafficRecordDto> traffic = trafficQueryService.getTrafficBySession(sessionId, decodeBodies);
         return ResponseEntity.ok(traffic);
     }
 
@@ -54,6 +66,8 @@ public class TrafficController {
      * @param method HTTP method
      * @param path Request path
      * @param queryParams Query parameters (optional)
+     * @param matchKey Canonical match key built by the proxy's matching rules (optional)
+     * @param requestBodyHash Request body hash (optional)
      * @return Matching traffic record or 404
      */
     @GetMapping("/internal/match")
@@ -61,14 +75,91 @@ public class TrafficController {
             @RequestParam String sessionId,
             @RequestParam String method,
             @RequestParam String path,
-            @RequestParam(required = false) String queryParams) {
-        log.debug("GET /api/v1/internal/match - session={}, method={}, path={}", sessionId, method, path);
-
-        return trafficQueryService.findMatchingTraffic(sessionId, method, path, queryParams)
+            @RequestParam(required = false) String queryParams,
+            @RequestParam(required = false) String matchKey,
+            @RequestParam(required = false) String requestBodyHash) {
+        return trafficQueryService.findMatchingTraffic(sessionId, method, path, queryParams, matchKey,
+                        requestBodyHash)
                 .map(ResponseEntity::ok)
                 .orElse(ResponseEntity.notFound().build());
     }
 
+    /**
+     * Internal endpoint streaming every record of a session as newline-delimited JSON.
+     * Used by echo-proxy to preload its in-memory replay index.
+     *
+     * @param sessionId Session identifier
+     * @return Streaming body of traffic records, oldest first
+     */
+    @GetMapping(value = "/internal/sessions/{sessionId}/records", produces = MediaType.APPLICATION_NDJSON_VALUE)
+    public ResponseEntity<StreamingResponseBody> streamSessionTraffic(@PathVariable String sessionId) {
+        log.debug("GET /api/v1/internal/sessions/{}/records", sessionId);
+        StreamingResponseBody body = outputStream -> trafficQueryService.writeSessionTraffic(sessionId, outputStream);
+        return ResponseEntity.ok()
+                .contentType(MediaType.APPLICATION_NDJSON)
+                .body(body);
+    }
+
+    /**
+     * Exports a session as GZIP-compressed, length-prefixed records, streamed
+     * from the database without loading the session into memory.
+     *
+     * @param sessionId Session identifier
+     * @return Streaming export download
+     */
+    @GetMapping(value = "/sessions/{sessionId}/export", produces = MediaType.APPLICATION_OCTET_STREAM_VALUE)
+    public ResponseEntity<StreamingResponseBody> exportSession(@PathVariable String sessionId) {
+        log.info("GET /api/v1/sessions/{}/export", sessionId);
+        StreamingResponseBody body = outputStream -> trafficQueryService.writeSessionExport(sessionId, outputStream);
+        return ResponseEntity.ok()
+                .contentType(MediaType.APPLICATION_OCTET_STREAM)
+                .header(HttpHeaders.CONTENT_DISPOSITION, ContentDisposition.attachment()
+                        .filename(sessionId + ".echoexp")
+                        .build()
+                        .toString())
+                .body(body);
+    }
+
+    /**
+     * Imports a session export, inserting records in batches as they are read.
+     * Records are stored under the given session, whatever session they were exported from.
+     *
+     * @param sessionId Session identifier to import into
+     * @param body Export stream produced by the export endpoint
+     * @return Number of imported records, or 400 if the body is not a valid export
+     */
+    @PostMapping(value = "/sessions/{sessionId}/import", consumes = MediaType.APPLICATION_OCTET_STREAM_VALUE)
+    public ResponseEntity<Map<String, Object>> importSession(@PathVariable String sessionId, InputStream body) {
+        log.info("POST /api/v1/sessions/{}/import", sessionId);
+        try {
+            long imported = trafficImportService.importSession(sessionId, body);
+            return ResponseEntity.ok(Map.of("sessionId", sessionId, "imported", imported));
+        } catch (IOException e) {
+            log.warn("Failed to import session {}: {}", sessionId, e.getMessage());
+            return ResponseEntity.badRequest().body(Map.of("error", "Invalid session export: " + e.getMessage()));
+        }
+    }
+
+    /**
+     * Exports a session as an archive file that echo-proxy can memory-map
+     * and replay without Echo API.
+     *
+     * @param sessionId Session identifier
+     * @return Streaming archive download
+     */
+    @GetMapping(value = "/sessions/{sessionId}/archive", produces = MediaType.APPLICATION_OCTET_STREAM_VALUE)
+    public ResponseEntity<StreamingResponseBody> exportSessionArchive(@PathVariable String sessionId) {
+        log.info("GET /api/v1/sessions/{}/archive", sessionId);
+        StreamingResponseBody body = outputStream -> trafficQueryService.writeSessionArchive(sessionId, outputStream);
+        return ResponseEntity.ok()
+                .contentType(MediaType.APPLICATION_OCTET_STREAM)
+                .header(HttpHeaders.CONTENT_DISPOSITION, ContentDisposition.attachment()
+                        .filename(sessionId + ".echoarc")
+                        .build()
+                        .toString())
+                .body(body);
+    }
+
     /**
      * Deletes a specific traffic record by ID.
      *
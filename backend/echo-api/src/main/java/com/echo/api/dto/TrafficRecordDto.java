@@ -7,10 +7,15 @@ import lombok.Data;
 import lombok.NoArgsConstructor;
 
 import java.time.Instant;
+import java.util.List;
 import java.util.Map;
 
 /**
  * Data transfer object for traffic records.
+ * Bodies are raw bytes, Base64-encoded in JSON; the response body may still
+ * carry the content coding named by responseBodyEncoding. When the traffic
+ * listing is asked to decode bodies, a body that is valid text is sent in its
+ * *Text field instead, without its bytes.
  */
 @Data
 @Builder
@@ -24,11 +29,22 @@ public class TrafficRecordDto {
     private String method;
     private String path;
     private String queryParams;
-    private Map<String, String> requestHeaders;
-    private String requestBody;
+    private String matchKey;
+    private Map<String, List<String>> requestHeaders;
+    private byte[] requestBody;
+    private String requestBodyText;
+    private String requestBodyHash;
+    private Boolean requestBodyTruncated;
+    private Long requestBodySize;
     private Integer statusCode;
-    private Map<String, String> responseHeaders;
-    private String responseBody;
+    private Map<String, List<String>> responseHeaders;
+    private byte[] responseBody;
+    private String responseBodyText;
+    private String responseBodyEncoding;
+    private Boolean responseBodyTruncated;
+    private Long responseBodySize;
+    private Long upstreamTtfbMs;
+    private Long upstreamDurationMs;
     private Instant timestamp;
     private Instant createdAt;
 }
\ No newline at end of file
@@ -4,13 +4,18 @@ import jakarta.persistence.*;
 import lombok.AllArgsConstructor;
 import lombok.Builder;
 import lombok.Data;
+import lombok.EqualsAndHashCode;
 import lombok.NoArgsConstructor;
+import lombok.ToString;
 
 import java.time.Instant;
 
 /**
  * JPA entity representing recorded HTTP traffic.
  * This entity is read-only from the perspective of this service.
+ * The response body is either inline or, when responseBodyHash is set,
+ * shared through {@link ResponseBodyBlob}. Headers are stored as binary
+ * blocks; the JSON header columns are only set on rows recorded before blocks.
  */
 @Data
 @Builder
@@ -36,11 +41,26 @@ public class RecordedTraffic {
     @Column(name = "query_params", length = 2048)
     private String queryParams;
 
+    @Column(name = "match_key", columnDefinition = "TEXT")
+    private String matchKey;
+
     @Column(name = "request_headers", columnDefinition = "TEXT")
     private String requestHeaders;
 
-    @Column(name = "request_body", columnDefinition = "TEXT")
-    private String requestBody;
+    @Column(name = "request_header_block", columnDefinition = "BYTEA")
+    private byte[] requestHeaderBlock;
+
+    @Column(name = "request_body", columnDefinition = "BYTEA")
+    private byte[] requestBody;
+
+    @Column(name = "request_body_hash", length = 64)
+    private String requestBodyHash;
+
+    @Column(name = "request_body_truncated")
+    private Boolean requestBodyTruncated;
+
+    @Column(name = "request_body_size")
+    private Long requestBodySize;
 
     @Column(name = "status_code", nullable = false)
     private Integer statusCode;
@@ -48,8 +68,35 @@ public class RecordedTraffic {
     @Column(name = "response_headers", columnDefinition = "TEXT")
     private String responseHeaders;
 
-    @Column(name = "response_body", columnDefinition = "TEXT")
-    private String responseBody;
+    @Column(name = "response_header_block", columnDefinition = "BYTEA")
+    private byte[] responseHeaderBlock;
+
+    @Column(name = "response_body", columnDefinition = "BYTEA")
+    private byte[] responseBody;
+
+    @Column(name = "response_body_hash", length = 64)
+    private String responseBodyHash;
+
+    @ToString.Exclude
+    @EqualsAndHashCode.Exclude
+    @ManyToOne(fetch = FetchType.LAZY, cascade = CascadeType.DETACH)
+    @JoinColumn(name = "response_body_hash", referencedColumnName = "hash", insertable = false, updatable = false)
+    private ResponseBodyBlob responseBodyBlob;
+
+    @Column(name = "response_body_encoding", length = 32)
+    private String responseBodyEncoding;
+
+    @Column(name = "response_body_truncated")
+    private Boolean responseBodyTruncated;
+
+    @Column(name = "response_body_size")
+    private Long responseBodySize;
+
+    @Column(name = "upstream_ttfb_ms")
+    private Long upstreamTtfbMs;
+
+    @Column(name = "upstream_duration_ms")
+    private Long upstreamDurationMs;
 
     @Column(name = "timestamp", nullable = false)
     private Instant timestamp;
@@ -0,0 +1,32 @@
+package com.echo.api.entity;
+
+import jakarta.persistence.*;
+import lombok.AllArgsConstructor;
+import lombok.Builder;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+import lombok.ToString;
+
+/**
+ * JPA entity representing a response body stored once by its SHA-256 and
+ * shared by every recorded response with the same bytes.
+ */
+@Data
+@Builder
+@NoArgsConstructor
+@AllArgsConstructor
+@Entity
+@Table(name = "response_body_blob")
+public class ResponseBodyBlob {
+
+    @Id
+    @Column(name = "hash", length = 64)
+    private String hash;
+
+    @ToString.Exclude
+    @Column(name = "body", nullable = false, columnDefinition = "BYTEA")
+    private byte[] body;
+
+    @Column(name = "ref_count", nullable = false)
+    private Long refCount;
+}
@@ -1,13 +1,20 @@
 package com.echo.api.repository;
 
 import com.echo.api.entity.RecordedTraffic;
+import jakarta.persistence.QueryHint;
+import org.springframework.data.jpa.repository.EntityGraph;
 import org.springframework.data.jpa.repository.JpaRepository;
 import org.springframework.data.jpa.repository.Query;
+import org.springframework.data.jpa.repository.QueryHints;
 import org.springframework.data.repository.query.Param;
 import org.springframework.stereotype.Repository;
 
 import java.util.List;
 import java.util.Optional;
+import java.util.stream.Stream;
+
+import static org.hibernate.jpa.HibernateHints.HINT_FETCH_SIZE;
+import static org.hibernate.jpa.HibernateHints.HINT_READ_ONLY;
 
 /**
  * Repository interface for RecordedTraffic entity.
@@ -21,30 +28,57 @@ public interface RecordedTrafficRepository extends JpaRepository<RecordedTraffic
      * @param sessionId Session identifier
      * @return List of recorded traffic
      */
+    @EntityGraph(attributePaths = "responseBodyBlob")
     List<RecordedTraffic> findBySessionIdOrderByTimestampDesc(String sessionId);
 
+    /**
+     * Streams all recorded traffic for a session in recording order.
+     * Rows are fetched from the database cursor in chunks together with their
+     * shared response bodies, so callers must consume the stream inside a
+     * transaction and close it when done.
+     *
+     * @param sessionId Session identifier
+     * @return Stream of recorded traffic, oldest first
+     */
+    @QueryHints({
+            @QueryHint(name = HINT_FETCH_SIZE, value = "500"),
+            @QueryHint(name = HINT_READ_ONLY, value = "true")
+    })
+    @Query("SELECT rt FROM RecordedTraffic rt LEFT JOIN FETCH rt.responseBodyBlob "
+            + "WHERE rt.sessionId = :sessionId ORDER BY rt.timestamp ASC, rt.id ASC")
+    Stream<RecordedTraffic> streamBySessionId(@Param("sessionId") String sessionId);
+
     /**
      * Finds a matching recorded traffic entry for replay.
-     * Matches based on session, method, path, and query parameters.
-     * Returns the most recent match.
+     * Matches based on session, canonical match key and request body hash.
+     * Records stored without a match key, and lookups that send none, fall back
+     * to comparing method, path and query parameters exactly.
+     * A recording with the same body hash is preferred; recordings stored without
+     * a body hash match any body. Returns the most recent match.
      *
      * @param sessionId Session identifier
      * @param method HTTP method
      * @param path Request path
      * @param queryParams Query parameters (can be null or empty)
+     * @param matchKey Canonical match key (can be null)
+     * @param requestBodyHash Request body hash (can be null)
      * @return Optional containing the first matching record
      */
     @Query(value = "SELECT * FROM recorded_traffic WHERE session_id = :sessionId " +
+            "AND (match_key = :matchKey OR ((match_key IS NULL OR :matchKey IS NULL) " +
             "AND method = :method " +
             "AND path = :path " +
-            "AND (query_params = :queryParams OR (:queryParams IS NULL AND query_params IS NULL) OR (:queryParams = '' AND query_params IS NULL)) " +
-            "ORDER BY timestamp DESC LIMIT 1",
+            "AND (query_params = :queryParams OR (:queryParams IS NULL AND query_params IS NULL) OR (:queryParams = '' AND query_params IS NULL)))) " +
+            "AND (request_body_hash = :requestBodyHash OR request_body_hash IS NULL) " +
+            "ORDER BY CASE WHEN request_body_hash = :requestBodyHash THEN 0 ELSE 1 END, timestamp DESC LIMIT 1",
             nativeQuery = true)
     Optional<RecordedTraffic> findMatchingTraffic(
             @Param("sessionId") String sessionId,
             @Param("method") String method,
             @Param("path") String path,
-            @Param("queryParams") String queryParams
+            @Param("queryParams") String queryParams,
+            @Param("matchKey") String matchKey,
+            @Param("requestBodyHash") String requestBodyHash
     );
 
     /**
@@ -0,0 +1,51 @@
+package com.echo.api.repository;
+
+import com.echo.api.entity.ResponseBodyBlob;
+import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.data.jpa.repository.Modifying;
+import org.springframework.data.jpa.repository.Query;
+import org.springframework.data.repository.query.Param;
+import org.springframework.stereotype.Repository;
+
+/**
+ * Repository for content-addressed response bodies.
+ * References are released before the recorded_traffic rows holding them are
+ * deleted; bodies left without references are then purged.
+ */
+@Repository
+public interface ResponseBodyBlobRepository extends JpaRepository<ResponseBodyBlob, String> {
+
+    /**
+     * Releases the body references held by every record of a session.
+     *
+     * @param sessionId Session identifier
+     * @return Number of bodies whose reference count changed
+     */
+    @Modifying
+    @Query(value = "UPDATE response_body_blob b SET ref_count = b.ref_count - r.refs "
+            + "FROM (SELECT response_body_hash AS hash, count(*) AS refs FROM recorded_traffic "
+            + "WHERE session_id = :sessionId AND response_body_hash IS NOT NULL "
+            + "GROUP BY response_body_hash) r "
+            + "WHERE b.hash = r.hash", nativeQuery = true)
+    int releaseSession(@Param("sessionId") String sessionId);
+
+    /**
+     * Releases the body reference held by a single record.
+     *
+     * @param id Traffic record ID
+     * @return 1 if the record referenced a body, 0 otherwise
+     */
+    @Modifying
+    @Query(value = "UPDATE response_body_blob SET ref_count = ref_count - 1 "
+            + "WHERE hash = (SELECT response_body_hash FROM recorded_traffic WHERE id = :id)", nativeQuery = true)
+    int releaseRecord(@Param("id") Long id);
+
+    /**
+     * Deletes bodies no record references any more.
+     *
+     * @return Number of deleted bodies
+     */
+    @Modifying
+    @Query(value = "DELETE FROM response_body_blob WHERE ref_count <= 0", nativeQuery = true)
+    int purgeUnreferenced();
+}
@@ -0,0 +1,45 @@
+package com.echo.api.service;
+
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.zip.GZIPInputStream;
+import java.util.zip.InflaterInputStream;
+
+/**
+ * Removes the content codings echo-proxy applies to stored response bodies.
+ * This is the read side of the proxy's ContentCodings, bounded so a small
+ * compressed body cannot expand without limit when it is rendered.
+ */
+final class ContentCodings {
+
+    static final String GZIP = "gzip";
+
+    static final String DEFLATE = "deflate";
+
+    private ContentCodings() {
+    }
+
+    /**
+     * Removes a gzip or deflate coding from a body.
+     *
+     * @param coding Normalized coding list of the body
+     * @param body Encoded bytes
+     * @param maxSize Largest decoded size to return
+     * @return Decoded bytes, or null if the coding is not supported, the body is corrupt
+     *         or truncated, or it decodes to more than maxSize bytes
+     */
+    static byte[] decode(String coding, byte[] body, int maxSize) {
+        if (!GZIP.equals(coding) && !DEFLATE.equals(coding)) {
+            return null;
+        }
+        try (InputStream in = GZIP.equals(coding)
+                ? new GZIPInputStream(new ByteArrayInputStream(body))
+                : new InflaterInputStream(new ByteArrayInputStream(body))) {
+            byte[] decoded = in.readNBytes(maxSize + 1);
+            return decoded.length <= maxSize ? decoded : null;
+        } catch (IOException e) {
+            return null;
+        }
+    }
+}
@@ -0,0 +1,126 @@
+package com.echo.api.service;
+
+import java.io.ByteArrayOutputStream;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.function.IntFunction;
+
+/**
+ * Encodes and decodes the binary header blocks stored in recorded_traffic.
+ * A block is a format version byte followed by the header count and, per
+ * header, the dictionary ID of its name, its value count and each value as
+ * a length-prefixed UTF-8 string. All counts, IDs and lengths are unsigned
+ * LEB128 varints. The ingestor writes the same format.
+ */
+final class HeaderBlockCodec {
+
+    static final int VERSION = 1;
+
+    private HeaderBlockCodec() {
+    }
+
+    /**
+     * Encodes headers.
+     *
+     * @param headers Headers with all their values (may be null)
+     * @param nameIds Dictionary IDs of the header names
+     * @return Encoded block, or null if there are no headers
+     */
+    static byte[] encode(Map<String, List<String>> headers, Map<String, Integer> nameIds) {
+        if (headers == null || headers.isEmpty()) {
+            return null;
+        }
+        ByteArrayOutputStream out = new ByteArrayOutputStream(headers.size() * 32);
+        out.write(VERSION);
+        writeVarint(out, headers.size());
+        headers.forEach((name, values) -> {
+            List<String> present = values != null ? values : List.of();
+            writeVarint(out, nameIds.get(name));
+            writeVarint(out, present.size());
+            for (String value : present) {
+                byte[] bytes = (value != null ? value : "").getBytes(StandardCharsets.UTF_8);
+                writeVarint(out, bytes.length);
+                out.writeBytes(bytes);
+            }
+        });
+        return out.toByteArray();
+    }
+
+    /**
+     * Decodes a block.
+     *
+     * @param block Encoded block
+     * @param names Looks up a header name by its dictionary ID
+     * @return Headers in their recorded order
+     * @throws IllegalArgumentException if the block is malformed or of an unknown version
+     */
+    static Map<String, List<String>> decode(byte[] block, IntFunction<String> names) {
+        Reader in = new Reader(block);
+        int version = in.readByte();
+        if (version != VERSION) {
+            throw new IllegalArgumentException("Unknown header block version " + version);
+        }
+        int count = in.readVarint();
+        Map<String, List<String>> headers = new LinkedHashMap<>(Math.min(count, 64) * 2);
+        for (int i = 0; i < count; i++) {
+            String name = names.apply(in.readVarint());
+            int valueCount = in.readVarint();
+            List<String> values = new ArrayList<>(Math.min(valueCount, 16));
+            for (int j = 0; j < valueCount; j++) {
+                values.add(in.readString());
+            }
+            headers.put(name, values);
+        }
+        return headers;
+    }
+
+    private static void writeVarint(ByteArrayOutputStream out, int value) {
+        while ((value & ~0x7F) != 0) {
+            out.write((value & 0x7F) | 0x80);
+            value >>>= 7;
+        }
+        out.write(value);
+    }
+
+    private static final class Reader {
+
+        private final byte[] bytes;
+        private int position;
+
+        private Reader(byte[] bytes) {
+            this.bytes = bytes;
+        }
+
+        private int readByte() {
+            if (position >= bytes.length) {
+                throw new IllegalArgumentException("Truncated header block");
+            }
+            return bytes[position++] & 0xFF;
+        }
+
+        private int readVarint() {
+            int value = 0;
+            for (int shift = 0; shift < 35; shift += 7) {
+                int b = readByte();
+                value |= (b & 0x7F) << shift;
+                if ((b & 0x80) == 0) {
+                    return value;
+                }
+            }
+            throw new IllegalArgumentException("Malformed varint in header block");
+        }
+
+        private String readString() {
+            int length = readVarint();
+            if (length < 0 || length > bytes.length - position) {
+                throw new IllegalArgumentException("Truncated header block");
+            }
+            String value = new String(bytes, position, length, StandardCharsets.UTF_8);
+            position += length;
+            return value;
+        }
+    }
+}
@@ -0,0 +1,107 @@
+package com.echo.api.service;
+
+import lombok.RequiredArgsConstructor;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.stereotype.Component;
+import org.springframework.transaction.support.TransactionSynchronization;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
+
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeSet;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Maps between header names and their IDs in the shared header_name dictionary,
+ * which the ingestor fills as it records traffic. The dictionary only grows and
+ * IDs never change, so both directions are cached for the life of the service.
+ */
+@Component
+@RequiredArgsConstructor
+public class HeaderNameDictionary {
+
+    private final JdbcTemplate jdbcTemplate;
+    private final Map<Integer, String> names = new ConcurrentHashMap<>();
+    private final Map<String, Integer> ids = new ConcurrentHashMap<>();
+    private final AtomicInteger maxLoadedId = new AtomicInteger();
+
+    /**
+     * Looks up a header name. An unknown ID loads only the names added after
+     * the newest one cached, since it usually means names were added after the
+     * cache was filled. IDs can commit out of order, so an ID still missing
+     * after that is looked up on its own.
+     *
+     * @param id Dictionary ID
+     * @return Header name
+     * @throws IllegalArgumentException if the ID is not in the dictionary
+     */
+    public String nameOf(int id) {
+        String name = names.get(id);
+        if (name != null) {
+            return name;
+        }
+        jdbcTemplate.query("SELECT id, name FROM header_name WHERE id > ?", row -> {
+            int loadedId = row.getInt(1);
+            names.put(loadedId, row.getString(2));
+            maxLoadedId.accumulateAndGet(loadedId, Math::max);
+        }, maxLoadedId.get());
+        name = names.get(id);
+        if (name == null) {
+            List<String> found = jdbcTemplate.queryForList("SELECT name FROM header_name WHERE id = ?",
+                    String.class, id);
+            if (found.isEmpty()) {
+                throw new IllegalArgumentException("Unknown header name id " + id);
+            }
+            name = found.get(0);
+            names.put(id, name);
+        }
+        return name;
+    }
+
+    /**
+     * Resolves the IDs of header names, adding names not yet in the dictionary.
+     * New names are added in sorted order, so concurrent writers adding the same
+     * names cannot deadlock on the unique index, and are cached only once the
+     * caller's transaction commits.
+     *
+     * @param headerNames Header names
+     * @return IDs by name
+     */
+    public Map<String, Integer> resolve(Collection<String> headerNames) {
+        Map<String, Integer> resolved = new HashMap<>();
+        TreeSet<String> missing = new TreeSet<>();
+        for (String name : headerNames) {
+            Integer id = ids.get(name);
+            if (id != null) {
+                resolved.put(name, id);
+            } else {
+                missing.add(name);
+            }
+        }
+        if (missing.isEmpty()) {
+            return resolved;
+        }
+
+        Map<String, Integer> added = new HashMap<>();
+        for (String name : missing) {
+            jdbcTemplate.update("INSERT INTO header_name (name) VALUES (?) ON CONFLICT (name) DO NOTHING", name);
+            added.put(name, jdbcTemplate.queryForObject("SELECT id FROM header_name WHERE name = ?",
+                    Integer.class, name));
+        }
+        resolved.putAll(added);
+        if (TransactionSynchronizationManager.isSynchronizationActive()) {
+            TransactionSynchronizationManager.registerSynchronization(new TransactionSynchronization() {
+                @Override
+                public void afterCommit() {
+                    ids.putAll(added);
+                }
+            });
+        } else {
+            ids.putAll(added);
+        }
+        return resolved;
+    }
+}
@@ -0,0 +1,37 @@
+package com.echo.api.service;
+
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Samples a debug message that would otherwise be written on every call, such
+ * as the match lookup the proxy makes for each replayed request. The first
+ * occurrence is logged, then every {@code every}-th.
+ */
+public final class LogSampler {
+
+    static final int DEFAULT_EVERY = 100;
+
+    private final int every;
+    private final AtomicLong occurrences = new AtomicLong();
+
+    public LogSampler() {
+        this(DEFAULT_EVERY);
+    }
+
+    public LogSampler(int every) {
+        if (every < 1) {
+            throw new IllegalArgumentException("every must be at least 1");
+        }
+        this.every = every;
+    }
+
+    /**
+     * Counts an occurrence. Callers check that the log level is enabled first,
+     * so disabled logging does not touch the shared counter.
+     *
+     * @return Whether this occurrence should be logged
+     */
+    public boolean sample() {
+        return occurrences.getAndIncrement() % every == 0;
+    }
+}
@@ -0,0 +1,159 @@
+package com.echo.api.service;
+
+import com.echo.api.dto.TrafficRecordDto;
+
+import java.io.BufferedOutputStream;
+import java.io.Closeable;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Writes a session archive that echo-proxy can memory-map and replay without
+ * Echo API, Postgres or RabbitMQ.
+ *
+ * <p>Layout: the magic {@code ECHOARC2}, the response bodies back to back,
+ * the index section and a footer of index offset (long), record count (int)
+ * and the magic again. Bodies are padded so that none crosses a
+ * {@link #CHUNK_SIZE} boundary, which lets the reader map the file in chunks
+ * and slice every body out of a single one, so no body may be larger than a
+ * chunk. Bodies are streamed as they are written; the index section is
+ * spooled to a temporary file until {@link #finish()}, so heap use does not
+ * grow with the number of records. {@link #close()} deletes that file.
+ */
+public final class SessionArchiveWriter implements Closeable {
+
+    static final byte[] MAGIC = "ECHOARC2".getBytes(StandardCharsets.US_ASCII);
+
+    static final long CHUNK_SIZE = 1L << 30;
+
+    private static final byte[] PADDING = new byte[8192];
+
+    private final DataOutputStream out;
+    private final Path indexFile;
+    private final DataOutputStream index;
+
+    private long position;
+    private int recordCount;
+
+    /**
+     * Starts an archive.
+     *
+     * @param outputStream Target stream
+     * @param sessionId Session the archive holds
+     * @throws IOException if writing to the stream fails
+     */
+    public SessionArchiveWriter(OutputStream outputStream, String sessionId) throws IOException {
+        this.out = new DataOutputStream(new BufferedOutputStream(outputStream, 64 * 1024));
+        out.write(MAGIC);
+        position = MAGIC.length;
+        this.indexFile = Files.createTempFile("echo-archive-index-", ".tmp");
+        this.index = new DataOutputStream(new BufferedOutputStream(Files.newOutputStream(indexFile), 64 * 1024));
+        writeString(index, sessionId);
+    }
+
+    /**
+     * Appends a record. Records must be written oldest first.
+     *
+     * @param record Traffic record
+     * @throws IOException if writing to the stream fails or the body is larger than a chunk
+     */
+    public void write(TrafficRecordDto record) throws IOException {
+        byte[] body = record.getResponseBody() != null ? record.getResponseBody() : new byte[0];
+        if (body.length > CHUNK_SIZE) {
+            throw new IOException("Response body of " + body.length + " bytes for " + record.getMethod() + " "
+                    + record.getPath() + " exceeds the archive chunk size of " + CHUNK_SIZE + " bytes");
+        }
+
+        long chunkRemaining = CHUNK_SIZE - position % CHUNK_SIZE;
+        if (body.length > chunkRemaining) {
+            pad(chunkRemaining);
+        }
+        long bodyOffset = position;
+        out.write(body);
+        position += body.length;
+
+        writeString(index, record.getMethod());
+        writeString(index, record.getPath());
+        writeString(index, record.getQueryParams());
+        writeString(index, record.getRequestBodyHash());
+        index.writeInt(record.getStatusCode());
+        index.writeLong(record.getUpstreamTtfbMs() != null ? record.getUpstreamTtfbMs() : -1);
+        index.writeLong(record.getUpstreamDurationMs() != null ? record.getUpstreamDurationMs() : -1);
+        Map<String, List<String>> headers = record.getResponseHeaders() != null
+                ? record.getResponseHeaders() : Map.of();
+        int pairCount = 0;
+        for (List<String> values : headers.values()) {
+            pairCount += values != null ? values.size() : 0;
+        }
+        // One name/value pair per value; the reader groups repeated names back together
+        index.writeInt(pairCount);
+        for (Map.Entry<String, List<String>> header : headers.entrySet()) {
+            if (header.getValue() == null) {
+                continue;
+            }
+            for (String value : header.getValue()) {
+                writeString(index, header.getKey());
+                writeString(index, value);
+            }
+        }
+        writeString(index, record.getResponseBodyEncoding());
+        index.writeLong(bodyOffset);
+        index.writeInt(body.length);
+        recordCount++;
+    }
+
+    /**
+     * Writes the index section and the footer and flushes the stream.
+     * The underlying stream is left open.
+     *
+     * @return Number of records in the archive
+     * @throws IOException if writing to the stream fails
+     */
+    public int finish() throws IOException {
+        long indexOffset = position;
+        index.close();
+        Files.copy(indexFile, out);
+        out.writeLong(indexOffset);
+        out.writeInt(recordCount);
+        out.write(MAGIC);
+        out.flush();
+        return recordCount;
+    }
+
+    /**
+     * Deletes the temporary index file. The underlying stream is left open.
+     *
+     * @throws IOException if the file cannot be deleted
+     */
+    @Override
+    public void close() throws IOException {
+        index.close();
+        Files.deleteIfExists(indexFile);
+    }
+
+    private void pad(long length) throws IOException {
+        long remaining = length;
+        while (remaining > 0) {
+            int n = (int) Math.min(remaining, PADDING.length);
+            out.write(PADDING, 0, n);
+            remaining -= n;
+        }
+        position += length;
+    }
+
+    private static void writeString(DataOutputStream target, String value) throws IOException {
+        if (value == null) {
+            target.writeInt(-1);
+            return;
+        }
+        byte[] bytes = value.getBytes(StandardCharsets.UTF_8);
+        target.writeInt(bytes.length);
+        target.write(bytes);
+    }
+}
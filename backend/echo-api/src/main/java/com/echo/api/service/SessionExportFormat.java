@@ -0,0 +1,27 @@
+package com.echo.api.service;
+
+import java.nio.charset.StandardCharsets;
+
+/**
+ * Constants of the session export format shared by export and import.
+ *
+ * <p>An export is a GZIP stream holding the magic {@code ECHOEXP1} followed by
+ * one entry per record, oldest first: the record's JSON length as a big-endian
+ * int and the UTF-8 JSON of its {@link com.echo.api.dto.TrafficRecordDto}.
+ * The stream ends after the last record, so exports can be written and read
+ * one record at a time.
+ */
+final class SessionExportFormat {
+
+    static final byte[] MAGIC = "ECHOEXP1".getBytes(StandardCharsets.US_ASCII);
+
+    /**
+     * Largest record accepted on import, guarding against corrupt length prefixes
+     */
+    static final int MAX_RECORD_LENGTH = 256 * 1024 * 1024;
+
+    static final int BUFFER_SIZE = 64 * 1024;
+
+    private SessionExportFormat() {
+    }
+}
@@ -0,0 +1,217 @@
+package com.echo.api.service;
+
+import com.echo.api.dto.TrafficRecordDto;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import lombok.RequiredArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.annotation.Transactional;
+
+import java.io.BufferedInputStream;
+import java.io.DataInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.sql.Timestamp;
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashSet;
+import java.util.HexFormat;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.TreeMap;
+import java.util.zip.GZIPInputStream;
+
+/**
+ * Service for importing sessions exported by {@link TrafficQueryService#writeSessionExport}.
+ * Records are decoded one at a time and inserted in JDBC batches, so memory
+ * use does not grow with the size of the import. Response bodies go to the
+ * content-addressed response_body_blob table, once per distinct body, and
+ * headers are stored as blocks coded against the shared header-name dictionary.
+ */
+@Slf4j
+@Service
+@RequiredArgsConstructor
+public class TrafficImportService {
+
+    /**
+     * Rows per JDBC batch. Inserts go through JdbcTemplate rather than JPA because
+     * identity-generated IDs keep Hibernate from batching inserts.
+     */
+    static final int BATCH_SIZE = 500;
+
+    private static final String INSERT_SQL = "INSERT INTO recorded_traffic (session_id, method, path, query_params, "
+            + "match_key, request_header_block, request_body, request_body_hash, request_body_truncated, request_body_size, "
+            + "status_code, response_header_block, response_body_hash, response_body_encoding, response_body_truncated, "
+            + "response_body_size, upstream_ttfb_ms, upstream_duration_ms, timestamp, created_at) "
+            + "VALUES (?, ?, ?, ?, ?, ?, ?, ?, ?, ?, ?, ?, ?, ?, ?, ?, ?, ?, ?, ?)";
+
+    /**
+     * Stores each distinct body of a batch once, adding the batch's references to bodies already stored.
+     * Rows are upserted in hash order, as the ingestor does.
+     */
+    private static final String UPSERT_BLOB_SQL = "INSERT INTO response_body_blob (hash, body, ref_count) "
+            + "VALUES (?, ?, ?) "
+            + "ON CONFLICT (hash) DO UPDATE SET ref_count = response_body_blob.ref_count + EXCLUDED.ref_count";
+
+    private final JdbcTemplate jdbcTemplate;
+    private final ObjectMapper objectMapper;
+    private final HeaderNameDictionary headerNames;
+
+    /**
+     * Imports an exported session. All records are inserted in one transaction
+     * under the given session ID, whatever session they were exported from.
+     * A stream that is truncated or corrupt anywhere rolls the whole import back.
+     *
+     * @param sessionId Session identifier to import into
+     * @param inputStream Export stream
+     * @return Number of records imported
+     * @throws IOException if the stream cannot be read or is not a session export
+     */
+    @Transactional(rollbackFor = IOException.class)
+    public long importSession(String sessionId, InputStream inputStream) throws IOException {
+        BufferedInputStream buffered = new BufferedInputStream(
+                new GZIPInputStream(inputStream, SessionExportFormat.BUFFER_SIZE), SessionExportFormat.BUFFER_SIZE);
+        DataInputStream in = new DataInputStream(buffered);
+
+        byte[] magic = new byte[SessionExportFormat.MAGIC.length];
+        in.readFully(magic);
+        if (!Arrays.equals(magic, SessionExportFormat.MAGIC)) {
+            throw new IOException("Not a session export");
+        }
+
+        Timestamp createdAt = Timestamp.from(Instant.now());
+        List<TrafficRecordDto> batch = new ArrayList<>(BATCH_SIZE);
+        List<String> bodyHashes = new ArrayList<>(BATCH_SIZE);
+        // Sorted by hash, so blob rows are locked in the same order the ingestor locks them
+        Map<String, BodyReferences> bodies = new TreeMap<>();
+        long count = 0;
+        byte[] buffer = new byte[8192];
+        while (true) {
+            // Only a clean end of the GZIP stream ends the import; a truncated one throws EOFException
+            buffered.mark(1);
+            if (buffered.read() < 0) {
+                break;
+            }
+            buffered.reset();
+            int length = in.readInt();
+            if (length < 0 || length > SessionExportFormat.MAX_RECORD_LENGTH) {
+                throw new IOException("Invalid record length " + length + " after " + count + " records");
+            }
+            if (length > buffer.length) {
+                buffer = new byte[Math.max(length, buffer.length * 2)];
+            }
+            in.readFully(buffer, 0, length);
+
+            TrafficRecordDto record = objectMapper.readValue(buffer, 0, length, TrafficRecordDto.class);
+            batch.add(record);
+            bodyHashes.add(referenceBody(record.getResponseBody(), bodies));
+            count++;
+            if (batch.size() == BATCH_SIZE) {
+                flush(sessionId, batch, bodyHashes, bodies, createdAt);
+            }
+        }
+        if (!batch.isEmpty()) {
+            flush(sessionId, batch, bodyHashes, bodies, createdAt);
+        }
+
+        log.info("Imported {} traffic records into session: {}", count, sessionId);
+        return count;
+    }
+
+    private void flush(String sessionId, List<TrafficRecordDto> batch, List<String> bodyHashes,
+                       Map<String, BodyReferences> bodies, Timestamp createdAt) {
+        if (!bodies.isEmpty()) {
+            jdbcTemplate.batchUpdate(UPSERT_BLOB_SQL, bodies.entrySet().stream()
+                    .map(body -> new Object[] {body.getKey(), body.getValue().body, body.getValue().count})
+                    .toList());
+            bodies.clear();
+        }
+        Map<String, Integer> nameIds = headerNames.resolve(headerNamesOf(batch));
+        List<Object[]> rows = new ArrayList<>(batch.size());
+        for (int i = 0; i < batch.size(); i++) {
+            rows.add(toRow(sessionId, batch.get(i), bodyHashes.get(i), nameIds, createdAt));
+        }
+        jdbcTemplate.batchUpdate(INSERT_SQL, rows);
+        batch.clear();
+        bodyHashes.clear();
+    }
+
+    private static Set<String> headerNamesOf(List<TrafficRecordDto> records) {
+        Set<String> names = new HashSet<>();
+        for (TrafficRecordDto record : records) {
+            if (record.getRequestHeaders() != null) {
+                names.addAll(record.getRequestHeaders().keySet());
+            }
+            if (record.getResponseHeaders() != null) {
+                names.addAll(record.getResponseHeaders().keySet());
+            }
+        }
+        return names;
+    }
+
+    /**
+     * Adds a reference to a response body for the current batch. A body repeated
+     * within the batch is sent to the database once.
+     *
+     * @param body Response body (may be null)
+     * @param bodies Bodies referenced by the current batch, by hash
+     * @return Body hash, or null if there is no body
+     */
+    private static String referenceBody(byte[] body, Map<String, BodyReferences> bodies) {
+        if (body == null || body.length == 0) {
+            return null;
+        }
+        String hash = sha256Hex(body);
+        bodies.computeIfAbsent(hash, h -> new BodyReferences(body)).count++;
+        return hash;
+    }
+
+    private static String sha256Hex(byte[] body) {
+        try {
+            return HexFormat.of().formatHex(MessageDigest.getInstance("SHA-256").digest(body));
+        } catch (NoSuchAlgorithmException e) {
+            throw new IllegalStateException("SHA-256 not available", e);
+        }
+    }
+
+    private static Object[] toRow(String sessionId, TrafficRecordDto record, String responseBodyHash,
+                                  Map<String, Integer> nameIds, Timestamp createdAt) {
+        return new Object[] {
+                sessionId,
+                record.getMethod(),
+                record.getPath(),
+                record.getQueryParams(),
+                record.getMatchKey(),
+                HeaderBlockCodec.encode(record.getRequestHeaders(), nameIds),
+                record.getRequestBody(),
+                record.getRequestBodyHash(),
+                record.getRequestBodyTruncated(),
+                record.getRequestBodySize(),
+                record.getStatusCode(),
+                HeaderBlockCodec.encode(record.getResponseHeaders(), nameIds),
+                responseBodyHash,
+                record.getResponseBodyEncoding(),
+                record.getResponseBodyTruncated(),
+                record.getResponseBodySize(),
+                record.getUpstreamTtfbMs(),
+                record.getUpstreamDurationMs(),
+                record.getTimestamp() != null ? Timestamp.from(record.getTimestamp()) : createdAt,
+                createdAt
+        };
+    }
+
+    private static final class BodyReferences {
+
+        private final byte[] body;
+        private long count;
+
+        private BodyReferences(byte[] body) {
+            this.body = body;
+        }
+    }
+}
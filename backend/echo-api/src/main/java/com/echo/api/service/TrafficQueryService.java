@@ -4,39 +4,86 @@ import com.echo.api.dto.SessionSummaryDto;
 import com.echo.api.dto.TrafficRecordDto;
 import com.echo.api.entity.RecordedTraffic;
 import com.echo.api.repository.RecordedTrafficRepository;
+import com.echo.api.repository.ResponseBodyBlobRepository;
 import com.fasterxml.jackson.core.type.TypeReference;
 import com.fasterxml.jackson.databind.ObjectMapper;
-import lombok.RequiredArgsConstructor;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
+import jakarta.persistence.EntityManager;
 import lombok.extern.slf4j.Slf4j;
 import org.springframework.stereotype.Service;
+import org.springframework.transaction.annotation.Transactional;
 
+import java.io.BufferedOutputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.ByteBuffer;
+import java.nio.charset.CharacterCodingException;
+import java.nio.charset.CodingErrorAction;
+import java.nio.charset.StandardCharsets;
+import java.util.Iterator;
 import java.util.List;
 import java.util.Map;
 import java.util.Optional;
+import java.util.concurrent.TimeUnit;
 import java.util.stream.Collectors;
+import java.util.stream.Stream;
+import java.util.zip.GZIPOutputStream;
 
 /**
  * Service for querying recorded traffic data.
+ * Replay matches are timed as {@code echo.api.match}.
  */
 @Slf4j
 @Service
-@RequiredArgsConstructor
 public class TrafficQueryService {
 
+    /**
+     * Largest body, after removing its content coding, rendered as text in the traffic listing
+     */
+    static final int MAX_DISPLAY_SIZE = 1024 * 1024;
+
     private final RecordedTrafficRepository repository;
+    private final ResponseBodyBlobRepository blobRepository;
     private final ObjectMapper objectMapper;
+    private final EntityManager entityManager;
+    private final HeaderNameDictionary headerNames;
+    private final Timer matchHits;
+    private final Timer matchMisses;
+    private final LogSampler matchLog = new LogSampler();
+
+    public TrafficQueryService(RecordedTrafficRepository repository, ResponseBodyBlobRepository blobRepository,
+                               ObjectMapper objectMapper, EntityManager entityManager,
+                               HeaderNameDictionary headerNames, MeterRegistry meterRegistry) {
+        this.repository = repository;
+        this.blobRepository = blobRepository;
+        this.objectMapper = objectMapper;
+        this.entityManager = entityManager;
+        this.headerNames = headerNames;
+        this.matchHits = matchTimer(meterRegistry, "hit");
+        this.matchMisses = matchTimer(meterRegistry, "miss");
+    }
+
+    private static Timer matchTimer(MeterRegistry meterRegistry, String outcome) {
+        return Timer.builder("echo.api.match")
+                .description("Time to find and load the recording matching a replayed request, by outcome")
+                .tag("outcome", outcome)
+                .register(meterRegistry);
+    }
 
     /**
      * Retrieves all recorded traffic for a session.
      *
      * @param sessionId Session identifier
+     * @param decodeBodies Whether to send bodies that are valid text as decoded text instead of bytes
      * @return List of traffic records
      */
-    public List<TrafficRecordDto> getTrafficBySession(String sessionId) {
+    public List<TrafficRecordDto> getTrafficBySession(String sessionId, boolean decodeBodies) {
         log.info("Retrieving traffic for session: {}", sessionId);
         List<RecordedTraffic> entities = repository.findBySessionIdOrderByTimestampDesc(sessionId);
         return entities.stream()
-                .map(this::convertToDto)
+                .map(decodeBodies ? this::convertToDisplayDto : this::convertToDto)
                 .collect(Collectors.toList());
     }
 
@@ -47,14 +94,115 @@ public class TrafficQueryService {
      * @param method HTTP method
      * @param path Request path
      * @param queryParams Query parameters
+     * @param matchKey Canonical match key (may be null)
+     * @param requestBodyHash Request body hash
      * @return Optional containing matched traffic record
      */
-    public Optional<TrafficRecordDto> findMatchingTraffic(String sessionId, String method, String path, String queryParams) {
-        log.debug("Searching for match: session={}, method={}, path={}, queryParams={}",
-                sessionId, method, path, queryParams);
+    @Transactional(readOnly = true)
+    public Optional<TrafficRecordDto> findMatchingTraffic(String sessionId, String method, String path,
+                                                          String queryParams, String matchKey,
+                                                          String requestBodyHash) {
+        if (log.isDebugEnabled() && matchLog.sample()) {
+            log.debug("Searching for match: session={}, method={}, path={}, queryParams={}, matchKey={}, "
+                    + "requestBodyHash={}", sessionId, method, path, queryParams, matchKey, requestBodyHash);
+        }
 
-        return repository.findMatchingTraffic(sessionId, method, path, queryParams)
+        long startNanos = System.nanoTime();
+        Optional<TrafficRecordDto> match = repository.findMatchingTraffic(
+                        sessionId, method, path, queryParams, matchKey, requestBodyHash)
                 .map(this::convertToDto);
+        (match.isPresent() ? matchHits : matchMisses).record(System.nanoTime() - startNanos, TimeUnit.NANOSECONDS);
+        return match;
+    }
+
+    /**
+     * Writes every traffic record of a session as newline-delimited JSON, oldest first.
+     * Records are read through a database cursor and detached once written,
+     * so memory use does not grow with the size of the session.
+     *
+     * @param sessionId Session identifier
+     * @param outputStream Target stream
+     * @return Number of records written
+     * @throws IOException if writing to the stream fails
+     */
+    @Transactional(readOnly = true)
+    public long writeSessionTraffic(String sessionId, OutputStream outputStream) throws IOException {
+        long count = 0;
+        try (Stream<RecordedTraffic> entities = repository.streamBySessionId(sessionId)) {
+            Iterator<RecordedTraffic> iterator = entities.iterator();
+            while (iterator.hasNext()) {
+                RecordedTraffic entity = iterator.next();
+                outputStream.write(objectMapper.writeValueAsBytes(convertToDto(entity)));
+                outputStream.write('\n');
+                entityManager.detach(entity);
+                count++;
+            }
+        }
+        outputStream.flush();
+        log.info("Streamed {} traffic records for session: {}", count, sessionId);
+        return count;
+    }
+
+    /**
+     * Writes a session as an archive that echo-proxy can replay from a local file.
+     * Records are read through a database cursor, oldest first, and bodies are
+     * streamed straight to the output.
+     *
+     * @param sessionId Session identifier
+     * @param outputStream Target stream
+     * @return Number of records written
+     * @throws IOException if writing to the stream fails
+     */
+    @Transactional(readOnly = true)
+    public long writeSessionArchive(String sessionId, OutputStream outputStream) throws IOException {
+        int count;
+        try (SessionArchiveWriter writer = new SessionArchiveWriter(outputStream, sessionId);
+             Stream<RecordedTraffic> entities = repository.streamBySessionId(sessionId)) {
+            Iterator<RecordedTraffic> iterator = entities.iterator();
+            while (iterator.hasNext()) {
+                RecordedTraffic entity = iterator.next();
+                writer.write(convertToDto(entity));
+                entityManager.detach(entity);
+            }
+            count = writer.finish();
+        }
+        log.info("Exported archive of {} traffic records for session: {}", count, sessionId);
+        return count;
+    }
+
+    /**
+     * Writes a session in the compact export format: GZIP-compressed,
+     * length-prefixed JSON records, oldest first. Records are read through a
+     * database cursor and written straight to the output, so memory use does
+     * not grow with the size of the session.
+     *
+     * @param sessionId Session identifier
+     * @param outputStream Target stream, left open
+     * @return Number of records written
+     * @throws IOException if writing to the stream fails
+     */
+    @Transactional(readOnly = true)
+    public long writeSessionExport(String sessionId, OutputStream outputStream) throws IOException {
+        GZIPOutputStream gzip = new GZIPOutputStream(outputStream, SessionExportFormat.BUFFER_SIZE);
+        DataOutputStream out = new DataOutputStream(new BufferedOutputStream(gzip, SessionExportFormat.BUFFER_SIZE));
+        out.write(SessionExportFormat.MAGIC);
+
+        long count = 0;
+        try (Stream<RecordedTraffic> entities = repository.streamBySessionId(sessionId)) {
+            Iterator<RecordedTraffic> iterator = entities.iterator();
+            while (iterator.hasNext()) {
+                RecordedTraffic entity = iterator.next();
+                byte[] json = objectMapper.writeValueAsBytes(convertToDto(entity));
+                out.writeInt(json.length);
+                out.write(json);
+                entityManager.detach(entity);
+                count++;
+            }
+        }
+        out.flush();
+        gzip.finish();
+        log.info("Exported {} traffic records for session: {}", count, sessionId);
+        return count;
     }
 
     /**
@@ -77,10 +225,12 @@ public class TrafficQueryService {
      *
      * @param id Traffic record ID
      */
-    @org.springframework.transaction.annotation.Transactional
+    @Transactional
     public void deleteTrafficRecord(Long id) {
         log.info("Deleting traffic record with id: {}", id);
+        blobRepository.releaseRecord(id);
         repository.deleteById(id);
+        blobRepository.purgeUnreferenced();
     }
 
     /**
@@ -88,10 +238,13 @@ public class TrafficQueryService {
      *
      * @param sessionId Session identifier
      */
-    @org.springframework.transaction.annotation.Transactional
+    @Transactional
     public void deleteSessionTraffic(String sessionId) {
         log.info("Deleting all traffic for session: {}", sessionId);
+        blobRepository.releaseSession(sessionId);
         int deletedCount = repository.deleteBySessionId(sessionId);
+        int purgedCount = blobRepository.purgeUnreferenced();
+        log.debug("Purged {} unreferenced response bodies", purgedCount);
         log.info("Deleted {} traffic records for session: {}", deletedCount, sessionId);
     }
 
@@ -108,28 +261,115 @@ public class TrafficQueryService {
                 .method(entity.getMethod())
                 .path(entity.getPath())
                 .queryParams(entity.getQueryParams())
-                .requestHeaders(parseJsonToMap(entity.getRequestHeaders()))
+                .matchKey(entity.getMatchKey())
+                .requestHeaders(headersOf(entity.getId(), entity.getRequestHeaderBlock(), entity.getRequestHeaders()))
                 .requestBody(entity.getRequestBody())
+                .requestBodyHash(entity.getRequestBodyHash())
+                .requestBodyTruncated(entity.getRequestBodyTruncated())
+                .requestBodySize(entity.getRequestBodySize())
                 .statusCode(entity.getStatusCode())
-                .responseHeaders(parseJsonToMap(entity.getResponseHeaders()))
-                .responseBody(entity.getResponseBody())
+                .responseHeaders(headersOf(entity.getId(), entity.getResponseHeaderBlock(), entity.getResponseHeaders()))
+                .responseBody(responseBodyOf(entity))
+                .responseBodyEncoding(entity.getResponseBodyEncoding())
+                .responseBodyTruncated(entity.getResponseBodyTruncated())
+                .responseBodySize(entity.getResponseBodySize())
+                .upstreamTtfbMs(entity.getUpstreamTtfbMs())
+                .upstreamDurationMs(entity.getUpstreamDurationMs())
                 .timestamp(entity.getTimestamp())
                 .createdAt(entity.getCreatedAt())
                 .build();
     }
 
     /**
-     * Parses JSON string to Map.
+     * Resolves the response body, which is stored inline or shared by hash.
+     *
+     * @param entity RecordedTraffic entity
+     * @return Response body bytes, or null if there is no body
+     */
+    private byte[] responseBodyOf(RecordedTraffic entity) {
+        if (entity.getResponseBodyHash() == null || entity.getResponseBodyBlob() == null) {
+            return entity.getResponseBody();
+        }
+        return entity.getResponseBodyBlob().getBody();
+    }
+
+    /**
+     * Converts entity to DTO for display. A body that is valid UTF-8 text within
+     * MAX_DISPLAY_SIZE is sent as text in place of its bytes, so each body is sent once;
+     * other bodies keep their stored bytes.
+     *
+     * @param entity RecordedTraffic entity
+     * @return TrafficRecordDto
+     */
+    private TrafficRecordDto convertToDisplayDto(RecordedTraffic entity) {
+        TrafficRecordDto dto = convertToDto(entity);
+        String requestText = decodeText(dto.getRequestBody());
+        if (requestText != null) {
+            dto.setRequestBodyText(requestText);
+            dto.setRequestBody(null);
+        }
+        byte[] responseBody = dto.getResponseBodyEncoding() == null || dto.getResponseBody() == null
+                ? dto.getResponseBody()
+                : ContentCodings.decode(dto.getResponseBodyEncoding(), dto.getResponseBody(), MAX_DISPLAY_SIZE);
+        String responseText = decodeText(responseBody);
+        if (responseText != null) {
+            dto.setResponseBodyText(responseText);
+            dto.setResponseBody(null);
+            dto.setResponseBodyEncoding(null);
+        }
+        return dto;
+    }
+
+    /**
+     * Decodes a body as UTF-8 if it is valid UTF-8 text no larger than MAX_DISPLAY_SIZE.
+     *
+     * @param body Raw body
+     * @return Decoded text, or null if the body is absent, too large or binary
+     */
+    private String decodeText(byte[] body) {
+        if (body == null || body.length > MAX_DISPLAY_SIZE) {
+            return null;
+        }
+        try {
+            return StandardCharsets.UTF_8.newDecoder()
+                    .onMalformedInput(CodingErrorAction.REPORT)
+                    .onUnmappableCharacter(CodingErrorAction.REPORT)
+                    .decode(ByteBuffer.wrap(body))
+                    .toString();
+        } catch (CharacterCodingException e) {
+            return null;
+        }
+    }
+
+    /**
+     * Reads headers from their binary block, or from the JSON column of rows
+     * recorded before header blocks. A block that cannot be decoded falls back to
+     * the JSON column when the row has one, and fails otherwise rather than
+     * returning the record without its headers.
      *
-     * @param json JSON string
-     * @return Map representation
+     * @param id Record ID, for the error
+     * @param block Header block (may be null)
+     * @param json Legacy JSON headers (may be null)
+     * @return Headers with all their values, or null if there are none
+     * @throws IllegalStateException if the block cannot be decoded and there is no JSON to fall back to
      */
-    private Map<String, String> parseJsonToMap(String json) {
+    private Map<String, List<String>> headersOf(Long id, byte[] block, String json) {
+        if (block != null) {
+            try {
+                return HeaderBlockCodec.decode(block, headerNames::nameOf);
+            } catch (IllegalArgumentException e) {
+                if (json == null || json.isEmpty()) {
+                    throw new IllegalStateException("Failed to decode header block of traffic record " + id, e);
+                }
+                log.warn("Failed to decode header block of traffic record {}, using JSON headers: {}",
+                        id, e.getMessage());
+            }
+        }
         if (json == null || json.isEmpty()) {
             return null;
         }
         try {
-            return objectMapper.readValue(json, new TypeReference<Map<String, String>>() {});
+            return objectMapper.readValue(json, new TypeReference<Map<String, List<String>>>() {});
         } catch (Exception e) {
             log.error("Failed to parse JSON: {}", e.getMessage());
             return null;
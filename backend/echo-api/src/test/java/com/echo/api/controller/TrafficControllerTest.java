@@ -1,6 +1,7 @@
 package com.echo.api.controller;
 
 import com.echo.api.dto.TrafficRecordDto;
+import com.echo.api.service.TrafficImportService;
 import com.echo.api.service.TrafficQueryService;
 import org.junit.jupiter.api.Test;
 import org.springframework.beans.factory.annotation.Autowired;
@@ -8,15 +9,26 @@ import org.springframework.boot.test.autoconfigure.web.servlet.WebMvcTest;
 import org.springframework.boot.test.mock.mockito.MockBean;
 import org.springframework.http.MediaType;
 import org.springframework.test.web.servlet.MockMvc;
+import org.springframework.test.web.servlet.MvcResult;
 
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.charset.StandardCharsets;
 import java.time.Instant;
 import java.util.List;
 import java.util.Map;
 import java.util.Optional;
 
+import static org.mockito.ArgumentMatchers.any;
 import static org.mockito.ArgumentMatchers.anyString;
+import static org.mockito.ArgumentMatchers.eq;
+import static org.mockito.Mockito.doAnswer;
+import static org.mockito.Mockito.doThrow;
 import static org.mockito.Mockito.when;
+import static org.springframework.test.web.servlet.request.MockMvcRequestBuilders.asyncDispatch;
 import static org.springframework.test.web.servlet.request.MockMvcRequestBuilders.get;
+import static org.springframework.test.web.servlet.request.MockMvcRequestBuilders.post;
 import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.*;
 
 /**
@@ -31,6 +43,9 @@ class TrafficControllerTest {
     @MockBean
     private TrafficQueryService trafficQueryService;
 
+    @MockBean
+    private TrafficImportService trafficImportService;
+
     @Test
     void getTrafficBySession_shouldReturnTrafficList() throws Exception {
         // Given
@@ -43,7 +58,7 @@ class TrafficControllerTest {
                 .timestamp(Instant.now())
                 .build();
 
-        when(trafficQueryService.getTrafficBySession("test-session"))
+        when(trafficQueryService.getTrafficBySession("test-session", false))
                 .thenReturn(List.of(dto));
 
         // When & Then
@@ -64,10 +79,10 @@ class TrafficControllerTest {
                 .method("GET")
                 .path("/api/test")
                 .statusCode(200)
-                .responseBody("{\"result\": \"success\"}")
+                .responseBody("{\"result\": \"success\"}".getBytes(StandardCharsets.UTF_8))
                 .build();
 
-        when(trafficQueryService.findMatchingTraffic(anyString(), anyString(), anyString(), anyString()))
+        when(trafficQueryService.findMatchingTraffic(anyString(), anyString(), anyString(), any(), any(), any()))
                 .thenReturn(Optional.of(dto));
 
         // When & Then
@@ -81,10 +96,38 @@ class TrafficControllerTest {
                 .andExpect(jsonPath("$.statusCode").value(200));
     }
 
+    @Test
+    void findMatchingTraffic_shouldPassRequestBodyHash() throws Exception {
+        // Given
+        TrafficRecordDto dto = TrafficRecordDto.builder()
+                .id(2L)
+                .sessionId("test-session")
+                .method("POST")
+                .path("/api/orders")
+                .requestBodyHash("abc123")
+                .statusCode(201)
+                .build();
+
+        when(trafficQueryService.findMatchingTraffic("test-session", "POST", "/api/orders", null, "POST /api/orders", "abc123"))
+                .thenReturn(Optional.of(dto));
+
+        // When & Then
+        mockMvc.perform(get("/api/v1/internal/match")
+                        .param("sessionId", "test-session")
+                        .param("method", "POST")
+                        .param("path", "/api/orders")
+                        .param("matchKey", "POST /api/orders")
+                        .param("requestBodyHash", "abc123")
+                        .contentType(MediaType.APPLICATION_JSON))
+                .andExpect(status().isOk())
+                .andExpect(jsonPath("$.id").value(2))
+                .andExpect(jsonPath("$.requestBodyHash").value("abc123"));
+    }
+
     @Test
     void findMatchingTraffic_shouldReturn404WhenNoMatch() throws Exception {
         // Given
-        when(trafficQueryService.findMatchingTraffic(anyString(), anyString(), anyString(), anyString()))
+        when(trafficQueryService.findMatchingTraffic(anyString(), anyString(), anyString(), any(), any(), any()))
                 .thenReturn(Optional.empty());
 
         // When & Then
@@ -95,4 +138,53 @@ class TrafficControllerTest {
                         .contentType(MediaType.APPLICATION_JSON))
                 .andExpect(status().isNotFound());
     }
-}
\ No newline at end of file
+
+    @Test
+    void streamSessionTraffic_shouldWriteNdjson() throws Exception {
+        // Given
+        doAnswer(invocation -> {
+            OutputStream outputStream = invocation.getArgument(1);
+            outputStream.write("{\"id\":1}\n{\"id\":2}\n".getBytes(StandardCharsets.UTF_8));
+            return 2L;
+        }).when(trafficQueryService).writeSessionTraffic(eq("test-session"), any(OutputStream.class));
+
+        // When
+        MvcResult result = mockMvc.perform(get("/api/v1/internal/sessions/test-session/records"))
+                .andExpect(request().asyncStarted())
+                .andReturn();
+
+        // Then
+        mockMvc.perform(asyncDispatch(result))
+                .andExpect(status().isOk())
+                .andExpect(content().contentType(MediaType.APPLICATION_NDJSON))
+                .andExpect(content().string("{\"id\":1}\n{\"id\":2}\n"));
+    }
+
+    @Test
+    void importSession_shouldReturnImportedCount() throws Exception {
+        // Given
+        when(trafficImportService.importSession(eq("copied-session"), any(InputStream.class))).thenReturn(3L);
+
+        // When & Then
+        mockMvc.perform(post("/api/v1/sessions/copied-session/import")
+                        .contentType(MediaType.APPLICATION_OCTET_STREAM)
+                        .content(new byte[] {1, 2, 3}))
+                .andExpect(status().isOk())
+                .andExpect(jsonPath("$.sessionId").value("copied-session"))
+                .andExpect(jsonPath("$.imported").value(3));
+    }
+
+    @Test
+    void importSession_shouldRejectInvalidExport() throws Exception {
+        // Given
+        doThrow(new IOException("Not a session export"))
+                .when(trafficImportService).importSession(eq("copied-session"), any(InputStream.class));
+
+        // When & Then
+        mockMvc.perform(post("/api/v1/sessions/copied-session/import")
+                        .contentType(MediaType.APPLICATION_OCTET_STREAM)
+                        .content(new byte[] {1, 2, 3}))
+                .andExpect(status().isBadRequest())
+                .andExpect(jsonPath("$.error").value("Invalid session export: Not a session export"));
+    }
+}
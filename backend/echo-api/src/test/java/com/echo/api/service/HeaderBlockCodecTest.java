@@ -0,0 +1,62 @@
+package com.echo.api.service;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * Unit tests for HeaderBlockCodec.
+ */
+class HeaderBlockCodecTest {
+
+    // Written by the ingestor for Set-Cookie: a=1, b=2 with Set-Cookie as dictionary ID 300
+    private static final byte[] INGESTED_BLOCK = {1, 1, (byte) 0xAC, 0x02, 2, 3, 'a', '=', '1', 3, 'b', '=', '2'};
+
+    @Test
+    void decode_shouldReadBlockWrittenByTheIngestor() {
+        // When
+        Map<String, List<String>> headers = HeaderBlockCodec.decode(INGESTED_BLOCK,
+                id -> id == 300 ? "Set-Cookie" : null);
+
+        // Then
+        assertEquals(Map.of("Set-Cookie", List.of("a=1", "b=2")), headers);
+    }
+
+    @Test
+    void encode_shouldRoundTripHeadersInOrder() {
+        // Given
+        Map<String, List<String>> headers = new LinkedHashMap<>();
+        headers.put("Content-Type", List.of("application/json; charset=ü"));
+        headers.put("Set-Cookie", List.of("a=1", "b=2"));
+        headers.put("X-Empty", List.of());
+        Map<String, Integer> nameIds = Map.of("Content-Type", 1, "Set-Cookie", 300, "X-Empty", 70_000);
+
+        // When
+        byte[] block = HeaderBlockCodec.encode(headers, nameIds);
+        Map<String, List<String>> decoded = HeaderBlockCodec.decode(block,
+                id -> id == 1 ? "Content-Type" : id == 300 ? "Set-Cookie" : "X-Empty");
+
+        // Then
+        assertEquals(List.copyOf(headers.entrySet()), List.copyOf(decoded.entrySet()));
+        assertArrayEquals(INGESTED_BLOCK, HeaderBlockCodec.encode(Map.of("Set-Cookie", List.of("a=1", "b=2")),
+                Map.of("Set-Cookie", 300)));
+    }
+
+    @Test
+    void decode_shouldRejectTruncatedAndUnknownVersionBlocks() {
+        // Given
+        byte[] truncated = new byte[INGESTED_BLOCK.length - 1];
+        System.arraycopy(INGESTED_BLOCK, 0, truncated, 0, truncated.length);
+        byte[] unknownVersion = INGESTED_BLOCK.clone();
+        unknownVersion[0] = 2;
+
+        // When & Then
+        assertThrows(IllegalArgumentException.class, () -> HeaderBlockCodec.decode(truncated, id -> "Set-Cookie"));
+        assertThrows(IllegalArgumentException.class,
+                () -> HeaderBlockCodec.decode(unknownVersion, id -> "Set-Cookie"));
+    }
+}
@@ -0,0 +1,89 @@
+package com.echo.api.service;
+
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.jdbc.core.RowCallbackHandler;
+import org.springframework.jdbc.datasource.embedded.EmbeddedDatabase;
+import org.springframework.jdbc.datasource.embedded.EmbeddedDatabaseBuilder;
+import org.springframework.jdbc.datasource.embedded.EmbeddedDatabaseType;
+
+import static org.junit.jupiter.api.Assertions.*;
+import static org.mockito.ArgumentMatchers.*;
+import static org.mockito.Mockito.*;
+
+/**
+ * Unit tests for HeaderNameDictionary's lookups by ID.
+ */
+class HeaderNameDictionaryTest {
+
+    private EmbeddedDatabase database;
+    private JdbcTemplate jdbcTemplate;
+    private HeaderNameDictionary dictionary;
+
+    @BeforeEach
+    void setUp() {
+        database = new EmbeddedDatabaseBuilder()
+                .setType(EmbeddedDatabaseType.H2)
+                .generateUniqueName(true)
+                .build();
+        jdbcTemplate = spy(new JdbcTemplate(database));
+        jdbcTemplate.execute("CREATE TABLE header_name (id INT PRIMARY KEY, name VARCHAR(255) NOT NULL UNIQUE)");
+        dictionary = new HeaderNameDictionary(jdbcTemplate);
+    }
+
+    @AfterEach
+    void tearDown() {
+        database.shutdown();
+    }
+
+    @Test
+    void nameOf_shouldLoadOnlyNamesAddedAfterTheNewestCached() {
+        // Given
+        insert(1, "Content-Type");
+        insert(2, "Accept");
+        dictionary.nameOf(1);
+        insert(3, "Set-Cookie");
+
+        // When
+        String name = dictionary.nameOf(3);
+
+        // Then
+        assertEquals("Set-Cookie", name);
+        assertEquals("Accept", dictionary.nameOf(2));
+        verify(jdbcTemplate).query(anyString(), any(RowCallbackHandler.class), eq(0));
+        verify(jdbcTemplate).query(anyString(), any(RowCallbackHandler.class), eq(2));
+        verify(jdbcTemplate, never()).queryForList(anyString(), eq(String.class), any());
+    }
+
+    @Test
+    void nameOf_shouldFindIdCommittedBelowTheNewestCached() {
+        // Given
+        insert(5, "Content-Type");
+        dictionary.nameOf(5);
+        insert(4, "Set-Cookie");
+
+        // When
+        String name = dictionary.nameOf(4);
+
+        // Then
+        assertEquals("Set-Cookie", name);
+        assertEquals("Set-Cookie", dictionary.nameOf(4));
+        verify(jdbcTemplate, times(1)).queryForList(anyString(), eq(String.class), eq(4));
+    }
+
+    @Test
+    void nameOf_shouldRejectUnknownId() {
+        // Given
+        insert(1, "Content-Type");
+
+        // When & Then
+        assertThrows(IllegalArgumentException.class, () -> dictionary.nameOf(300));
+        assertEquals("Content-Type", dictionary.nameOf(1));
+    }
+
+    private void insert(int id, String name) {
+        jdbcTemplate.update("INSERT INTO header_name (id, name) VALUES (?, ?)", id, name);
+    }
+}
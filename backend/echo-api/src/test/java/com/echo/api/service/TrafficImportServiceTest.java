@@ -0,0 +1,160 @@
+package com.echo.api.service;
+
+import com.echo.api.entity.RecordedTraffic;
+import com.echo.api.repository.RecordedTrafficRepository;
+import com.echo.api.repository.ResponseBodyBlobRepository;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import jakarta.persistence.EntityManager;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.extension.ExtendWith;
+import org.mockito.ArgumentCaptor;
+import org.mockito.Captor;
+import org.mockito.Mock;
+import org.mockito.junit.jupiter.MockitoExtension;
+import org.springframework.jdbc.core.JdbcTemplate;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.time.Instant;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Map;
+import java.util.stream.Stream;
+
+import static org.junit.jupiter.api.Assertions.*;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyList;
+import static org.mockito.ArgumentMatchers.anyString;
+import static org.mockito.Mockito.*;
+
+/**
+ * Unit tests for TrafficImportService, fed by the export of TrafficQueryService.
+ */
+@ExtendWith(MockitoExtension.class)
+class TrafficImportServiceTest {
+
+    @Mock
+    private RecordedTrafficRepository repository;
+
+    @Mock
+    private ResponseBodyBlobRepository blobRepository;
+
+    @Mock
+    private EntityManager entityManager;
+
+    @Mock
+    private HeaderNameDictionary headerNames;
+
+    @Mock
+    private JdbcTemplate jdbcTemplate;
+
+    @Captor
+    private ArgumentCaptor<String> sql;
+
+    @Captor
+    private ArgumentCaptor<List<Object[]>> rows;
+
+    private TrafficQueryService queryService;
+    private TrafficImportService importService;
+
+    @BeforeEach
+    void setUp() {
+        ObjectMapper objectMapper = new ObjectMapper().findAndRegisterModules();
+        queryService = new TrafficQueryService(repository, blobRepository, objectMapper, entityManager,
+                headerNames, new SimpleMeterRegistry());
+        importService = new TrafficImportService(jdbcTemplate, objectMapper, headerNames);
+    }
+
+    @Test
+    void importSession_shouldInsertEveryExportedRecord() throws IOException {
+        // Given
+        byte[] export = exportOf(
+                entity("GET", "/api/users", "[{\"id\": 1}]"),
+                entity("GET", "/api/health", "[{\"id\": 1}]"));
+        when(headerNames.resolve(any())).thenReturn(Map.of("Set-Cookie", 7));
+
+        // When
+        long imported = importService.importSession("copy", new ByteArrayInputStream(export));
+
+        // Then
+        assertEquals(2, imported);
+        verify(jdbcTemplate, times(2)).batchUpdate(sql.capture(), rows.capture());
+
+        assertTrue(sql.getAllValues().get(0).startsWith("INSERT INTO response_body_blob"));
+        Object[] blob = rows.getAllValues().get(0).get(0);
+        assertArrayEquals("[{\"id\": 1}]".getBytes(StandardCharsets.UTF_8), (byte[]) blob[1]);
+        assertEquals(2L, blob[2]);
+
+        assertTrue(sql.getAllValues().get(1).startsWith("INSERT INTO recorded_traffic"));
+        List<Object[]> records = rows.getAllValues().get(1);
+        assertEquals(2, records.size());
+        assertEquals("copy", records.get(0)[0]);
+        assertEquals("/api/users", records.get(0)[2]);
+        assertEquals("/api/health", records.get(1)[2]);
+        assertEquals(blob[0], records.get(0)[12]);
+        assertArrayEquals(cookieBlock(), (byte[]) records.get(0)[11]);
+    }
+
+    @Test
+    void importSession_shouldUpsertBodiesInHashOrder() throws IOException {
+        // Given
+        byte[] export = exportOf(
+                entity("GET", "/api/orders", "[]"),
+                entity("GET", "/api/health", "{\"status\": \"UP\"}"),
+                entity("GET", "/api/users", "[{\"id\": 1}]"));
+        when(headerNames.resolve(any())).thenReturn(Map.of("Set-Cookie", 7));
+
+        // When
+        importService.importSession("copy", new ByteArrayInputStream(export));
+
+        // Then
+        verify(jdbcTemplate, times(2)).batchUpdate(sql.capture(), rows.capture());
+        List<String> hashes = rows.getAllValues().get(0).stream()
+                .map(blob -> (String) blob[0])
+                .toList();
+        assertEquals(3, hashes.size());
+        assertEquals(hashes.stream().sorted().toList(), hashes);
+    }
+
+    @Test
+    void importSession_shouldFailOnTruncatedExport() throws IOException {
+        // Given
+        byte[] export = exportOf(
+                entity("GET", "/api/users", "[{\"id\": 1}]"),
+                entity("GET", "/api/health", "{\"status\": \"UP\"}"));
+        byte[] truncated = Arrays.copyOf(export, export.length - 12);
+
+        // When & Then
+        assertThrows(IOException.class,
+                () -> importService.importSession("copy", new ByteArrayInputStream(truncated)));
+        verify(jdbcTemplate, never()).batchUpdate(anyString(), anyList());
+    }
+
+    private byte[] exportOf(RecordedTraffic... entities) throws IOException {
+        when(repository.streamBySessionId("original")).thenReturn(Stream.of(entities));
+        lenient().when(headerNames.nameOf(7)).thenReturn("Set-Cookie");
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        assertEquals(entities.length, queryService.writeSessionExport("original", out));
+        return out.toByteArray();
+    }
+
+    private static RecordedTraffic entity(String method, String path, String responseBody) {
+        return RecordedTraffic.builder()
+                .sessionId("original")
+                .method(method)
+                .path(path)
+                .statusCode(200)
+                .responseHeaderBlock(cookieBlock())
+                .responseBody(responseBody.getBytes(StandardCharsets.UTF_8))
+                .timestamp(Instant.parse("2026-01-01T00:00:00Z"))
+                .build();
+    }
+
+    private static byte[] cookieBlock() {
+        return HeaderBlockCodec.encode(Map.of("Set-Cookie", List.of("a=1", "b=2")), Map.of("Set-Cookie", 7));
+    }
+}
@@ -0,0 +1,161 @@
+package com.echo.api.service;
+
+import com.echo.api.dto.TrafficRecordDto;
+import com.echo.api.entity.RecordedTraffic;
+import com.echo.api.repository.RecordedTrafficRepository;
+import com.echo.api.repository.ResponseBodyBlobRepository;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import jakarta.persistence.EntityManager;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.extension.ExtendWith;
+import org.mockito.Mock;
+import org.mockito.junit.jupiter.MockitoExtension;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.util.List;
+import java.util.Map;
+import java.util.zip.GZIPOutputStream;
+
+import static org.junit.jupiter.api.Assertions.*;
+import static org.mockito.Mockito.*;
+
+/**
+ * Unit tests for TrafficQueryService.
+ */
+@ExtendWith(MockitoExtension.class)
+class TrafficQueryServiceTest {
+
+    // Set-Cookie: a=1, b=2 with Set-Cookie as dictionary ID 300
+    private static final byte[] SET_COOKIE_BLOCK = {1, 1, (byte) 0xAC, 0x02, 2, 3, 'a', '=', '1', 3, 'b', '=', '2'};
+
+    @Mock
+    private RecordedTrafficRepository repository;
+
+    @Mock
+    private ResponseBodyBlobRepository blobRepository;
+
+    @Mock
+    private EntityManager entityManager;
+
+    @Mock
+    private HeaderNameDictionary headerNames;
+
+    private TrafficQueryService trafficQueryService;
+
+    @BeforeEach
+    void setUp() {
+        trafficQueryService = new TrafficQueryService(repository, blobRepository,
+                new ObjectMapper().findAndRegisterModules(), entityManager, headerNames, new SimpleMeterRegistry());
+    }
+
+    @Test
+    void getTrafficBySession_shouldSendOnlyBytesWhenNotDecoding() {
+        // Given
+        when(repository.findBySessionIdOrderByTimestampDesc("test-session"))
+                .thenReturn(List.of(recording(utf8("{\"id\": 1}"), utf8("{\"ok\": true}"), null)));
+
+        // When
+        TrafficRecordDto dto = trafficQueryService.getTrafficBySession("test-session", false).get(0);
+
+        // Then
+        assertArrayEquals(utf8("{\"id\": 1}"), dto.getRequestBody());
+        assertNull(dto.getRequestBodyText());
+        assertArrayEquals(utf8("{\"ok\": true}"), dto.getResponseBody());
+        assertNull(dto.getResponseBodyText());
+    }
+
+    @Test
+    void getTrafficBySession_shouldSendTextInPlaceOfBytesWhenDecoding() throws IOException {
+        // Given
+        when(repository.findBySessionIdOrderByTimestampDesc("test-session"))
+                .thenReturn(List.of(recording(utf8("{\"id\": 1}"), gzip(utf8("{\"ok\": true}")), "gzip")));
+
+        // When
+        TrafficRecordDto dto = trafficQueryService.getTrafficBySession("test-session", true).get(0);
+
+        // Then
+        assertEquals("{\"id\": 1}", dto.getRequestBodyText());
+        assertNull(dto.getRequestBody());
+        assertEquals("{\"ok\": true}", dto.getResponseBodyText());
+        assertNull(dto.getResponseBody());
+        assertNull(dto.getResponseBodyEncoding());
+    }
+
+    @Test
+    void getTrafficBySession_shouldKeepBytesOfBinaryAndOversizedBodies() throws IOException {
+        // Given
+        byte[] binary = {(byte) 0x89, 'P', 'N', 'G', 0, (byte) 0xFF};
+        byte[] oversized = gzip(new byte[TrafficQueryService.MAX_DISPLAY_SIZE + 1]);
+        when(repository.findBySessionIdOrderByTimestampDesc("test-session"))
+                .thenReturn(List.of(recording(binary, oversized, "gzip")));
+
+        // When
+        TrafficRecordDto dto = trafficQueryService.getTrafficBySession("test-session", true).get(0);
+
+        // Then
+        assertArrayEquals(binary, dto.getRequestBody());
+        assertNull(dto.getRequestBodyText());
+        assertArrayEquals(oversized, dto.getResponseBody());
+        assertEquals("gzip", dto.getResponseBodyEncoding());
+        assertNull(dto.getResponseBodyText());
+    }
+
+    @Test
+    void getTrafficBySession_shouldFallBackToJsonHeadersWhenBlockCannotBeDecoded() {
+        // Given
+        RecordedTraffic recording = recording(null, null, null);
+        recording.setResponseHeaderBlock(SET_COOKIE_BLOCK);
+        recording.setResponseHeaders("{\"Set-Cookie\": [\"a=1\", \"b=2\"]}");
+        when(headerNames.nameOf(300)).thenThrow(new IllegalArgumentException("Unknown header name id 300"));
+        when(repository.findBySessionIdOrderByTimestampDesc("test-session")).thenReturn(List.of(recording));
+
+        // When
+        TrafficRecordDto dto = trafficQueryService.getTrafficBySession("test-session", false).get(0);
+
+        // Then
+        assertEquals(Map.of("Set-Cookie", List.of("a=1", "b=2")), dto.getResponseHeaders());
+    }
+
+    @Test
+    void getTrafficBySession_shouldFailRatherThanDropHeadersOfUndecodableBlock() {
+        // Given
+        RecordedTraffic recording = recording(null, null, null);
+        recording.setResponseHeaderBlock(SET_COOKIE_BLOCK);
+        when(headerNames.nameOf(300)).thenThrow(new IllegalArgumentException("Unknown header name id 300"));
+        when(repository.findBySessionIdOrderByTimestampDesc("test-session")).thenReturn(List.of(recording));
+
+        // When & Then
+        IllegalStateException thrown = assertThrows(IllegalStateException.class,
+                () -> trafficQueryService.getTrafficBySession("test-session", false));
+        assertTrue(thrown.getMessage().contains("traffic record 1"));
+    }
+
+    private static RecordedTraffic recording(byte[] requestBody, byte[] responseBody, String responseBodyEncoding) {
+        return RecordedTraffic.builder()
+                .id(1L)
+                .sessionId("test-session")
+                .method("POST")
+                .path("/api/items")
+                .requestBody(requestBody)
+                .statusCode(200)
+                .responseBody(responseBody)
+                .responseBodyEncoding(responseBodyEncoding)
+                .build();
+    }
+
+    private static byte[] utf8(String text) {
+        return text.getBytes(StandardCharsets.UTF_8);
+    }
+
+    private static byte[] gzip(byte[] body) throws IOException {
+        ByteArrayOutputStream encoded = new ByteArrayOutputStream();
+        try (GZIPOutputStream out = new GZIPOutputStream(encoded)) {
+            out.write(body);
+        }
+        return encoded.toByteArray();
+    }
+}
@@ -0,0 +1,21 @@
+package com.echo.proxy.config;
+
+/**
+ * Enum representing how RECORD mode compresses response bodies the upstream sent uncompressed.
+ */
+public enum BodyCodec {
+    /**
+     * None: Store uncompressed bodies as they are
+     */
+    NONE,
+
+    /**
+     * Gzip: Compress with gzip before publishing
+     */
+    GZIP,
+
+    /**
+     * Deflate: Compress with zlib deflate before publishing
+     */
+    DEFLATE
+}
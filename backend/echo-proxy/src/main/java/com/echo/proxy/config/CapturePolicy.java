@@ -0,0 +1,21 @@
+package com.echo.proxy.config;
+
+/**
+ * Enum representing what RECORD mode does with a body larger than the in-memory capture limit.
+ */
+public enum CapturePolicy {
+    /**
+     * Truncate: Keep the first bytes up to the limit
+     */
+    TRUNCATE,
+
+    /**
+     * Skip: Record no body, only its size
+     */
+    SKIP,
+
+    /**
+     * Spill: Continue capturing into a temporary file, up to the spill limit
+     */
+    SPILL
+}
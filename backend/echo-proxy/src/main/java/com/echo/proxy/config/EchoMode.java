@@ -12,5 +12,11 @@ public enum EchoMode {
     /**
      * Replay mode: Proxy returns recorded responses instead of forwarding requests
      */
-    REPLAY
+    REPLAY,
+
+    /**
+     * Read-through mode: Proxy returns recorded responses where it has them,
+     * and forwards and records requests it has no recording for
+     */
+    REPLAY_OR_RECORD
 }
\ No newline at end of file
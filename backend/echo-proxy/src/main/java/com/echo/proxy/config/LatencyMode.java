@@ -0,0 +1,21 @@
+package com.echo.proxy.config;
+
+/**
+ * Enum representing how REPLAY mode paces recorded responses.
+ */
+public enum LatencyMode {
+    /**
+     * None: Answer as fast as possible
+     */
+    NONE,
+
+    /**
+     * Recorded: Delay each response by the upstream duration recorded with it
+     */
+    RECORDED,
+
+    /**
+     * Distribution: Delay each response by a duration drawn from all recordings of its path
+     */
+    DISTRIBUTION
+}
@@ -0,0 +1,31 @@
+package com.echo.proxy.config;
+
+import com.echo.proxy.model.MatchingRules;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+
+/**
+ * Compiles the configured request-matching rules once at startup.
+ */
+@Slf4j
+@Configuration
+public class MatchingConfiguration {
+
+    /**
+     * Creates the compiled matching rules shared by all replay indexes.
+     *
+     * @param proxyConfiguration Proxy configuration
+     * @return MatchingRules instance
+     */
+    @Bean
+    public MatchingRules matchingRules(ProxyConfiguration proxyConfiguration) {
+        ProxyConfiguration.Matching matching = proxyConfiguration.getMatching();
+        log.info("Compiling matching rules: sortQueryParams={}, ignoredQueryParams={}, pathTemplates={}",
+                matching.isSortQueryParams(), matching.getIgnoredQueryParams(), matching.getPathTemplates());
+        return MatchingRules.compile(
+                matching.isSortQueryParams(),
+                matching.getIgnoredQueryParams(),
+                matching.getPathTemplates());
+    }
+}
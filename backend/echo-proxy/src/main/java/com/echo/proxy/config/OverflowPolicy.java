@@ -0,0 +1,21 @@
+package com.echo.proxy.config;
+
+/**
+ * Enum representing what RECORD mode does with a traffic record when the publish queue is full.
+ */
+public enum OverflowPolicy {
+    /**
+     * Drop oldest: Evict the oldest queued record to make room
+     */
+    DROP_OLDEST,
+
+    /**
+     * Drop newest: Discard the record that did not fit
+     */
+    DROP_NEWEST,
+
+    /**
+     * Block: Wait up to the block timeout for room, then discard the record
+     */
+    BLOCK
+}
@@ -1,12 +1,24 @@
 package com.echo.proxy.config;
 
+import lombok.AccessLevel;
 import lombok.Getter;
 import lombok.Setter;
+import lombok.Value;
+import lombok.With;
 import org.springframework.boot.context.properties.ConfigurationProperties;
 import org.springframework.context.annotation.Configuration;
 
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicReference;
+import java.util.function.UnaryOperator;
+
 /**
  * Configuration properties for Echo Proxy.
+ * The mode, session ID and target URL that apply to requests without
+ * per-request overrides are held in one immutable {@link Snapshot}, replaced
+ * atomically on every change, so request threads read them without locking.
  */
 @Getter
 @Setter
@@ -15,22 +27,757 @@ import org.springframework.context.annotation.Configuration;
 public class ProxyConfiguration {
 
     /**
-     * Operating mode: RECORD or REPLAY
+     * Default operating mode, session ID and target URL
      */
-    private EchoMode mode = EchoMode.RECORD;
+    @Getter(AccessLevel.NONE)
+    @Setter(AccessLevel.NONE)
+    private final AtomicReference<Snapshot> snapshot =
+            new AtomicReference<>(new Snapshot(EchoMode.RECORD, "default-session", null));
 
     /**
-     * Session ID for grouping recorded traffic
+     * Per-request session and mode selection
      */
-    private String sessionId = "default-session";
+    private final SessionRouting sessionRouting = new SessionRouting();
 
     /**
-     * Target service URL for proxying in RECORD mode
+     * Named upstream routes loaded at startup; requests matching none go to the target URL
      */
-    private String targetUrl;
+    private List<Route> routes = new ArrayList<>();
 
     /**
      * Echo API base URL for fetching recorded responses in REPLAY mode
      */
     private String echoApiUrl = "http://localhost:8082";
-}
\ No newline at end of file
+
+    /**
+     * HTTP client used for proxy-to-echo-api calls
+     */
+    private final EchoApiClient echoApiClient = new EchoApiClient();
+
+    /**
+     * In-process cache for replay lookups
+     */
+    private final ReplayCache replayCache = new ReplayCache();
+
+    /**
+     * Whole-session preloading into an in-memory replay index
+     */
+    private final Preload preload = new Preload();
+
+    /**
+     * Local session archive to replay from instead of Echo API
+     */
+    private final Archive archive = new Archive();
+
+    /**
+     * Rules for matching requests against preloaded recordings
+     */
+    private final Matching matching = new Matching();
+
+    /**
+     * Sequenced replay of keys that were recorded several times
+     */
+    private final Sequencing sequencing = new Sequencing();
+
+    /**
+     * Pacing of replayed responses
+     */
+    private final Latency latency = new Latency();
+
+    /**
+     * Recordings made in REPLAY_OR_RECORD mode, kept for immediate replay
+     */
+    private final ReadThrough readThrough = new ReadThrough();
+
+    /**
+     * Which requests RECORD mode records
+     */
+    private final Recording recording = new Recording();
+
+    /**
+     * Size limits for bodies captured in RECORD mode
+     */
+    private final Capture capture = new Capture();
+
+    /**
+     * Hand-off of recorded traffic to the publisher thread
+     */
+    private final Publishing publishing = new Publishing();
+
+    /**
+     * Local disk spool for recorded traffic the broker cannot take
+     */
+    private final Spool spool = new Spool();
+
+    /**
+     * Content encoding of recorded response bodies
+     */
+    private final Compression compression = new Compression();
+
+    /**
+     * Returns the current defaults as one consistent snapshot.
+     *
+     * @return Current snapshot
+     */
+    public Snapshot snapshot() {
+        return snapshot.get();
+    }
+
+    /**
+     * Atomically replaces the defaults.
+     *
+     * @param update Function from the current snapshot to the new one
+     * @return The snapshot that was replaced
+     */
+    public Snapshot update(UnaryOperator<Snapshot> update) {
+        return snapshot.getAndUpdate(update);
+    }
+
+    /**
+     * Default operating mode: RECORD, REPLAY or REPLAY_OR_RECORD
+     */
+    public EchoMode getMode() {
+        return snapshot.get().getMode();
+    }
+
+    public void setMode(EchoMode mode) {
+        update(current -> current.withMode(mode));
+    }
+
+    /**
+     * Default session ID for grouping recorded traffic
+     */
+    public String getSessionId() {
+        return snapshot.get().getSessionId();
+    }
+
+    public void setSessionId(String sessionId) {
+        update(current -> current.withSessionId(sessionId));
+    }
+
+    /**
+     * Target service URL for proxying in RECORD mode
+     */
+    public String getTargetUrl() {
+        return snapshot.get().getTargetUrl();
+    }
+
+    public void setTargetUrl(String targetUrl) {
+        update(current -> current.withTargetUrl(targetUrl));
+    }
+
+    /**
+     * Immutable defaults for requests that select no session or mode of their own.
+     */
+    @Value
+    @With
+    public static class Snapshot {
+
+        EchoMode mode;
+        String sessionId;
+        String targetUrl;
+    }
+
+    /**
+     * Settings for selecting the session and mode per request, so parallel
+     * test suites can share one proxy.
+     */
+    @Getter
+    @Setter
+    public static class SessionRouting {
+
+        /**
+         * Whether requests may select their own session and mode
+         */
+        private boolean enabled = true;
+
+        /**
+         * Request header naming the session
+         */
+        private String sessionHeader = "X-Echo-Session";
+
+        /**
+         * Request header naming the mode
+         */
+        private String modeHeader = "X-Echo-Mode";
+
+        /**
+         * Path prefix of the form {prefix}/{mode}/{sessionId}/..., stripped before proxying;
+         * blank disables path selection
+         */
+        private String pathPrefix = "/_echo";
+    }
+
+    /**
+     * A named upstream route as configured.
+     */
+    @Getter
+    @Setter
+    public static class Route {
+
+        /**
+         * Route name, unique within the proxy
+         */
+        private String name;
+
+        /**
+         * Host the route is bound to; unset for any host
+         */
+        private String host;
+
+        /**
+         * Path prefix, matched on whole segments
+         */
+        private String pathPrefix = "/";
+
+        /**
+         * Target service URL
+         */
+        private String targetUrl;
+
+        /**
+         * Suffix appended to the session ID; defaults to the route name
+         */
+        private String sessionNamespace;
+
+        /**
+         * Mode of the route; unset for the default mode
+         */
+        private EchoMode mode;
+
+        /**
+         * Whether the path prefix is removed before forwarding
+         */
+        private boolean stripPrefix;
+    }
+
+    /**
+     * Connection pool, protocol and timeout settings for the Echo API client.
+     */
+    @Getter
+    @Setter
+    public static class EchoApiClient {
+
+        /**
+         * Maximum number of pooled connections to Echo API
+         */
+        private int maxConnections = 200;
+
+        /**
+         * Maximum number of requests waiting for a pooled connection
+         */
+        private int pendingAcquireMaxCount = 2000;
+
+        /**
+         * How long a request may wait for a pooled connection
+         */
+        private Duration pendingAcquireTimeout = Duration.ofSeconds(5);
+
+        /**
+         * Idle time after which a pooled connection is closed
+         */
+        private Duration maxIdleTime = Duration.ofSeconds(30);
+
+        /**
+         * Interval of the background task evicting idle connections
+         */
+        private Duration evictionInterval = Duration.ofSeconds(30);
+
+        /**
+         * TCP connect timeout
+         */
+        private Duration connectTimeout = Duration.ofSeconds(2);
+
+        /**
+         * Maximum time to wait for response data from Echo API
+         */
+        private Duration responseTimeout = Duration.ofSeconds(5);
+
+        /**
+         * Whether to talk HTTP/2 over cleartext (h2c) to Echo API, falling back to HTTP/1.1
+         */
+        private boolean h2c = false;
+
+        /**
+         * Largest single response or streamed record accepted from Echo API, in bytes
+         */
+        private int maxInMemorySize = 16 * 1024 * 1024;
+    }
+
+    /**
+     * Settings for the in-process replay response cache.
+     */
+    @Getter
+    @Setter
+    public static class ReplayCache {
+
+        /**
+         * Whether replay lookups are cached in the proxy JVM
+         */
+        private boolean enabled = true;
+
+        /**
+         * Upper bound on the cached response payload, in bytes
+         */
+        private long maximumWeight = 64L * 1024 * 1024;
+
+        /**
+         * How long a cached lookup result stays valid after it was loaded
+         */
+        private Duration expireAfterWrite = Duration.ofMinutes(5);
+    }
+
+    /**
+     * Settings for REPLAY_OR_RECORD mode.
+     */
+    @Getter
+    @Setter
+    public static class ReadThrough {
+
+        /**
+         * Upper bound on the payload of recordings held for immediate replay, in bytes
+         */
+        private long maximumWeight = 64L * 1024 * 1024;
+
+        /**
+         * Longest a repeated request waits for a recording whose body was not held in
+         * memory to be folded into the session index before it is forwarded again
+         */
+        private Duration pendingTimeout = Duration.ofSeconds(5);
+    }
+
+    /**
+     * Settings for preloading whole sessions into the in-memory replay index.
+     */
+    @Getter
+    @Setter
+    public static class Preload {
+
+        /**
+         * Whether sessions are bulk-loaded when REPLAY mode is entered
+         */
+        private boolean enabled = true;
+
+        /**
+         * How long a loaded session index is kept without lookups; archived sessions are kept for good
+         */
+        private Duration idleTimeout = Duration.ofMinutes(30);
+
+        /**
+         * Most session indexes loaded from Echo API kept at once; beyond it the least used are dropped
+         */
+        private int maxSessions = 32;
+
+        /**
+         * Shortest time between loads a session's lookups start on their own, and how long
+         * a failed load is remembered before lookups retry it; explicit preloads are not held back
+         */
+        private Duration reloadBackoff = Duration.ofMinutes(1);
+    }
+
+    /**
+     * Settings for replaying a session from a local archive file.
+     */
+    @Getter
+    @Setter
+    public static class Archive {
+
+        /**
+         * Path of a session archive exported by Echo API, mapped at startup when set.
+         * The archived session becomes the current session.
+         */
+        private String path;
+    }
+
+    /**
+     * Request-matching rules applied by the in-memory replay index.
+     */
+    @Getter
+    @Setter
+    public static class Matching {
+
+        /**
+         * Whether query parameters match regardless of their order
+         */
+        private boolean sortQueryParams = true;
+
+        /**
+         * Query parameters ignored when matching, such as cache busters or timestamps
+         */
+        private List<String> ignoredQueryParams = new ArrayList<>();
+
+        /**
+         * Path templates such as /users/{id}; paths matching a template match each other
+         */
+        private List<String> pathTemplates = new ArrayList<>();
+    }
+
+    /**
+     * Settings for sequenced replay, where the Nth call for a key returns its Nth recording.
+     * They can be changed at runtime, so they are held in one immutable {@link Settings}
+     * replaced atomically, like the {@link Snapshot} of defaults.
+     */
+    public static class Sequencing {
+
+        private final AtomicReference<Settings> settings =
+                new AtomicReference<>(new Settings(false, SequencePolicy.STICK));
+
+        /**
+         * Returns the current settings as one consistent value.
+         *
+         * @return Current settings
+         */
+        public Settings settings() {
+            return settings.get();
+        }
+
+        /**
+         * Atomically replaces the settings.
+         *
+         * @param update Function from the current settings to the new ones
+         * @return The settings that were replaced
+         */
+        public Settings update(UnaryOperator<Settings> update) {
+            return settings.getAndUpdate(update);
+        }
+
+        /**
+         * Whether successive calls step through recordings in recorded order
+         * instead of always returning the most recent one
+         */
+        public boolean isEnabled() {
+            return settings.get().isEnabled();
+        }
+
+        public void setEnabled(boolean enabled) {
+            update(current -> current.withEnabled(enabled));
+        }
+
+        /**
+         * What to return once every recording of a key has been served
+         */
+        public SequencePolicy getPolicy() {
+            return settings.get().getPolicy();
+        }
+
+        public void setPolicy(SequencePolicy policy) {
+            update(current -> current.withPolicy(policy));
+        }
+
+        /**
+         * Immutable sequenced replay settings.
+         */
+        @Value
+        @With
+        public static class Settings {
+
+            boolean enabled;
+            SequencePolicy policy;
+        }
+    }
+
+    /**
+     * Settings for replaying responses with their recorded upstream timing,
+     * held in one immutable {@link Settings} replaced atomically.
+     */
+    public static class Latency {
+
+        private final AtomicReference<Settings> settings =
+                new AtomicReference<>(new Settings(LatencyMode.NONE, 1.0, Duration.ofSeconds(30)));
+
+        /**
+         * Returns the current settings as one consistent value.
+         *
+         * @return Current settings
+         */
+        public Settings settings() {
+            return settings.get();
+        }
+
+        /**
+         * Atomically replaces the settings.
+         *
+         * @param update Function from the current settings to the new ones
+         * @return The settings that were replaced
+         */
+        public Settings update(UnaryOperator<Settings> update) {
+            return settings.getAndUpdate(update);
+        }
+
+        /**
+         * How replayed responses are delayed
+         */
+        public LatencyMode getMode() {
+            return settings.get().getMode();
+        }
+
+        public void setMode(LatencyMode mode) {
+            update(current -> current.withMode(mode));
+        }
+
+        /**
+         * Factor applied to every delay, e.g. 0.5 to replay twice as fast as recorded
+         */
+        public double getScale() {
+            return settings.get().getScale();
+        }
+
+        public void setScale(double scale) {
+            update(current -> current.withScale(scale));
+        }
+
+        /**
+         * Upper bound for a single delay
+         */
+        public Duration getMaxDelay() {
+            return settings.get().getMaxDelay();
+        }
+
+        public void setMaxDelay(Duration maxDelay) {
+            update(current -> current.withMaxDelay(maxDelay));
+        }
+
+        /**
+         * Immutable replay latency settings.
+         */
+        @Value
+        @With
+        public static class Settings {
+
+            LatencyMode mode;
+            double scale;
+            Duration maxDelay;
+        }
+    }
+
+    /**
+     * Rules selecting the traffic RECORD mode records; everything else is proxied untouched.
+     */
+    @Getter
+    @Setter
+    public static class Recording {
+
+        /**
+         * Path patterns such as /api/** that are recorded; every path when empty
+         */
+        private List<String> includePaths = new ArrayList<>();
+
+        /**
+         * Path patterns that are never recorded, even when they match an include pattern
+         */
+        private List<String> excludePaths = new ArrayList<>();
+
+        /**
+         * HTTP methods that are recorded; every method when empty
+         */
+        private List<String> methods = new ArrayList<>();
+
+        /**
+         * Response statuses that are recorded, as codes (404), classes (5xx) or ranges (400-499);
+         * every status when empty
+         */
+        private List<String> statusCodes = new ArrayList<>();
+
+        /**
+         * Fraction of matching requests that are recorded, from 0.0 to 1.0
+         */
+        private double sampleRate = 1.0;
+
+        /**
+         * Recordings per second allowed for each method and canonical path; unlimited when 0
+         */
+        private double rateLimit = 0;
+
+        /**
+         * Recordings a single method and path may make back to back before the rate limit applies
+         */
+        private int rateLimitBurst = 1;
+
+        /**
+         * Method and path keys tracked by the rate limiter; beyond it, the least used keys are evicted
+         */
+        private int maxRateLimitedKeys = 10_000;
+    }
+
+    /**
+     * Limits on how much of each request and response body RECORD mode keeps.
+     */
+    @Getter
+    @Setter
+    public static class Capture {
+
+        /**
+         * Bytes of a single body held in memory before the body's policy applies; also the
+         * largest request body REPLAY_OR_RECORD mode buffers to look up, larger ones are forwarded
+         */
+        private int maxInMemorySize = 1024 * 1024;
+
+        /**
+         * Bytes of a single body written to a spill file before it is truncated
+         */
+        private long maxSpillSize = 64L * 1024 * 1024;
+
+        /**
+         * Bytes of a spilled body published with its record; longer bodies are
+         * truncated when they are read back, so a message never inlines a whole spill file
+         */
+        private int maxPublishedSize = 8 * 1024 * 1024;
+
+        /**
+         * Directory for spill files; the system temporary directory when unset
+         */
+        private String spillDirectory;
+
+        /**
+         * Spilled bytes waiting for the spill writer thread across all bodies; a body
+         * that would go over it is truncated at what was already handed over
+         */
+        private long maxPendingSpillSize = 32L * 1024 * 1024;
+
+        /**
+         * Policy for bodies whose content type matches no content type policy
+         */
+        private CapturePolicy defaultPolicy = CapturePolicy.TRUNCATE;
+
+        /**
+         * Policies by content type, e.g. application/json or image/*; the first match wins
+         */
+        private List<ContentTypePolicy> contentTypePolicies = new ArrayList<>();
+    }
+
+    /**
+     * Settings for the bounded queue between proxied exchanges and the RabbitMQ publisher.
+     */
+    @Getter
+    @Setter
+    public static class Publishing {
+
+        /**
+         * Traffic records waiting to be published before the overflow policy applies
+         */
+        private int queueCapacity = 10_000;
+
+        /**
+         * Approximate size of queued records, spilled bodies included, before the overflow
+         * policy applies, in bytes; a single larger record is still queued when the queue is empty
+         */
+        private long queueMaxBytes = 256L * 1024 * 1024;
+
+        /**
+         * What to do with a record when the queue is full
+         */
+        private OverflowPolicy overflowPolicy = OverflowPolicy.DROP_OLDEST;
+
+        /**
+         * Most records published in one message; 1 publishes every record on its own
+         */
+        private int batchMaxRecords = 100;
+
+        /**
+         * Approximate payload size at which a batch is published before it is full, in bytes
+         */
+        private long batchMaxBytes = 1024 * 1024;
+
+        /**
+         * Longest time the first record of a batch waits for more records
+         */
+        private Duration linger = Duration.ofMillis(20);
+
+        /**
+         * Longest time the BLOCK policy holds up the recording thread
+         */
+        private Duration blockTimeout = Duration.ofMillis(50);
+
+        /**
+         * How long shutdown waits for queued records to be published
+         */
+        private Duration shutdownTimeout = Duration.ofSeconds(10);
+    }
+
+    /**
+     * Settings for the write-ahead spool that keeps recorded traffic on local disk
+     * while RabbitMQ is unavailable or slower than the proxied traffic.
+     */
+    @Getter
+    @Setter
+    public static class Spool {
+
+        /**
+         * Whether records that cannot be published are spooled instead of dropped
+         */
+        private boolean enabled = true;
+
+        /**
+         * Directory for segment files; echo-spool in the system temporary directory when unset
+         */
+        private String directory;
+
+        /**
+         * Size at which the segment being written is closed and a new one started, in bytes
+         */
+        private long segmentSize = 64L * 1024 * 1024;
+
+        /**
+         * Upper bound on all segment files together; records beyond it are dropped, in bytes
+         */
+        private long maxSize = 1024L * 1024 * 1024;
+
+        /**
+         * Longest time appended records stay unsynced; appends within it share one fsync
+         */
+        private Duration fsyncInterval = Duration.ofMillis(200);
+
+        /**
+         * How often spooled records are replayed to RabbitMQ
+         */
+        private Duration replayInterval = Duration.ofSeconds(5);
+
+        /**
+         * Fill level of the publish queue, as a fraction of its capacity, above which
+         * batches are spooled instead of waiting on the broker
+         */
+        private double highWatermark = 0.8;
+    }
+
+    /**
+     * Settings for keeping recorded response bodies compressed.
+     */
+    @Getter
+    @Setter
+    public static class Compression {
+
+        /**
+         * Whether the client's Accept-Encoding is forwarded so the upstream may compress,
+         * with the encoded body recorded as it was sent
+         */
+        private boolean keepUpstreamEncoding = true;
+
+        /**
+         * Codec applied to response bodies the upstream sent uncompressed
+         */
+        private BodyCodec codec = BodyCodec.GZIP;
+
+        /**
+         * Uncompressed bodies smaller than this many bytes are stored as they are
+         */
+        private int minSize = 1024;
+    }
+
+    /**
+     * Capture policy for one content type pattern.
+     */
+    @Getter
+    @Setter
+    public static class ContentTypePolicy {
+
+        /**
+         * Media type pattern, wildcards allowed
+         */
+        private String contentType;
+
+        /**
+         * Policy for matching bodies
+         */
+        private CapturePolicy policy;
+    }
+}
@@ -1,16 +1,21 @@
 package com.echo.proxy.config;
 
+import com.echo.proxy.model.TrafficBatch;
+import com.echo.proxy.model.TrafficRecord;
 import com.fasterxml.jackson.databind.ObjectMapper;
 import com.fasterxml.jackson.databind.SerializationFeature;
 import com.fasterxml.jackson.datatype.jsr310.JavaTimeModule;
 import org.springframework.amqp.core.Queue;
 import org.springframework.amqp.rabbit.connection.ConnectionFactory;
 import org.springframework.amqp.rabbit.core.RabbitTemplate;
+import org.springframework.amqp.support.converter.DefaultJackson2JavaTypeMapper;
 import org.springframework.amqp.support.converter.Jackson2JsonMessageConverter;
 import org.springframework.amqp.support.converter.MessageConverter;
 import org.springframework.context.annotation.Bean;
 import org.springframework.context.annotation.Configuration;
 
+import java.util.Map;
+
 /**
  * RabbitMQ configuration for publishing recorded traffic.
  */
@@ -19,6 +24,13 @@ public class RabbitMQConfiguration {
 
     public static final String TRAFFIC_QUEUE = "traffic.recorded";
 
+    /**
+     * Type IDs written to the __TypeId__ header, shared with ingestor-service
+     */
+    public static final Map<String, Class<?>> MESSAGE_TYPES = Map.of(
+            "trafficRecord", TrafficRecord.class,
+            "trafficBatch", TrafficBatch.class);
+
     /**
      * Creates the traffic recording queue.
      *
@@ -30,7 +42,9 @@ public class RabbitMQConfiguration {
     }
 
     /**
-     * Configures JSON message converter for RabbitMQ.
+     * Configures JSON message converter for RabbitMQ. Messages are typed by
+     * short IDs rather than class names, so the consumer can tell single
+     * records from batches without sharing classes with the proxy.
      *
      * @return MessageConverter instance
      */
@@ -39,7 +53,11 @@ public class RabbitMQConfiguration {
         ObjectMapper objectMapper = new ObjectMapper();
         objectMapper.registerModule(new JavaTimeModule());
         objectMapper.disable(SerializationFeature.WRITE_DATES_AS_TIMESTAMPS);
-        return new Jackson2JsonMessageConverter(objectMapper);
+        DefaultJackson2JavaTypeMapper typeMapper = new DefaultJackson2JavaTypeMapper();
+        typeMapper.setIdClassMapping(MESSAGE_TYPES);
+        Jackson2JsonMessageConverter converter = new Jackson2JsonMessageConverter(objectMapper);
+        converter.setJavaTypeMapper(typeMapper);
+        return converter;
     }
 
     /**
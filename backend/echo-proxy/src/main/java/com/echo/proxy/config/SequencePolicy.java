@@ -0,0 +1,16 @@
+package com.echo.proxy.config;
+
+/**
+ * Enum representing what sequenced replay returns once every recording of a key has been served.
+ */
+public enum SequencePolicy {
+    /**
+     * Wrap: Start again from the first recording
+     */
+    WRAP,
+
+    /**
+     * Stick: Keep returning the last recording
+     */
+    STICK
+}
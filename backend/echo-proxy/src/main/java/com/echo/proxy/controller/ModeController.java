@@ -1,14 +1,23 @@
 package com.echo.proxy.controller;
 
 import com.echo.proxy.config.EchoMode;
+import com.echo.proxy.config.LatencyMode;
 import com.echo.proxy.config.ProxyConfiguration;
+import com.echo.proxy.config.SequencePolicy;
+import com.echo.proxy.model.EchoRoute;
+import com.echo.proxy.service.RecordingOverlay;
+import com.echo.proxy.service.ReplayIndexService;
+import com.echo.proxy.service.RouteRegistry;
+import com.echo.proxy.service.SequenceCursors;
 import lombok.RequiredArgsConstructor;
 import lombok.extern.slf4j.Slf4j;
 import org.springframework.http.ResponseEntity;
 import org.springframework.web.bind.annotation.*;
 
 import java.util.HashMap;
+import java.util.List;
 import java.util.Map;
+import java.util.function.UnaryOperator;
 
 /**
  * REST controller for managing Echo Proxy mode (RECORD/REPLAY)
@@ -20,21 +29,26 @@ import java.util.Map;
 public class ModeController {
 
     private final ProxyConfiguration proxyConfiguration;
+    private final ReplayIndexService replayIndexService;
+    private final SequenceCursors sequenceCursors;
+    private final RouteRegistry routeRegistry;
+    private final RecordingOverlay recordingOverlay;
 
     /**
      * Get current proxy mode and configuration
      */
     @GetMapping
     public ResponseEntity<Map<String, String>> getMode() {
+        ProxyConfiguration.Snapshot snapshot = proxyConfiguration.snapshot();
         Map<String, String> response = new HashMap<>();
-        response.put("mode", proxyConfiguration.getMode().name());
-        response.put("sessionId", proxyConfiguration.getSessionId());
-        response.put("targetUrl", proxyConfiguration.getTargetUrl());
+        response.put("mode", snapshot.getMode().name());
+        response.put("sessionId", snapshot.getSessionId());
+        response.put("targetUrl", snapshot.getTargetUrl());
         return ResponseEntity.ok(response);
     }
 
     /**
-     * Switch proxy mode
+     * Switch the default proxy mode, used by requests that select none
      */
     @PostMapping
     public ResponseEntity<Map<String, String>> switchMode(@RequestBody Map<String, String> request) {
@@ -46,17 +60,21 @@ public class ModeController {
 
         try {
             EchoMode mode = EchoMode.valueOf(newMode.toUpperCase());
-            proxyConfiguration.setMode(mode);
+            ProxyConfiguration.Snapshot previous = proxyConfiguration.update(current -> current.withMode(mode));
 
             log.info("Switched mode to: {}", mode);
 
+            if (mode == EchoMode.REPLAY || mode == EchoMode.REPLAY_OR_RECORD) {
+                replayIndexService.preload(previous.getSessionId());
+            }
+
             Map<String, String> response = new HashMap<>();
             response.put("mode", mode.name());
             response.put("message", "Mode switched successfully");
             return ResponseEntity.ok(response);
         } catch (IllegalArgumentException e) {
             return ResponseEntity.badRequest()
-                    .body(Map.of("error", "Invalid mode. Must be RECORD or REPLAY"));
+                    .body(Map.of("error", "Invalid mode. Must be RECORD, REPLAY or REPLAY_OR_RECORD"));
         }
     }
 
@@ -96,6 +114,61 @@ public class ModeController {
         return ResponseEntity.ok(response);
     }
 
+    /**
+     * List the named upstream routes
+     */
+    @GetMapping("/routes")
+    public ResponseEntity<List<Map<String, String>>> getRoutes() {
+        return ResponseEntity.ok(routeRegistry.routes().stream().map(this::routeSettings).toList());
+    }
+
+    /**
+     * Add or replace a named upstream route at runtime
+     */
+    @PutMapping("/routes/{name}")
+    public ResponseEntity<Map<String, String>> putRoute(@PathVariable String name,
+                                                        @RequestBody Map<String, String> request) {
+        EchoRoute route;
+        try {
+            String mode = request.get("mode");
+            route = EchoRoute.of(name, request.get("host"), request.get("pathPrefix"), request.get("targetUrl"),
+                    request.get("sessionNamespace"),
+                    mode != null && !mode.isBlank() ? EchoMode.valueOf(mode.toUpperCase()) : null,
+                    Boolean.parseBoolean(request.get("stripPrefix")));
+        } catch (IllegalArgumentException e) {
+            return ResponseEntity.badRequest().body(Map.of("error", "Invalid route: " + e.getMessage()));
+        }
+
+        routeRegistry.put(route);
+
+        Map<String, String> response = routeSettings(route);
+        response.put("message", "Route updated successfully");
+        return ResponseEntity.ok(response);
+    }
+
+    /**
+     * Remove a named upstream route at runtime
+     */
+    @DeleteMapping("/routes/{name}")
+    public ResponseEntity<Map<String, String>> deleteRoute(@PathVariable String name) {
+        if (!routeRegistry.remove(name)) {
+            return ResponseEntity.notFound().build();
+        }
+        return ResponseEntity.ok(Map.of("name", name, "message", "Route removed successfully"));
+    }
+
+    private Map<String, String> routeSettings(EchoRoute route) {
+        Map<String, String> response = new HashMap<>();
+        response.put("name", route.getName());
+        response.put("host", route.getHost());
+        response.put("pathPrefix", route.getPathPrefix());
+        response.put("targetUrl", route.getTargetUri().toString());
+        response.put("sessionNamespace", route.getSessionNamespace());
+        response.put("mode", route.getMode() != null ? route.getMode().name() : null);
+        response.put("stripPrefix", String.valueOf(route.isStripPrefix()));
+        return response;
+    }
+
     /**
      * Get current session ID
      */
@@ -107,7 +180,7 @@ public class ModeController {
     }
 
     /**
-     * Update session ID at runtime
+     * Update the default session ID at runtime
      */
     @PostMapping("/session")
     public ResponseEntity<Map<String, String>> updateSessionId(@RequestBody Map<String, String> request) {
@@ -117,12 +190,133 @@ public class ModeController {
             return ResponseEntity.badRequest().body(Map.of("error", "Session ID is required"));
         }
 
-        proxyConfiguration.setSessionId(newSessionId);
+        ProxyConfiguration.Snapshot previous = proxyConfiguration.update(current -> current.withSessionId(newSessionId));
+        String previousSessionId = previous.getSessionId();
         log.info("Updated session ID to: {}", newSessionId);
 
+        if (!newSessionId.equals(previousSessionId)) {
+            replayIndexService.evict(previousSessionId);
+            sequenceCursors.reset(previousSessionId);
+            recordingOverlay.invalidateSession(previousSessionId);
+            if (previous.getMode() == EchoMode.REPLAY || previous.getMode() == EchoMode.REPLAY_OR_RECORD) {
+                replayIndexService.preload(newSessionId);
+            }
+        }
+
         Map<String, String> response = new HashMap<>();
         response.put("sessionId", newSessionId);
         response.put("message", "Session ID updated successfully");
         return ResponseEntity.ok(response);
     }
+
+    /**
+     * Get sequenced replay settings
+     */
+    @GetMapping("/sequence")
+    public ResponseEntity<Map<String, String>> getSequencing() {
+        ProxyConfiguration.Sequencing.Settings sequencing = proxyConfiguration.getSequencing().settings();
+        Map<String, String> response = new HashMap<>();
+        response.put("enabled", String.valueOf(sequencing.isEnabled()));
+        response.put("policy", sequencing.getPolicy().name());
+        return ResponseEntity.ok(response);
+    }
+
+    /**
+     * Update sequenced replay settings at runtime
+     */
+    @PostMapping("/sequence")
+    public ResponseEntity<Map<String, String>> updateSequencing(@RequestBody Map<String, String> request) {
+        String enabled = request.get("enabled");
+        String policy = request.get("policy");
+
+        SequencePolicy newPolicy;
+        try {
+            newPolicy = policy != null ? SequencePolicy.valueOf(policy.toUpperCase()) : null;
+        } catch (IllegalArgumentException e) {
+            return ResponseEntity.badRequest()
+                    .body(Map.of("error", "Invalid policy. Must be WRAP or STICK"));
+        }
+        UnaryOperator<ProxyConfiguration.Sequencing.Settings> change = current -> current
+                .withPolicy(newPolicy != null ? newPolicy : current.getPolicy())
+                .withEnabled(enabled != null ? Boolean.parseBoolean(enabled) : current.isEnabled());
+        ProxyConfiguration.Sequencing.Settings sequencing =
+                change.apply(proxyConfiguration.getSequencing().update(change));
+        log.info("Updated sequencing: enabled={}, policy={}", sequencing.isEnabled(), sequencing.getPolicy());
+
+        Map<String, String> response = new HashMap<>();
+        response.put("enabled", String.valueOf(sequencing.isEnabled()));
+        response.put("policy", sequencing.getPolicy().name());
+        response.put("message", "Sequencing updated successfully");
+        return ResponseEntity.ok(response);
+    }
+
+    /**
+     * Rewind sequenced replay to the first recording of every key.
+     * Resets the given session, or the current session when none is given.
+     */
+    @PostMapping("/sequence/reset")
+    public ResponseEntity<Map<String, String>> resetSequence(@RequestBody(required = false) Map<String, String> request) {
+        String sessionId = request != null && request.get("sessionId") != null
+                ? request.get("sessionId")
+                : proxyConfiguration.getSessionId();
+
+        int reset = sequenceCursors.reset(sessionId);
+        log.info("Reset {} sequence cursors for session {}", reset, sessionId);
+
+        Map<String, String> response = new HashMap<>();
+        response.put("sessionId", sessionId);
+        response.put("cursors", String.valueOf(reset));
+        response.put("message", "Sequence reset successfully");
+        return ResponseEntity.ok(response);
+    }
+
+    /**
+     * Get replay latency settings
+     */
+    @GetMapping("/latency")
+    public ResponseEntity<Map<String, String>> getLatency() {
+        return ResponseEntity.ok(latencySettings(proxyConfiguration.getLatency().settings()));
+    }
+
+    /**
+     * Update replay latency settings at runtime
+     */
+    @PostMapping("/latency")
+    public ResponseEntity<Map<String, String>> updateLatency(@RequestBody Map<String, String> request) {
+        String mode = request.get("mode");
+        String scale = request.get("scale");
+
+        LatencyMode newMode;
+        Double newScale;
+        try {
+            newMode = mode != null ? LatencyMode.valueOf(mode.toUpperCase()) : null;
+            newScale = scale != null ? Double.parseDouble(scale) : null;
+        } catch (IllegalArgumentException e) {
+            return ResponseEntity.badRequest()
+                    .body(Map.of("error", "Invalid latency settings. Mode must be NONE, RECORDED or DISTRIBUTION "
+                            + "and scale a non-negative number"));
+        }
+        if (newScale != null && (newScale < 0 || Double.isNaN(newScale))) {
+            return ResponseEntity.badRequest().body(Map.of("error", "Scale must be a non-negative number"));
+        }
+
+        // Mode and scale change together, so a replayed response never sees one without the other
+        UnaryOperator<ProxyConfiguration.Latency.Settings> change = current -> current
+                .withMode(newMode != null ? newMode : current.getMode())
+                .withScale(newScale != null ? newScale : current.getScale());
+        ProxyConfiguration.Latency.Settings latency = change.apply(proxyConfiguration.getLatency().update(change));
+        log.info("Updated replay latency: mode={}, scale={}", latency.getMode(), latency.getScale());
+
+        Map<String, String> response = latencySettings(latency);
+        response.put("message", "Latency updated successfully");
+        return ResponseEntity.ok(response);
+    }
+
+    private Map<String, String> latencySettings(ProxyConfiguration.Latency.Settings latency) {
+        Map<String, String> response = new HashMap<>();
+        response.put("mode", latency.getMode().name());
+        response.put("scale", String.valueOf(latency.getScale()));
+        response.put("maxDelay", latency.getMaxDelay().toString());
+        return response;
+    }
 }
@@ -0,0 +1,53 @@
+package com.echo.proxy.controller;
+
+import com.echo.proxy.service.ReplayCache;
+import lombok.RequiredArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.http.ResponseEntity;
+import org.springframework.web.bind.annotation.*;
+
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * REST controller for inspecting and invalidating the replay cache
+ */
+@Slf4j
+@RestController
+@RequestMapping("/api/replay/cache")
+@RequiredArgsConstructor
+public class ReplayCacheController {
+
+    private final ReplayCache replayCache;
+
+    /**
+     * Get cache size and hit/miss counters
+     */
+    @GetMapping
+    public ResponseEntity<Map<String, Object>> getStats() {
+        return ResponseEntity.ok(replayCache.stats());
+    }
+
+    /**
+     * Invalidate every cached lookup
+     */
+    @DeleteMapping
+    public ResponseEntity<Map<String, String>> invalidateAll() {
+        replayCache.invalidateAll();
+        return ResponseEntity.ok(Map.of("message", "Replay cache cleared"));
+    }
+
+    /**
+     * Invalidate cached lookups for a single session
+     */
+    @DeleteMapping("/sessions/{sessionId}")
+    public ResponseEntity<Map<String, Object>> invalidateSession(@PathVariable String sessionId) {
+        int removed = replayCache.invalidateSession(sessionId);
+
+        Map<String, Object> response = new HashMap<>();
+        response.put("sessionId", sessionId);
+        response.put("removed", removed);
+        response.put("message", "Replay cache invalidated for session");
+        return ResponseEntity.ok(response);
+    }
+}
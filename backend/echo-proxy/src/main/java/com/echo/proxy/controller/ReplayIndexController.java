@@ -0,0 +1,71 @@
+package com.echo.proxy.controller;
+
+import com.echo.proxy.config.ProxyConfiguration;
+import com.echo.proxy.service.ReplayIndexService;
+import lombok.RequiredArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.http.ResponseEntity;
+import org.springframework.web.bind.annotation.*;
+
+import java.io.IOException;
+import java.nio.file.InvalidPathException;
+import java.nio.file.Path;
+import java.util.Map;
+
+/**
+ * REST controller for the preloaded in-memory replay index
+ */
+@Slf4j
+@RestController
+@RequestMapping("/api/replay/index")
+@RequiredArgsConstructor
+public class ReplayIndexController {
+
+    private final ProxyConfiguration proxyConfiguration;
+    private final ReplayIndexService replayIndexService;
+
+    /**
+     * Get readiness of the current session's index
+     */
+    @GetMapping
+    public ResponseEntity<Map<String, Object>> getStatus() {
+        return ResponseEntity.ok(replayIndexService.status(proxyConfiguration.getSessionId()));
+    }
+
+    /**
+     * Get readiness of a specific session's index
+     */
+    @GetMapping("/sessions/{sessionId}")
+    public ResponseEntity<Map<String, Object>> getSessionStatus(@PathVariable String sessionId) {
+        return ResponseEntity.ok(replayIndexService.status(sessionId));
+    }
+
+    /**
+     * Reload a session's index from Echo API
+     */
+    @PostMapping("/sessions/{sessionId}")
+    public ResponseEntity<Map<String, Object>> reload(@PathVariable String sessionId) {
+        replayIndexService.preload(sessionId);
+        return ResponseEntity.accepted().body(replayIndexService.status(sessionId));
+    }
+
+    /**
+     * Serve a session from a local archive file exported by Echo API
+     */
+    @PostMapping("/archive")
+    public ResponseEntity<Map<String, Object>> loadArchive(@RequestBody Map<String, String> request) {
+        String path = request.get("path");
+
+        if (path == null || path.isBlank()) {
+            return ResponseEntity.badRequest().body(Map.of("error", "Archive path is required"));
+        }
+
+        try {
+            String sessionId = replayIndexService.loadArchive(Path.of(path)).getSessionId();
+            return ResponseEntity.ok(replayIndexService.status(sessionId));
+        } catch (IOException | InvalidPathException e) {
+            log.warn("Failed to load session archive {}: {}", path, e.getMessage());
+            return ResponseEntity.badRequest().body(Map.of("error", "Failed to load archive: " + e.getMessage()));
+        }
+    }
+}
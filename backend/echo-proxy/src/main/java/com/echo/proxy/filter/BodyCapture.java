@@ -0,0 +1,200 @@
+package com.echo.proxy.filter;
+
+import com.echo.proxy.config.CapturePolicy;
+import com.echo.proxy.service.SpillFileWriter;
+import org.springframework.core.io.buffer.DataBuffer;
+
+import java.nio.ByteBuffer;
+import java.nio.file.Path;
+import java.util.Arrays;
+
+/**
+ * Side copy of a body that is being streamed through the proxy.
+ * Each buffer is copied as it passes, without moving its read position, so the
+ * original can be forwarded immediately and released downstream as usual.
+ *
+ * <p>At most {@code maxInMemorySize} bytes are held in memory. Beyond that the
+ * body's {@link CapturePolicy} applies: the copy is truncated, dropped, or moved
+ * to a spill file that keeps growing up to {@code maxSpillSize} bytes. The full
+ * size of the body is counted either way. Spilled bytes are copied and handed
+ * to the {@link SpillFileWriter}, which does the file I/O off the event loop; a
+ * body the writer has no room for is truncated at what it already took.
+ *
+ * <p>Instances are not thread-safe; a body's signals are delivered serially.
+ * A spill file belongs to the capture until {@link #detachSpillFile()} hands it
+ * over; {@link #discard()} has it deleted otherwise.
+ */
+public final class BodyCapture {
+
+    private static final byte[] EMPTY = new byte[0];
+
+    /**
+     * Upper bound for sizing the buffer up front from a declared Content-Length
+     */
+    private static final int MAX_INITIAL_CAPACITY = 64 * 1024;
+
+    private final int maxInMemorySize;
+    private final CapturePolicy policy;
+    private final SpillFileWriter spillWriter;
+    private final long maxSpillSize;
+
+    private byte[] bytes;
+    private int size;
+    private long originalSize;
+    private boolean truncated;
+    private SpillFileWriter.Spill spill;
+    private long spilledSize;
+
+    BodyCapture(long expectedLength, int maxInMemorySize, CapturePolicy policy, SpillFileWriter spillWriter,
+                long maxSpillSize) {
+        this.maxInMemorySize = maxInMemorySize;
+        this.policy = policy;
+        this.spillWriter = spillWriter;
+        this.maxSpillSize = maxSpillSize;
+        this.bytes = expectedLength > 0
+                ? new byte[(int) Math.min(expectedLength, Math.min(maxInMemorySize, MAX_INITIAL_CAPACITY))]
+                : EMPTY;
+    }
+
+    /**
+     * Copies the readable bytes of a buffer, within the capture limits.
+     *
+     * @param dataBuffer Body chunk, left unchanged
+     */
+    public void append(DataBuffer dataBuffer) {
+        int length = dataBuffer.readableByteCount();
+        originalSize += length;
+        if (truncated || length == 0) {
+            return;
+        }
+
+        if (spill == null && size + (long) length > maxInMemorySize) {
+            overflow();
+        }
+        try (DataBuffer.ByteBufferIterator iterator = dataBuffer.readableByteBuffers()) {
+            while (iterator.hasNext() && !truncated) {
+                if (spill != null) {
+                    spill(iterator.next());
+                } else {
+                    copy(iterator.next());
+                }
+            }
+        }
+    }
+
+    /**
+     * Returns the full size of the body, including bytes that were not kept.
+     *
+     * @return Body length
+     */
+    public long getOriginalSize() {
+        return originalSize;
+    }
+
+    /**
+     * Returns whether part or all of the body was not kept.
+     *
+     * @return true if the captured body is incomplete
+     */
+    public boolean isTruncated() {
+        return truncated;
+    }
+
+    /**
+     * Returns the bytes held in memory, exactly as they passed through.
+     *
+     * @return Captured body, or null if the body was skipped or spilled to a file
+     */
+    public byte[] toByteArray() {
+        if (spill != null || (policy == CapturePolicy.SKIP && truncated)) {
+            return null;
+        }
+        return bytes.length == size ? bytes : Arrays.copyOf(bytes, size);
+    }
+
+    /**
+     * Has the spill file, if any, closed and transfers its ownership to the caller,
+     * who must let {@link SpillFileWriter#awaitClosed} return before reading it.
+     *
+     * @return Spill file holding the captured body, or null if the body was not spilled
+     */
+    public Path detachSpillFile() {
+        if (spill == null) {
+            return null;
+        }
+        Path file = spillWriter.close(spill);
+        spill = null;
+        return file;
+    }
+
+    /**
+     * Drops the capture, having a spill file that was not handed over deleted. Safe to call repeatedly.
+     */
+    public void discard() {
+        if (spill != null) {
+            spillWriter.discard(spill);
+            spill = null;
+        }
+        bytes = EMPTY;
+        size = 0;
+    }
+
+    private void overflow() {
+        switch (policy) {
+            case TRUNCATE -> {
+                // Keep what fits; copy() stops at the limit
+            }
+            case SKIP -> {
+                truncated = true;
+                bytes = EMPTY;
+                size = 0;
+            }
+            case SPILL -> openSpillFile();
+        }
+    }
+
+    private void copy(ByteBuffer byteBuffer) {
+        int length = byteBuffer.remaining();
+        int kept = Math.min(length, maxInMemorySize - size);
+        ensureCapacity(kept);
+        byteBuffer.get(bytes, size, kept);
+        size += kept;
+        if (kept < length) {
+            truncated = true;
+        }
+    }
+
+    private void openSpillFile() {
+        spill = spillWriter.create();
+        if (size > 0) {
+            spill(ByteBuffer.wrap(bytes, 0, size));
+        }
+        bytes = EMPTY;
+        size = 0;
+    }
+
+    private void spill(ByteBuffer byteBuffer) {
+        long room = maxSpillSize - spilledSize;
+        if (byteBuffer.remaining() > room) {
+            byteBuffer.limit(byteBuffer.position() + (int) room);
+            truncated = true;
+        }
+        if (!byteBuffer.hasRemaining()) {
+            return;
+        }
+        byte[] copy = new byte[byteBuffer.remaining()];
+        byteBuffer.get(copy);
+        if (spillWriter.write(spill, copy)) {
+            spilledSize += copy.length;
+        } else {
+            truncated = true;
+        }
+    }
+
+    private void ensureCapacity(int additional) {
+        int required = size + additional;
+        if (required > bytes.length) {
+            bytes = Arrays.copyOf(bytes, (int) Math.min(maxInMemorySize, Math.max((long) bytes.length * 2, required)));
+        }
+    }
+}
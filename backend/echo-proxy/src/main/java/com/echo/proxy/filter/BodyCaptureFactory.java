@@ -0,0 +1,62 @@
+package com.echo.proxy.filter;
+
+import com.echo.proxy.config.CapturePolicy;
+import com.echo.proxy.config.ProxyConfiguration;
+import com.echo.proxy.service.SpillFileWriter;
+import org.springframework.http.MediaType;
+import org.springframework.stereotype.Component;
+
+import java.util.List;
+
+/**
+ * Creates body captures with the configured size limits, choosing the
+ * overflow policy from the body's content type. Content type patterns are
+ * parsed once at startup.
+ */
+@Component
+public class BodyCaptureFactory {
+
+    private final ProxyConfiguration.Capture capture;
+    private final SpillFileWriter spillWriter;
+    private final List<Rule> rules;
+
+    public BodyCaptureFactory(ProxyConfiguration proxyConfiguration, SpillFileWriter spillWriter) {
+        this.capture = proxyConfiguration.getCapture();
+        this.spillWriter = spillWriter;
+        this.rules = capture.getContentTypePolicies().stream()
+                .map(policy -> new Rule(MediaType.parseMediaType(policy.getContentType()), policy.getPolicy()))
+                .toList();
+    }
+
+    /**
+     * Creates a capture for one body.
+     *
+     * @param contentType Content type of the body (may be null)
+     * @param expectedLength Declared body length, or a negative value if unknown
+     * @return BodyCapture instance
+     */
+    public BodyCapture create(MediaType contentType, long expectedLength) {
+        return new BodyCapture(expectedLength, capture.getMaxInMemorySize(), policyFor(contentType),
+                spillWriter, capture.getMaxSpillSize());
+    }
+
+    /**
+     * Resolves the overflow policy for a content type; the first matching pattern wins.
+     *
+     * @param contentType Content type of the body (may be null)
+     * @return Capture policy
+     */
+    CapturePolicy policyFor(MediaType contentType) {
+        if (contentType != null) {
+            for (Rule rule : rules) {
+                if (rule.pattern.includes(contentType)) {
+                    return rule.policy;
+                }
+            }
+        }
+        return capture.getDefaultPolicy();
+    }
+
+    private record Rule(MediaType pattern, CapturePolicy policy) {
+    }
+}
@@ -2,9 +2,13 @@ package com.echo.proxy.filter;
 
 import com.echo.proxy.config.EchoMode;
 import com.echo.proxy.config.ProxyConfiguration;
+import com.echo.proxy.model.ContentCodings;
+import com.echo.proxy.model.EchoContext;
 import com.echo.proxy.model.TrafficRecord;
-import com.echo.proxy.service.TrafficPublisher;
-import lombok.RequiredArgsConstructor;
+import com.echo.proxy.service.RecordingOverlay;
+import com.echo.proxy.service.TrafficPublishQueue;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
 import lombok.extern.slf4j.Slf4j;
 import org.springframework.cloud.gateway.filter.GatewayFilterChain;
 import org.springframework.cloud.gateway.filter.GlobalFilter;
@@ -13,6 +17,7 @@ import org.springframework.core.io.buffer.DataBuffer;
 import org.springframework.core.io.buffer.DataBufferUtils;
 import org.springframework.http.HttpHeaders;
 import org.springframework.http.HttpMethod;
+import org.springframework.http.HttpStatusCode;
 import org.springframework.http.server.reactive.ServerHttpRequest;
 import org.springframework.http.server.reactive.ServerHttpRequestDecorator;
 import org.springframework.http.server.reactive.ServerHttpResponseDecorator;
@@ -21,80 +26,127 @@ import org.springframework.web.server.ServerWebExchange;
 import reactor.core.publisher.Flux;
 import reactor.core.publisher.Mono;
 
-import java.nio.charset.StandardCharsets;
 import java.time.Instant;
-import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
 import java.util.Map;
+import java.util.concurrent.TimeUnit;
 import java.util.concurrent.atomic.AtomicReference;
 
 /**
  * Global filter for recording HTTP traffic in RECORD mode.
- * Captures request/response pairs and publishes them to RabbitMQ.
+ * Captures request/response pairs and queues them for publishing to RabbitMQ.
+ * Bodies are teed: every buffer is forwarded as soon as it arrives while a
+ * copy accumulates on the side, and the record is assembled on completion.
+ * Captured bodies are bounded by the configured capture limits, and only
+ * exchanges selected by the recording rules are decorated at all. The mode
+ * and session are those resolved for the request by {@link SessionRoutingFilter}.
+ * In REPLAY_OR_RECORD mode only requests {@link ReplayModeFilter} found no
+ * recording for get this far, and their recordings are also held in the
+ * {@link RecordingOverlay} for immediate replay. The work recording adds on
+ * the event loop once a response completes is timed as {@code echo.record.capture}.
  */
 @Slf4j
 @Component
-@RequiredArgsConstructor
 public class RecordModeFilter implements GlobalFilter, Ordered {
 
     private final ProxyConfiguration proxyConfiguration;
-    private final TrafficPublisher trafficPublisher;
+    private final TrafficPublishQueue publishQueue;
+    private final BodyCaptureFactory bodyCaptureFactory;
+    private final RecordingRules recordingRules;
+    private final RecordingOverlay recordingOverlay;
+    private final Timer captureTimer;
+
+    public RecordModeFilter(ProxyConfiguration proxyConfiguration, TrafficPublishQueue publishQueue,
+                            BodyCaptureFactory bodyCaptureFactory, RecordingRules recordingRules,
+                            RecordingOverlay recordingOverlay, MeterRegistry meterRegistry) {
+        this.proxyConfiguration = proxyConfiguration;
+        this.publishQueue = publishQueue;
+        this.bodyCaptureFactory = bodyCaptureFactory;
+        this.recordingRules = recordingRules;
+        this.recordingOverlay = recordingOverlay;
+        this.captureTimer = Timer.builder("echo.record.capture")
+                .description("Time spent assembling a recorded exchange and handing it to the publisher queue")
+                .register(meterRegistry);
+    }
 
     @Override
     public Mono<Void> filter(ServerWebExchange exchange, GatewayFilterChain chain) {
-        if (proxyConfiguration.getMode() != EchoMode.RECORD) {
+        EchoContext context = SessionRoutingFilter.contextOf(exchange, proxyConfiguration);
+        if (context.getMode() != EchoMode.RECORD && context.getMode() != EchoMode.REPLAY_OR_RECORD) {
             return chain.filter(exchange);
         }
+        String sessionId = context.getSessionId();
+        boolean readThrough = context.getMode() == EchoMode.REPLAY_OR_RECORD;
 
+        long startNanos = System.nanoTime();
         ServerHttpRequest request = exchange.getRequest();
         String method = request.getMethod().name();
         String path = request.getPath().value();
+        if (!recordingRules.shouldRecord(method, path)) {
+            // Not recorded: proxied without decorating the exchange
+            return chain.filter(exchange);
+        }
         String queryParams = request.getURI().getQuery();
 
-        // Remove Accept-Encoding to prevent compressed responses from upstream
-        ServerHttpRequest modifiedRequest = exchange.getRequest().mutate()
-                .headers(headers -> headers.remove("Accept-Encoding"))
-                .build();
+        // Unless encoded bodies are kept, remove Accept-Encoding to prevent compressed responses from upstream
+        ServerHttpRequest modifiedRequest = proxyConfiguration.getCompression().isKeepUpstreamEncoding()
+                ? request
+                : request.mutate()
+                        .headers(headers -> headers.remove(HttpHeaders.ACCEPT_ENCODING))
+                        .build();
 
         // Capture request headers
-        Map<String, String> requestHeaders = convertHeaders(request.getHeaders());
+        Map<String, List<String>> requestHeaders = convertHeaders(request.getHeaders());
 
-        // AtomicReference to store request body
-        AtomicReference<String> cachedRequestBody = new AtomicReference<>("");
+        // AtomicReferences to store the request body capture and its hash
+        AtomicReference<BodyCapture> cachedRequestBody = new AtomicReference<>();
+        AtomicReference<String> cachedRequestBodyHash = new AtomicReference<>();
 
         // For methods with body (POST, PUT, PATCH), capture and cache the body
         if (hasBody(request.getMethod())) {
             ServerHttpRequestDecorator requestDecorator = new ServerHttpRequestDecorator(modifiedRequest) {
                 @Override
                 public Flux<DataBuffer> getBody() {
-                    return super.getBody().collectList().flatMapMany(dataBuffers -> {
-                        // Read and cache the request body
-                        StringBuilder requestBody = new StringBuilder();
-                        dataBuffers.forEach(dataBuffer -> {
-                            byte[] bytes = new byte[dataBuffer.readableByteCount()];
-                            dataBuffer.read(bytes);
-                            requestBody.append(new String(bytes, StandardCharsets.UTF_8));
-                            dataBuffer.readPosition(0); // Reset position for forwarding
-                        });
-                        cachedRequestBody.set(requestBody.toString());
-
-                        return Flux.fromIterable(dataBuffers);
-                    });
+                    // Forward each chunk upstream immediately, hashing and copying it on the way
+                    RequestBodyHasher hasher = RequestBodyHasher.forContentType(getHeaders().getContentType());
+                    BodyCapture capture = bodyCaptureFactory.create(
+                            getHeaders().getContentType(), getHeaders().getContentLength());
+                    BodyCapture previous = cachedRequestBody.getAndSet(capture);
+                    if (previous != null) {
+                        previous.discard();
+                    }
+                    return super.getBody()
+                            .doOnNext(dataBuffer -> {
+                                hasher.update(dataBuffer);
+                                capture.append(dataBuffer);
+                            })
+                            .doOnComplete(() -> cachedRequestBodyHash.set(hasher.hexDigest()));
                 }
             };
 
             // Decorate response to capture response body
             ServerHttpResponseDecorator responseDecorator = createResponseDecorator(
-                    exchange, method, path, queryParams, requestHeaders, cachedRequestBody
+                    exchange, sessionId, readThrough, method, path, queryParams, requestHeaders, cachedRequestBody,
+                    cachedRequestBodyHash, startNanos
             );
 
+            // A spill file not handed over to a published record is deleted once the exchange ends
             return chain.filter(exchange.mutate()
                     .request(requestDecorator)
                     .response(responseDecorator)
-                    .build());
+                    .build())
+                    .doFinally(signal -> {
+                        BodyCapture capture = cachedRequestBody.get();
+                        if (capture != null) {
+                            capture.discard();
+                        }
+                    });
         } else {
             // For GET/DELETE requests without body
             ServerHttpResponseDecorator responseDecorator = createResponseDecorator(
-                    exchange, method, path, queryParams, requestHeaders, cachedRequestBody
+                    exchange, sessionId, readThrough, method, path, queryParams, requestHeaders, cachedRequestBody,
+                    cachedRequestBodyHash, startNanos
             );
 
             return chain.filter(exchange.mutate()
@@ -110,88 +162,114 @@ public class RecordModeFilter implements GlobalFilter, Ordered {
 
     private ServerHttpResponseDecorator createResponseDecorator(
             ServerWebExchange exchange,
+            String sessionId,
+            boolean readThrough,
             String method,
             String path,
             String queryParams,
-            Map<String, String> requestHeaders,
-            AtomicReference<String> requestBody) {
+            Map<String, List<String>> requestHeaders,
+            AtomicReference<BodyCapture> requestBody,
+            AtomicReference<String> requestBodyHash,
+            long startNanos) {
 
         return new ServerHttpResponseDecorator(exchange.getResponse()) {
             @Override
             public Mono<Void> writeWith(org.reactivestreams.Publisher<? extends DataBuffer> body) {
-                Flux<DataBuffer> flux = Flux.from(body);
-                return super.writeWith(flux.collectList().flatMapMany(dataBuffers -> {
-                    // Capture response body
-                    StringBuilder responseBody = new StringBuilder();
-                    dataBuffers.forEach(dataBuffer -> {
-                        byte[] bytes = new byte[dataBuffer.readableByteCount()];
-                        dataBuffer.read(bytes);
-                        dataBuffer.readPosition(0); // Reset read position
-                        responseBody.append(new String(bytes, StandardCharsets.UTF_8));
-                    });
+                // The upstream status line and headers have arrived once the body is handed over
+                long firstByteNanos = System.nanoTime();
+                HttpStatusCode statusCode = getDelegate().getStatusCode();
+                if (statusCode == null || !recordingRules.shouldRecordStatus(statusCode.value())) {
+                    return super.writeWith(body);
+                }
+                HttpHeaders responseHeaders = getDelegate().getHeaders();
+                BodyCapture capture = bodyCaptureFactory.create(
+                        responseHeaders.getContentType(), responseHeaders.getContentLength());
+                Flux<DataBuffer> tee = Flux.<DataBuffer>from(body)
+                        .doOnNext(capture::append)
+                        .doOnComplete(() -> {
+                            long completedNanos = System.nanoTime();
+                            BodyCapture requestCapture = requestBody.get();
 
-                    // Build traffic record
-                    TrafficRecord trafficRecord = TrafficRecord.builder()
-                            .sessionId(proxyConfiguration.getSessionId())
-                            .method(method)
-                            .path(path)
-                            .queryParams(queryParams)
-                            .requestHeaders(requestHeaders)
-                            .requestBody(requestBody.get())
-                            .statusCode(getDelegate().getStatusCode().value())
-                            .responseHeaders(convertResponseHeaders(getDelegate().getHeaders()))
-                            .responseBody(responseBody.toString())
-                            .timestamp(Instant.now())
-                            .build();
-
-                    // Publish to RabbitMQ asynchronously
-                    try {
-                        trafficPublisher.publishTraffic(trafficRecord);
-                    } catch (Exception e) {
-                        log.error("Failed to publish traffic: {}", e.getMessage());
-                    }
+                            // Build traffic record
+                            TrafficRecord trafficRecord = TrafficRecord.builder()
+                                    .sessionId(sessionId)
+                                    .method(method)
+                                    .path(path)
+                                    .queryParams(queryParams)
+                                    .requestHeaders(requestHeaders)
+                                    .requestBody(requestCapture != null ? requestCapture.toByteArray() : null)
+                                    .requestBodySpill(requestCapture != null ? requestCapture.detachSpillFile() : null)
+                                    .requestBodyTruncated(requestCapture != null && requestCapture.isTruncated())
+                                    .requestBodySize(requestCapture != null ? requestCapture.getOriginalSize() : 0L)
+                                    .requestBodyHash(requestBodyHash.get())
+                                    .statusCode(statusCode.value())
+                                    .responseHeaders(convertResponseHeaders(responseHeaders))
+                                    .responseBody(capture.toByteArray())
+                                    .responseBodyEncoding(ContentCodings.normalize(
+                                            responseHeaders.getFirst(HttpHeaders.CONTENT_ENCODING)))
+                                    .responseBodySpill(capture.detachSpillFile())
+                                    .responseBodyTruncated(capture.isTruncated())
+                                    .responseBodySize(capture.getOriginalSize())
+                                    .upstreamTtfbMs(TimeUnit.NANOSECONDS.toMillis(firstByteNanos - startNanos))
+                                    .upstreamDurationMs(TimeUnit.NANOSECONDS.toMillis(completedNanos - startNanos))
+                                    .timestamp(Instant.now())
+                                    .readThrough(readThrough)
+                                    .build();
 
-                    return Flux.fromIterable(dataBuffers);
-                }));
+                            // Replayable at once, before the publisher thread starts preparing the record
+                            if (readThrough) {
+                                recordingOverlay.add(trafficRecord);
+                            }
+
+                            // Hand off to the publisher thread; never blocks the event loop on the broker
+                            publishQueue.submit(trafficRecord);
+                            captureTimer.record(System.nanoTime() - completedNanos, TimeUnit.NANOSECONDS);
+                        })
+                        .doFinally(signal -> capture.discard());
+                return super.writeWith(tee);
             }
         };
     }
 
     /**
-     * Converts HttpHeaders to a simple Map for serialization.
+     * Converts HttpHeaders to a Map for serialization, keeping every value of
+     * repeated headers such as Set-Cookie.
      *
      * @param headers HttpHeaders object
-     * @return Map of header names to values (first value only)
+     * @return Map of header names to all their values
      */
-    private Map<String, String> convertHeaders(HttpHeaders headers) {
-        Map<String, String> map = new HashMap<>();
+    private Map<String, List<String>> convertHeaders(HttpHeaders headers) {
+        Map<String, List<String>> map = new LinkedHashMap<>();
         headers.forEach((key, values) -> {
             if (!values.isEmpty()) {
-                map.put(key, values.get(0));
+                map.put(key, List.copyOf(values));
             }
         });
         return map;
     }
 
     /**
-     * Converts response HttpHeaders to a simple Map, excluding encoding headers.
-     * This prevents storing compressed/encoded response bodies.
+     * Converts response HttpHeaders to a Map, excluding Content-Encoding,
+     * which is recorded separately with the body it applies to.
      *
      * @param headers HttpHeaders object
-     * @return Map of header names to values (first value only)
+     * @return Map of header names to all their values
      */
-    private Map<String, String> convertResponseHeaders(HttpHeaders headers) {
-        Map<String, String> map = new HashMap<>();
+    private Map<String, List<String>> convertResponseHeaders(HttpHeaders headers) {
+        Map<String, List<String>> map = new LinkedHashMap<>();
         headers.forEach((key, values) -> {
             if (!values.isEmpty() && !key.equalsIgnoreCase("Content-Encoding")) {
-                map.put(key, values.get(0));
+                map.put(key, List.copyOf(values));
             }
         });
         return map;
     }
 
+    /**
+     * Runs after {@link ReplayModeFilter}, which forwards only read-through misses.
+     */
     @Override
     public int getOrder() {
-        return Ordered.HIGHEST_PRECEDENCE;
+        return Ordered.HIGHEST_PRECEDENCE + 2;
     }
 }
@@ -0,0 +1,208 @@
+package com.echo.proxy.filter;
+
+import com.echo.proxy.config.ProxyConfiguration;
+import com.echo.proxy.model.MatchingRules;
+import com.github.benmanes.caffeine.cache.Cache;
+import com.github.benmanes.caffeine.cache.Caffeine;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.MeterRegistry;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.stereotype.Component;
+import org.springframework.util.AntPathMatcher;
+
+import java.time.Duration;
+import java.util.List;
+import java.util.Locale;
+import java.util.Set;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.function.DoubleSupplier;
+import java.util.function.LongSupplier;
+import java.util.stream.Collectors;
+
+/**
+ * Decides which exchanges RECORD mode records. Path patterns are Ant-style
+ * globs such as {@code /api/**}; methods and status ranges are parsed once
+ * at startup. Requests are checked in order of cost: method, excluded and
+ * included paths, sampling and finally the per-key rate limit, so a request
+ * only takes a rate limit token when it would otherwise be recorded. The
+ * status filter is applied once the upstream status is known, before the
+ * response body is captured.
+ * <p>
+ * Token buckets are held in a bounded cache. A bucket left idle long enough
+ * to refill its burst expires, since a new one would be identical; beyond
+ * the key limit, the least valuable keys are evicted rather than every
+ * bucket being reset.
+ */
+@Component
+public class RecordingRules {
+
+    private final ProxyConfiguration.Recording recording;
+    private final MatchingRules matchingRules;
+    private final Set<String> methods;
+    private final AntPathMatcher pathMatcher = new AntPathMatcher();
+    private final List<String> includePaths;
+    private final List<String> excludePaths;
+    private final List<StatusRange> statusRanges;
+    private final Cache<String, TokenBucket> buckets;
+    private final LongSupplier nanoClock;
+    private final DoubleSupplier random;
+    private final Counter filtered;
+    private final Counter sampledOut;
+    private final Counter rateLimited;
+    private final Counter statusFiltered;
+
+    @Autowired
+    public RecordingRules(ProxyConfiguration proxyConfiguration, MatchingRules matchingRules,
+                          MeterRegistry meterRegistry) {
+        this(proxyConfiguration, matchingRules, meterRegistry, System::nanoTime,
+                () -> ThreadLocalRandom.current().nextDouble());
+    }
+
+    RecordingRules(ProxyConfiguration proxyConfiguration, MatchingRules matchingRules, MeterRegistry meterRegistry,
+                   LongSupplier nanoClock, DoubleSupplier random) {
+        this.recording = proxyConfiguration.getRecording();
+        this.matchingRules = matchingRules;
+        this.methods = recording.getMethods().stream()
+                .map(method -> method.trim().toUpperCase(Locale.ROOT))
+                .collect(Collectors.toUnmodifiableSet());
+        this.includePaths = List.copyOf(recording.getIncludePaths());
+        this.excludePaths = List.copyOf(recording.getExcludePaths());
+        this.statusRanges = recording.getStatusCodes().stream().map(StatusRange::parse).toList();
+        this.nanoClock = nanoClock;
+        this.random = random;
+        this.buckets = Caffeine.newBuilder()
+                .maximumSize(recording.getMaxRateLimitedKeys())
+                .expireAfterAccess(refillTime(recording.getRateLimit(), recording.getRateLimitBurst()))
+                .ticker(nanoClock::getAsLong)
+                // Eviction bookkeeping is cheap, so it runs on the calling thread
+                .executor(Runnable::run)
+                .build();
+        this.filtered = skippedCounter(meterRegistry, "rule");
+        this.sampledOut = skippedCounter(meterRegistry, "sampling");
+        this.rateLimited = skippedCounter(meterRegistry, "rate_limit");
+        this.statusFiltered = skippedCounter(meterRegistry, "status");
+    }
+
+    /**
+     * Time an empty bucket takes to refill its burst, after which it is no different from a new one.
+     */
+    private static Duration refillTime(double ratePerSecond, int burst) {
+        return ratePerSecond > 0
+                ? Duration.ofNanos((long) Math.ceil(Math.max(burst, 1) * 1_000_000_000d / ratePerSecond))
+                : Duration.ofDays(1);
+    }
+
+    private static Counter skippedCounter(MeterRegistry meterRegistry, String reason) {
+        return Counter.builder("echo.record.skipped")
+                .description("Exchanges proxied in RECORD mode without being recorded")
+                .tag("reason", reason)
+                .register(meterRegistry);
+    }
+
+    /**
+     * Checks whether a request is recorded.
+     *
+     * @param method HTTP method
+     * @param path Request path
+     * @return true if the exchange should be captured
+     */
+    public boolean shouldRecord(String method, String path) {
+        if ((!methods.isEmpty() && !methods.contains(method))
+                || matchesAny(excludePaths, path)
+                || (!includePaths.isEmpty() && !matchesAny(includePaths, path))) {
+            filtered.increment();
+            return false;
+        }
+        if (recording.getSampleRate() < 1.0 && random.getAsDouble() >= recording.getSampleRate()) {
+            sampledOut.increment();
+            return false;
+        }
+        if (recording.getRateLimit() > 0 && !acquire(matchingRules.pathKey(method, path))) {
+            rateLimited.increment();
+            return false;
+        }
+        return true;
+    }
+
+    /**
+     * Checks whether a response with the given status is recorded.
+     *
+     * @param status Upstream status code
+     * @return true if the response should be captured and published
+     */
+    public boolean shouldRecordStatus(int status) {
+        if (statusRanges.isEmpty()) {
+            return true;
+        }
+        for (StatusRange range : statusRanges) {
+            if (range.contains(status)) {
+                return true;
+            }
+        }
+        statusFiltered.increment();
+        return false;
+    }
+
+    private boolean matchesAny(List<String> patterns, String path) {
+        for (String pattern : patterns) {
+            if (pathMatcher.match(pattern, path)) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    private boolean acquire(String key) {
+        return buckets.get(key, k -> new TokenBucket(recording.getRateLimitBurst(), nanoClock.getAsLong()))
+                .tryAcquire(recording.getRateLimit(), recording.getRateLimitBurst(), nanoClock.getAsLong());
+    }
+
+    /**
+     * Token bucket refilled continuously at the configured rate.
+     */
+    private static final class TokenBucket {
+
+        private double tokens;
+        private long refilledAt;
+
+        private TokenBucket(int burst, long now) {
+            this.tokens = burst;
+            this.refilledAt = now;
+        }
+
+        synchronized boolean tryAcquire(double ratePerSecond, int burst, long now) {
+            tokens = Math.min(burst, tokens + (now - refilledAt) * ratePerSecond / 1_000_000_000d);
+            refilledAt = now;
+            if (tokens < 1) {
+                return false;
+            }
+            tokens -= 1;
+            return true;
+        }
+    }
+
+    /**
+     * Inclusive status range parsed from 404, 5xx or 400-499.
+     */
+    private record StatusRange(int from, int to) {
+
+        static StatusRange parse(String spec) {
+            String value = spec.trim().toLowerCase(Locale.ROOT);
+            if (value.length() == 3 && value.endsWith("xx")) {
+                int hundreds = Integer.parseInt(value.substring(0, 1)) * 100;
+                return new StatusRange(hundreds, hundreds + 99);
+            }
+            int dash = value.indexOf('-');
+            if (dash > 0) {
+                return new StatusRange(Integer.parseInt(value.substring(0, dash).trim()),
+                        Integer.parseInt(value.substring(dash + 1).trim()));
+            }
+            int status = Integer.parseInt(value);
+            return new StatusRange(status, status);
+        }
+
+        boolean contains(int status) {
+            return status >= from && status <= to;
+        }
+    }
+}
@@ -2,39 +2,92 @@ package com.echo.proxy.filter;
 
 import com.echo.proxy.config.EchoMode;
 import com.echo.proxy.config.ProxyConfiguration;
-import com.echo.proxy.model.TrafficRecord;
+import com.echo.proxy.model.ContentCodings;
+import com.echo.proxy.model.EchoContext;
+import com.echo.proxy.model.ReplayResponse;
+import com.echo.proxy.service.LogSampler;
+import com.echo.proxy.service.ReplayLatency;
 import com.echo.proxy.service.ReplayService;
-import lombok.RequiredArgsConstructor;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.MeterRegistry;
 import lombok.extern.slf4j.Slf4j;
 import org.springframework.cloud.gateway.filter.GatewayFilterChain;
 import org.springframework.cloud.gateway.filter.GlobalFilter;
 import org.springframework.core.Ordered;
 import org.springframework.core.io.buffer.DataBuffer;
+import org.springframework.core.io.buffer.DataBufferUtils;
+import org.springframework.core.io.buffer.DefaultDataBufferFactory;
+import org.springframework.core.io.buffer.PooledDataBuffer;
+import org.springframework.http.HttpHeaders;
+import org.springframework.http.HttpMethod;
 import org.springframework.http.HttpStatus;
 import org.springframework.http.server.reactive.ServerHttpRequest;
+import org.springframework.http.server.reactive.ServerHttpRequestDecorator;
 import org.springframework.http.server.reactive.ServerHttpResponse;
 import org.springframework.stereotype.Component;
 import org.springframework.web.server.ServerWebExchange;
+import reactor.core.publisher.Flux;
 import reactor.core.publisher.Mono;
 
+import java.nio.ByteBuffer;
 import java.nio.charset.StandardCharsets;
+import java.time.Duration;
+import java.util.List;
 import java.util.Optional;
+import java.util.function.Function;
 
 /**
  * Global filter for replaying recorded HTTP traffic in REPLAY mode.
- * Instead of forwarding requests, it returns pre-recorded responses.
+ * Instead of forwarding requests, it returns pre-recorded responses of the
+ * session resolved for the request by {@link SessionRoutingFilter}.
+ * In REPLAY_OR_RECORD mode a request without a recording is forwarded
+ * instead, and recorded by {@link RecordModeFilter}, which runs after this filter.
+ * Outcomes are counted in {@code echo.replay.requests}; individual requests are
+ * only logged as a debug sample, taken per outcome so rare misses still show up.
  */
 @Slf4j
 @Component
-@RequiredArgsConstructor
 public class ReplayModeFilter implements GlobalFilter, Ordered {
 
+    private static final byte[] NOT_FOUND_BODY =
+            "{\"error\": \"No recorded response found for this request\"}".getBytes(StandardCharsets.UTF_8);
+    private static final byte[] EMPTY_BODY = new byte[0];
+
     private final ProxyConfiguration proxyConfiguration;
     private final ReplayService replayService;
+    private final ReplayLatency replayLatency;
+
+    private final Counter hits;
+    private final Counter forwarded;
+    private final Counter notFound;
+    private final LogSampler hitLog = new LogSampler();
+    private final LogSampler forwardedLog = new LogSampler();
+    private final LogSampler notFoundLog = new LogSampler();
+
+    public ReplayModeFilter(ProxyConfiguration proxyConfiguration, ReplayService replayService,
+                            ReplayLatency replayLatency, MeterRegistry meterRegistry) {
+        this.proxyConfiguration = proxyConfiguration;
+        this.replayService = replayService;
+        this.replayLatency = replayLatency;
+        this.hits = outcomeCounter(meterRegistry, "hit");
+        this.forwarded = outcomeCounter(meterRegistry, "forwarded");
+        this.notFound = outcomeCounter(meterRegistry, "not_found");
+    }
+
+    private static Counter outcomeCounter(MeterRegistry meterRegistry, String outcome) {
+        return Counter.builder("echo.replay.requests")
+                .description("Requests handled in REPLAY or REPLAY_OR_RECORD mode, by outcome")
+                .tag("outcome", outcome)
+                .register(meterRegistry);
+    }
 
     @Override
     public Mono<Void> filter(ServerWebExchange exchange, GatewayFilterChain chain) {
-        if (proxyConfiguration.getMode() != EchoMode.REPLAY) {
+        EchoContext context = SessionRoutingFilter.contextOf(exchange, proxyConfiguration);
+        if (context.getMode() == EchoMode.REPLAY_OR_RECORD) {
+            return readThrough(exchange, chain, context.getSessionId());
+        }
+        if (context.getMode() != EchoMode.REPLAY) {
             return chain.filter(exchange);
         }
 
@@ -42,63 +95,243 @@ public class ReplayModeFilter implements GlobalFilter, Ordered {
         String method = request.getMethod().name();
         String path = request.getPath().value();
         String queryParams = request.getURI().getQuery();
-        String sessionId = proxyConfiguration.getSessionId();
-
-        log.info("REPLAY mode: Looking for recorded response for {} {}", method, path);
+        String sessionId = context.getSessionId();
 
-        return replayService.findMatchingResponse(sessionId, method, path, queryParams)
+        return requestBodyHash(request)
+                .map(Optional::of)
+                .defaultIfEmpty(Optional.empty())
+                .flatMap(bodyHash -> replayService.findMatchingResponse(
+                        sessionId, method, path, queryParams, bodyHash.orElse(null)))
                 .map(Optional::of)
                 .defaultIfEmpty(Optional.empty())
                 .flatMap(optionalRecord -> {
                     if (optionalRecord.isPresent()) {
-                        log.info("Found matching response, returning recorded data");
-                        return writeResponse(exchange, optionalRecord.get());
+                        hits.increment();
+                        if (log.isDebugEnabled() && hitLog.sample()) {
+                            log.debug("Replaying recorded response for {} {}", method, path);
+                        }
+                        return replay(exchange, sessionId, method, path, optionalRecord.get());
                     } else {
-                        log.warn("No matching response found for {} {}", method, path);
+                        notFound.increment();
+                        if (log.isDebugEnabled() && notFoundLog.sample()) {
+                            log.debug("No matching response found for {} {}", method, path);
+                        }
                         return writeNotFoundResponse(exchange);
                     }
                 });
     }
 
+    /**
+     * Serves a recorded response if there is one, and otherwise forwards the
+     * request. The request body is buffered, since it is both hashed for the
+     * lookup and, on a miss, sent upstream. A body larger than the capture's
+     * in-memory limit is not looked up: it is forwarded as it arrives, with
+     * only the chunks read so far held back.
+     *
+     * @param exchange ServerWebExchange
+     * @param chain Gateway filter chain, which records forwarded requests
+     * @param sessionId Session ID
+     * @return Mono<Void>
+     */
+    private Mono<Void> readThrough(ServerWebExchange exchange, GatewayFilterChain chain, String sessionId) {
+        ServerHttpRequest request = exchange.getRequest();
+        if (!hasBody(request.getMethod())) {
+            return lookUpOrForward(exchange, chain, sessionId, EMPTY_BODY);
+        }
+        int maxBytes = proxyConfiguration.getCapture().getMaxInMemorySize();
+        if (request.getHeaders().getContentLength() > maxBytes) {
+            return forward(exchange, chain, request.getBody());
+        }
+
+        return bufferedBody(request, maxBytes)
+                .switchOnFirst((first, chunks) -> {
+                    List<DataBuffer> head = first.hasValue() ? first.get() : List.of();
+                    if (sizeOf(head) > maxBytes) {
+                        return forward(exchange, chain, chunks.flatMapIterable(Function.identity()));
+                    }
+                    // Within the limit, the first chunk list is the whole body
+                    return chunks.then(Mono.defer(() -> lookUpOrForward(exchange, chain, sessionId, toBytes(head))));
+                })
+                .doOnDiscard(PooledDataBuffer.class, DataBufferUtils::release)
+                .then();
+    }
+
+    private Mono<Void> lookUpOrForward(ServerWebExchange exchange, GatewayFilterChain chain, String sessionId,
+                                       byte[] body) {
+        ServerHttpRequest request = exchange.getRequest();
+        String method = request.getMethod().name();
+        String path = request.getPath().value();
+        String queryParams = request.getURI().getQuery();
+
+        String bodyHash = null;
+        if (body.length > 0) {
+            RequestBodyHasher hasher = RequestBodyHasher.forContentType(request.getHeaders().getContentType());
+            hasher.update(DefaultDataBufferFactory.sharedInstance.wrap(body));
+            bodyHash = hasher.hexDigest();
+        }
+        return replayService.findMatchingResponse(sessionId, method, path, queryParams, bodyHash)
+                .map(Optional::of)
+                .defaultIfEmpty(Optional.empty())
+                .flatMap(optionalRecord -> {
+                    if (optionalRecord.isPresent()) {
+                        hits.increment();
+                        if (log.isDebugEnabled() && hitLog.sample()) {
+                            log.debug("Read-through hit for {} {}", method, path);
+                        }
+                        return replay(exchange, sessionId, method, path, optionalRecord.get());
+                    }
+                    if (log.isDebugEnabled() && forwardedLog.sample()) {
+                        log.debug("Read-through miss for {} {}, forwarding", method, path);
+                    }
+                    return forward(exchange, chain, body.length == 0
+                            ? Flux.empty()
+                            : Flux.defer(() -> Flux.just(DefaultDataBufferFactory.sharedInstance.wrap(body))));
+                });
+    }
+
+    /**
+     * Forwards the request with a body that was already read, in whole or in part.
+     *
+     * @param exchange ServerWebExchange
+     * @param chain Gateway filter chain, which records forwarded requests
+     * @param body Request body to send upstream
+     * @return Mono<Void>
+     */
+    private Mono<Void> forward(ServerWebExchange exchange, GatewayFilterChain chain, Flux<DataBuffer> body) {
+        forwarded.increment();
+        ServerHttpRequest request = new ServerHttpRequestDecorator(exchange.getRequest()) {
+            @Override
+            public Flux<DataBuffer> getBody() {
+                return body;
+            }
+        };
+        return chain.filter(exchange.mutate().request(request).build());
+    }
+
+    /**
+     * Reads the request body into memory up to a limit. The chunks are emitted
+     * as one list once the body completes within the limit, or as soon as it
+     * goes over it; any later chunks follow one by one.
+     *
+     * @param request Incoming request
+     * @param maxBytes Most bytes of the body to hold in memory
+     * @return Flux of chunk lists, empty for an empty body
+     */
+    private Flux<List<DataBuffer>> bufferedBody(ServerHttpRequest request, int maxBytes) {
+        return Flux.defer(() -> {
+            long[] size = {0};
+            return request.getBody()
+                    .bufferUntil(dataBuffer -> (size[0] += dataBuffer.readableByteCount()) > maxBytes);
+        });
+    }
+
+    private static long sizeOf(List<DataBuffer> chunks) {
+        long size = 0;
+        for (DataBuffer chunk : chunks) {
+            size += chunk.readableByteCount();
+        }
+        return size;
+    }
+
+    private static byte[] toBytes(List<DataBuffer> chunks) {
+        byte[] body = new byte[(int) sizeOf(chunks)];
+        int offset = 0;
+        for (DataBuffer chunk : chunks) {
+            int length = chunk.readableByteCount();
+            chunk.read(body, offset, length);
+            offset += length;
+            DataBufferUtils.release(chunk);
+        }
+        return body;
+    }
+
+    private static boolean hasBody(HttpMethod method) {
+        return method == HttpMethod.POST || method == HttpMethod.PUT || method == HttpMethod.PATCH;
+    }
+
+    /**
+     * Writes a recorded response, delayed as the latency settings require.
+     */
+    private Mono<Void> replay(ServerWebExchange exchange, String sessionId, String method, String path,
+                              ReplayResponse replayResponse) {
+        Duration delay = replayLatency.delayFor(sessionId, method, path, replayResponse);
+        if (delay.isZero()) {
+            return writeResponse(exchange, replayResponse);
+        }
+        // Hold the response back on a timer instead of a thread
+        return Mono.delay(delay).then(Mono.defer(() -> writeResponse(exchange, replayResponse)));
+    }
+
+    /**
+     * Hashes the request body for body-aware matching. The body is consumed
+     * chunk by chunk and released, since it is never forwarded in REPLAY mode.
+     *
+     * @param request Incoming request
+     * @return Mono of the body hash, or empty for methods without a body or an empty body
+     */
+    private Mono<String> requestBodyHash(ServerHttpRequest request) {
+        if (!hasBody(request.getMethod())) {
+            return Mono.empty();
+        }
+        return request.getBody()
+                .reduce(RequestBodyHasher.forContentType(request.getHeaders().getContentType()), (hasher, dataBuffer) -> {
+                    hasher.update(dataBuffer);
+                    DataBufferUtils.release(dataBuffer);
+                    return hasher;
+                })
+                .mapNotNull(RequestBodyHasher::hexDigest);
+    }
+
     /**
      * Writes the recorded response back to the client.
+     * The response was prepared once when it was loaded, so a hit only copies
+     * the pre-filtered headers and wraps a view of the body. A compressed body
+     * is sent compressed when the client accepts its coding and decoded otherwise.
      *
      * @param exchange ServerWebExchange
-     * @param trafficRecord Recorded traffic data
+     * @param replayResponse Recorded response prepared for replay
      * @return Mono<Void>
      */
-    private Mono<Void> writeResponse(ServerWebExchange exchange, TrafficRecord trafficRecord) {
+    private Mono<Void> writeResponse(ServerWebExchange exchange, ReplayResponse replayResponse) {
         ServerHttpResponse response = exchange.getResponse();
 
-        // Set status code
-        response.setStatusCode(HttpStatus.valueOf(trafficRecord.getStatusCode()));
-
-        // Set response headers (excluding CORS, transfer, and encoding headers)
-        if (trafficRecord.getResponseHeaders() != null) {
-            trafficRecord.getResponseHeaders().forEach((key, value) -> {
-                // Skip headers that shouldn't be copied from recorded response
-                if (!key.equalsIgnoreCase("Transfer-Encoding")
-                    && !key.equalsIgnoreCase("Content-Length")
-                    && !key.equalsIgnoreCase("Content-Encoding")
-                    && !key.equalsIgnoreCase("Access-Control-Allow-Origin")
-                    && !key.equalsIgnoreCase("Access-Control-Allow-Credentials")
-                    && !key.equalsIgnoreCase("Access-Control-Allow-Methods")
-                    && !key.equalsIgnoreCase("Access-Control-Allow-Headers")
-                    && !key.equalsIgnoreCase("Access-Control-Expose-Headers")) {
-                    response.getHeaders().add(key, value);
-                }
-            });
-        }
+        response.setStatusCode(replayResponse.getStatus());
+        response.getHeaders().addAll(replayResponse.getHeaders());
 
-        // Write response body
-        byte[] bytes = trafficRecord.getResponseBody() != null
-                ? trafficRecord.getResponseBody().getBytes(StandardCharsets.UTF_8)
-                : new byte[0];
+        ByteBuffer body = replayResponse.getBody();
+        String contentEncoding = replayResponse.getContentEncoding();
+        if (contentEncoding != null) {
+            String acceptEncoding = exchange.getRequest().getHeaders().getFirst(HttpHeaders.ACCEPT_ENCODING);
+            ByteBuffer decoded = ContentCodings.accepts(acceptEncoding, contentEncoding)
+                    ? null
+                    : replayResponse.getDecodedBody();
+            if (decoded != null) {
+                body = decoded;
+            } else {
+                // Served as recorded, also when the coding cannot be removed here
+                response.getHeaders().set(HttpHeaders.CONTENT_ENCODING, contentEncoding);
+            }
+            if (!variesByAcceptEncoding(response.getHeaders())) {
+                response.getHeaders().add(HttpHeaders.VARY, HttpHeaders.ACCEPT_ENCODING);
+            }
+        }
 
-        DataBuffer buffer = response.bufferFactory().wrap(bytes);
+        DataBuffer buffer = response.bufferFactory().wrap(body);
         return response.writeWith(Mono.just(buffer));
     }
 
+    /**
+     * Checks whether the recorded Vary header already covers Accept-Encoding.
+     */
+    private static boolean variesByAcceptEncoding(HttpHeaders headers) {
+        for (String vary : headers.getVary()) {
+            if (vary.equals("*") || vary.equalsIgnoreCase(HttpHeaders.ACCEPT_ENCODING)) {
+                return true;
+            }
+        }
+        return false;
+    }
+
     /**
      * Writes a 404 Not Found response when no matching recording is found.
      *
@@ -110,15 +343,12 @@ public class ReplayModeFilter implements GlobalFilter, Ordered {
         response.setStatusCode(HttpStatus.NOT_FOUND);
         response.getHeaders().add("Content-Type", "application/json");
 
-        String errorMessage = "{\"error\": \"No recorded response found for this request\"}";
-        byte[] bytes = errorMessage.getBytes(StandardCharsets.UTF_8);
-
-        DataBuffer buffer = response.bufferFactory().wrap(bytes);
+        DataBuffer buffer = response.bufferFactory().wrap(NOT_FOUND_BODY);
         return response.writeWith(Mono.just(buffer));
     }
 
     @Override
     public int getOrder() {
-        return Ordered.HIGHEST_PRECEDENCE;
+        return Ordered.HIGHEST_PRECEDENCE + 1;
     }
 }
\ No newline at end of file
@@ -0,0 +1,115 @@
+package com.echo.proxy.filter;
+
+import org.springframework.core.io.buffer.DataBuffer;
+import org.springframework.http.MediaType;
+
+import java.nio.ByteBuffer;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.HexFormat;
+
+/**
+ * Computes a SHA-256 hash of a request body incrementally, one buffer at a time,
+ * so bodies never have to be held in full to be matched.
+ * JSON bodies are canonicalized on the fly by skipping insignificant whitespace
+ * outside string literals, so pretty-printed and compact forms hash alike.
+ * Nothing else is normalized: object keys, number forms and string escapes are
+ * hashed as sent, so {@code {"a":1,"b":2}} and {@code {"b":2,"a":1}} differ.
+ * Sorting keys would mean holding whole bodies and would change the hashes of
+ * existing recordings.
+ * Instances are not thread-safe and are used for a single body.
+ */
+public final class RequestBodyHasher {
+
+    private static final HexFormat HEX = HexFormat.of();
+
+    private final MessageDigest digest;
+    private final boolean json;
+    private final byte[] chunk = new byte[8192];
+    private long length;
+    private boolean inString;
+    private boolean escaped;
+
+    private RequestBodyHasher(boolean json) {
+        this.json = json;
+        try {
+            this.digest = MessageDigest.getInstance("SHA-256");
+        } catch (NoSuchAlgorithmException e) {
+            throw new IllegalStateException("SHA-256 is not available", e);
+        }
+    }
+
+    /**
+     * Creates a hasher for a body of the given content type.
+     *
+     * @param contentType Request content type (may be null)
+     * @return RequestBodyHasher instance
+     */
+    public static RequestBodyHasher forContentType(MediaType contentType) {
+        boolean json = contentType != null
+                && ("json".equals(contentType.getSubtype()) || contentType.getSubtype().endsWith("+json"));
+        return new RequestBodyHasher(json);
+    }
+
+    /**
+     * Feeds the readable bytes of a buffer into the hash without moving its read position.
+     *
+     * @param dataBuffer Body chunk
+     */
+    public void update(DataBuffer dataBuffer) {
+        try (DataBuffer.ByteBufferIterator iterator = dataBuffer.readableByteBuffers()) {
+            while (iterator.hasNext()) {
+                update(iterator.next());
+            }
+        }
+    }
+
+    private void update(ByteBuffer buffer) {
+        length += buffer.remaining();
+        if (!json) {
+            digest.update(buffer);
+            return;
+        }
+        while (buffer.hasRemaining()) {
+            int count = 0;
+            int available = Math.min(buffer.remaining(), chunk.length);
+            for (int i = 0; i < available; i++) {
+                byte b = buffer.get();
+                if (isSignificant(b)) {
+                    chunk[count++] = b;
+                }
+            }
+            digest.update(chunk, 0, count);
+        }
+    }
+
+    /**
+     * Tracks string literals so that only whitespace between JSON tokens is dropped.
+     */
+    private boolean isSignificant(byte b) {
+        if (inString) {
+            if (escaped) {
+                escaped = false;
+            } else if (b == '\\') {
+                escaped = true;
+            } else if (b == '"') {
+                inString = false;
+            }
+            return true;
+        }
+        if (b == '"') {
+            inString = true;
+            return true;
+        }
+        return b != ' ' && b != '\n' && b != '\r' && b != '\t';
+    }
+
+    /**
+     * Completes the hash.
+     *
+     * @return Lowercase hex SHA-256, or null if the body was empty
+     */
+    public String hexDigest() {
+        return length == 0 ? null : HEX.formatHex(digest.digest());
+    }
+}
@@ -0,0 +1,170 @@
+package com.echo.proxy.filter;
+
+import com.echo.proxy.config.EchoMode;
+import com.echo.proxy.config.ProxyConfiguration;
+import com.echo.proxy.model.EchoContext;
+import com.echo.proxy.model.EchoRoute;
+import com.echo.proxy.service.RouteRegistry;
+import lombok.RequiredArgsConstructor;
+import org.springframework.cloud.gateway.filter.GatewayFilterChain;
+import org.springframework.cloud.gateway.filter.GlobalFilter;
+import org.springframework.core.Ordered;
+import org.springframework.core.io.buffer.DataBuffer;
+import org.springframework.http.HttpHeaders;
+import org.springframework.http.HttpStatus;
+import org.springframework.http.server.reactive.ServerHttpRequest;
+import org.springframework.http.server.reactive.ServerHttpResponse;
+import org.springframework.stereotype.Component;
+import org.springframework.web.server.ServerWebExchange;
+import reactor.core.publisher.Mono;
+
+import java.net.InetSocketAddress;
+import java.nio.charset.StandardCharsets;
+
+/**
+ * Global filter that resolves the mode, session and route of each request
+ * before the RECORD and REPLAY filters run. A request selects its mode and
+ * session with the session and mode headers, or with a path of the form
+ * {prefix}/{mode}/{sessionId}/..., whose prefix is stripped before the request
+ * is proxied. The request is then matched against the named routes: a route
+ * supplies the mode unless the request selected one, and namespaces the
+ * session. Anything left falls back to the configured defaults. The result is
+ * stored as an {@link EchoContext} exchange attribute, and the selecting
+ * headers are not forwarded upstream.
+ */
+@Component
+@RequiredArgsConstructor
+public class SessionRoutingFilter implements GlobalFilter, Ordered {
+
+    /**
+     * Exchange attribute holding the request's {@link EchoContext}
+     */
+    public static final String ECHO_CONTEXT_ATTR = SessionRoutingFilter.class.getName() + ".echoContext";
+
+    private final ProxyConfiguration proxyConfiguration;
+    private final RouteRegistry routeRegistry;
+
+    /**
+     * Returns the context resolved for an exchange, or the configured
+     * defaults if none was resolved.
+     *
+     * @param exchange ServerWebExchange
+     * @param proxyConfiguration Proxy configuration holding the defaults
+     * @return EchoContext of the exchange
+     */
+    public static EchoContext contextOf(ServerWebExchange exchange, ProxyConfiguration proxyConfiguration) {
+        EchoContext context = exchange.getAttribute(ECHO_CONTEXT_ATTR);
+        if (context != null) {
+            return context;
+        }
+        ProxyConfiguration.Snapshot defaults = proxyConfiguration.snapshot();
+        return new EchoContext(defaults.getMode(), defaults.getSessionId(), null);
+    }
+
+    @Override
+    public Mono<Void> filter(ServerWebExchange exchange, GatewayFilterChain chain) {
+        ProxyConfiguration.SessionRouting routing = proxyConfiguration.getSessionRouting();
+        if (!routing.isEnabled()) {
+            String path = exchange.getRequest().getPath().pathWithinApplication().value();
+            exchange.getAttributes().put(ECHO_CONTEXT_ATTR, resolve(exchange.getRequest(), path, null, null));
+            return chain.filter(exchange);
+        }
+
+        ServerHttpRequest request = exchange.getRequest();
+        HttpHeaders headers = request.getHeaders();
+        String sessionId = headers.getFirst(routing.getSessionHeader());
+        String mode = headers.getFirst(routing.getModeHeader());
+        String strippedPath = null;
+
+        String prefix = routing.getPathPrefix();
+        String path = request.getPath().pathWithinApplication().value();
+        if (prefix != null && !prefix.isBlank() && path.startsWith(prefix + "/")) {
+            String[] segments = path.substring(prefix.length() + 1).split("/", 3);
+            if (segments.length < 2 || segments[0].isEmpty() || segments[1].isEmpty()) {
+                return writeBadRequest(exchange, "Expected a path of the form " + prefix + "/{mode}/{sessionId}/...");
+            }
+            mode = segments[0];
+            sessionId = segments[1];
+            strippedPath = segments.length == 3 ? "/" + segments[2] : "/";
+        }
+
+        EchoMode echoMode = null;
+        if (mode != null && !mode.isBlank()) {
+            echoMode = parseMode(mode);
+            if (echoMode == null) {
+                return writeBadRequest(exchange, "Invalid mode. Must be RECORD, REPLAY or REPLAY_OR_RECORD");
+            }
+        }
+        exchange.getAttributes().put(ECHO_CONTEXT_ATTR, resolve(request,
+                strippedPath != null ? strippedPath : path, echoMode, sessionId));
+
+        if (strippedPath == null
+                && !headers.containsKey(routing.getSessionHeader())
+                && !headers.containsKey(routing.getModeHeader())) {
+            return chain.filter(exchange);
+        }
+        ServerHttpRequest.Builder mutated = request.mutate().headers(forwarded -> {
+            forwarded.remove(routing.getSessionHeader());
+            forwarded.remove(routing.getModeHeader());
+        });
+        if (strippedPath != null) {
+            mutated.path(strippedPath);
+        }
+        return chain.filter(exchange.mutate().request(mutated.build()).build());
+    }
+
+    /**
+     * Combines the request's own selection with its route and the defaults.
+     *
+     * @param request Incoming request
+     * @param path Request path after any session prefix
+     * @param mode Mode selected by the request (may be null)
+     * @param sessionId Session selected by the request (may be null)
+     * @return EchoContext of the request
+     */
+    private EchoContext resolve(ServerHttpRequest request, String path, EchoMode mode, String sessionId) {
+        ProxyConfiguration.Snapshot defaults = proxyConfiguration.snapshot();
+        InetSocketAddress host = request.getHeaders().getHost();
+        EchoRoute route = routeRegistry.match(host != null ? host.getHostString() : null, path);
+
+        String baseSessionId = sessionId != null && !sessionId.isBlank() ? sessionId : defaults.getSessionId();
+        if (route == null) {
+            return new EchoContext(mode != null ? mode : defaults.getMode(), baseSessionId, null);
+        }
+        EchoMode routeMode = route.getMode() != null ? route.getMode() : defaults.getMode();
+        return new EchoContext(mode != null ? mode : routeMode, route.sessionIdFor(baseSessionId), route);
+    }
+
+    private static EchoMode parseMode(String mode) {
+        try {
+            return EchoMode.valueOf(mode.trim().toUpperCase());
+        } catch (IllegalArgumentException e) {
+            return null;
+        }
+    }
+
+    /**
+     * Writes a 400 Bad Request response for an invalid session or mode selection.
+     *
+     * @param exchange ServerWebExchange
+     * @param message Error message
+     * @return Mono<Void>
+     */
+    private Mono<Void> writeBadRequest(ServerWebExchange exchange, String message) {
+        ServerHttpResponse response = exchange.getResponse();
+        response.setStatusCode(HttpStatus.BAD_REQUEST);
+        response.getHeaders().add("Content-Type", "application/json");
+
+        byte[] body = ("{\"error\": \"" + message + "\"}").getBytes(StandardCharsets.UTF_8);
+        DataBuffer buffer = response.bufferFactory().wrap(body);
+        return response.writeWith(Mono.just(buffer));
+    }
+
+    /**
+     * Runs before the RECORD and REPLAY filters, which read the resolved context.
+     */
+    @Override
+    public int getOrder() {
+        return Ordered.HIGHEST_PRECEDENCE;
+    }
+}
@@ -0,0 +1,67 @@
+package com.echo.proxy.filter;
+
+import com.echo.proxy.config.ProxyConfiguration;
+import com.echo.proxy.model.EchoContext;
+import com.echo.proxy.model.EchoRoute;
+import lombok.RequiredArgsConstructor;
+import org.springframework.cloud.gateway.filter.GatewayFilterChain;
+import org.springframework.cloud.gateway.filter.GlobalFilter;
+import org.springframework.cloud.gateway.filter.RouteToRequestUrlFilter;
+import org.springframework.core.Ordered;
+import org.springframework.stereotype.Component;
+import org.springframework.web.server.ServerWebExchange;
+import org.springframework.web.util.UriComponentsBuilder;
+import reactor.core.publisher.Mono;
+
+import java.net.URI;
+
+import static org.springframework.cloud.gateway.support.ServerWebExchangeUtils.GATEWAY_REQUEST_URL_ATTR;
+
+/**
+ * Global filter that points a forwarded request at its upstream: the target
+ * of its named route, or the default target URL, which can be changed at
+ * runtime. Runs right after the gateway has derived the request URL from the
+ * catch-all gateway route, and replaces that URL.
+ */
+@Component
+@RequiredArgsConstructor
+public class UpstreamRoutingFilter implements GlobalFilter, Ordered {
+
+    private final ProxyConfiguration proxyConfiguration;
+
+    @Override
+    public Mono<Void> filter(ServerWebExchange exchange, GatewayFilterChain chain) {
+        URI requestUrl = exchange.getAttribute(GATEWAY_REQUEST_URL_ATTR);
+        if (requestUrl == null) {
+            return chain.filter(exchange);
+        }
+
+        EchoContext context = SessionRoutingFilter.contextOf(exchange, proxyConfiguration);
+        EchoRoute route = context.getRoute();
+        String rawPath = exchange.getRequest().getURI().getRawPath();
+        URI target;
+        if (route != null) {
+            target = route.getTargetUri();
+            rawPath = route.forwardedPath(rawPath);
+        } else {
+            String targetUrl = proxyConfiguration.getTargetUrl();
+            if (targetUrl == null || targetUrl.isBlank()) {
+                return chain.filter(exchange);
+            }
+            target = URI.create(targetUrl);
+        }
+
+        URI upstream = UriComponentsBuilder.fromUri(target)
+                .path(rawPath)
+                .replaceQuery(requestUrl.getRawQuery())
+                .build(true)
+                .toUri();
+        exchange.getAttributes().put(GATEWAY_REQUEST_URL_ATTR, upstream);
+        return chain.filter(exchange);
+    }
+
+    @Override
+    public int getOrder() {
+        return RouteToRequestUrlFilter.ROUTE_TO_URL_FILTER_ORDER + 1;
+    }
+}
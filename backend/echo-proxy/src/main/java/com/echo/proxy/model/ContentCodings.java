@@ -0,0 +1,131 @@
+package com.echo.proxy.model;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.io.UncheckedIOException;
+import java.util.Locale;
+import java.util.zip.DeflaterOutputStream;
+import java.util.zip.GZIPInputStream;
+import java.util.zip.GZIPOutputStream;
+import java.util.zip.InflaterInputStream;
+
+/**
+ * HTTP content codings understood by the proxy: gzip and deflate can be
+ * produced and removed here, any other coding is stored and replayed opaquely.
+ */
+public final class ContentCodings {
+
+    public static final String GZIP = "gzip";
+
+    public static final String DEFLATE = "deflate";
+
+    private static final String IDENTITY = "identity";
+
+    private ContentCodings() {
+    }
+
+    /**
+     * Normalizes a Content-Encoding header value.
+     *
+     * @param contentEncoding Header value (may be null)
+     * @return Lower-case coding list, or null when the body is not encoded
+     */
+    public static String normalize(String contentEncoding) {
+        if (contentEncoding == null) {
+            return null;
+        }
+        String coding = contentEncoding.trim().toLowerCase(Locale.ROOT);
+        return coding.isEmpty() || coding.equals(IDENTITY) ? null : coding;
+    }
+
+    /**
+     * Checks whether every coding applied to a body is acceptable to a client.
+     *
+     * @param acceptEncoding Accept-Encoding header value (may be null)
+     * @param contentEncoding Normalized coding list of the body
+     * @return true if the body may be sent as it is
+     */
+    public static boolean accepts(String acceptEncoding, String contentEncoding) {
+        if (acceptEncoding == null) {
+            return false;
+        }
+        for (String coding : contentEncoding.split(",")) {
+            if (!acceptsCoding(acceptEncoding, coding.trim())) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    private static boolean acceptsCoding(String acceptEncoding, String coding) {
+        boolean wildcard = false;
+        for (String entry : acceptEncoding.split(",")) {
+            String[] parts = entry.split(";");
+            String name = parts[0].trim().toLowerCase(Locale.ROOT);
+            boolean refused = false;
+            for (int i = 1; i < parts.length; i++) {
+                String parameter = parts[i].trim();
+                if (parameter.startsWith("q=") && isZero(parameter.substring(2))) {
+                    refused = true;
+                }
+            }
+            if (name.equals(coding)) {
+                return !refused;
+            }
+            if (name.equals("*")) {
+                wildcard = !refused;
+            }
+        }
+        return wildcard;
+    }
+
+    private static boolean isZero(String quality) {
+        try {
+            return Double.parseDouble(quality.trim()) == 0.0;
+        } catch (NumberFormatException e) {
+            return false;
+        }
+    }
+
+    /**
+     * Compresses a body.
+     *
+     * @param coding gzip or deflate
+     * @param body Uncompressed bytes
+     * @return Encoded bytes
+     */
+    public static byte[] encode(String coding, byte[] body) {
+        ByteArrayOutputStream encoded = new ByteArrayOutputStream(Math.max(64, body.length / 4));
+        try (OutputStream out = GZIP.equals(coding)
+                ? new GZIPOutputStream(encoded)
+                : new DeflaterOutputStream(encoded)) {
+            out.write(body);
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+        return encoded.toByteArray();
+    }
+
+    /**
+     * Removes a gzip or deflate coding from a body.
+     *
+     * @param coding Normalized coding list of the body
+     * @param body Encoded bytes
+     * @return Decoded bytes, or null if the coding is not supported or the body is corrupt or truncated
+     */
+    public static byte[] decode(String coding, byte[] body) {
+        if (!GZIP.equals(coding) && !DEFLATE.equals(coding)) {
+            return null;
+        }
+        try (InputStream in = GZIP.equals(coding)
+                ? new GZIPInputStream(new ByteArrayInputStream(body))
+                : new InflaterInputStream(new ByteArrayInputStream(body))) {
+            return in.readAllBytes();
+        } catch (IOException e) {
+            return null;
+        }
+    }
+}
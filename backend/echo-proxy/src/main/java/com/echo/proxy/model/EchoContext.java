@@ -0,0 +1,20 @@
+package com.echo.proxy.model;
+
+import com.echo.proxy.config.EchoMode;
+import lombok.Value;
+
+/**
+ * Mode, session and route that apply to one proxied request, either selected
+ * by the request itself, taken from its route, or taken from the configured defaults.
+ */
+@Value
+public class EchoContext {
+
+    EchoMode mode;
+    String sessionId;
+
+    /**
+     * Named route of the request, or null for the default target
+     */
+    EchoRoute route;
+}
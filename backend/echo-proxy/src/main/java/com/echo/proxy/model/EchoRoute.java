@@ -0,0 +1,130 @@
+package com.echo.proxy.model;
+
+import com.echo.proxy.config.EchoMode;
+import lombok.Value;
+
+import java.net.URI;
+
+/**
+ * A named upstream the proxy fronts. Requests are assigned to the route with
+ * the longest matching path prefix, preferring routes bound to the request's
+ * host, and are forwarded to the route's target. Each route records into and
+ * replays from its own session namespace, and may pin its own mode.
+ */
+@Value
+public class EchoRoute {
+
+    String name;
+
+    /**
+     * Host the route is bound to, or null for any host
+     */
+    String host;
+
+    /**
+     * Path prefix, matched on whole segments
+     */
+    String pathPrefix;
+
+    URI targetUri;
+
+    /**
+     * Suffix appended to the session ID, so routes keep separate recordings
+     */
+    String sessionNamespace;
+
+    /**
+     * Mode of the route, or null for the default mode
+     */
+    EchoMode mode;
+
+    /**
+     * Whether the path prefix is removed before forwarding
+     */
+    boolean stripPrefix;
+
+    /**
+     * Creates a route, normalizing the host and path prefix.
+     *
+     * @param name Route name
+     * @param host Host the route is bound to (may be null)
+     * @param pathPrefix Path prefix (may be null for all paths)
+     * @param targetUrl Target service URL
+     * @param sessionNamespace Session namespace (may be null for the route name)
+     * @param mode Mode (may be null)
+     * @param stripPrefix Whether the prefix is removed before forwarding
+     * @return EchoRoute instance
+     * @throws IllegalArgumentException if the name is blank or the target URL is not an http(s) URL
+     */
+    public static EchoRoute of(String name, String host, String pathPrefix, String targetUrl, String sessionNamespace,
+                               EchoMode mode, boolean stripPrefix) {
+        if (name == null || name.isBlank()) {
+            throw new IllegalArgumentException("Route name is required");
+        }
+        if (targetUrl == null || !(targetUrl.startsWith("http://") || targetUrl.startsWith("https://"))) {
+            throw new IllegalArgumentException("Target URL must start with http:// or https://");
+        }
+        String prefix = pathPrefix == null || pathPrefix.isBlank() ? "/" : pathPrefix.trim();
+        if (!prefix.startsWith("/")) {
+            prefix = "/" + prefix;
+        }
+        if (prefix.length() > 1 && prefix.endsWith("/")) {
+            prefix = prefix.substring(0, prefix.length() - 1);
+        }
+        return new EchoRoute(name.trim(),
+                host == null || host.isBlank() ? null : host.trim().toLowerCase(),
+                prefix,
+                URI.create(targetUrl.trim()),
+                sessionNamespace == null || sessionNamespace.isBlank() ? name.trim() : sessionNamespace.trim(),
+                mode,
+                stripPrefix);
+    }
+
+    /**
+     * Returns the session ID a base session maps to on this route.
+     *
+     * @param sessionId Base session ID
+     * @return Namespaced session ID
+     */
+    public String sessionIdFor(String sessionId) {
+        return sessionId + ":" + sessionNamespace;
+    }
+
+    /**
+     * Returns the path forwarded upstream for a request path on this route.
+     * The prefix is removed by segments, skipping empty ones as route matching
+     * does, so {@code //payments/x} on prefix {@code /payments} forwards {@code /x}.
+     *
+     * @param rawPath Raw request path, matched by this route
+     * @return Path relative to the target
+     */
+    public String forwardedPath(String rawPath) {
+        if (!stripPrefix || pathPrefix.equals("/")) {
+            return rawPath;
+        }
+        int prefixSegments = segmentCount(pathPrefix);
+        int position = 0;
+        int length = rawPath.length();
+        while (prefixSegments > 0 && position < length) {
+            if (rawPath.charAt(position) == '/') {
+                position++;
+                continue;
+            }
+            int end = rawPath.indexOf('/', position);
+            position = end < 0 ? length : end;
+            prefixSegments--;
+        }
+        String rest = rawPath.substring(position);
+        return rest.isEmpty() ? "/" : rest;
+    }
+
+    private static int segmentCount(String path) {
+        int count = 0;
+        for (int i = 0; i < path.length(); i++) {
+            if (path.charAt(i) != '/' && (i == 0 || path.charAt(i - 1) == '/')) {
+                count++;
+            }
+        }
+        return count;
+    }
+}
@@ -0,0 +1,50 @@
+package com.echo.proxy.model;
+
+import java.time.Duration;
+import java.util.random.RandomGenerator;
+
+/**
+ * Empirical distribution of the upstream durations recorded for one path.
+ * Samples are kept in a primitive array, so drawing one allocates nothing
+ * beyond the returned Duration.
+ */
+public final class LatencyDistribution {
+
+    private final long[] millis;
+
+    private LatencyDistribution(long[] millis) {
+        this.millis = millis;
+    }
+
+    /**
+     * Creates a distribution from recorded durations.
+     *
+     * @param millis Durations in milliseconds, in any order; the array is taken over
+     * @return LatencyDistribution instance
+     */
+    public static LatencyDistribution of(long[] millis) {
+        if (millis.length == 0) {
+            throw new IllegalArgumentException("A latency distribution needs at least one sample");
+        }
+        return new LatencyDistribution(millis);
+    }
+
+    /**
+     * Draws a duration with the same distribution as the recordings.
+     *
+     * @param random Random source
+     * @return Sampled duration
+     */
+    public Duration sample(RandomGenerator random) {
+        return Duration.ofMillis(millis[random.nextInt(millis.length)]);
+    }
+
+    /**
+     * Returns the number of recorded durations.
+     *
+     * @return Sample count
+     */
+    public int size() {
+        return millis.length;
+    }
+}
@@ -0,0 +1,249 @@
+package com.echo.proxy.model;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * Compiled request-matching rules used to build and query replay indexes.
+ * Every request is reduced to a canonical "METHOD path?query" key:
+ * the path is replaced by the first configured template that matches it
+ * and the query string has ignored parameters removed and, optionally,
+ * its parameters sorted. Templates are compiled into a path-segment trie,
+ * so canonicalizing a request costs O(path length) however many recordings
+ * or templates there are.
+ */
+public final class MatchingRules {
+
+    private final boolean sortQueryParams;
+    private final Set<String> ignoredQueryParams;
+    private final TemplateNode templates;
+
+    private MatchingRules(boolean sortQueryParams, Set<String> ignoredQueryParams, TemplateNode templates) {
+        this.sortQueryParams = sortQueryParams;
+        this.ignoredQueryParams = ignoredQueryParams;
+        this.templates = templates;
+    }
+
+    /**
+     * Compiles matching rules.
+     *
+     * @param sortQueryParams Whether query parameter order is ignored
+     * @param ignoredQueryParams Names of query parameters left out of matching
+     * @param pathTemplates Path templates such as /users/{id}
+     * @return MatchingRules instance
+     */
+    public static MatchingRules compile(boolean sortQueryParams,
+                                        Collection<String> ignoredQueryParams,
+                                        Collection<String> pathTemplates) {
+        TemplateNode root = new TemplateNode();
+        for (String template : pathTemplates) {
+            TemplateNode node = root;
+            for (String segment : segments(template)) {
+                node = isVariable(segment)
+                        ? node.variableChild()
+                        : node.literalChild(segment);
+            }
+            if (node.template == null) {
+                node.template = template;
+            }
+        }
+        return new MatchingRules(sortQueryParams, Set.copyOf(ignoredQueryParams), root);
+    }
+
+    /**
+     * Rules that only treat reordered query parameters as equal.
+     *
+     * @return MatchingRules instance
+     */
+    public static MatchingRules defaults() {
+        return compile(true, List.of(), List.of());
+    }
+
+    /**
+     * Builds the canonical index key of a request with a body.
+     * The body hash is appended to the key so that requests to the same
+     * endpoint with different bodies are told apart.
+     *
+     * @param method HTTP method
+     * @param path Request path
+     * @param queryParams Raw query string (may be null)
+     * @param requestBodyHash Hash of the request body (may be null)
+     * @return Canonical key
+     */
+    public String indexKey(String method, String path, String queryParams, String requestBodyHash) {
+        return withBodyHash(indexKey(method, path, queryParams), requestBodyHash);
+    }
+
+    /**
+     * Appends a request body hash to an index key.
+     *
+     * @param indexKey Canonical key without body hash
+     * @param requestBodyHash Hash of the request body (may be null)
+     * @return Key including the body hash
+     */
+    static String withBodyHash(String indexKey, String requestBodyHash) {
+        return requestBodyHash != null ? indexKey + '#' + requestBodyHash : indexKey;
+    }
+
+    /**
+     * Builds the canonical index key of a request.
+     *
+     * @param method HTTP method
+     * @param path Request path
+     * @param queryParams Raw query string (may be null)
+     * @return Canonical key
+     */
+    public String indexKey(String method, String path, String queryParams) {
+        String canonicalPath = canonicalPath(path);
+        String canonicalQuery = normalizeQuery(queryParams);
+        StringBuilder builder = new StringBuilder(method.length() + canonicalPath.length() + canonicalQuery.length() + 2)
+                .append(method).append(' ').append(canonicalPath);
+        if (!canonicalQuery.isEmpty()) {
+            builder.append('?').append(canonicalQuery);
+        }
+        return builder.toString();
+    }
+
+    /**
+     * Builds the key shared by every request to the same canonical path,
+     * regardless of query and body.
+     *
+     * @param method HTTP method
+     * @param path Request path
+     * @return Method and canonical path
+     */
+    public String pathKey(String method, String path) {
+        return method + ' ' + canonicalPath(path);
+    }
+
+    /**
+     * Replaces a path by the template it matches, if any.
+     * Literal segments take precedence over template variables.
+     *
+     * @param path Request path
+     * @return Matching template, or the path itself
+     */
+    String canonicalPath(String path) {
+        if (templates.isEmpty()) {
+            return path;
+        }
+        String template = templates.match(path, 0);
+        return template != null ? template : path;
+    }
+
+    /**
+     * Normalizes a query string: drops ignored parameters and sorts the rest
+     * when configured. Null and empty query strings are treated alike.
+     *
+     * @param queryParams Raw query string
+     * @return Normalized query string, never null
+     */
+    String normalizeQuery(String queryParams) {
+        if (queryParams == null || queryParams.isEmpty()) {
+            return "";
+        }
+        if (queryParams.indexOf('&') < 0 && ignoredQueryParams.isEmpty()) {
+            return queryParams;
+        }
+
+        List<String> params = new ArrayList<>();
+        int start = 0;
+        while (start <= queryParams.length()) {
+            int end = queryParams.indexOf('&', start);
+            if (end < 0) {
+                end = queryParams.length();
+            }
+            String param = queryParams.substring(start, end);
+            if (!param.isEmpty() && !ignoredQueryParams.contains(parameterName(param))) {
+                params.add(param);
+            }
+            start = end + 1;
+        }
+        if (sortQueryParams) {
+            params.sort(null);
+        }
+        return String.join("&", params);
+    }
+
+    private static String parameterName(String param) {
+        int equals = param.indexOf('=');
+        return equals < 0 ? param : param.substring(0, equals);
+    }
+
+    private static boolean isVariable(String segment) {
+        return segment.length() > 1 && segment.charAt(0) == '{' && segment.charAt(segment.length() - 1) == '}';
+    }
+
+    private static List<String> segments(String path) {
+        List<String> segments = new ArrayList<>();
+        int start = path.startsWith("/") ? 1 : 0;
+        while (start <= path.length()) {
+            int end = path.indexOf('/', start);
+            if (end < 0) {
+                end = path.length();
+            }
+            segments.add(path.substring(start, end));
+            start = end + 1;
+        }
+        return segments;
+    }
+
+    /**
+     * Node of the path-template trie. Each level consumes one path segment.
+     */
+    private static final class TemplateNode {
+
+        private final Map<String, TemplateNode> literals = new HashMap<>();
+        private TemplateNode variable;
+        private String template;
+
+        private TemplateNode literalChild(String segment) {
+            return literals.computeIfAbsent(segment, s -> new TemplateNode());
+        }
+
+        private TemplateNode variableChild() {
+            if (variable == null) {
+                variable = new TemplateNode();
+            }
+            return variable;
+        }
+
+        private boolean isEmpty() {
+            return literals.isEmpty() && variable == null;
+        }
+
+        /**
+         * Matches the remainder of a path starting at an offset just past a '/'.
+         *
+         * @return Template that matches, or null
+         */
+        private String match(String path, int offset) {
+            if (offset == 0 && path.startsWith("/")) {
+                offset = 1;
+            }
+            if (offset > path.length()) {
+                return template;
+            }
+            int end = path.indexOf('/', offset);
+            if (end < 0) {
+                end = path.length();
+            }
+
+            TemplateNode literal = literals.get(path.substring(offset, end));
+            if (literal != null) {
+                String matched = literal.match(path, end + 1);
+                if (matched != null) {
+                    return matched;
+                }
+            }
+            if (variable != null && end > offset) {
+                return variable.match(path, end + 1);
+            }
+            return null;
+        }
+    }
+}
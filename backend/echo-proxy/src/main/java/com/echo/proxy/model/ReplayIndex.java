@@ -0,0 +1,247 @@
+package com.echo.proxy.model;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Immutable in-memory index of the recordings of one session.
+ * Keys are canonical "METHOD path?query" strings produced by the session's
+ * {@link MatchingRules}, suffixed with the request body hash for recordings
+ * that had a body. Each key maps to every response recorded for it, in
+ * recording order and already prepared for replay. Recorded upstream
+ * durations are also kept per method and canonical path for timed replay.
+ */
+public final class ReplayIndex {
+
+    private final String sessionId;
+    private final MatchingRules rules;
+    private final Map<String, Entry> entries;
+    private final Map<String, LatencyDistribution> latencies;
+
+    private ReplayIndex(String sessionId, MatchingRules rules, Map<String, Entry> entries,
+                        Map<String, LatencyDistribution> latencies) {
+        this.sessionId = sessionId;
+        this.rules = rules;
+        this.entries = entries;
+        this.latencies = latencies;
+    }
+
+    /**
+     * Looks up the recordings for a request. A request with a body matches
+     * recordings of the same body first and otherwise falls back to recordings
+     * stored without a body hash.
+     *
+     * @param method HTTP method
+     * @param path Request path
+     * @param queryParams Raw query string (may be null)
+     * @param requestBodyHash Hash of the request body (may be null)
+     * @return Matching entry, or null if the session has no recording for it
+     */
+    public Entry lookup(String method, String path, String queryParams, String requestBodyHash) {
+        String key = rules.indexKey(method, path, queryParams);
+        if (requestBodyHash != null) {
+            Entry match = entries.get(MatchingRules.withBodyHash(key, requestBodyHash));
+            if (match != null) {
+                return match;
+            }
+        }
+        return entries.get(key);
+    }
+
+    /**
+     * Looks up the most recent recording for a request.
+     *
+     * @param method HTTP method
+     * @param path Request path
+     * @param queryParams Raw query string (may be null)
+     * @param requestBodyHash Hash of the request body (may be null)
+     * @return Matching response, or null if the session has no recording for it
+     */
+    public ReplayResponse find(String method, String path, String queryParams, String requestBodyHash) {
+        Entry entry = lookup(method, path, queryParams, requestBodyHash);
+        return entry != null ? entry.latest() : null;
+    }
+
+    /**
+     * Returns the upstream durations recorded for a path, across all queries and bodies.
+     *
+     * @param method HTTP method
+     * @param path Request path
+     * @return Latency distribution, or null if no recording of the path was timed
+     */
+    public LatencyDistribution latencyDistribution(String method, String path) {
+        return latencies.get(rules.pathKey(method, path));
+    }
+
+    /**
+     * Returns a copy of this index with more recordings added after those
+     * already indexed for the same keys. The copy shares every unchanged
+     * entry; recorded durations of the added recordings are left out of the
+     * latency distributions until the session is loaded again.
+     *
+     * @param trafficRecords Recordings to add, in recording order
+     * @return New index
+     */
+    public ReplayIndex plus(List<TrafficRecord> trafficRecords) {
+        Map<String, List<ReplayResponse>> added = new HashMap<>();
+        for (TrafficRecord trafficRecord : trafficRecords) {
+            String key = rules.indexKey(trafficRecord.getMethod(), trafficRecord.getPath(),
+                    trafficRecord.getQueryParams(), trafficRecord.getRequestBodyHash());
+            added.computeIfAbsent(key, k -> new ArrayList<>(1)).add(ReplayResponse.from(trafficRecord));
+        }
+        Map<String, Entry> merged = new HashMap<>(entries);
+        added.forEach((key, responses) -> {
+            Entry existing = merged.get(key);
+            List<ReplayResponse> all = responses;
+            if (existing != null) {
+                all = new ArrayList<>(existing.responses);
+                all.addAll(responses);
+            }
+            merged.put(key, new Entry(key, List.copyOf(all)));
+        });
+        return new ReplayIndex(sessionId, rules, Map.copyOf(merged), latencies);
+    }
+
+    public String getSessionId() {
+        return sessionId;
+    }
+
+    /**
+     * Returns the number of distinct keys in the index.
+     *
+     * @return Key count
+     */
+    public int size() {
+        return entries.size();
+    }
+
+    /**
+     * Creates a builder for a session index.
+     *
+     * @param sessionId Session ID
+     * @param rules Matching rules used to key recordings
+     * @return Builder instance
+     */
+    public static Builder builder(String sessionId, MatchingRules rules) {
+        return new Builder(sessionId, rules);
+    }
+
+    /**
+     * All recordings of one index key, oldest first.
+     */
+    public static final class Entry {
+
+        private final String key;
+        private final List<ReplayResponse> responses;
+
+        private Entry(String key, List<ReplayResponse> responses) {
+            this.key = key;
+            this.responses = responses;
+        }
+
+        /**
+         * Returns the canonical key shared by these recordings.
+         *
+         * @return Index key
+         */
+        public String getKey() {
+            return key;
+        }
+
+        /**
+         * Returns the recording at a position in recording order.
+         *
+         * @param position Zero-based position
+         * @return ReplayResponse instance
+         */
+        public ReplayResponse get(int position) {
+            return responses.get(position);
+        }
+
+        /**
+         * Returns the number of recordings for the key.
+         *
+         * @return Recording count, at least one
+         */
+        public int size() {
+            return responses.size();
+        }
+
+        /**
+         * Returns the most recent recording.
+         *
+         * @return ReplayResponse instance
+         */
+        public ReplayResponse latest() {
+            return responses.get(responses.size() - 1);
+        }
+    }
+
+    /**
+     * Accumulates recordings, in recording order, into a new index.
+     * Builders are not thread-safe.
+     */
+    public static final class Builder {
+
+        private final String sessionId;
+        private final MatchingRules rules;
+        private final Map<String, List<ReplayResponse>> entries = new HashMap<>();
+        private final Map<String, List<Long>> latencies = new HashMap<>();
+
+        private Builder(String sessionId, MatchingRules rules) {
+            this.sessionId = sessionId;
+            this.rules = rules;
+        }
+
+        /**
+         * Adds a recording after those already added for the same key.
+         *
+         * @param trafficRecord Recorded traffic
+         * @return this builder
+         */
+        public Builder add(TrafficRecord trafficRecord) {
+            return add(trafficRecord.getMethod(), trafficRecord.getPath(), trafficRecord.getQueryParams(),
+                    trafficRecord.getRequestBodyHash(), ReplayResponse.from(trafficRecord));
+        }
+
+        /**
+         * Adds a prepared response after those already added for the same key.
+         *
+         * @param method HTTP method
+         * @param path Request path
+         * @param queryParams Raw query string (may be null)
+         * @param requestBodyHash Hash of the request body (may be null)
+         * @param response Recorded response prepared for replay
+         * @return this builder
+         */
+        public Builder add(String method, String path, String queryParams, String requestBodyHash,
+                           ReplayResponse response) {
+            String key = rules.indexKey(method, path, queryParams, requestBodyHash);
+            entries.computeIfAbsent(key, k -> new ArrayList<>(1)).add(response);
+            if (response.getUpstreamDuration() != null) {
+                latencies.computeIfAbsent(rules.pathKey(method, path), k -> new ArrayList<>())
+                        .add(response.getUpstreamDuration().toMillis());
+            }
+            return this;
+        }
+
+        /**
+         * Builds the index. The entries are copied into an immutable open-addressing
+         * map, which needs no per-entry node objects and caches each key's hash.
+         *
+         * @return ReplayIndex instance
+         */
+        public ReplayIndex build() {
+            Map<String, Entry> built = new HashMap<>(entries.size() * 4 / 3 + 1);
+            entries.forEach((key, responses) -> built.put(key, new Entry(key, List.copyOf(responses))));
+
+            Map<String, LatencyDistribution> distributions = new HashMap<>(latencies.size() * 4 / 3 + 1);
+            latencies.forEach((key, millis) -> distributions.put(key,
+                    LatencyDistribution.of(millis.stream().mapToLong(Long::longValue).toArray())));
+
+            return new ReplayIndex(sessionId, rules, Map.copyOf(built), Map.copyOf(distributions));
+        }
+    }
+}
@@ -0,0 +1,30 @@
+package com.echo.proxy.model;
+
+import lombok.Value;
+
+/**
+ * Identifies a replay lookup against Echo API: the session plus the request's
+ * canonical match key, built by {@link MatchingRules} exactly as a preloaded
+ * {@link ReplayIndex} keys it, and the request body hash. Requests the
+ * matching rules treat alike, such as ones differing only in query parameter
+ * order, produce equal keys.
+ */
+@Value
+public class ReplayKey {
+
+    String sessionId;
+    String matchKey;
+    String requestBodyHash;
+
+    /**
+     * Creates a key for a lookup.
+     *
+     * @param sessionId Session ID
+     * @param matchKey Canonical key without body hash, see {@link MatchingRules#indexKey(String, String, String)}
+     * @param requestBodyHash Hash of the request body (may be null)
+     * @return ReplayKey instance
+     */
+    public static ReplayKey of(String sessionId, String matchKey, String requestBodyHash) {
+        return new ReplayKey(sessionId, matchKey, requestBodyHash);
+    }
+}
@@ -0,0 +1,188 @@
+package com.echo.proxy.model;
+
+import org.springframework.http.HttpHeaders;
+import org.springframework.http.HttpStatusCode;
+
+import java.nio.ByteBuffer;
+import java.time.Duration;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.TreeSet;
+
+/**
+ * A recorded response prepared once for replay: the status code, the headers
+ * that may be copied to the client and the body bytes exactly as recorded.
+ * An encoded body keeps its content coding; the decoded form is only produced,
+ * once, for clients that do not accept that coding.
+ * Instances are immutable and shared between concurrent replays.
+ */
+public final class ReplayResponse {
+
+    /**
+     * Recorded headers that must not be copied onto a replayed response
+     */
+    private static final Set<String> EXCLUDED_HEADERS = new TreeSet<>(String.CASE_INSENSITIVE_ORDER);
+
+    static {
+        EXCLUDED_HEADERS.addAll(Set.of(
+                HttpHeaders.TRANSFER_ENCODING,
+                HttpHeaders.CONTENT_LENGTH,
+                HttpHeaders.CONTENT_ENCODING,
+                HttpHeaders.ACCESS_CONTROL_ALLOW_ORIGIN,
+                HttpHeaders.ACCESS_CONTROL_ALLOW_CREDENTIALS,
+                HttpHeaders.ACCESS_CONTROL_ALLOW_METHODS,
+                HttpHeaders.ACCESS_CONTROL_ALLOW_HEADERS,
+                HttpHeaders.ACCESS_CONTROL_EXPOSE_HEADERS));
+    }
+
+    private static final ByteBuffer EMPTY_BODY = ByteBuffer.allocate(0).asReadOnlyBuffer();
+
+    private final HttpStatusCode status;
+    private final HttpHeaders headers;
+    private final ByteBuffer body;
+    private final String contentEncoding;
+    private final Duration upstreamDuration;
+    private volatile ByteBuffer decodedBody;
+
+    private ReplayResponse(HttpStatusCode status, HttpHeaders headers, ByteBuffer body, String contentEncoding,
+                           Duration upstreamDuration) {
+        this.status = status;
+        this.headers = headers;
+        this.body = body;
+        this.contentEncoding = contentEncoding;
+        this.upstreamDuration = upstreamDuration;
+    }
+
+    /**
+     * Prepares a recorded traffic record for replay.
+     *
+     * @param trafficRecord Recorded traffic
+     * @return ReplayResponse instance
+     */
+    public static ReplayResponse from(TrafficRecord trafficRecord) {
+        ByteBuffer body = trafficRecord.getResponseBody() != null
+                ? ByteBuffer.wrap(trafficRecord.getResponseBody())
+                : null;
+        return of(trafficRecord.getStatusCode(), trafficRecord.getResponseHeaders(), body,
+                trafficRecord.getResponseBodyEncoding(), trafficRecord.getUpstreamDurationMs());
+    }
+
+    /**
+     * Prepares a recorded response for replay from its parts. The body buffer
+     * is shared, not copied, so it may be a slice of a memory-mapped file.
+     *
+     * @param status Response status code
+     * @param recordedHeaders Recorded response headers (may be null)
+     * @param body Response body (may be null)
+     * @param upstreamDurationMs Recorded upstream duration in milliseconds (may be null)
+     * @return ReplayResponse instance
+     */
+    public static ReplayResponse of(int status, Map<String, List<String>> recordedHeaders, ByteBuffer body,
+                                    Long upstreamDurationMs) {
+        return of(status, recordedHeaders, body, null, upstreamDurationMs);
+    }
+
+    /**
+     * Prepares a recorded response with an encoded body for replay.
+     *
+     * @param status Response status code
+     * @param recordedHeaders Recorded response headers (may be null)
+     * @param body Response body (may be null)
+     * @param contentEncoding Content coding of the body, or null if it is not encoded
+     * @param upstreamDurationMs Recorded upstream duration in milliseconds (may be null)
+     * @return ReplayResponse instance
+     */
+    public static ReplayResponse of(int status, Map<String, List<String>> recordedHeaders, ByteBuffer body,
+                                    String contentEncoding, Long upstreamDurationMs) {
+        HttpHeaders headers = new HttpHeaders();
+        if (recordedHeaders != null) {
+            recordedHeaders.forEach((name, values) -> {
+                if (values != null && !EXCLUDED_HEADERS.contains(name)) {
+                    headers.addAll(name, values);
+                }
+            });
+        }
+
+        return new ReplayResponse(
+                HttpStatusCode.valueOf(status),
+                HttpHeaders.readOnlyHttpHeaders(headers),
+                body != null ? body.asReadOnlyBuffer() : EMPTY_BODY,
+                ContentCodings.normalize(contentEncoding),
+                upstreamDurationMs != null ? Duration.ofMillis(upstreamDurationMs) : null);
+    }
+
+    public HttpStatusCode getStatus() {
+        return status;
+    }
+
+    /**
+     * Returns the pre-filtered response headers.
+     *
+     * @return Read-only headers
+     */
+    public HttpHeaders getHeaders() {
+        return headers;
+    }
+
+    /**
+     * Returns a view of the body that callers may consume independently.
+     *
+     * @return Read-only buffer positioned at the start of the body
+     */
+    public ByteBuffer getBody() {
+        return body.duplicate();
+    }
+
+    /**
+     * Returns the content coding of the body.
+     *
+     * @return Coding such as gzip, or null if the body is not encoded
+     */
+    public String getContentEncoding() {
+        return contentEncoding;
+    }
+
+    /**
+     * Returns a view of the body with its content coding removed, decoding it
+     * on first use.
+     *
+     * @return Read-only decoded buffer, or null if the coding cannot be removed
+     */
+    public ByteBuffer getDecodedBody() {
+        if (contentEncoding == null) {
+            return getBody();
+        }
+        ByteBuffer decoded = decodedBody;
+        if (decoded == null) {
+            ByteBuffer encoded = getBody();
+            byte[] bytes = new byte[encoded.remaining()];
+            encoded.get(bytes);
+            byte[] plain = ContentCodings.decode(contentEncoding, bytes);
+            if (plain == null) {
+                return null;
+            }
+            decoded = ByteBuffer.wrap(plain).asReadOnlyBuffer();
+            decodedBody = decoded;
+        }
+        return decoded.duplicate();
+    }
+
+    /**
+     * Returns the body size in bytes.
+     *
+     * @return Body length
+     */
+    public int getBodyLength() {
+        return body.remaining();
+    }
+
+    /**
+     * Returns how long the upstream took to produce this response when it was recorded.
+     *
+     * @return Recorded duration, or null for recordings made without timing
+     */
+    public Duration getUpstreamDuration() {
+        return upstreamDuration;
+    }
+}
@@ -0,0 +1,171 @@
+package com.echo.proxy.model;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Immutable lookup structure over the named routes. Path prefixes are kept
+ * in one segment trie per host plus one for routes bound to no host, so a
+ * lookup walks the request path once per trie, independent of the number of
+ * routes. A table is never modified; changes build a new table.
+ */
+public final class RouteTable {
+
+    private static final RouteTable EMPTY = new RouteTable(Map.of());
+
+    private final Map<String, EchoRoute> routes;
+    private final Map<String, Node> hostTries = new HashMap<>();
+    private final Node anyHostTrie = new Node();
+
+    private RouteTable(Map<String, EchoRoute> routes) {
+        this.routes = routes;
+        for (EchoRoute route : routes.values()) {
+            Node node = route.getHost() != null
+                    ? hostTries.computeIfAbsent(route.getHost(), host -> new Node())
+                    : anyHostTrie;
+            for (String segment : segments(route.getPathPrefix())) {
+                node = node.children.computeIfAbsent(segment, key -> new Node());
+            }
+            node.route = route;
+        }
+    }
+
+    /**
+     * Returns a table without routes.
+     *
+     * @return Empty table
+     */
+    public static RouteTable empty() {
+        return EMPTY;
+    }
+
+    /**
+     * Builds a table. A later route replaces an earlier one of the same name.
+     *
+     * @param routes Routes
+     * @return RouteTable instance
+     */
+    public static RouteTable of(Collection<EchoRoute> routes) {
+        Map<String, EchoRoute> byName = new LinkedHashMap<>();
+        routes.forEach(route -> byName.put(route.getName(), route));
+        return new RouteTable(byName);
+    }
+
+    /**
+     * Returns a copy of this table with a route added or replaced.
+     *
+     * @param route Route
+     * @return New table
+     */
+    public RouteTable with(EchoRoute route) {
+        Map<String, EchoRoute> copy = new LinkedHashMap<>(routes);
+        copy.put(route.getName(), route);
+        return new RouteTable(copy);
+    }
+
+    /**
+     * Returns a copy of this table without a route.
+     *
+     * @param name Route name
+     * @return New table, or this table if it has no such route
+     */
+    public RouteTable without(String name) {
+        if (!routes.containsKey(name)) {
+            return this;
+        }
+        Map<String, EchoRoute> copy = new LinkedHashMap<>(routes);
+        copy.remove(name);
+        return new RouteTable(copy);
+    }
+
+    /**
+     * Finds the route of a request: the longest path prefix among the routes
+     * bound to the host, or else among the routes bound to no host.
+     *
+     * @param host Request host (may be null)
+     * @param path Request path
+     * @return Matching route, or null if none matches
+     */
+    public EchoRoute match(String host, String path) {
+        if (routes.isEmpty()) {
+            return null;
+        }
+        if (host != null && !hostTries.isEmpty()) {
+            Node hostTrie = hostTries.get(host.toLowerCase());
+            EchoRoute route = hostTrie != null ? longestPrefix(hostTrie, path) : null;
+            if (route != null) {
+                return route;
+            }
+        }
+        return longestPrefix(anyHostTrie, path);
+    }
+
+    /**
+     * Returns a route by name.
+     *
+     * @param name Route name
+     * @return Route, or null if there is none of that name
+     */
+    public EchoRoute get(String name) {
+        return routes.get(name);
+    }
+
+    /**
+     * Returns the routes in the order they were added.
+     *
+     * @return Routes
+     */
+    public List<EchoRoute> routes() {
+        return List.copyOf(routes.values());
+    }
+
+    public int size() {
+        return routes.size();
+    }
+
+    private static EchoRoute longestPrefix(Node root, String path) {
+        Node node = root;
+        EchoRoute match = root.route;
+        int start = 0;
+        int length = path.length();
+        while (start < length) {
+            if (path.charAt(start) == '/') {
+                start++;
+                continue;
+            }
+            int end = path.indexOf('/', start);
+            if (end < 0) {
+                end = length;
+            }
+            node = node.children.get(path.substring(start, end));
+            if (node == null) {
+                break;
+            }
+            if (node.route != null) {
+                match = node.route;
+            }
+            start = end;
+        }
+        return match;
+    }
+
+    private static List<String> segments(String path) {
+        List<String> segments = new ArrayList<>();
+        for (String segment : path.split("/")) {
+            if (!segment.isEmpty()) {
+                segments.add(segment);
+            }
+        }
+        return segments;
+    }
+
+    private static final class Node {
+
+        private final Map<String, Node> children = new HashMap<>();
+        private EchoRoute route;
+    }
+}
@@ -0,0 +1,159 @@
+package com.echo.proxy.model;
+
+import java.io.BufferedInputStream;
+import java.io.DataInputStream;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.Channels;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Reader for session archives exported by Echo API, which let the proxy
+ * replay a session from a single local file.
+ *
+ * <p>An archive starts with the 8-byte magic {@code ECHOARC2}, followed by the
+ * body section and the index section, and ends with a 20-byte footer holding
+ * the index offset, the record count and the magic again. The body section is
+ * the raw response bodies back to back; no body crosses a
+ * {@link #CHUNK_SIZE} boundary, so each one lies inside a single mapped
+ * chunk. The index section starts with the session ID and then describes each
+ * record, oldest first: method, path, query, request body hash, status,
+ * time to first byte, duration, headers as name/value pairs with a name
+ * repeated for each of its values, the body's content coding (null when
+ * it is not encoded) and the body's offset and length. Strings are an int byte length (-1 for null) followed by UTF-8 bytes and
+ * numbers are big-endian, as written by {@link java.io.DataOutputStream}.
+ *
+ * <p>The body section is memory-mapped and never copied onto the heap:
+ * replayed bodies are read-only slices of the mapping.
+ */
+public final class SessionArchive {
+
+    /**
+     * Magic bytes at the start and the end of every archive
+     */
+    public static final byte[] MAGIC = "ECHOARC2".getBytes(StandardCharsets.US_ASCII);
+
+    /**
+     * Size of the regions the body section is mapped in
+     */
+    public static final long CHUNK_SIZE = 1L << 30;
+
+    /**
+     * Length of the footer: index offset, record count and magic
+     */
+    public static final int FOOTER_LENGTH = Long.BYTES + Integer.BYTES + 8;
+
+    private SessionArchive() {
+    }
+
+    /**
+     * Maps an archive and builds the replay index of its session.
+     *
+     * @param path Archive file
+     * @param rules Matching rules used to key recordings
+     * @return ReplayIndex whose bodies are slices of the mapped file
+     * @throws IOException if the file cannot be read or is not a valid archive
+     */
+    public static ReplayIndex load(Path path, MatchingRules rules) throws IOException {
+        try (FileChannel channel = FileChannel.open(path, StandardOpenOption.READ)) {
+            long size = channel.size();
+            if (size < MAGIC.length + FOOTER_LENGTH || !hasMagic(channel, 0)) {
+                throw new IOException("Not a session archive: " + path);
+            }
+
+            ByteBuffer footer = ByteBuffer.allocate(FOOTER_LENGTH);
+            readFully(channel, footer, size - FOOTER_LENGTH);
+            footer.flip();
+            long indexOffset = footer.getLong();
+            int recordCount = footer.getInt();
+            if (!hasMagic(channel, size - MAGIC.length) || indexOffset < MAGIC.length
+                    || indexOffset > size - FOOTER_LENGTH || recordCount < 0) {
+                throw new IOException("Corrupt session archive footer: " + path);
+            }
+
+            ByteBuffer[] chunks = mapBodies(channel, indexOffset);
+
+            channel.position(indexOffset);
+            DataInputStream in = new DataInputStream(
+                    new BufferedInputStream(Channels.newInputStream(channel), 64 * 1024));
+            ReplayIndex.Builder builder = ReplayIndex.builder(readString(in), rules);
+            for (int i = 0; i < recordCount; i++) {
+                String method = readString(in);
+                String recordPath = readString(in);
+                String queryParams = readString(in);
+                String requestBodyHash = readString(in);
+                int status = in.readInt();
+                in.readLong(); // time to first byte, not used for replay
+                long durationMs = in.readLong();
+                int headerCount = in.readInt();
+                Map<String, List<String>> headers = new LinkedHashMap<>(headerCount * 4 / 3 + 1);
+                for (int h = 0; h < headerCount; h++) {
+                    headers.computeIfAbsent(readString(in), name -> new ArrayList<>(1)).add(readString(in));
+                }
+                String contentEncoding = readString(in);
+                long bodyOffset = in.readLong();
+                int bodyLength = in.readInt();
+
+                ByteBuffer body = slice(chunks, bodyOffset, bodyLength, indexOffset);
+                builder.add(method, recordPath, queryParams, requestBodyHash,
+                        ReplayResponse.of(status, headers, body, contentEncoding, durationMs >= 0 ? durationMs : null));
+            }
+            return builder.build();
+        }
+    }
+
+    private static ByteBuffer[] mapBodies(FileChannel channel, long sectionEnd) throws IOException {
+        ByteBuffer[] chunks = new ByteBuffer[(int) ((sectionEnd + CHUNK_SIZE - 1) / CHUNK_SIZE)];
+        for (int i = 0; i < chunks.length; i++) {
+            long start = i * CHUNK_SIZE;
+            chunks[i] = channel.map(FileChannel.MapMode.READ_ONLY, start, Math.min(CHUNK_SIZE, sectionEnd - start));
+        }
+        return chunks;
+    }
+
+    private static ByteBuffer slice(ByteBuffer[] chunks, long offset, int length, long sectionEnd) throws IOException {
+        if (length == 0) {
+            return null;
+        }
+        int chunk = (int) (offset / CHUNK_SIZE);
+        int position = (int) (offset % CHUNK_SIZE);
+        if (offset < MAGIC.length || length < 0 || offset + length > sectionEnd
+                || position + (long) length > chunks[chunk].capacity()) {
+            throw new IOException("Body outside the body section at offset " + offset);
+        }
+        return chunks[chunk].slice(position, length);
+    }
+
+    private static boolean hasMagic(FileChannel channel, long position) throws IOException {
+        ByteBuffer magic = ByteBuffer.allocate(MAGIC.length);
+        readFully(channel, magic, position);
+        return Arrays.equals(magic.array(), MAGIC);
+    }
+
+    private static void readFully(FileChannel channel, ByteBuffer buffer, long position) throws IOException {
+        while (buffer.hasRemaining()) {
+            int read = channel.read(buffer, position + buffer.position());
+            if (read < 0) {
+                throw new IOException("Unexpected end of session archive");
+            }
+        }
+    }
+
+    private static String readString(DataInputStream in) throws IOException {
+        int length = in.readInt();
+        if (length < 0) {
+            return null;
+        }
+        byte[] bytes = new byte[length];
+        in.readFully(bytes);
+        return new String(bytes, StandardCharsets.UTF_8);
+    }
+}
@@ -0,0 +1,23 @@
+package com.echo.proxy.model;
+
+import lombok.AllArgsConstructor;
+import lombok.Builder;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+import java.util.List;
+
+/**
+ * Data model grouping traffic records that are published as a single RabbitMQ message.
+ */
+@Data
+@Builder
+@NoArgsConstructor
+@AllArgsConstructor
+public class TrafficBatch {
+
+    /**
+     * Records in the order they were recorded
+     */
+    private List<TrafficRecord> records;
+}
@@ -1,11 +1,14 @@
 package com.echo.proxy.model;
 
+import com.fasterxml.jackson.annotation.JsonIgnore;
 import lombok.AllArgsConstructor;
 import lombok.Builder;
 import lombok.Data;
 import lombok.NoArgsConstructor;
 
+import java.nio.file.Path;
 import java.time.Instant;
+import java.util.List;
 import java.util.Map;
 
 /**
@@ -34,14 +37,35 @@ public class TrafficRecord {
     private String path;
 
     /**
-     * Request headers
+     * Request headers, every value of each
      */
-    private Map<String, String> requestHeaders;
+    private Map<String, List<String>> requestHeaders;
 
     /**
-     * Request body as string
+     * Raw request body bytes, serialized as Base64
      */
-    private String requestBody;
+    private byte[] requestBody;
+
+    /**
+     * SHA-256 of the canonicalized request body, or null if there was no body
+     */
+    private String requestBodyHash;
+
+    /**
+     * Whether the captured request body is incomplete because of capture limits
+     */
+    private Boolean requestBodyTruncated;
+
+    /**
+     * Full size of the request body in bytes
+     */
+    private Long requestBodySize;
+
+    /**
+     * Spill file holding the request body until it is published; never serialized
+     */
+    @JsonIgnore
+    private Path requestBodySpill;
 
     /**
      * Response HTTP status code
@@ -49,14 +73,45 @@ public class TrafficRecord {
     private Integer statusCode;
 
     /**
-     * Response headers
+     * Response headers, every value of each
+     */
+    private Map<String, List<String>> responseHeaders;
+
+    /**
+     * Raw response body bytes, serialized as Base64
+     */
+    private byte[] responseBody;
+
+    /**
+     * Content coding of the response body, such as gzip, or null if it is not encoded
      */
-    private Map<String, String> responseHeaders;
+    private String responseBodyEncoding;
 
     /**
-     * Response body as string
+     * Whether the captured response body is incomplete because of capture limits
      */
-    private String responseBody;
+    private Boolean responseBodyTruncated;
+
+    /**
+     * Full size of the response body in bytes
+     */
+    private Long responseBodySize;
+
+    /**
+     * Spill file holding the response body until it is published; never serialized
+     */
+    @JsonIgnore
+    private Path responseBodySpill;
+
+    /**
+     * Milliseconds from receiving the request until the first upstream response byte, or null if unknown
+     */
+    private Long upstreamTtfbMs;
+
+    /**
+     * Milliseconds from receiving the request until the upstream response completed, or null if unknown
+     */
+    private Long upstreamDurationMs;
 
     /**
      * Timestamp when the traffic was recorded
@@ -67,4 +122,17 @@ public class TrafficRecord {
      * Request query parameters
      */
     private String queryParams;
+
+    /**
+     * Canonical "METHOD path?query" key of the request under the proxy's matching rules,
+     * set when the record is prepared for publishing
+     */
+    private String matchKey;
+
+    /**
+     * Whether the record was made in REPLAY_OR_RECORD mode and is replayed in process
+     * until it is folded into its session's index; never serialized
+     */
+    @JsonIgnore
+    private boolean readThrough;
 }
\ No newline at end of file
@@ -0,0 +1,120 @@
+package com.echo.proxy.service;
+
+import com.echo.proxy.config.ProxyConfiguration;
+import com.echo.proxy.model.TrafficRecord;
+import io.netty.channel.ChannelOption;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.DisposableBean;
+import org.springframework.http.MediaType;
+import org.springframework.http.client.reactive.ReactorClientHttpConnector;
+import org.springframework.stereotype.Component;
+import org.springframework.web.reactive.function.client.WebClient;
+import reactor.core.publisher.Flux;
+import reactor.core.publisher.Mono;
+import reactor.netty.http.HttpProtocol;
+import reactor.netty.http.client.HttpClient;
+import reactor.netty.resources.ConnectionProvider;
+
+import java.util.Optional;
+
+/**
+ * Long-lived HTTP client for the Echo API internal endpoints.
+ * The client and its connection pool are built once at startup; pool and
+ * client metrics are registered with Micrometer and exposed through actuator.
+ */
+@Slf4j
+@Component
+public class EchoApiClient implements DisposableBean {
+
+    private static final String SESSION_RECORDS_PATH = "/api/v1/internal/sessions/";
+
+    private final ConnectionProvider connectionProvider;
+    private final WebClient webClient;
+
+    public EchoApiClient(ProxyConfiguration proxyConfiguration, WebClient.Builder webClientBuilder) {
+        ProxyConfiguration.EchoApiClient settings = proxyConfiguration.getEchoApiClient();
+
+        this.connectionProvider = ConnectionProvider.builder("echo-api")
+                .maxConnections(settings.getMaxConnections())
+                .pendingAcquireMaxCount(settings.getPendingAcquireMaxCount())
+                .pendingAcquireTimeout(settings.getPendingAcquireTimeout())
+                .maxIdleTime(settings.getMaxIdleTime())
+                .evictInBackground(settings.getEvictionInterval())
+                .metrics(true)
+                .build();
+
+        HttpClient httpClient = HttpClient.create(connectionProvider)
+                .option(ChannelOption.CONNECT_TIMEOUT_MILLIS, (int) settings.getConnectTimeout().toMillis())
+                .responseTimeout(settings.getResponseTimeout())
+                .metrics(true, EchoApiClient::uriTag);
+        if (settings.isH2c()) {
+            httpClient = httpClient.protocol(HttpProtocol.H2C, HttpProtocol.HTTP11);
+        }
+
+        this.webClient = webClientBuilder.clone()
+                .baseUrl(proxyConfiguration.getEchoApiUrl())
+                .clientConnector(new ReactorClientHttpConnector(httpClient))
+                .codecs(codecs -> codecs.defaultCodecs().maxInMemorySize(settings.getMaxInMemorySize()))
+                .build();
+
+        log.info("Echo API client ready: url={}, maxConnections={}, h2c={}",
+                proxyConfiguration.getEchoApiUrl(), settings.getMaxConnections(), settings.isH2c());
+    }
+
+    /**
+     * Calls the Echo API match endpoint. Records stored with a match key are
+     * matched by it; older records are matched by method, path and query.
+     *
+     * @param sessionId Session ID
+     * @param method HTTP method
+     * @param path Request path
+     * @param queryParams Query parameters
+     * @param matchKey Canonical key of the request under the matching rules
+     * @param requestBodyHash Hash of the request body (may be null)
+     * @return Mono containing the matched TrafficRecord; errors with NotFound if there is no match
+     */
+    public Mono<TrafficRecord> findMatch(String sessionId, String method, String path, String queryParams,
+                                         String matchKey, String requestBodyHash) {
+        return webClient.get()
+                .uri(uriBuilder -> uriBuilder.path("/api/v1/internal/match")
+                        .queryParam("sessionId", "{sessionId}")
+                        .queryParam("method", "{method}")
+                        .queryParam("path", "{path}")
+                        .queryParam("queryParams", "{queryParams}")
+                        .queryParam("matchKey", "{matchKey}")
+                        .queryParamIfPresent("requestBodyHash", Optional.ofNullable(requestBodyHash))
+                        .build(sessionId, method, path, queryParams != null ? queryParams : "", matchKey))
+                .retrieve()
+                .bodyToMono(TrafficRecord.class);
+    }
+
+    /**
+     * Streams every record of a session, oldest first.
+     *
+     * @param sessionId Session ID
+     * @return Flux of traffic records
+     */
+    public Flux<TrafficRecord> streamSession(String sessionId) {
+        return webClient.get()
+                .uri(SESSION_RECORDS_PATH + "{sessionId}/records", sessionId)
+                .accept(MediaType.APPLICATION_NDJSON)
+                .retrieve()
+                .bodyToFlux(TrafficRecord.class);
+    }
+
+    @Override
+    public void destroy() {
+        connectionProvider.dispose();
+    }
+
+    /**
+     * Maps request URIs to low-cardinality metric tags.
+     */
+    private static String uriTag(String uri) {
+        if (uri.startsWith(SESSION_RECORDS_PATH)) {
+            return SESSION_RECORDS_PATH + "{sessionId}/records";
+        }
+        int queryStart = uri.indexOf('?');
+        return queryStart < 0 ? uri : uri.substring(0, queryStart);
+    }
+}
@@ -0,0 +1,38 @@
+package com.echo.proxy.service;
+
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Decides which occurrences of a per-request debug message are written: the
+ * first and then every {@code every}-th. The replay filter and lookups run on
+ * the event loop for every proxied request, so they log a sample and leave the
+ * totals to the {@code echo.replay.*} metrics.
+ */
+public final class LogSampler {
+
+    static final int DEFAULT_EVERY = 100;
+
+    private final int every;
+    private final AtomicLong occurrences = new AtomicLong();
+
+    public LogSampler() {
+        this(DEFAULT_EVERY);
+    }
+
+    public LogSampler(int every) {
+        if (every < 1) {
+            throw new IllegalArgumentException("every must be at least 1");
+        }
+        this.every = every;
+    }
+
+    /**
+     * Counts an occurrence. Callers check that the log level is enabled first,
+     * so disabled logging does not touch the shared counter.
+     *
+     * @return Whether this occurrence should be logged
+     */
+    public boolean sample() {
+        return occurrences.getAndIncrement() % every == 0;
+    }
+}
@@ -0,0 +1,240 @@
+package com.echo.proxy.service;
+
+import com.echo.proxy.config.ProxyConfiguration;
+import com.echo.proxy.model.MatchingRules;
+import com.echo.proxy.model.ReplayKey;
+import com.echo.proxy.model.ReplayResponse;
+import com.echo.proxy.model.TrafficRecord;
+import com.github.benmanes.caffeine.cache.Cache;
+import com.github.benmanes.caffeine.cache.Caffeine;
+import com.github.benmanes.caffeine.cache.RemovalCause;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.binder.cache.CaffeineCacheMetrics;
+import lombok.Value;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.stereotype.Component;
+import reactor.core.publisher.Mono;
+
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+
+/**
+ * Bounded in-process store of recordings made in REPLAY_OR_RECORD mode.
+ * A recording is published asynchronously, so it reaches neither Echo API nor
+ * a loaded replay index right away; holding it here lets the next identical
+ * request replay it instead of going upstream again. Entries are keyed like
+ * the replay index, so the same matching rules apply.
+ * <p>
+ * When the publisher thread has prepared a recording, it is
+ * {@linkplain #settle settled}: folded into the session's replay index and
+ * only then dropped from here. A recording whose body was spilled to disk or
+ * truncated is not held; its key is tracked as pending instead, and repeats
+ * wait for it to settle rather than going upstream again. Sessions without an
+ * index keep serving settled recordings from here, and an evicted recording
+ * is looked up in Echo API again.
+ */
+@Slf4j
+@Component
+public class RecordingOverlay {
+
+    /**
+     * Fixed weight charged to every entry on top of its payload size
+     */
+    private static final int ENTRY_OVERHEAD = 256;
+
+    private final MatchingRules matchingRules;
+    private final ReplayIndexService replayIndexService;
+    private final ReplayCache replayCache;
+    private final Cache<Key, Held> recordings;
+
+    /**
+     * Keys recorded but not held, completed when one of their recordings settles or is dropped
+     */
+    private final ConcurrentMap<Key, CompletableFuture<Void>> pending = new ConcurrentHashMap<>();
+
+    public RecordingOverlay(MatchingRules matchingRules, ReplayIndexService replayIndexService,
+                            ReplayCache replayCache, ProxyConfiguration proxyConfiguration,
+                            MeterRegistry meterRegistry) {
+        this.matchingRules = matchingRules;
+        this.replayIndexService = replayIndexService;
+        this.replayCache = replayCache;
+        this.recordings = Caffeine.newBuilder()
+                .maximumWeight(proxyConfiguration.getReadThrough().getMaximumWeight())
+                .weigher(RecordingOverlay::weigh)
+                .removalListener((Key key, Held held, RemovalCause cause) -> {
+                    if (cause.wasEvicted() && held != null) {
+                        // The lookup that missed before it was recorded cached the miss
+                        TrafficRecord trafficRecord = held.getTrafficRecord();
+                        replayCache.invalidate(ReplayKey.of(trafficRecord.getSessionId(),
+                                matchingRules.indexKey(trafficRecord.getMethod(), trafficRecord.getPath(),
+                                        trafficRecord.getQueryParams()),
+                                trafficRecord.getRequestBodyHash()));
+                    }
+                })
+                .recordStats()
+                .build();
+        CaffeineCacheMetrics.monitor(meterRegistry, recordings, "read_through");
+    }
+
+    /**
+     * Holds a new recording for replay. A recording whose body was spilled to
+     * disk or truncated is tracked as pending until it settles.
+     *
+     * @param trafficRecord Recorded traffic, before it is published
+     */
+    public void add(TrafficRecord trafficRecord) {
+        Key key = keyOf(trafficRecord);
+        if (trafficRecord.getResponseBodySpill() != null || Boolean.TRUE.equals(trafficRecord.getResponseBodyTruncated())) {
+            pending.computeIfAbsent(key, k -> new CompletableFuture<>());
+            return;
+        }
+        recordings.put(key, new Held(trafficRecord, ReplayResponse.from(trafficRecord)));
+    }
+
+    /**
+     * Folds prepared recordings into their sessions' replay indexes and drops
+     * them from here once an index has taken them. Called on the publisher
+     * thread after spilled bodies have been read back.
+     *
+     * @param trafficRecords Prepared read-through recordings, in recording order
+     */
+    public void settle(List<TrafficRecord> trafficRecords) {
+        Map<String, List<TrafficRecord>> bySession = new LinkedHashMap<>();
+        for (TrafficRecord trafficRecord : trafficRecords) {
+            bySession.computeIfAbsent(trafficRecord.getSessionId(), id -> new ArrayList<>()).add(trafficRecord);
+        }
+        bySession.forEach((sessionId, sessionRecords) -> {
+            boolean folded = replayIndexService.fold(sessionId, sessionRecords);
+            for (TrafficRecord trafficRecord : sessionRecords) {
+                Key key = keyOf(trafficRecord);
+                if (folded) {
+                    recordings.asMap().computeIfPresent(key,
+                            (k, held) -> held.getTrafficRecord() == trafficRecord ? null : held);
+                } else {
+                    // No index to serve it from, so it is held now that its body is in memory
+                    recordings.asMap().compute(key, (k, held) ->
+                            held == null || held.getTrafficRecord() == trafficRecord
+                                    ? new Held(trafficRecord, ReplayResponse.from(trafficRecord))
+                                    : held);
+                }
+                release(key);
+            }
+        });
+    }
+
+    /**
+     * Gives up on a recording that will not be published, so requests waiting
+     * for it are forwarded.
+     *
+     * @param trafficRecord Dropped read-through recording
+     */
+    public void discard(TrafficRecord trafficRecord) {
+        Key key = keyOf(trafficRecord);
+        recordings.asMap().computeIfPresent(key, (k, held) -> held.getTrafficRecord() == trafficRecord ? null : held);
+        release(key);
+    }
+
+    /**
+     * Finds the latest recording held for a request. A request with a body
+     * matches a recording of the same body first, as in the replay index.
+     *
+     * @param sessionId Session ID
+     * @param method HTTP method
+     * @param path Request path
+     * @param queryParams Raw query string (may be null)
+     * @param requestBodyHash Hash of the request body (may be null)
+     * @return Matching response, or null if none is held
+     */
+    public ReplayResponse find(String sessionId, String method, String path, String queryParams,
+                               String requestBodyHash) {
+        if (recordings.estimatedSize() == 0) {
+            return null;
+        }
+        if (requestBodyHash != null) {
+            Held match = recordings.getIfPresent(
+                    new Key(sessionId, matchingRules.indexKey(method, path, queryParams, requestBodyHash)));
+            if (match != null) {
+                return match.getResponse();
+            }
+        }
+        Held match = recordings.getIfPresent(new Key(sessionId, matchingRules.indexKey(method, path, queryParams)));
+        return match != null ? match.getResponse() : null;
+    }
+
+    /**
+     * Waits for a recording of a request that was made but not held.
+     *
+     * @param sessionId Session ID
+     * @param method HTTP method
+     * @param path Request path
+     * @param queryParams Raw query string (may be null)
+     * @param requestBodyHash Hash of the request body (may be null)
+     * @return Mono completing once the recording settles or is dropped, or null if none is pending
+     */
+    public Mono<Void> awaitPending(String sessionId, String method, String path, String queryParams,
+                                   String requestBodyHash) {
+        if (pending.isEmpty()) {
+            return null;
+        }
+        CompletableFuture<Void> settled = null;
+        if (requestBodyHash != null) {
+            settled = pending.get(new Key(sessionId, matchingRules.indexKey(method, path, queryParams, requestBodyHash)));
+        }
+        if (settled == null) {
+            settled = pending.get(new Key(sessionId, matchingRules.indexKey(method, path, queryParams)));
+        }
+        return settled != null ? Mono.fromFuture(settled, true) : null;
+    }
+
+    /**
+     * Drops every recording held or pending for a session.
+     *
+     * @param sessionId Session ID
+     */
+    public void invalidateSession(String sessionId) {
+        recordings.asMap().keySet().removeIf(key -> key.getSessionId().equals(sessionId));
+        pending.keySet().stream()
+                .filter(key -> key.getSessionId().equals(sessionId))
+                .forEach(this::release);
+        log.debug("Dropped read-through recordings for session: {}", sessionId);
+    }
+
+    private void release(Key key) {
+        CompletableFuture<Void> settled = pending.remove(key);
+        if (settled != null) {
+            settled.complete(null);
+        }
+    }
+
+    private Key keyOf(TrafficRecord trafficRecord) {
+        return new Key(trafficRecord.getSessionId(), matchingRules.indexKey(trafficRecord.getMethod(),
+                trafficRecord.getPath(), trafficRecord.getQueryParams(), trafficRecord.getRequestBodyHash()));
+    }
+
+    private static int weigh(Key key, Held held) {
+        return ENTRY_OVERHEAD + key.getIndexKey().length() + held.getResponse().getBodyLength()
+                + held.getResponse().getHeaders().size() * 64;
+    }
+
+    @Value
+    private static class Key {
+
+        String sessionId;
+        String indexKey;
+    }
+
+    /**
+     * A held recording and its response prepared for replay; the record identifies it when it settles.
+     */
+    @Value
+    private static class Held {
+
+        TrafficRecord trafficRecord;
+        ReplayResponse response;
+    }
+}
@@ -0,0 +1,155 @@
+package com.echo.proxy.service;
+
+import com.echo.proxy.config.ProxyConfiguration;
+import com.echo.proxy.model.ReplayKey;
+import com.echo.proxy.model.ReplayResponse;
+import com.github.benmanes.caffeine.cache.Cache;
+import com.github.benmanes.caffeine.cache.Caffeine;
+import com.github.benmanes.caffeine.cache.stats.CacheStats;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.binder.cache.CaffeineCacheMetrics;
+import lombok.Value;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.stereotype.Component;
+
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.Optional;
+
+/**
+ * Bounded in-process cache of replay lookup results.
+ * Both matches and misses are cached so repeated lookups for the same request
+ * are answered without leaving the proxy JVM.
+ */
+@Slf4j
+@Component
+public class ReplayCache {
+
+    /**
+     * Fixed weight charged to every entry on top of its payload size
+     */
+    private static final int ENTRY_OVERHEAD = 256;
+
+    private final boolean enabled;
+    private final Cache<ReplayKey, Optional<ReplayResponse>> cache;
+
+    public ReplayCache(ProxyConfiguration proxyConfiguration, MeterRegistry meterRegistry) {
+        ProxyConfiguration.ReplayCache settings = proxyConfiguration.getReplayCache();
+        this.enabled = settings.isEnabled();
+        this.cache = Caffeine.newBuilder()
+                .maximumWeight(settings.getMaximumWeight())
+                .weigher(ReplayCache::weigh)
+                .expireAfterWrite(settings.getExpireAfterWrite())
+                .recordStats()
+                .build();
+        CaffeineCacheMetrics.monitor(meterRegistry, cache, "replay");
+    }
+
+    /**
+     * Returns the cached lookup result for a key.
+     *
+     * @param key Replay key
+     * @return The cached match or miss, or {@link Lookup#notCached()} if the key is not cached
+     */
+    public Lookup get(ReplayKey key) {
+        if (!enabled) {
+            return Lookup.notCached();
+        }
+        Optional<ReplayResponse> result = cache.getIfPresent(key);
+        return result != null ? new Lookup(true, result) : Lookup.notCached();
+    }
+
+    /**
+     * Caches a lookup result.
+     *
+     * @param key Replay key
+     * @param result Matched response, or empty for a confirmed miss
+     */
+    public void put(ReplayKey key, Optional<ReplayResponse> result) {
+        if (enabled) {
+            cache.put(key, result);
+        }
+    }
+
+    /**
+     * Drops the cached lookup of one key.
+     *
+     * @param key Replay key
+     */
+    public void invalidate(ReplayKey key) {
+        cache.invalidate(key);
+    }
+
+    /**
+     * Drops every cached lookup belonging to a session. This scans every cached
+     * key, which is fine for the rare session switches and index loads that call it,
+     * and keeps one weight bound shared by all sessions.
+     *
+     * @param sessionId Session ID
+     * @return Number of entries removed
+     */
+    public int invalidateSession(String sessionId) {
+        int before = cache.asMap().size();
+        cache.asMap().keySet().removeIf(key -> key.getSessionId().equals(sessionId));
+        int removed = before - cache.asMap().size();
+        log.info("Invalidated {} cached replay entries for session: {}", removed, sessionId);
+        return removed;
+    }
+
+    /**
+     * Drops every cached lookup.
+     */
+    public void invalidateAll() {
+        cache.invalidateAll();
+        log.info("Invalidated all cached replay entries");
+    }
+
+    /**
+     * Returns a snapshot of the cache counters.
+     *
+     * @return Map of statistic names to values
+     */
+    public Map<String, Object> stats() {
+        CacheStats stats = cache.stats();
+        Map<String, Object> response = new LinkedHashMap<>();
+        response.put("enabled", enabled);
+        response.put("size", cache.estimatedSize());
+        response.put("hits", stats.hitCount());
+        response.put("misses", stats.missCount());
+        response.put("hitRate", stats.hitRate());
+        response.put("evictions", stats.evictionCount());
+        return response;
+    }
+
+    private static int weigh(ReplayKey key, Optional<ReplayResponse> result) {
+        int weight = ENTRY_OVERHEAD + key.getMatchKey().length();
+        if (result.isPresent()) {
+            ReplayResponse response = result.get();
+            weight += response.getBodyLength() + response.getHeaders().size() * 64;
+        }
+        return weight;
+    }
+
+    /**
+     * Outcome of a cache lookup: not cached, a cached match or a cached miss.
+     */
+    @Value
+    public static class Lookup {
+
+        private static final Lookup NOT_CACHED = new Lookup(false, Optional.empty());
+
+        /**
+         * Whether the key was cached; if not, the result is empty and says nothing
+         */
+        boolean cached;
+
+        /**
+         * Cached match, or empty for a cached miss
+         */
+        Optional<ReplayResponse> result;
+
+        public static Lookup notCached() {
+            return NOT_CACHED;
+        }
+    }
+}
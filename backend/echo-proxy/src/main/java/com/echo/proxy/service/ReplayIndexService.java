@@ -0,0 +1,376 @@
+package com.echo.proxy.service;
+
+import com.echo.proxy.config.EchoMode;
+import com.echo.proxy.config.ProxyConfiguration;
+import com.echo.proxy.model.MatchingRules;
+import com.echo.proxy.model.ReplayIndex;
+import com.echo.proxy.model.SessionArchive;
+import com.echo.proxy.model.TrafficRecord;
+import com.github.benmanes.caffeine.cache.Cache;
+import com.github.benmanes.caffeine.cache.Caffeine;
+import com.github.benmanes.caffeine.cache.Expiry;
+import com.github.benmanes.caffeine.cache.RemovalCause;
+import com.github.benmanes.caffeine.cache.Ticker;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.boot.context.event.ApplicationReadyEvent;
+import org.springframework.context.event.EventListener;
+import org.springframework.stereotype.Service;
+import reactor.core.scheduler.Schedulers;
+
+import java.io.IOException;
+import java.nio.file.InvalidPathException;
+import java.nio.file.Path;
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Service that bulk-loads whole sessions from Echo API into immutable
+ * in-memory replay indexes, so REPLAY lookups need no network hop.
+ * Loading is asynchronous; until a session's index is ready, lookups fall
+ * back to the per-request Echo API path. A session can also be mapped from a
+ * local archive file, in which case Echo API is never consulted for it.
+ * Sessions selected per request are loaded lazily on their first lookup.
+ * Indexes loaded from Echo API are dropped after the configured idle timeout
+ * and beyond the configured number of sessions, and are loaded again on
+ * a later lookup. Lookups start a load of the same session at most once per
+ * reload backoff, so more sessions than fit cannot keep evicting and
+ * reloading each other; in between they use the per-request path. A failed
+ * load is forgotten after the same backoff. Archived sessions are never dropped. Recordings made in
+ * REPLAY_OR_RECORD mode are folded into their session's index as they are
+ * published, so they replay without reloading the session.
+ */
+@Slf4j
+@Service
+public class ReplayIndexService {
+
+    private final ProxyConfiguration proxyConfiguration;
+    private final EchoApiClient echoApiClient;
+    private final MatchingRules matchingRules;
+    private final ReplayCache replayCache;
+
+    private final ConcurrentMap<String, IndexState> sessions;
+
+    /**
+     * Sessions whose lookups started a load within the reload backoff
+     */
+    private final Cache<String, Boolean> recentLoads;
+    private final AtomicLong generations = new AtomicLong();
+
+    public ReplayIndexService(ProxyConfiguration proxyConfiguration, EchoApiClient echoApiClient,
+                              MatchingRules matchingRules, ReplayCache replayCache) {
+        this(proxyConfiguration, echoApiClient, matchingRules, replayCache, Ticker.systemTicker());
+    }
+
+    ReplayIndexService(ProxyConfiguration proxyConfiguration, EchoApiClient echoApiClient,
+                       MatchingRules matchingRules, ReplayCache replayCache, Ticker ticker) {
+        this.proxyConfiguration = proxyConfiguration;
+        this.echoApiClient = echoApiClient;
+        this.matchingRules = matchingRules;
+        this.replayCache = replayCache;
+        ProxyConfiguration.Preload preload = proxyConfiguration.getPreload();
+        Cache<String, IndexState> cache = Caffeine.newBuilder()
+                .maximumWeight(preload.getMaxSessions())
+                .weigher((String sessionId, IndexState state) -> state.archive != null ? 0 : 1)
+                .expireAfter(new IdleExpiry(preload.getIdleTimeout().toNanos(), preload.getReloadBackoff().toNanos()))
+                .ticker(ticker)
+                // Maintenance over a handful of sessions is cheap, so it runs on the calling thread
+                .executor(Runnable::run)
+                .removalListener((String sessionId, IndexState state, RemovalCause cause) -> {
+                    if (cause.wasEvicted()) {
+                        log.info("Dropped replay index for session {} ({})", sessionId, cause);
+                    }
+                })
+                .build();
+        this.sessions = cache.asMap();
+        this.recentLoads = Caffeine.newBuilder()
+                .expireAfterWrite(preload.getReloadBackoff())
+                .maximumSize(10_000)
+                .ticker(ticker)
+                .build();
+    }
+
+    /**
+     * Loading status of a session index.
+     */
+    public enum Status {
+        LOADING,
+        READY,
+        FAILED
+    }
+
+    /**
+     * Maps the configured session archive, if any, and preloads the configured
+     * session when the proxy starts in a replaying mode.
+     */
+    @EventListener(ApplicationReadyEvent.class)
+    public void onApplicationReady() {
+        String archivePath = proxyConfiguration.getArchive().getPath();
+        if (archivePath != null && !archivePath.isBlank()) {
+            try {
+                ReplayIndex index = loadArchive(Path.of(archivePath));
+                if (!index.getSessionId().equals(proxyConfiguration.getSessionId())) {
+                    log.info("Switching session ID to archived session: {}", index.getSessionId());
+                    proxyConfiguration.setSessionId(index.getSessionId());
+                }
+            } catch (IOException | InvalidPathException e) {
+                log.error("Failed to load session archive {}: {}", archivePath, e.getMessage());
+            }
+        }
+        EchoMode mode = proxyConfiguration.getMode();
+        if (mode == EchoMode.REPLAY || mode == EchoMode.REPLAY_OR_RECORD) {
+            preload(proxyConfiguration.getSessionId());
+        }
+    }
+
+    /**
+     * Returns the index for a session if one has been loaded.
+     * While a session is being reloaded its previous index keeps being served.
+     *
+     * @param sessionId Session ID
+     * @return ReplayIndex, or null if none is available yet
+     */
+    public ReplayIndex getReadyIndex(String sessionId) {
+        IndexState state = sessions.get(sessionId);
+        return state != null ? state.index : null;
+    }
+
+    /**
+     * Starts an asynchronous bulk load of a session. A newer load for the same
+     * session supersedes any load still in flight.
+     *
+     * @param sessionId Session ID
+     */
+    public void preload(String sessionId) {
+        if (!proxyConfiguration.getPreload().isEnabled()) {
+            return;
+        }
+        IndexState existing = sessions.get(sessionId);
+        if (existing != null && existing.archive != null) {
+            log.debug("Session {} is served from archive {}, not reloading", sessionId, existing.archive);
+            return;
+        }
+
+        long generation = generations.incrementAndGet();
+        sessions.compute(sessionId, (id, current) ->
+                new IndexState(Status.LOADING, current != null ? current.index : null, generation, null, null,
+                        List.of()));
+        replayCache.invalidateSession(sessionId);
+        load(sessionId, generation);
+    }
+
+    /**
+     * Starts an asynchronous bulk load of a session that is not loaded.
+     * Concurrent callers start at most one load, and no load starts for a
+     * session this method already started one for within the reload backoff.
+     * A failed load is retried once it has expired after the backoff.
+     *
+     * @param sessionId Session ID
+     */
+    public void preloadIfAbsent(String sessionId) {
+        if (!proxyConfiguration.getPreload().isEnabled() || sessions.containsKey(sessionId)) {
+            return;
+        }
+        if (recentLoads.asMap().putIfAbsent(sessionId, Boolean.TRUE) != null) {
+            return;
+        }
+        long generation = generations.incrementAndGet();
+        if (sessions.putIfAbsent(sessionId, new IndexState(Status.LOADING, null, generation, null, null, List.of())) == null) {
+            load(sessionId, generation);
+        }
+    }
+
+    private void load(String sessionId, long generation) {
+        log.info("Preloading replay index for session: {}", sessionId);
+
+        long startedAt = System.nanoTime();
+        echoApiClient.streamSession(sessionId)
+                .publishOn(Schedulers.boundedElastic())
+                .collect(() -> ReplayIndex.builder(sessionId, matchingRules), ReplayIndex.Builder::add)
+                .map(ReplayIndex.Builder::build)
+                .subscribe(
+                        index -> {
+                            complete(sessionId, generation, Status.READY, index, null);
+                            log.info("Replay index ready for session: {} ({} keys in {} ms)",
+                                    sessionId, index.size(), (System.nanoTime() - startedAt) / 1_000_000);
+                        },
+                        error -> {
+                            complete(sessionId, generation, Status.FAILED, null, error.getMessage());
+                            log.warn("Failed to preload replay index for session {}: {}", sessionId, error.getMessage());
+                        });
+    }
+
+    /**
+     * Maps a session archive and serves its session from it. The archive
+     * replaces any index of the same session, including one still loading.
+     *
+     * @param path Archive file
+     * @return Index of the archived session
+     * @throws IOException if the archive cannot be read
+     */
+    public ReplayIndex loadArchive(Path path) throws IOException {
+        long startedAt = System.nanoTime();
+        ReplayIndex index = SessionArchive.load(path, matchingRules);
+        String archive = path.toAbsolutePath().toString();
+        sessions.put(index.getSessionId(),
+                new IndexState(Status.READY, index, generations.incrementAndGet(), null, archive, List.of()));
+        replayCache.invalidateSession(index.getSessionId());
+        log.info("Replay index ready for session: {} from archive {} ({} keys in {} ms)",
+                index.getSessionId(), archive, index.size(), (System.nanoTime() - startedAt) / 1_000_000);
+        return index;
+    }
+
+    /**
+     * Adds new recordings of a session to its index. A session still loading
+     * also adds them to the index it is loading once that is ready, since
+     * Echo API may not have stored them yet when it was queried.
+     *
+     * @param sessionId Session ID
+     * @param trafficRecords Recordings in recording order, their bodies read back from any spill files
+     * @return true if an index took the recordings, false if the session has none to serve them from
+     */
+    public boolean fold(String sessionId, List<TrafficRecord> trafficRecords) {
+        boolean[] folded = {false};
+        sessions.computeIfPresent(sessionId, (id, current) -> {
+            if (current.archive != null) {
+                return current;
+            }
+            folded[0] = current.index != null;
+            List<TrafficRecord> pending = List.of();
+            if (current.status == Status.LOADING) {
+                pending = new ArrayList<>(current.folded);
+                pending.addAll(trafficRecords);
+            }
+            return new IndexState(current.status, current.index != null ? current.index.plus(trafficRecords) : null,
+                    current.generation, current.error, null, pending);
+        });
+        return folded[0];
+    }
+
+    /**
+     * Drops the index of a session.
+     *
+     * @param sessionId Session ID
+     */
+    public void evict(String sessionId) {
+        if (sessions.remove(sessionId) != null) {
+            log.info("Evicted replay index for session: {}", sessionId);
+        }
+    }
+
+    /**
+     * Describes the index state of a session.
+     *
+     * @param sessionId Session ID
+     * @return Map with status, key count and load time
+     */
+    public Map<String, Object> status(String sessionId) {
+        IndexState state = sessions.get(sessionId);
+        Map<String, Object> response = new LinkedHashMap<>();
+        response.put("sessionId", sessionId);
+        response.put("status", state != null ? state.status.name() : "NOT_LOADED");
+        response.put("ready", state != null && state.status == Status.READY);
+        if (state != null && state.index != null) {
+            response.put("keys", state.index.size());
+        }
+        if (state != null && state.archive != null) {
+            response.put("archive", state.archive);
+        }
+        if (state != null && state.error != null) {
+            response.put("error", state.error);
+        }
+        if (state != null) {
+            response.put("updatedAt", state.updatedAt.toString());
+        }
+        return response;
+    }
+
+    /**
+     * Publishes the outcome of a load unless a newer load has started since.
+     * A failed load keeps serving the previously loaded index, if any.
+     * Recordings folded in while loading are added to a loaded index.
+     */
+    private void complete(String sessionId, long generation, Status status, ReplayIndex index, String error) {
+        sessions.computeIfPresent(sessionId, (id, current) -> {
+            if (current.generation != generation) {
+                return current;
+            }
+            if (index == null) {
+                return new IndexState(status, current.index, generation, error, null, List.of());
+            }
+            ReplayIndex loaded = current.folded.isEmpty() ? index : index.plus(current.folded);
+            return new IndexState(status, loaded, generation, error, null, List.of());
+        });
+    }
+
+    /**
+     * Expires session indexes that have not been looked up for the idle
+     * timeout. A failed load without an index to fall back on expires a fixed
+     * time after it failed, however often it is looked up. Archived sessions
+     * never expire.
+     */
+    private static final class IdleExpiry implements Expiry<String, IndexState> {
+
+        private final long idleNanos;
+        private final long failedNanos;
+
+        private IdleExpiry(long idleNanos, long failedNanos) {
+            this.idleNanos = idleNanos;
+            this.failedNanos = failedNanos;
+        }
+
+        @Override
+        public long expireAfterCreate(String sessionId, IndexState state, long currentTime) {
+            if (state.archive != null) {
+                return Long.MAX_VALUE;
+            }
+            return isFailed(state) ? failedNanos : idleNanos;
+        }
+
+        @Override
+        public long expireAfterUpdate(String sessionId, IndexState state, long currentTime, long currentDuration) {
+            return expireAfterCreate(sessionId, state, currentTime);
+        }
+
+        @Override
+        public long expireAfterRead(String sessionId, IndexState state, long currentTime, long currentDuration) {
+            return isFailed(state) ? currentDuration : expireAfterCreate(sessionId, state, currentTime);
+        }
+
+        private static boolean isFailed(IndexState state) {
+            return state.status == Status.FAILED && state.index == null;
+        }
+    }
+
+    /**
+     * Immutable snapshot of one session's index and its loading status.
+     */
+    private static final class IndexState {
+
+        private final Status status;
+        private final ReplayIndex index;
+        private final long generation;
+        private final String error;
+        private final String archive;
+
+        /**
+         * Recordings folded in while the session is loading, added to the index it loads
+         */
+        private final List<TrafficRecord> folded;
+        private final Instant updatedAt = Instant.now();
+
+        private IndexState(Status status, ReplayIndex index, long generation, String error, String archive,
+                           List<TrafficRecord> folded) {
+            this.status = status;
+            this.index = index;
+            this.generation = generation;
+            this.error = error;
+            this.archive = archive;
+            this.folded = folded;
+        }
+    }
+}
@@ -0,0 +1,57 @@
+package com.echo.proxy.service;
+
+import com.echo.proxy.config.ProxyConfiguration;
+import com.echo.proxy.model.LatencyDistribution;
+import com.echo.proxy.model.ReplayIndex;
+import com.echo.proxy.model.ReplayResponse;
+import lombok.RequiredArgsConstructor;
+import org.springframework.stereotype.Component;
+
+import java.time.Duration;
+import java.util.concurrent.ThreadLocalRandom;
+
+/**
+ * Computes how long a replayed response is held back so that REPLAY mode
+ * reproduces the upstream timing observed while recording.
+ */
+@Component
+@RequiredArgsConstructor
+public class ReplayLatency {
+
+    private final ProxyConfiguration proxyConfiguration;
+    private final ReplayIndexService replayIndexService;
+
+    /**
+     * Returns the delay to apply before writing a replayed response.
+     * Distribution sampling needs a preloaded index and otherwise falls back
+     * to the duration recorded with the response itself.
+     *
+     * @param sessionId Session ID
+     * @param method HTTP method
+     * @param path Request path
+     * @param response Response about to be replayed
+     * @return Scaled and capped delay, zero when no delay applies
+     */
+    public Duration delayFor(String sessionId, String method, String path, ReplayResponse response) {
+        ProxyConfiguration.Latency.Settings latency = proxyConfiguration.getLatency().settings();
+        Duration recorded = switch (latency.getMode()) {
+            case NONE -> null;
+            case RECORDED -> response.getUpstreamDuration();
+            case DISTRIBUTION -> sample(sessionId, method, path, response);
+        };
+        if (recorded == null || recorded.isZero() || latency.getScale() <= 0) {
+            return Duration.ZERO;
+        }
+
+        Duration scaled = Duration.ofNanos((long) (recorded.toNanos() * latency.getScale()));
+        return scaled.compareTo(latency.getMaxDelay()) > 0 ? latency.getMaxDelay() : scaled;
+    }
+
+    private Duration sample(String sessionId, String method, String path, ReplayResponse response) {
+        ReplayIndex index = replayIndexService.getReadyIndex(sessionId);
+        LatencyDistribution distribution = index != null ? index.latencyDistribution(method, path) : null;
+        return distribution != null
+                ? distribution.sample(ThreadLocalRandom.current())
+                : response.getUpstreamDuration();
+    }
+}
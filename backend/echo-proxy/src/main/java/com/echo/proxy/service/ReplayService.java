@@ -1,45 +1,226 @@
 package com.echo.proxy.service;
 
 import com.echo.proxy.config.ProxyConfiguration;
-import com.echo.proxy.model.TrafficRecord;
-import lombok.RequiredArgsConstructor;
+import com.echo.proxy.model.MatchingRules;
+import com.echo.proxy.model.ReplayIndex;
+import com.echo.proxy.model.ReplayKey;
+import com.echo.proxy.model.ReplayResponse;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
 import lombok.extern.slf4j.Slf4j;
 import org.springframework.stereotype.Service;
-import org.springframework.web.reactive.function.client.WebClient;
+import org.springframework.web.reactive.function.client.WebClientResponseException;
 import reactor.core.publisher.Mono;
 
+import java.util.Map;
+import java.util.Optional;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicReference;
+
 /**
  * Service for retrieving recorded responses from Echo API during REPLAY mode.
  */
 @Slf4j
 @Service
-@RequiredArgsConstructor
 public class ReplayService {
 
+    private final EchoApiClient echoApiClient;
+    private final ReplayCache replayCache;
+    private final ReplayIndexService replayIndexService;
+    private final SequenceCursors sequenceCursors;
+    private final RecordingOverlay recordingOverlay;
+    private final MatchingRules matchingRules;
     private final ProxyConfiguration proxyConfiguration;
-    private final WebClient.Builder webClientBuilder;
 
     /**
-     * Fetches a matching recorded response from Echo API.
+     * Echo API lookups currently in flight, shared by concurrent callers for the same key
+     */
+    private final Map<ReplayKey, Mono<Optional<ReplayResponse>>> inFlightLookups = new ConcurrentHashMap<>();
+
+    private final Counter remoteLookups;
+    private final Counter coalescedLookups;
+    private final Timer lookupHits;
+    private final Timer lookupMisses;
+    private final LogSampler lookupLog = new LogSampler();
+
+    public ReplayService(EchoApiClient echoApiClient,
+                         ReplayCache replayCache,
+                         ReplayIndexService replayIndexService,
+                         SequenceCursors sequenceCursors,
+                         RecordingOverlay recordingOverlay,
+                         MatchingRules matchingRules,
+                         ProxyConfiguration proxyConfiguration,
+                         MeterRegistry meterRegistry) {
+        this.echoApiClient = echoApiClient;
+        this.replayCache = replayCache;
+        this.replayIndexService = replayIndexService;
+        this.sequenceCursors = sequenceCursors;
+        this.recordingOverlay = recordingOverlay;
+        this.matchingRules = matchingRules;
+        this.proxyConfiguration = proxyConfiguration;
+        this.remoteLookups = Counter.builder("echo.replay.lookups.remote")
+                .description("Replay lookups sent to Echo API")
+                .register(meterRegistry);
+        this.coalescedLookups = Counter.builder("echo.replay.lookups.coalesced")
+                .description("Replay lookups that joined an identical lookup already in flight")
+                .register(meterRegistry);
+        meterRegistry.gauge("echo.replay.lookups.inflight", inFlightLookups, Map::size);
+        this.lookupHits = lookupTimer(meterRegistry, "hit");
+        this.lookupMisses = lookupTimer(meterRegistry, "miss");
+    }
+
+    private static Timer lookupTimer(MeterRegistry meterRegistry, String outcome) {
+        return Timer.builder("echo.replay.lookup")
+                .description("Time to find the recorded response for a replayed request, by outcome")
+                .tag("outcome", outcome)
+                .register(meterRegistry);
+    }
+
+    /**
+     * Fetches a matching recorded response. A preloaded session index answers
+     * without any network hop; otherwise the in-process cache is consulted
+     * before calling Echo API. Both paths match by the canonical key the
+     * configured matching rules give the request, which Echo API compares with
+     * the key stored when it was recorded; records stored before match keys
+     * existed are matched exactly. Concurrent identical lookups share one Echo API call.
+     * With sequencing enabled, repeated calls for a key step through its recordings
+     * in recorded order; this needs a preloaded index, and the per-request path
+     * always returns the most recent recording. A lookup for a session without
+     * an index starts loading one for later lookups. Requests neither path
+     * matches fall back to recordings made in REPLAY_OR_RECORD mode that have
+     * not been folded into an index yet. Every lookup is timed as {@code echo.replay.lookup}.
      *
      * @param sessionId Session ID
      * @param method HTTP method
      * @param path Request path
      * @param queryParams Query parameters
-     * @return Mono containing the matched TrafficRecord, or empty if no match found
+     * @param requestBodyHash Hash of the request body (may be null)
+     * @return Mono containing the matched response prepared for replay, or empty if no match found
+     */
+    public Mono<ReplayResponse> findMatchingResponse(String sessionId, String method, String path, String queryParams,
+                                                     String requestBodyHash) {
+        return Mono.defer(() -> {
+            long startNanos = System.nanoTime();
+            return findRecordedResponse(sessionId, method, path, queryParams, requestBodyHash)
+                    .switchIfEmpty(Mono.defer(() ->
+                            findReadThroughResponse(sessionId, method, path, queryParams, requestBodyHash)))
+                    .doOnSuccess(response -> (response != null ? lookupHits : lookupMisses)
+                            .record(System.nanoTime() - startNanos, TimeUnit.NANOSECONDS));
+        });
+    }
+
+    /**
+     * Finds a recording made in REPLAY_OR_RECORD mode that no index holds yet.
+     * A recording that was made but is not held in memory is waited for, up to
+     * the pending timeout, and then looked up again.
+     */
+    private Mono<ReplayResponse> findReadThroughResponse(String sessionId, String method, String path,
+                                                         String queryParams, String requestBodyHash) {
+        ReplayResponse held = recordingOverlay.find(sessionId, method, path, queryParams, requestBodyHash);
+        if (held != null) {
+            return Mono.just(held);
+        }
+        Mono<Void> settled = recordingOverlay.awaitPending(sessionId, method, path, queryParams, requestBodyHash);
+        if (settled == null) {
+            return Mono.empty();
+        }
+        return settled
+                .timeout(proxyConfiguration.getReadThrough().getPendingTimeout(), Mono.empty())
+                .then(Mono.defer(() -> findRecordedResponse(sessionId, method, path, queryParams, requestBodyHash)))
+                .switchIfEmpty(Mono.fromSupplier(() ->
+                        recordingOverlay.find(sessionId, method, path, queryParams, requestBodyHash)));
+    }
+
+    private Mono<ReplayResponse> findRecordedResponse(String sessionId, String method, String path, String queryParams,
+                                                      String requestBodyHash) {
+        ReplayIndex index = replayIndexService.getReadyIndex(sessionId);
+        if (index != null) {
+            ReplayIndex.Entry entry = index.lookup(method, path, queryParams, requestBodyHash);
+            if (entry == null) {
+                return Mono.empty();
+            }
+            ProxyConfiguration.Sequencing.Settings sequencing = proxyConfiguration.getSequencing().settings();
+            return Mono.just(sequencing.isEnabled()
+                    ? sequenceCursors.next(sessionId, entry, sequencing.getPolicy())
+                    : entry.latest());
+        }
+        replayIndexService.preloadIfAbsent(sessionId);
+
+        ReplayKey key = ReplayKey.of(sessionId, matchingRules.indexKey(method, path, queryParams), requestBodyHash);
+
+        ReplayCache.Lookup cached = replayCache.get(key);
+        if (cached.isCached()) {
+            if (log.isDebugEnabled() && lookupLog.sample()) {
+                log.debug("Replay cache hit for {} {}", method, path);
+            }
+            return Mono.justOrEmpty(cached.getResult());
+        }
+
+        return coalescedLookup(key, method, path, queryParams).flatMap(Mono::justOrEmpty);
+    }
+
+    /**
+     * Returns the in-flight lookup for a key, starting one if none is running.
+     * The shared lookup leaves the in-flight map once it completes, after its
+     * result has been written to the cache.
+     *
+     * @param key Replay key
+     * @param method HTTP method
+     * @param path Raw request path to send to Echo API
+     * @param queryParams Raw query parameters to send to Echo API
+     * @return Shared Mono of the lookup result
+     */
+    private Mono<Optional<ReplayResponse>> coalescedLookup(ReplayKey key, String method, String path,
+                                                           String queryParams) {
+        Mono<Optional<ReplayResponse>> inFlight = inFlightLookups.get(key);
+        if (inFlight != null) {
+            coalescedLookups.increment();
+            return inFlight;
+        }
+
+        // Only this lookup may leave the map; a newer one for the same key may already be registered
+        AtomicReference<Mono<Optional<ReplayResponse>>> self = new AtomicReference<>();
+        Mono<Optional<ReplayResponse>> lookup = remoteLookup(key, method, path, queryParams)
+                .doFinally(signal -> inFlightLookups.remove(key, self.get()))
+                .cache();
+        self.set(lookup);
+
+        inFlight = inFlightLookups.putIfAbsent(key, lookup);
+        if (inFlight != null) {
+            coalescedLookups.increment();
+            return inFlight;
+        }
+        remoteLookups.increment();
+        return lookup;
+    }
+
+    /**
+     * Looks a key up in Echo API and caches the outcome. Confirmed misses are
+     * cached as empty results; transport errors resolve to empty without caching.
+     *
+     * @param key Replay key
+     * @param method HTTP method
+     * @param path Raw request path to send to Echo API
+     * @param queryParams Raw query parameters to send to Echo API
+     * @return Mono of the lookup result, never empty
      */
-    public Mono<TrafficRecord> findMatchingResponse(String sessionId, String method, String path, String queryParams) {
-        String echoApiUrl = proxyConfiguration.getEchoApiUrl();
-
-        return webClientBuilder.build()
-                .get()
-                .uri(echoApiUrl + "/api/v1/internal/match" +
-                        "?sessionId={sessionId}&method={method}&path={path}&queryParams={queryParams}",
-                        sessionId, method, path, queryParams != null ? queryParams : "")
-                .retrieve()
-                .bodyToMono(TrafficRecord.class)
-                .doOnSuccess(record -> log.info("Found matching response for {} {}", method, path))
-                .doOnError(error -> log.warn("No matching response found for {} {}: {}", method, path, error.getMessage()))
-                .onErrorResume(e -> Mono.empty());
+    private Mono<Optional<ReplayResponse>> remoteLookup(ReplayKey key, String method, String path,
+                                                        String queryParams) {
+        return echoApiClient.findMatch(key.getSessionId(), method, path, queryParams, key.getMatchKey(),
+                        key.getRequestBodyHash())
+                .doOnNext(record -> {
+                    if (log.isDebugEnabled() && lookupLog.sample()) {
+                        log.debug("Found matching response for {}", key.getMatchKey());
+                    }
+                })
+                .map(ReplayResponse::from)
+                .map(Optional::of)
+                .onErrorResume(WebClientResponseException.NotFound.class, e -> Mono.just(Optional.empty()))
+                .doOnNext(result -> replayCache.put(key, result))
+                .doOnError(error -> log.warn("Replay lookup failed for {}: {}",
+                        key.getMatchKey(), error.getMessage()))
+                .onErrorReturn(Optional.empty());
     }
-}
\ No newline at end of file
+}
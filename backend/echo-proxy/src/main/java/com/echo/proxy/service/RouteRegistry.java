@@ -0,0 +1,77 @@
+package com.echo.proxy.service;
+
+import com.echo.proxy.config.ProxyConfiguration;
+import com.echo.proxy.model.EchoRoute;
+import com.echo.proxy.model.RouteTable;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.stereotype.Service;
+
+import java.util.List;
+import java.util.concurrent.atomic.AtomicReference;
+
+/**
+ * Service holding the named upstream routes. The routes live in an immutable
+ * {@link RouteTable} that is replaced on every change, so request threads
+ * match against it without locking.
+ */
+@Slf4j
+@Service
+public class RouteRegistry {
+
+    private final AtomicReference<RouteTable> table = new AtomicReference<>(RouteTable.empty());
+
+    public RouteRegistry(ProxyConfiguration proxyConfiguration) {
+        List<EchoRoute> routes = proxyConfiguration.getRoutes().stream()
+                .map(route -> EchoRoute.of(route.getName(), route.getHost(), route.getPathPrefix(),
+                        route.getTargetUrl(), route.getSessionNamespace(), route.getMode(), route.isStripPrefix()))
+                .toList();
+        table.set(RouteTable.of(routes));
+        routes.forEach(route -> log.info("Route {}: {}{} -> {}", route.getName(),
+                route.getHost() != null ? route.getHost() : "*", route.getPathPrefix(), route.getTargetUri()));
+    }
+
+    /**
+     * Finds the route of a request.
+     *
+     * @param host Request host (may be null)
+     * @param path Request path
+     * @return Matching route, or null if the request goes to the default target
+     */
+    public EchoRoute match(String host, String path) {
+        return table.get().match(host, path);
+    }
+
+    /**
+     * Returns all routes.
+     *
+     * @return Routes in the order they were added
+     */
+    public List<EchoRoute> routes() {
+        return table.get().routes();
+    }
+
+    /**
+     * Adds a route, or replaces the route of the same name.
+     *
+     * @param route Route
+     */
+    public void put(EchoRoute route) {
+        table.updateAndGet(current -> current.with(route));
+        log.info("Updated route {}: {}{} -> {}", route.getName(),
+                route.getHost() != null ? route.getHost() : "*", route.getPathPrefix(), route.getTargetUri());
+    }
+
+    /**
+     * Removes a route.
+     *
+     * @param name Route name
+     * @return true if the route existed
+     */
+    public boolean remove(String name) {
+        boolean removed = table.getAndUpdate(current -> current.without(name)).get(name) != null;
+        if (removed) {
+            log.info("Removed route {}", name);
+        }
+        return removed;
+    }
+}
@@ -0,0 +1,69 @@
+package com.echo.proxy.service;
+
+import com.echo.proxy.config.SequencePolicy;
+import com.echo.proxy.model.ReplayIndex;
+import com.echo.proxy.model.ReplayResponse;
+import org.springframework.stereotype.Component;
+
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Per-session call counters for sequenced replay. Each (session, index key)
+ * pair owns a cursor that is advanced atomically on every call, so concurrent
+ * callers for the same key each receive a distinct position without locking.
+ */
+@Component
+public class SequenceCursors {
+
+    private final Map<String, Map<String, AtomicLong>> sessions = new ConcurrentHashMap<>();
+
+    /**
+     * Claims the next recording of an index entry.
+     *
+     * @param sessionId Session ID
+     * @param entry Index entry holding the recordings in recorded order
+     * @param policy What to return once every recording has been served
+     * @return Recording for this call
+     */
+    public ReplayResponse next(String sessionId, ReplayIndex.Entry entry, SequencePolicy policy) {
+        int size = entry.size();
+        if (size == 1) {
+            return entry.get(0);
+        }
+
+        long call = cursor(sessionId, entry.getKey()).getAndIncrement();
+        int position = policy == SequencePolicy.WRAP
+                ? (int) (call % size)
+                : (int) Math.min(call, size - 1);
+        return entry.get(position);
+    }
+
+    /**
+     * Rewinds every cursor of a session to the first recording.
+     *
+     * @param sessionId Session ID
+     * @return Number of cursors discarded
+     */
+    public int reset(String sessionId) {
+        Map<String, AtomicLong> cursors = sessions.remove(sessionId);
+        return cursors != null ? cursors.size() : 0;
+    }
+
+    /**
+     * Rewinds every cursor of every session.
+     */
+    public void resetAll() {
+        sessions.clear();
+    }
+
+    private AtomicLong cursor(String sessionId, String key) {
+        Map<String, AtomicLong> cursors = sessions.get(sessionId);
+        if (cursors == null) {
+            cursors = sessions.computeIfAbsent(sessionId, id -> new ConcurrentHashMap<>());
+        }
+        AtomicLong cursor = cursors.get(key);
+        return cursor != null ? cursor : cursors.computeIfAbsent(key, k -> new AtomicLong());
+    }
+}
@@ -0,0 +1,241 @@
+package com.echo.proxy.service;
+
+import com.echo.proxy.config.ProxyConfiguration;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.MeterRegistry;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.DisposableBean;
+import org.springframework.stereotype.Component;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.UUID;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Writes spilled bodies to disk on a dedicated thread, so that creating,
+ * writing and deleting spill files never runs on an event loop. Callers hand
+ * over copies of the bytes, which are written in the order they were handed
+ * over. The bytes waiting to be written are bounded; a write that would go
+ * over the bound is refused and the caller truncates its body instead.
+ * <p>
+ * A spill file is named when it is {@linkplain #create created}, but the file
+ * itself only appears once its first bytes are written. Threads that read or
+ * delete a handed-over file first {@linkplain #awaitClosed wait} for it to be
+ * closed. Pending bytes are exposed as {@code echo.capture.spill.pending}.
+ */
+@Slf4j
+@Component
+public class SpillFileWriter implements DisposableBean {
+
+    /**
+     * Longest time a reader waits for a spill file to be closed
+     */
+    private static final long AWAIT_TIMEOUT_SECONDS = 30;
+
+    private final Path directory;
+    private final String prefix = "echo-capture-" + UUID.randomUUID() + "-";
+    private final long maxPendingBytes;
+    private final AtomicLong pendingBytes = new AtomicLong();
+    private final AtomicLong sequence = new AtomicLong();
+    private final ExecutorService executor;
+    private final Counter refused;
+
+    /**
+     * Files handed out and not yet closed, completed by the writer thread once they are
+     */
+    private final ConcurrentMap<Path, CompletableFuture<Void>> open = new ConcurrentHashMap<>();
+
+    public SpillFileWriter(ProxyConfiguration proxyConfiguration, MeterRegistry meterRegistry) {
+        ProxyConfiguration.Capture capture = proxyConfiguration.getCapture();
+        this.directory = capture.getSpillDirectory() != null && !capture.getSpillDirectory().isBlank()
+                ? Path.of(capture.getSpillDirectory())
+                : Path.of(System.getProperty("java.io.tmpdir"));
+        this.maxPendingBytes = capture.getMaxPendingSpillSize();
+        this.executor = Executors.newSingleThreadExecutor(task -> {
+            Thread thread = new Thread(task, "echo-spill-writer");
+            thread.setDaemon(true);
+            return thread;
+        });
+        this.refused = Counter.builder("echo.capture.spill.refused")
+                .description("Spill writes refused because too many bytes were waiting to be written")
+                .register(meterRegistry);
+        meterRegistry.gauge("echo.capture.spill.pending", pendingBytes);
+    }
+
+    /**
+     * Names a new spill file without touching the file system.
+     *
+     * @return Spill file handle
+     */
+    public Spill create() {
+        Spill spill = new Spill(directory.resolve(prefix + sequence.incrementAndGet() + ".body"));
+        open.put(spill.path, spill.closed);
+        return spill;
+    }
+
+    /**
+     * Queues bytes to be appended to a spill file.
+     *
+     * @param spill Spill file handle
+     * @param bytes Bytes to append; the caller no longer touches the array
+     * @return false if the bytes were refused because too many are waiting to be written
+     */
+    public boolean write(Spill spill, byte[] bytes) {
+        long pending = pendingBytes.addAndGet(bytes.length);
+        // A write larger than the bound on its own is still taken when nothing else is waiting
+        if (pending > maxPendingBytes && pending != bytes.length) {
+            pendingBytes.addAndGet(-bytes.length);
+            refused.increment();
+            return false;
+        }
+        execute(() -> {
+            try {
+                spill.append(bytes);
+            } finally {
+                pendingBytes.addAndGet(-bytes.length);
+            }
+        });
+        return true;
+    }
+
+    /**
+     * Queues closing a spill file once the bytes handed over before are written.
+     *
+     * @param spill Spill file handle
+     * @return Path of the spill file, which readers must {@linkplain #awaitClosed await}
+     */
+    public Path close(Spill spill) {
+        execute(() -> finish(spill, false));
+        return spill.path;
+    }
+
+    /**
+     * Queues closing and deleting a spill file.
+     *
+     * @param spill Spill file handle
+     */
+    public void discard(Spill spill) {
+        execute(() -> finish(spill, true));
+    }
+
+    /**
+     * Waits until a spill file has been written and closed. Returns at once for
+     * files this writer does not have open. Never call it on an event loop.
+     *
+     * @param path Spill file
+     */
+    public void awaitClosed(Path path) {
+        CompletableFuture<Void> closed = open.get(path);
+        if (closed == null) {
+            return;
+        }
+        try {
+            closed.get(AWAIT_TIMEOUT_SECONDS, TimeUnit.SECONDS);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        } catch (ExecutionException | TimeoutException e) {
+            log.warn("Spill file {} was not closed in time: {}", path, e.getMessage());
+        }
+    }
+
+    private void finish(Spill spill, boolean delete) {
+        spill.closeChannel();
+        if (delete) {
+            deleteQuietly(spill.path);
+        }
+        open.remove(spill.path);
+        spill.closed.complete(null);
+    }
+
+    /**
+     * Runs a task on the writer thread, or on the caller once the writer has shut down.
+     */
+    private void execute(Runnable task) {
+        try {
+            executor.execute(task);
+        } catch (RejectedExecutionException e) {
+            task.run();
+        }
+    }
+
+    private static void deleteQuietly(Path file) {
+        try {
+            Files.deleteIfExists(file);
+        } catch (IOException e) {
+            log.warn("Failed to delete spill file {}: {}", file, e.getMessage());
+        }
+    }
+
+    /**
+     * Lets the writer thread finish the queued writes.
+     */
+    @Override
+    public void destroy() throws InterruptedException {
+        executor.shutdown();
+        if (!executor.awaitTermination(AWAIT_TIMEOUT_SECONDS, TimeUnit.SECONDS)) {
+            log.warn("Spill writer did not finish within {}s", AWAIT_TIMEOUT_SECONDS);
+        }
+    }
+
+    /**
+     * A spill file of one body. Its channel is only touched by the writer thread.
+     * A file that cannot be written is deleted, and later writes to it are skipped;
+     * whoever reads it back finds the body missing and marks it truncated.
+     */
+    public static final class Spill {
+
+        private final Path path;
+        private final CompletableFuture<Void> closed = new CompletableFuture<>();
+        private FileChannel channel;
+        private boolean failed;
+
+        private Spill(Path path) {
+            this.path = path;
+        }
+
+        private void append(byte[] bytes) {
+            if (failed) {
+                return;
+            }
+            try {
+                if (channel == null) {
+                    channel = FileChannel.open(path, StandardOpenOption.CREATE_NEW, StandardOpenOption.WRITE);
+                }
+                ByteBuffer byteBuffer = ByteBuffer.wrap(bytes);
+                while (byteBuffer.hasRemaining()) {
+                    channel.write(byteBuffer);
+                }
+            } catch (IOException e) {
+                log.warn("Failed to spill captured body, dropping it: {}", e.getMessage());
+                failed = true;
+                closeChannel();
+                deleteQuietly(path);
+            }
+        }
+
+        private void closeChannel() {
+            if (channel != null) {
+                try {
+                    channel.close();
+                } catch (IOException e) {
+                    log.warn("Failed to close spill file {}: {}", path, e.getMessage());
+                }
+                channel = null;
+            }
+        }
+    }
+}
@@ -0,0 +1,428 @@
+package com.echo.proxy.service;
+
+import com.echo.proxy.config.OverflowPolicy;
+import com.echo.proxy.config.ProxyConfiguration;
+import com.echo.proxy.model.TrafficRecord;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.DistributionSummary;
+import io.micrometer.core.instrument.MeterRegistry;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.context.SmartLifecycle;
+import org.springframework.stereotype.Component;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.locks.LockSupport;
+
+/**
+ * Bounded, lock-free hand-off between proxied exchanges and RabbitMQ.
+ * Recording threads, usually Netty event loops, only enqueue; a single
+ * dedicated thread serializes and publishes records in batches, so a slow or
+ * unavailable broker never holds up proxied traffic. The queue is a {@link ConcurrentLinkedQueue}
+ * bounded by a separately reserved record count and byte size, and a full queue is
+ * resolved by the configured {@link OverflowPolicy}. Spill files of records dropped
+ * on a recording thread are deleted later by the publisher thread, so file system
+ * calls stay off the event loop. Batches the broker does not accept, and
+ * batches sent while the queue is above its high watermark, go to the
+ * {@link TrafficSpool} instead of being dropped. Recordings made in
+ * REPLAY_OR_RECORD mode are prepared and settled in the {@link RecordingOverlay}
+ * before their batch is sent, so they replay from the session's index.
+ */
+@Slf4j
+@Component
+public class TrafficPublishQueue implements SmartLifecycle {
+
+    private static final long IDLE_PARK_NANOS = TimeUnit.MILLISECONDS.toNanos(100);
+    private static final long BLOCK_PARK_NANOS = TimeUnit.MICROSECONDS.toNanos(200);
+
+    /**
+     * Approximate serialized size of a record's headers and metadata
+     */
+    private static final long RECORD_OVERHEAD = 1024;
+
+    private final TrafficPublisher trafficPublisher;
+    private final TrafficSpool trafficSpool;
+    private final RecordingOverlay recordingOverlay;
+    private final SpillFileWriter spillWriter;
+    private final ProxyConfiguration.Publishing publishing;
+    private final ProxyConfiguration.Spool spooling;
+    private final ConcurrentLinkedQueue<TrafficRecord> queue = new ConcurrentLinkedQueue<>();
+    private final AtomicInteger size = new AtomicInteger();
+    private final AtomicLong queuedBytes = new AtomicLong();
+
+    /**
+     * Records dropped on recording threads whose spill files the publisher thread deletes
+     */
+    private final ConcurrentLinkedQueue<TrafficRecord> discarded = new ConcurrentLinkedQueue<>();
+    private final Counter enqueued;
+    private final Counter published;
+    private final Counter failed;
+    private final Counter spooled;
+    private final Counter droppedOldest;
+    private final Counter droppedNewest;
+    private final DistributionSummary batchSizes;
+
+    private volatile boolean running;
+    private volatile Thread publisherThread;
+
+    /**
+     * Until when batches bypass the broker after a failed publish, only touched by the publisher thread
+     */
+    private long spoolUntilNanos;
+
+    public TrafficPublishQueue(TrafficPublisher trafficPublisher, TrafficSpool trafficSpool,
+                               RecordingOverlay recordingOverlay, SpillFileWriter spillWriter,
+                               ProxyConfiguration proxyConfiguration, MeterRegistry meterRegistry) {
+        this.trafficPublisher = trafficPublisher;
+        this.trafficSpool = trafficSpool;
+        this.recordingOverlay = recordingOverlay;
+        this.spillWriter = spillWriter;
+        this.publishing = proxyConfiguration.getPublishing();
+        this.spooling = proxyConfiguration.getSpool();
+        this.spoolUntilNanos = System.nanoTime();
+        this.enqueued = Counter.builder("echo.publish.enqueued")
+                .description("Traffic records handed to the publisher queue")
+                .register(meterRegistry);
+        this.published = Counter.builder("echo.publish.published")
+                .description("Traffic records published to RabbitMQ")
+                .register(meterRegistry);
+        this.failed = Counter.builder("echo.publish.failed")
+                .description("Traffic records the broker did not accept")
+                .register(meterRegistry);
+        this.spooled = Counter.builder("echo.publish.spooled")
+                .description("Traffic records handed to the local spool instead of RabbitMQ")
+                .register(meterRegistry);
+        this.droppedOldest = droppedCounter(meterRegistry, "oldest");
+        this.droppedNewest = droppedCounter(meterRegistry, "newest");
+        this.batchSizes = DistributionSummary.builder("echo.publish.batch.size")
+                .description("Traffic records per published message")
+                .register(meterRegistry);
+        meterRegistry.gauge("echo.publish.queue.size", size);
+        meterRegistry.gauge("echo.publish.queue.bytes", queuedBytes);
+    }
+
+    private static Counter droppedCounter(MeterRegistry meterRegistry, String which) {
+        return Counter.builder("echo.publish.dropped")
+                .description("Traffic records discarded because the publisher queue was full")
+                .tag("record", which)
+                .register(meterRegistry);
+    }
+
+    /**
+     * Queues a traffic record for publishing. Never blocks unless the overflow
+     * policy is BLOCK, and then for at most the block timeout.
+     *
+     * @param trafficRecord Traffic record
+     */
+    public void submit(TrafficRecord trafficRecord) {
+        long bytes = estimatedSize(trafficRecord);
+        if (!reserve(bytes) && !makeRoom(bytes)) {
+            droppedNewest.increment();
+            discardLater(trafficRecord);
+            return;
+        }
+        queue.offer(trafficRecord);
+        enqueued.increment();
+        wakePublisher();
+    }
+
+    private void wakePublisher() {
+        Thread thread = publisherThread;
+        if (thread != null) {
+            LockSupport.unpark(thread);
+        }
+    }
+
+    /**
+     * Returns the number of queued records.
+     *
+     * @return Queue size
+     */
+    public int size() {
+        return size.get();
+    }
+
+    /**
+     * Reserves a slot and the estimated size of a record.
+     *
+     * @param bytes Estimated size of the record
+     * @return true if both fit in the queue
+     */
+    private boolean reserve(long bytes) {
+        int capacity = publishing.getQueueCapacity();
+        while (true) {
+            int current = size.get();
+            if (current >= capacity) {
+                return false;
+            }
+            if (size.compareAndSet(current, current + 1)) {
+                break;
+            }
+        }
+        long maxBytes = publishing.getQueueMaxBytes();
+        while (true) {
+            long current = queuedBytes.get();
+            if (current > 0 && current + bytes > maxBytes) {
+                size.decrementAndGet();
+                return false;
+            }
+            if (queuedBytes.compareAndSet(current, current + bytes)) {
+                return true;
+            }
+        }
+    }
+
+    /**
+     * Takes the oldest queued record and releases its reservation.
+     *
+     * @return Oldest record, or null if the queue is empty
+     */
+    private TrafficRecord take() {
+        TrafficRecord trafficRecord = queue.poll();
+        if (trafficRecord != null) {
+            size.decrementAndGet();
+            queuedBytes.addAndGet(-estimatedSize(trafficRecord));
+        }
+        return trafficRecord;
+    }
+
+    /**
+     * Applies the overflow policy to a full queue.
+     *
+     * @param bytes Estimated size of the new record
+     * @return true if a slot was reserved for the new record
+     */
+    private boolean makeRoom(long bytes) {
+        OverflowPolicy policy = publishing.getOverflowPolicy();
+        if (policy == OverflowPolicy.DROP_OLDEST) {
+            do {
+                TrafficRecord oldest = take();
+                if (oldest != null) {
+                    droppedOldest.increment();
+                    discardLater(oldest);
+                }
+            } while (!reserve(bytes));
+            return true;
+        }
+        if (policy == OverflowPolicy.BLOCK) {
+            long deadline = System.nanoTime() + publishing.getBlockTimeout().toNanos();
+            while (System.nanoTime() < deadline) {
+                LockSupport.parkNanos(this, BLOCK_PARK_NANOS);
+                if (reserve(bytes)) {
+                    return true;
+                }
+            }
+        }
+        return false;
+    }
+
+    /**
+     * Publisher thread loop. Records are grouped into batches that are sent
+     * when they reach the record or byte limit, when the first record has
+     * waited for the linger time, or on shutdown.
+     */
+    private void drain() {
+        List<TrafficRecord> batch = new ArrayList<>();
+        long batchBytes = 0;
+        long deadline = 0;
+        while (running || !queue.isEmpty() || !batch.isEmpty()) {
+            deleteDiscarded();
+            TrafficRecord trafficRecord = take();
+            if (trafficRecord != null) {
+                if (batch.isEmpty()) {
+                    deadline = System.nanoTime() + publishing.getLinger().toNanos();
+                }
+                batch.add(trafficRecord);
+                batchBytes += estimatedSize(trafficRecord);
+                if (batch.size() >= publishing.getBatchMaxRecords() || batchBytes >= publishing.getBatchMaxBytes()) {
+                    publish(batch);
+                    batchBytes = 0;
+                }
+                continue;
+            }
+            if (batch.isEmpty()) {
+                LockSupport.parkNanos(this, IDLE_PARK_NANOS);
+                continue;
+            }
+            long remaining = deadline - System.nanoTime();
+            if (remaining <= 0 || !running) {
+                publish(batch);
+                batchBytes = 0;
+            } else {
+                LockSupport.parkNanos(this, remaining);
+            }
+        }
+        deleteDiscarded();
+    }
+
+    /**
+     * Publishes a batch, or spools it while the broker is failing or the
+     * queue is above the spool high watermark.
+     */
+    private void publish(List<TrafficRecord> batch) {
+        List<TrafficRecord> trafficRecords = List.copyOf(batch);
+        batch.clear();
+        settleReadThrough(trafficRecords);
+        if (trafficSpool.isEnabled() && shouldSpool()) {
+            spool(trafficRecords);
+            return;
+        }
+        try {
+            trafficPublisher.publishBatch(trafficRecords);
+            published.increment(trafficRecords.size());
+            batchSizes.record(trafficRecords.size());
+        } catch (Exception e) {
+            failed.increment(trafficRecords.size());
+            log.warn("Failed to publish {} traffic records: {}", trafficRecords.size(), e.getMessage());
+            spoolUntilNanos = System.nanoTime() + spooling.getReplayInterval().toNanos();
+            spool(trafficRecords);
+        }
+    }
+
+    /**
+     * Reads back the bodies of read-through recordings and folds them into
+     * their sessions' indexes, whether the batch is then published or spooled.
+     */
+    private void settleReadThrough(List<TrafficRecord> trafficRecords) {
+        List<TrafficRecord> readThrough = trafficRecords.stream()
+                .filter(TrafficRecord::isReadThrough)
+                .toList();
+        if (readThrough.isEmpty()) {
+            return;
+        }
+        readThrough.forEach(trafficPublisher::prepare);
+        try {
+            recordingOverlay.settle(readThrough);
+        } catch (RuntimeException e) {
+            log.warn("Failed to settle {} read-through recordings: {}", readThrough.size(), e.getMessage());
+        }
+    }
+
+    private boolean shouldSpool() {
+        return System.nanoTime() - spoolUntilNanos < 0
+                || size.get() >= spooling.getHighWatermark() * publishing.getQueueCapacity();
+    }
+
+    private void spool(List<TrafficRecord> trafficRecords) {
+        if (trafficSpool.append(trafficRecords)) {
+            spooled.increment(trafficRecords.size());
+        } else {
+            log.warn("Dropping {} traffic records", trafficRecords.size());
+        }
+        trafficRecords.forEach(this::discard);
+    }
+
+    private static long estimatedSize(TrafficRecord trafficRecord) {
+        return RECORD_OVERHEAD
+                + bodySize(trafficRecord.getRequestBody(), trafficRecord.getRequestBodySpill(),
+                        trafficRecord.getRequestBodySize())
+                + bodySize(trafficRecord.getResponseBody(), trafficRecord.getResponseBodySpill(),
+                        trafficRecord.getResponseBodySize());
+    }
+
+    private static long bodySize(byte[] body, Path spillFile, Long originalSize) {
+        if (spillFile != null) {
+            return originalSize != null ? originalSize : 0;
+        }
+        return body != null ? body.length : 0;
+    }
+
+    /**
+     * Hands a record dropped on a recording thread to the publisher thread,
+     * which deletes its spill files. Requests waiting for a dropped
+     * read-through recording are released at once.
+     *
+     * @param trafficRecord Dropped record
+     */
+    private void discardLater(TrafficRecord trafficRecord) {
+        if (trafficRecord.isReadThrough()) {
+            recordingOverlay.discard(trafficRecord);
+        }
+        if (trafficRecord.getRequestBodySpill() != null || trafficRecord.getResponseBodySpill() != null) {
+            discarded.offer(trafficRecord);
+            wakePublisher();
+        }
+    }
+
+    private void deleteDiscarded() {
+        TrafficRecord trafficRecord;
+        while ((trafficRecord = discarded.poll()) != null) {
+            discard(trafficRecord);
+        }
+    }
+
+    /**
+     * Deletes the spill files of a record that will not be published.
+     *
+     * @param trafficRecord Discarded record
+     */
+    private void discard(TrafficRecord trafficRecord) {
+        deleteSpill(trafficRecord.getRequestBodySpill());
+        deleteSpill(trafficRecord.getResponseBodySpill());
+    }
+
+    private void deleteSpill(Path spillFile) {
+        if (spillFile == null) {
+            return;
+        }
+        spillWriter.awaitClosed(spillFile);
+        try {
+            Files.deleteIfExists(spillFile);
+        } catch (IOException e) {
+            log.warn("Failed to delete spill file {}: {}", spillFile, e.getMessage());
+        }
+    }
+
+    @Override
+    public void start() {
+        running = true;
+        Thread thread = new Thread(this::drain, "echo-traffic-publisher");
+        thread.setDaemon(true);
+        publisherThread = thread;
+        thread.start();
+    }
+
+    /**
+     * Lets the publisher thread finish the queued records, waiting up to the
+     * shutdown timeout.
+     */
+    @Override
+    public void stop() {
+        running = false;
+        Thread thread = publisherThread;
+        if (thread == null) {
+            return;
+        }
+        LockSupport.unpark(thread);
+        try {
+            thread.join(publishing.getShutdownTimeout().toMillis());
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+        if (thread.isAlive()) {
+            log.warn("Publisher did not drain within {}; {} traffic records not published",
+                    publishing.getShutdownTimeout(), size.get());
+        }
+        publisherThread = null;
+    }
+
+    @Override
+    public boolean isRunning() {
+        return running;
+    }
+
+    /**
+     * Starts before and stops after the web server, so every recorded exchange is queued for publishing.
+     */
+    @Override
+    public int getPhase() {
+        return SmartLifecycle.DEFAULT_PHASE - 4096;
+    }
+}
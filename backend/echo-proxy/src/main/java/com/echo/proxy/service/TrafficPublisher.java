@@ -1,30 +1,92 @@
 package com.echo.proxy.service;
 
+import com.echo.proxy.config.BodyCodec;
+import com.echo.proxy.config.ProxyConfiguration;
 import com.echo.proxy.config.RabbitMQConfiguration;
+import com.echo.proxy.model.ContentCodings;
+import com.echo.proxy.model.MatchingRules;
+import com.echo.proxy.model.TrafficBatch;
 import com.echo.proxy.model.TrafficRecord;
-import lombok.RequiredArgsConstructor;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
 import lombok.extern.slf4j.Slf4j;
 import org.springframework.amqp.rabbit.core.RabbitTemplate;
 import org.springframework.stereotype.Service;
 
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.time.Duration;
+import java.time.Instant;
+import java.util.List;
+
 /**
  * Service responsible for publishing recorded traffic to RabbitMQ.
+ * Called from the {@link TrafficPublishQueue} thread, never from an event loop.
+ * Broker calls are timed as {@code echo.publish.send}, and the time from
+ * recording to publishing of each record as {@code echo.publish.lag}.
  */
 @Slf4j
 @Service
-@RequiredArgsConstructor
 public class TrafficPublisher {
 
     private final RabbitTemplate rabbitTemplate;
+    private final ProxyConfiguration proxyConfiguration;
+    private final MatchingRules matchingRules;
+    private final SpillFileWriter spillWriter;
+    private final Timer sendTimer;
+    private final Timer lagTimer;
+
+    public TrafficPublisher(RabbitTemplate rabbitTemplate, ProxyConfiguration proxyConfiguration,
+                            MatchingRules matchingRules, SpillFileWriter spillWriter,
+                            MeterRegistry meterRegistry) {
+        this.rabbitTemplate = rabbitTemplate;
+        this.proxyConfiguration = proxyConfiguration;
+        this.matchingRules = matchingRules;
+        this.spillWriter = spillWriter;
+        this.sendTimer = Timer.builder("echo.publish.send")
+                .description("Time RabbitMQ takes to accept a published message")
+                .register(meterRegistry);
+        this.lagTimer = Timer.builder("echo.publish.lag")
+                .description("Time from recording a record to publishing it")
+                .register(meterRegistry);
+    }
+
+    /**
+     * Publishes traffic records as one RabbitMQ message: a single record as it
+     * is, several as a {@link TrafficBatch}.
+     *
+     * @param trafficRecords Traffic records, oldest first
+     */
+    public void publishBatch(List<TrafficRecord> trafficRecords) {
+        if (trafficRecords.size() == 1) {
+            publishTraffic(trafficRecords.get(0));
+            return;
+        }
+        trafficRecords.forEach(this::prepare);
+        try {
+            sendTimer.record(() -> rabbitTemplate.convertAndSend(RabbitMQConfiguration.TRAFFIC_QUEUE,
+                    new TrafficBatch(trafficRecords)));
+            trafficRecords.forEach(this::recordLag);
+            log.debug("Published batch of {} traffic records", trafficRecords.size());
+        } catch (Exception e) {
+            log.error("Failed to publish traffic batch: {}", e.getMessage(), e);
+            throw new RuntimeException("Failed to publish traffic batch", e);
+        }
+    }
 
     /**
      * Publishes a traffic record to the RabbitMQ queue for asynchronous persistence.
+     * The record is {@linkplain #prepare prepared} first.
      *
      * @param trafficRecord The traffic record to publish
      */
     public void publishTraffic(TrafficRecord trafficRecord) {
+        prepare(trafficRecord);
         try {
-            rabbitTemplate.convertAndSend(RabbitMQConfiguration.TRAFFIC_QUEUE, trafficRecord);
+            sendTimer.record(() -> rabbitTemplate.convertAndSend(RabbitMQConfiguration.TRAFFIC_QUEUE, trafficRecord));
+            recordLag(trafficRecord);
             log.debug("Published traffic record for session: {} path: {}",
                     trafficRecord.getSessionId(), trafficRecord.getPath());
         } catch (Exception e) {
@@ -32,4 +94,94 @@ public class TrafficPublisher {
             throw new RuntimeException("Failed to publish traffic record", e);
         }
     }
-}
\ No newline at end of file
+
+    private void recordLag(TrafficRecord trafficRecord) {
+        if (trafficRecord.getTimestamp() != null) {
+            lagTimer.record(Duration.between(trafficRecord.getTimestamp(), Instant.now()));
+        }
+    }
+
+    /**
+     * Makes a record self-contained and ready to send: spilled bodies are read
+     * back and their spill files deleted, an uncompressed response body is
+     * compressed with the configured codec, and the request's canonical match
+     * key is stored so that Echo API matches it the way a replay index would.
+     * Preparing a record twice is harmless.
+     *
+     * @param trafficRecord Traffic record
+     */
+    public void prepare(TrafficRecord trafficRecord) {
+        materializeSpilledBodies(trafficRecord);
+        compressResponseBody(trafficRecord);
+        if (trafficRecord.getMatchKey() == null) {
+            trafficRecord.setMatchKey(matchingRules.indexKey(
+                    trafficRecord.getMethod(), trafficRecord.getPath(), trafficRecord.getQueryParams()));
+        }
+    }
+
+    /**
+     * Reads spilled bodies back, at most the configured published size of each.
+     * A body cut short is marked truncated; its recorded size stays the original size.
+     */
+    private void materializeSpilledBodies(TrafficRecord trafficRecord) {
+        int limit = proxyConfiguration.getCapture().getMaxPublishedSize();
+        if (trafficRecord.getRequestBodySpill() != null) {
+            byte[] body = readSpill(trafficRecord.getRequestBodySpill(), limit);
+            trafficRecord.setRequestBody(body);
+            trafficRecord.setRequestBodySpill(null);
+            if (isShort(body, trafficRecord.getRequestBodySize())) {
+                trafficRecord.setRequestBodyTruncated(true);
+            }
+        }
+        if (trafficRecord.getResponseBodySpill() != null) {
+            byte[] body = readSpill(trafficRecord.getResponseBodySpill(), limit);
+            trafficRecord.setResponseBody(body);
+            trafficRecord.setResponseBodySpill(null);
+            if (isShort(body, trafficRecord.getResponseBodySize())) {
+                trafficRecord.setResponseBodyTruncated(true);
+            }
+        }
+    }
+
+    private static boolean isShort(byte[] body, Long originalSize) {
+        return body == null || (originalSize != null && body.length < originalSize);
+    }
+
+    private void compressResponseBody(TrafficRecord trafficRecord) {
+        ProxyConfiguration.Compression compression = proxyConfiguration.getCompression();
+        byte[] body = trafficRecord.getResponseBody();
+        if (compression.getCodec() == BodyCodec.NONE || trafficRecord.getResponseBodyEncoding() != null
+                || body == null || body.length < compression.getMinSize()) {
+            return;
+        }
+        String coding = compression.getCodec() == BodyCodec.GZIP ? ContentCodings.GZIP : ContentCodings.DEFLATE;
+        byte[] encoded = ContentCodings.encode(coding, body);
+        if (encoded.length < body.length) {
+            trafficRecord.setResponseBody(encoded);
+            trafficRecord.setResponseBodyEncoding(coding);
+        }
+    }
+
+    /**
+     * Reads the start of a spill file, once the spill writer has closed it, and deletes it.
+     *
+     * @param spillFile Spill file
+     * @param limit Most bytes to read
+     * @return Up to limit bytes of the file, or null if it could not be read
+     */
+    private byte[] readSpill(Path spillFile, int limit) {
+        spillWriter.awaitClosed(spillFile);
+        try (InputStream in = Files.newInputStream(spillFile)) {
+            return in.readNBytes((int) Math.min(limit, Files.size(spillFile)));
+        } catch (IOException e) {
+            log.warn("Failed to read spilled body {}: {}", spillFile, e.getMessage());
+            return null;
+        } finally {
+            try {
+                Files.deleteIfExists(spillFile);
+            } catch (IOException e) {
+                log.warn("Failed to delete spill file {}: {}", spillFile, e.getMessage());
+            }
+        }
+    }
+}
@@ -0,0 +1,467 @@
+package com.echo.proxy.service;
+
+import com.echo.proxy.config.ProxyConfiguration;
+import com.echo.proxy.model.TrafficRecord;
+import com.fasterxml.jackson.core.JsonProcessingException;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.MeterRegistry;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.context.SmartLifecycle;
+import org.springframework.stereotype.Component;
+
+import java.io.BufferedInputStream;
+import java.io.DataInputStream;
+import java.io.EOFException;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.stream.Stream;
+import java.util.zip.CRC32;
+
+/**
+ * Durable, append-only spool for recorded traffic that cannot be published
+ * right away. Records are appended by the publisher thread to segment files
+ * as length-prefixed, CRC-checked JSON; appends within one fsync interval
+ * share a single fsync. A background thread replays closed segments to
+ * RabbitMQ in order and deletes each one once it has been fully published.
+ *
+ * <p>Replay is at-least-once: a segment that was partly published when the
+ * proxy stopped is replayed from its start on the next run. A torn or corrupt
+ * record, usually left at the end of a segment by a crash during an append,
+ * ends that segment; the bytes after it are logged and dropped. A record whose
+ * JSON cannot be read is skipped. Both count as {@code echo.spool.dropped}.
+ */
+@Slf4j
+@Component
+public class TrafficSpool implements SmartLifecycle {
+
+    private static final String SEGMENT_PREFIX = "spool-";
+    private static final String SEGMENT_SUFFIX = ".seg";
+    private static final int RECORD_HEADER_LENGTH = Integer.BYTES * 2;
+
+    private final TrafficPublisher trafficPublisher;
+    private final ObjectMapper objectMapper;
+    private final ProxyConfiguration.Spool settings;
+    private final ProxyConfiguration.Publishing publishing;
+    private final Path directory;
+    private final AtomicLong spooledBytes = new AtomicLong();
+    private final Counter appended;
+    private final Counter replayed;
+    private final Counter dropped;
+
+    /**
+     * Guards the segment being written
+     */
+    private final Object lock = new Object();
+    private boolean initialized;
+    private long nextSequence;
+    private Path segmentPath;
+    private FileChannel segment;
+    private long segmentLength;
+    private boolean dirty;
+    private long lastForceNanos;
+
+    /**
+     * Replay position, only touched by the spool thread
+     */
+    private Path replayingSegment;
+    private long replayedOffset;
+
+    private volatile boolean running;
+    private ScheduledExecutorService executor;
+
+    public TrafficSpool(TrafficPublisher trafficPublisher, ObjectMapper objectMapper,
+                        ProxyConfiguration proxyConfiguration, MeterRegistry meterRegistry) {
+        this.trafficPublisher = trafficPublisher;
+        this.objectMapper = objectMapper;
+        this.settings = proxyConfiguration.getSpool();
+        this.publishing = proxyConfiguration.getPublishing();
+        this.directory = settings.getDirectory() != null && !settings.getDirectory().isBlank()
+                ? Path.of(settings.getDirectory())
+                : Path.of(System.getProperty("java.io.tmpdir"), "echo-spool");
+        this.appended = Counter.builder("echo.spool.appended")
+                .description("Traffic records written to the local spool")
+                .register(meterRegistry);
+        this.replayed = Counter.builder("echo.spool.replayed")
+                .description("Spooled traffic records published to RabbitMQ")
+                .register(meterRegistry);
+        this.dropped = Counter.builder("echo.spool.dropped")
+                .description("Traffic records the spool could not take or could not read back")
+                .register(meterRegistry);
+        meterRegistry.gauge("echo.spool.bytes", spooledBytes);
+    }
+
+    /**
+     * Checks whether records that cannot be published are spooled.
+     *
+     * @return true if the spool is enabled
+     */
+    public boolean isEnabled() {
+        return settings.isEnabled();
+    }
+
+    /**
+     * Appends records to the spool. Records are prepared first, so spill files
+     * are folded in and the spooled copy is self-contained.
+     *
+     * @param trafficRecords Traffic records, oldest first
+     * @return true if the records were spooled, false if they were not and must be discarded
+     */
+    public boolean append(List<TrafficRecord> trafficRecords) {
+        if (!settings.isEnabled()) {
+            return false;
+        }
+        // Each record is framed on its own and written with one gathering write, so no buffer spans the batch
+        ByteBuffer[] frames = new ByteBuffer[trafficRecords.size() * 2];
+        long length = 0;
+        try {
+            int i = 0;
+            for (TrafficRecord trafficRecord : trafficRecords) {
+                trafficPublisher.prepare(trafficRecord);
+                byte[] payload = objectMapper.writeValueAsBytes(trafficRecord);
+                frames[i++] = ByteBuffer.allocate(RECORD_HEADER_LENGTH).putInt(payload.length).putInt(crc(payload)).flip();
+                frames[i++] = ByteBuffer.wrap(payload);
+                length += RECORD_HEADER_LENGTH + payload.length;
+            }
+        } catch (IOException e) {
+            log.error("Failed to serialize {} traffic records for the spool: {}", trafficRecords.size(), e.getMessage());
+            dropped.increment(trafficRecords.size());
+            return false;
+        }
+
+        synchronized (lock) {
+            try {
+                initialize();
+                if (spooledBytes.get() + length > settings.getMaxSize()) {
+                    log.warn("Spool is full at {} bytes; dropping {} traffic records",
+                            spooledBytes.get(), trafficRecords.size());
+                    dropped.increment(trafficRecords.size());
+                    return false;
+                }
+                if (segment != null && segmentLength + length > settings.getSegmentSize()) {
+                    closeSegment();
+                }
+                if (segment == null) {
+                    openSegment();
+                }
+                long remaining = length;
+                while (remaining > 0) {
+                    remaining -= segment.write(frames);
+                }
+                segmentLength += length;
+                spooledBytes.addAndGet(length);
+                dirty = true;
+                if (System.nanoTime() - lastForceNanos >= settings.getFsyncInterval().toNanos()) {
+                    force();
+                }
+            } catch (IOException e) {
+                log.error("Failed to append {} traffic records to the spool: {}", trafficRecords.size(), e.getMessage());
+                dropped.increment(trafficRecords.size());
+                return false;
+            }
+        }
+        appended.increment(trafficRecords.size());
+        return true;
+    }
+
+    /**
+     * Returns the size of all segment files.
+     *
+     * @return Spooled bytes
+     */
+    public long size() {
+        return spooledBytes.get();
+    }
+
+    /**
+     * Syncs appended records to disk if any are unsynced.
+     */
+    void flush() {
+        synchronized (lock) {
+            try {
+                force();
+            } catch (IOException e) {
+                log.error("Failed to sync the spool: {}", e.getMessage());
+            }
+        }
+    }
+
+    /**
+     * Publishes every closed segment, oldest first, then closes the segment
+     * being written and publishes it too, stopping at the first batch RabbitMQ
+     * does not accept or when the spool is stopped. The segment being written
+     * is only closed once every older one has been published, so while
+     * RabbitMQ is down it keeps filling up to the segment size rather than a
+     * new segment being started every replay interval.
+     */
+    void replay() {
+        if (!running) {
+            return;
+        }
+        if (!replayAll(closedSegments(false))) {
+            return;
+        }
+        replayAll(closedSegments(true));
+    }
+
+    private boolean replayAll(List<Path> segments) {
+        if (segments == null) {
+            return false;
+        }
+        for (Path path : segments) {
+            if (!running || !replaySegment(path)) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    /**
+     * Lists the segments other than the one being written, oldest first.
+     *
+     * @param closeCurrent Whether to close the segment being written first, so it is listed too
+     * @return Closed segments, or null if the spool directory cannot be read
+     */
+    private List<Path> closedSegments(boolean closeCurrent) {
+        synchronized (lock) {
+            try {
+                initialize();
+                if (closeCurrent) {
+                    closeSegment();
+                }
+            } catch (IOException e) {
+                log.error("Failed to close spool segment {}: {}", segmentPath, e.getMessage());
+                return null;
+            }
+            try (Stream<Path> files = Files.list(directory)) {
+                return files.filter(TrafficSpool::isSegment)
+                        .filter(path -> !path.equals(segmentPath))
+                        .sorted()
+                        .toList();
+            } catch (IOException e) {
+                log.error("Failed to list spool directory {}: {}", directory, e.getMessage());
+                return null;
+            }
+        }
+    }
+
+    private boolean replaySegment(Path path) {
+        if (!path.equals(replayingSegment)) {
+            replayingSegment = path;
+            replayedOffset = 0;
+        }
+        long fileSize;
+        try (InputStream file = Files.newInputStream(path)) {
+            fileSize = Files.size(path);
+            DataInputStream in = new DataInputStream(new BufferedInputStream(file, 64 * 1024));
+            in.skipNBytes(replayedOffset);
+            long offset = replayedOffset;
+            List<TrafficRecord> batch = new ArrayList<>();
+            while (true) {
+                byte[] payload = readRecord(in, fileSize - offset);
+                if (payload != null) {
+                    offset += RECORD_HEADER_LENGTH + payload.length;
+                    try {
+                        batch.add(objectMapper.readValue(payload, TrafficRecord.class));
+                    } catch (JsonProcessingException e) {
+                        log.error("Skipping unreadable record in spool segment {} before offset {}: {}",
+                                path, offset, e.getOriginalMessage());
+                        dropped.increment();
+                    }
+                }
+                if (!batch.isEmpty() && (payload == null || batch.size() >= publishing.getBatchMaxRecords())) {
+                    trafficPublisher.publishBatch(batch);
+                    replayed.increment(batch.size());
+                    replayedOffset = offset;
+                    batch = new ArrayList<>();
+                    if (!running) {
+                        return false;
+                    }
+                }
+                if (payload == null) {
+                    break;
+                }
+            }
+            if (offset < fileSize) {
+                log.warn("Dropping {} bytes of spool segment {} from offset {}: torn or corrupt record",
+                        fileSize - offset, path, offset);
+                dropped.increment();
+            }
+        } catch (IOException e) {
+            log.error("Failed to read spool segment {}: {}", path, e.getMessage());
+            return false;
+        } catch (Exception e) {
+            log.warn("Spool replay paused, RabbitMQ did not accept traffic: {}", e.getMessage());
+            return false;
+        }
+
+        try {
+            Files.deleteIfExists(path);
+            spooledBytes.addAndGet(-fileSize);
+        } catch (IOException e) {
+            log.error("Failed to delete replayed spool segment {}: {}", path, e.getMessage());
+            return false;
+        }
+        replayingSegment = null;
+        replayedOffset = 0;
+        return true;
+    }
+
+    /**
+     * Reads the next record of a segment.
+     *
+     * @param in Segment stream
+     * @param remaining Bytes left in the segment
+     * @return Record payload, or null at the end of the segment or at a torn or corrupt record
+     * @throws IOException if the segment cannot be read
+     */
+    private static byte[] readRecord(DataInputStream in, long remaining) throws IOException {
+        if (remaining < RECORD_HEADER_LENGTH) {
+            return null;
+        }
+        try {
+            int length = in.readInt();
+            int crc = in.readInt();
+            if (length < 0 || length > remaining - RECORD_HEADER_LENGTH) {
+                return null;
+            }
+            byte[] payload = new byte[length];
+            in.readFully(payload);
+            return crc(payload) == crc ? payload : null;
+        } catch (EOFException e) {
+            return null;
+        }
+    }
+
+    private void initialize() throws IOException {
+        if (initialized) {
+            return;
+        }
+        Files.createDirectories(directory);
+        long bytes = 0;
+        long sequence = 0;
+        try (Stream<Path> files = Files.list(directory)) {
+            for (Path path : files.filter(TrafficSpool::isSegment).toList()) {
+                bytes += Files.size(path);
+                sequence = Math.max(sequence, sequenceOf(path) + 1);
+            }
+        }
+        spooledBytes.set(bytes);
+        nextSequence = sequence;
+        initialized = true;
+        if (bytes > 0) {
+            log.info("Found {} bytes of spooled traffic in {}", bytes, directory);
+        }
+    }
+
+    private void openSegment() throws IOException {
+        segmentPath = directory.resolve(String.format("%s%020d%s", SEGMENT_PREFIX, nextSequence++, SEGMENT_SUFFIX));
+        segment = FileChannel.open(segmentPath,
+                StandardOpenOption.CREATE_NEW, StandardOpenOption.WRITE, StandardOpenOption.APPEND);
+        segmentLength = 0;
+    }
+
+    private void closeSegment() throws IOException {
+        if (segment == null) {
+            return;
+        }
+        force();
+        segment.close();
+        segment = null;
+        segmentPath = null;
+    }
+
+    private void force() throws IOException {
+        if (segment != null && dirty) {
+            segment.force(false);
+            dirty = false;
+        }
+        lastForceNanos = System.nanoTime();
+    }
+
+    private static boolean isSegment(Path path) {
+        String name = path.getFileName().toString();
+        return name.startsWith(SEGMENT_PREFIX) && name.endsWith(SEGMENT_SUFFIX);
+    }
+
+    private static long sequenceOf(Path path) {
+        String name = path.getFileName().toString();
+        try {
+            return Long.parseLong(name.substring(SEGMENT_PREFIX.length(), name.length() - SEGMENT_SUFFIX.length()));
+        } catch (NumberFormatException e) {
+            return -1;
+        }
+    }
+
+    private static int crc(byte[] payload) {
+        CRC32 crc = new CRC32();
+        crc.update(payload);
+        return (int) crc.getValue();
+    }
+
+    @Override
+    public void start() {
+        if (!settings.isEnabled()) {
+            return;
+        }
+        running = true;
+        executor = Executors.newSingleThreadScheduledExecutor(runnable -> {
+            Thread thread = new Thread(runnable, "echo-traffic-spool");
+            thread.setDaemon(true);
+            return thread;
+        });
+        long fsyncMillis = settings.getFsyncInterval().toMillis();
+        long replayMillis = settings.getReplayInterval().toMillis();
+        executor.scheduleWithFixedDelay(this::flush, fsyncMillis, fsyncMillis, TimeUnit.MILLISECONDS);
+        executor.scheduleWithFixedDelay(this::replay, replayMillis, replayMillis, TimeUnit.MILLISECONDS);
+    }
+
+    /**
+     * Stops replaying and syncs and closes the segment being written; spooled
+     * records are replayed on the next start.
+     */
+    @Override
+    public void stop() {
+        running = false;
+        if (executor != null) {
+            executor.shutdown();
+            try {
+                executor.awaitTermination(publishing.getShutdownTimeout().toMillis(), TimeUnit.MILLISECONDS);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+            executor = null;
+        }
+        synchronized (lock) {
+            try {
+                closeSegment();
+            } catch (IOException e) {
+                log.error("Failed to close spool segment: {}", e.getMessage());
+            }
+        }
+    }
+
+    @Override
+    public boolean isRunning() {
+        return running;
+    }
+
+    /**
+     * Starts before and stops after the publish queue, which spools what it cannot publish on shutdown.
+     */
+    @Override
+    public int getPhase() {
+        return SmartLifecycle.DEFAULT_PHASE - 8192;
+    }
+}
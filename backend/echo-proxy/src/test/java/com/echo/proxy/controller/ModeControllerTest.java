@@ -0,0 +1,201 @@
+package com.echo.proxy.controller;
+
+import com.echo.proxy.config.EchoMode;
+import com.echo.proxy.config.LatencyMode;
+import com.echo.proxy.config.ProxyConfiguration;
+import com.echo.proxy.config.SequencePolicy;
+import com.echo.proxy.service.RecordingOverlay;
+import com.echo.proxy.service.ReplayIndexService;
+import com.echo.proxy.service.RouteRegistry;
+import com.echo.proxy.service.SequenceCursors;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.extension.ExtendWith;
+import org.mockito.Mock;
+import org.mockito.junit.jupiter.MockitoExtension;
+import org.springframework.http.ResponseEntity;
+
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CountDownLatch;
+
+import static org.junit.jupiter.api.Assertions.*;
+import static org.mockito.ArgumentMatchers.anyString;
+import static org.mockito.Mockito.*;
+
+/**
+ * Unit tests for ModeController's handling of the default mode and session snapshot.
+ */
+@ExtendWith(MockitoExtension.class)
+class ModeControllerTest {
+
+    @Mock
+    private ReplayIndexService replayIndexService;
+
+    @Mock
+    private SequenceCursors sequenceCursors;
+
+    @Mock
+    private RouteRegistry routeRegistry;
+
+    @Mock
+    private RecordingOverlay recordingOverlay;
+
+    private ProxyConfiguration proxyConfiguration;
+    private ModeController modeController;
+
+    @BeforeEach
+    void setUp() {
+        proxyConfiguration = new ProxyConfiguration();
+        proxyConfiguration.update(current -> new ProxyConfiguration.Snapshot(
+                EchoMode.RECORD, "session-a", "http://upstream:9000"));
+        modeController = new ModeController(proxyConfiguration, replayIndexService, sequenceCursors,
+                routeRegistry, recordingOverlay);
+    }
+
+    @Test
+    void getMode_shouldReturnOneSnapshot() {
+        // When
+        ResponseEntity<Map<String, String>> response = modeController.getMode();
+
+        // Then
+        assertEquals(Map.of("mode", "RECORD", "sessionId", "session-a", "targetUrl", "http://upstream:9000"),
+                response.getBody());
+    }
+
+    @Test
+    void switchMode_shouldKeepSessionAndPreloadItWhenReplaying() {
+        // When
+        modeController.switchMode(Map.of("mode", "replay"));
+
+        // Then
+        ProxyConfiguration.Snapshot snapshot = proxyConfiguration.snapshot();
+        assertEquals(EchoMode.REPLAY, snapshot.getMode());
+        assertEquals("session-a", snapshot.getSessionId());
+        assertEquals("http://upstream:9000", snapshot.getTargetUrl());
+        verify(replayIndexService).preload("session-a");
+    }
+
+    @Test
+    void switchMode_shouldRejectUnknownModeAndKeepSnapshot() {
+        // When
+        ResponseEntity<Map<String, String>> response = modeController.switchMode(Map.of("mode", "PLAYBACK"));
+
+        // Then
+        assertTrue(response.getStatusCode().is4xxClientError());
+        assertEquals(EchoMode.RECORD, proxyConfiguration.getMode());
+        verifyNoInteractions(replayIndexService);
+    }
+
+    @Test
+    void updateSessionId_shouldDropPreviousSessionStateAndPreloadNewSessionWhenReplaying() {
+        // Given
+        proxyConfiguration.setMode(EchoMode.REPLAY);
+
+        // When
+        modeController.updateSessionId(Map.of("sessionId", "session-b"));
+
+        // Then
+        assertEquals(EchoMode.REPLAY, proxyConfiguration.getMode());
+        assertEquals("session-b", proxyConfiguration.getSessionId());
+        verify(replayIndexService).evict("session-a");
+        verify(sequenceCursors).reset("session-a");
+        verify(recordingOverlay).invalidateSession("session-a");
+        verify(replayIndexService).preload("session-b");
+    }
+
+    @Test
+    void updateSessionId_shouldKeepStateOfUnchangedSession() {
+        // When
+        modeController.updateSessionId(Map.of("sessionId", "session-a"));
+
+        // Then
+        verify(replayIndexService, never()).evict(anyString());
+        verify(sequenceCursors, never()).reset(anyString());
+        verify(recordingOverlay, never()).invalidateSession(anyString());
+    }
+
+    @Test
+    void concurrentUpdates_shouldNotLoseEitherChange() throws Exception {
+        for (int i = 0; i < 200; i++) {
+            // Given
+            proxyConfiguration.update(current -> new ProxyConfiguration.Snapshot(
+                    EchoMode.RECORD, "session-a", "http://upstream:9000"));
+            String sessionId = "session-" + i;
+            CountDownLatch start = new CountDownLatch(1);
+
+            // When
+            CompletableFuture<?> modeSwitch = CompletableFuture.runAsync(() -> {
+                awaitQuietly(start);
+                modeController.switchMode(Map.of("mode", "REPLAY_OR_RECORD"));
+            });
+            CompletableFuture<?> sessionSwitch = CompletableFuture.runAsync(() -> {
+                awaitQuietly(start);
+                modeController.updateSessionId(Map.of("sessionId", sessionId));
+            });
+            start.countDown();
+            CompletableFuture.allOf(modeSwitch, sessionSwitch).get();
+
+            // Then
+            ProxyConfiguration.Snapshot snapshot = proxyConfiguration.snapshot();
+            assertEquals(EchoMode.REPLAY_OR_RECORD, snapshot.getMode());
+            assertEquals(sessionId, snapshot.getSessionId());
+            assertEquals("http://upstream:9000", snapshot.getTargetUrl());
+        }
+    }
+
+    @Test
+    void updateLatency_shouldReplaceModeAndScaleTogether() {
+        // Given
+        ProxyConfiguration.Latency.Settings before = proxyConfiguration.getLatency().settings();
+
+        // When
+        ResponseEntity<Map<String, String>> response =
+                modeController.updateLatency(Map.of("mode", "recorded", "scale", "0.5"));
+
+        // Then
+        ProxyConfiguration.Latency.Settings after = proxyConfiguration.getLatency().settings();
+        assertNotSame(before, after);
+        assertEquals(LatencyMode.RECORDED, after.getMode());
+        assertEquals(0.5, after.getScale());
+        assertEquals(before.getMaxDelay(), after.getMaxDelay());
+        assertEquals("RECORDED", response.getBody().get("mode"));
+        assertEquals("0.5", response.getBody().get("scale"));
+    }
+
+    @Test
+    void updateLatency_shouldRejectNegativeScaleAndKeepSettings() {
+        // Given
+        ProxyConfiguration.Latency.Settings before = proxyConfiguration.getLatency().settings();
+
+        // When
+        ResponseEntity<Map<String, String>> response =
+                modeController.updateLatency(Map.of("mode", "RECORDED", "scale", "-1"));
+
+        // Then
+        assertTrue(response.getStatusCode().is4xxClientError());
+        assertSame(before, proxyConfiguration.getLatency().settings());
+    }
+
+    @Test
+    void updateSequencing_shouldKeepSettingsNotGiven() {
+        // Given
+        proxyConfiguration.getSequencing().setPolicy(SequencePolicy.WRAP);
+
+        // When
+        modeController.updateSequencing(Map.of("enabled", "true"));
+
+        // Then
+        ProxyConfiguration.Sequencing.Settings sequencing = proxyConfiguration.getSequencing().settings();
+        assertTrue(sequencing.isEnabled());
+        assertEquals(SequencePolicy.WRAP, sequencing.getPolicy());
+    }
+
+    private static void awaitQuietly(CountDownLatch latch) {
+        try {
+            latch.await();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+}
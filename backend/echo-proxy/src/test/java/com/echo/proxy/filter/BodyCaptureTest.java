@@ -0,0 +1,196 @@
+package com.echo.proxy.filter;
+
+import com.echo.proxy.config.CapturePolicy;
+import com.echo.proxy.config.ProxyConfiguration;
+import com.echo.proxy.service.SpillFileWriter;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+import org.springframework.core.io.buffer.DataBuffer;
+import org.springframework.core.io.buffer.DefaultDataBufferFactory;
+import reactor.core.publisher.Flux;
+import reactor.test.StepVerifier;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Arrays;
+
+import static org.junit.jupiter.api.Assertions.*;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.Mockito.*;
+
+/**
+ * Unit tests for BodyCapture.
+ */
+class BodyCaptureTest {
+
+    private final DefaultDataBufferFactory bufferFactory = DefaultDataBufferFactory.sharedInstance;
+
+    @TempDir
+    Path spillDirectory;
+
+    private SpillFileWriter spillWriter;
+
+    @BeforeEach
+    void setUp() {
+        ProxyConfiguration proxyConfiguration = new ProxyConfiguration();
+        proxyConfiguration.getCapture().setSpillDirectory(spillDirectory.toString());
+        spillWriter = new SpillFileWriter(proxyConfiguration, new SimpleMeterRegistry());
+    }
+
+    @AfterEach
+    void tearDown() throws InterruptedException {
+        spillWriter.destroy();
+    }
+
+    @Test
+    void append_shouldCopyWithoutConsumingForwardedBuffers() {
+        // Given
+        BodyCapture capture = capture(1024, CapturePolicy.TRUNCATE);
+        DataBuffer first = buffer("{\"name\": ");
+        DataBuffer second = buffer("\"Echo\"}");
+
+        // When & Then
+        StepVerifier.create(Flux.just(first, second).doOnNext(capture::append))
+                .assertNext(buffer -> assertEquals(9, buffer.readableByteCount()))
+                .assertNext(buffer -> assertEquals(7, buffer.readableByteCount()))
+                .verifyComplete();
+        assertEquals(16, capture.getOriginalSize());
+        assertFalse(capture.isTruncated());
+        assertEquals("{\"name\": \"Echo\"}", text(capture));
+    }
+
+    @Test
+    void toByteArray_shouldKeepCharactersSplitAcrossChunks() {
+        // Given
+        byte[] bytes = "café ☃".getBytes(StandardCharsets.UTF_8);
+        BodyCapture capture = capture(1024, CapturePolicy.TRUNCATE);
+
+        // When
+        capture.append(bufferFactory.wrap(Arrays.copyOfRange(bytes, 0, 4)));
+        capture.append(bufferFactory.wrap(Arrays.copyOfRange(bytes, 4, 7)));
+        capture.append(bufferFactory.wrap(Arrays.copyOfRange(bytes, 7, bytes.length)));
+
+        // Then
+        assertEquals(bytes.length, capture.getOriginalSize());
+        assertEquals("café ☃", text(capture));
+    }
+
+    @Test
+    void append_shouldTruncateAtInMemoryLimit() {
+        // Given
+        BodyCapture capture = capture(8, CapturePolicy.TRUNCATE);
+
+        // When
+        capture.append(buffer("0123456"));
+        capture.append(buffer("789abc"));
+
+        // Then
+        assertTrue(capture.isTruncated());
+        assertEquals(13, capture.getOriginalSize());
+        assertEquals("01234567", text(capture));
+    }
+
+    @Test
+    void append_shouldDropBodyWhenSkipping() {
+        // Given
+        BodyCapture capture = capture(8, CapturePolicy.SKIP);
+
+        // When
+        capture.append(buffer("0123"));
+        capture.append(buffer("456789"));
+
+        // Then
+        assertTrue(capture.isTruncated());
+        assertEquals(10, capture.getOriginalSize());
+        assertNull(capture.toByteArray());
+        assertNull(capture.detachSpillFile());
+    }
+
+    @Test
+    void toByteArray_shouldKeepBinaryBodiesByteExact() {
+        // Given
+        byte[] png = {(byte) 0x89, 'P', 'N', 'G', 0x0D, 0x0A, 0x1A, 0x0A, 0x00, (byte) 0xFF};
+        BodyCapture capture = capture(1024, CapturePolicy.TRUNCATE);
+
+        // When
+        capture.append(bufferFactory.wrap(Arrays.copyOfRange(png, 0, 5)));
+        capture.append(bufferFactory.wrap(Arrays.copyOfRange(png, 5, png.length)));
+
+        // Then
+        assertArrayEquals(png, capture.toByteArray());
+    }
+
+    @Test
+    void append_shouldSpillOverflowToFileUpToSpillLimit() throws IOException {
+        // Given
+        BodyCapture capture = new BodyCapture(-1, 4, CapturePolicy.SPILL, spillWriter, 10);
+
+        // When
+        capture.append(buffer("0123"));
+        capture.append(buffer("4567"));
+        capture.append(buffer("89abcdef"));
+        Path spillFile = capture.detachSpillFile();
+        capture.discard();
+        spillWriter.awaitClosed(spillFile);
+
+        // Then
+        assertTrue(capture.isTruncated());
+        assertEquals(16, capture.getOriginalSize());
+        assertNotNull(spillFile);
+        assertEquals("0123456789", Files.readString(spillFile));
+    }
+
+    @Test
+    void discard_shouldDeleteSpillFileNotHandedOver() throws IOException, InterruptedException {
+        // Given
+        BodyCapture capture = new BodyCapture(-1, 2, CapturePolicy.SPILL, spillWriter, 1024);
+        capture.append(buffer("spilled"));
+
+        // When
+        capture.discard();
+        spillWriter.destroy();
+
+        // Then
+        try (var files = Files.list(spillDirectory)) {
+            assertEquals(0, files.count());
+        }
+    }
+
+    @Test
+    void append_shouldTruncateWhenSpillWriterRefusesBytes() throws IOException {
+        // Given
+        SpillFileWriter busyWriter = spy(spillWriter);
+        doCallRealMethod().doReturn(false).when(busyWriter).write(any(), any());
+        BodyCapture capture = new BodyCapture(-1, 4, CapturePolicy.SPILL, busyWriter, 1024);
+
+        // When
+        capture.append(buffer("0123"));
+        capture.append(buffer("4567"));
+        capture.append(buffer("89ab"));
+        Path spillFile = capture.detachSpillFile();
+        spillWriter.awaitClosed(spillFile);
+
+        // Then
+        assertTrue(capture.isTruncated());
+        assertEquals(12, capture.getOriginalSize());
+        assertEquals("0123", Files.readString(spillFile));
+        verify(busyWriter, times(2)).write(any(), any());
+    }
+
+    private BodyCapture capture(int maxInMemorySize, CapturePolicy policy) {
+        return new BodyCapture(-1, maxInMemorySize, policy, spillWriter, 1024);
+    }
+
+    private static String text(BodyCapture capture) {
+        return new String(capture.toByteArray(), StandardCharsets.UTF_8);
+    }
+
+    private DataBuffer buffer(String content) {
+        return bufferFactory.wrap(content.getBytes(StandardCharsets.UTF_8));
+    }
+}
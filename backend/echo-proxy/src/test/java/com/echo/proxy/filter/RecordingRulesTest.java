@@ -0,0 +1,128 @@
+package com.echo.proxy.filter;
+
+import com.echo.proxy.config.ProxyConfiguration;
+import com.echo.proxy.model.MatchingRules;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.Test;
+
+import java.util.List;
+import java.util.concurrent.atomic.AtomicLong;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * Unit tests for RecordingRules.
+ */
+class RecordingRulesTest {
+
+    private final ProxyConfiguration proxyConfiguration = new ProxyConfiguration();
+    private final SimpleMeterRegistry meterRegistry = new SimpleMeterRegistry();
+    private final AtomicLong clock = new AtomicLong();
+
+    @Test
+    void shouldRecord_shouldRecordEverythingByDefault() {
+        // Given
+        RecordingRules rules = rules(0.0);
+
+        // When & Then
+        assertTrue(rules.shouldRecord("GET", "/anything"));
+        assertTrue(rules.shouldRecordStatus(503));
+    }
+
+    @Test
+    void shouldRecord_shouldApplyMethodsAndPathPatterns() {
+        // Given
+        ProxyConfiguration.Recording recording = proxyConfiguration.getRecording();
+        recording.setMethods(List.of("get", "POST"));
+        recording.setIncludePaths(List.of("/api/**"));
+        recording.setExcludePaths(List.of("/api/health", "/api/**/*.png"));
+        RecordingRules rules = rules(0.0);
+
+        // When & Then
+        assertTrue(rules.shouldRecord("GET", "/api/users/1"));
+        assertTrue(rules.shouldRecord("POST", "/api/users"));
+        assertFalse(rules.shouldRecord("DELETE", "/api/users/1"));
+        assertFalse(rules.shouldRecord("GET", "/static/app.js"));
+        assertFalse(rules.shouldRecord("GET", "/api/health"));
+        assertFalse(rules.shouldRecord("GET", "/api/avatars/1.png"));
+        assertEquals(4.0, meterRegistry.counter("echo.record.skipped", "reason", "rule").count());
+    }
+
+    @Test
+    void shouldRecordStatus_shouldMatchCodesClassesAndRanges() {
+        // Given
+        proxyConfiguration.getRecording().setStatusCodes(List.of("2xx", "404", "500-502"));
+        RecordingRules rules = rules(0.0);
+
+        // When & Then
+        assertTrue(rules.shouldRecordStatus(201));
+        assertTrue(rules.shouldRecordStatus(404));
+        assertTrue(rules.shouldRecordStatus(502));
+        assertFalse(rules.shouldRecordStatus(302));
+        assertFalse(rules.shouldRecordStatus(503));
+    }
+
+    @Test
+    void shouldRecord_shouldSample() {
+        // Given
+        proxyConfiguration.getRecording().setSampleRate(0.25);
+
+        // When & Then
+        assertTrue(rules(0.1).shouldRecord("GET", "/api/users"));
+        assertFalse(rules(0.3).shouldRecord("GET", "/api/users"));
+    }
+
+    @Test
+    void shouldRecord_shouldRateLimitEachKeySeparately() {
+        // Given
+        ProxyConfiguration.Recording recording = proxyConfiguration.getRecording();
+        recording.setRateLimit(2.0);
+        recording.setRateLimitBurst(2);
+        RecordingRules rules = new RecordingRules(proxyConfiguration,
+                MatchingRules.compile(true, List.of(), List.of("/api/users/{id}")),
+                meterRegistry, clock::get, () -> 0.0);
+
+        // When & Then
+        assertTrue(rules.shouldRecord("GET", "/api/users/1"));
+        assertTrue(rules.shouldRecord("GET", "/api/users/2"));
+        assertFalse(rules.shouldRecord("GET", "/api/users/3"));
+        assertTrue(rules.shouldRecord("GET", "/api/orders"));
+
+        clock.addAndGet(500_000_000L);
+        assertTrue(rules.shouldRecord("GET", "/api/users/4"));
+        assertFalse(rules.shouldRecord("GET", "/api/users/5"));
+        assertEquals(2.0, meterRegistry.counter("echo.record.skipped", "reason", "rate_limit").count());
+    }
+
+    @Test
+    void shouldRecord_shouldKeepLimitingKeysWhenTheLimiterIsFull() {
+        // Given
+        ProxyConfiguration.Recording recording = proxyConfiguration.getRecording();
+        recording.setRateLimit(1.0);
+        recording.setRateLimitBurst(1);
+        recording.setMaxRateLimitedKeys(4);
+        RecordingRules rules = new RecordingRules(proxyConfiguration, MatchingRules.defaults(), meterRegistry,
+                clock::get, () -> 0.0);
+        assertTrue(rules.shouldRecord("GET", "/api/users"));
+        assertTrue(rules.shouldRecord("GET", "/api/orders"));
+        assertTrue(rules.shouldRecord("GET", "/api/health"));
+        for (int i = 0; i < 5; i++) {
+            assertFalse(rules.shouldRecord("GET", "/api/health"));
+        }
+
+        // When
+        for (int i = 0; i < 20; i++) {
+            assertTrue(rules.shouldRecord("GET", "/api/one-off-" + i));
+        }
+
+        // Then
+        assertFalse(rules.shouldRecord("GET", "/api/health"));
+        clock.addAndGet(1_000_000_000L);
+        assertTrue(rules.shouldRecord("GET", "/api/health"));
+    }
+
+    private RecordingRules rules(double random) {
+        return new RecordingRules(proxyConfiguration, MatchingRules.defaults(), meterRegistry, clock::get,
+                () -> random);
+    }
+}
@@ -0,0 +1,209 @@
+package com.echo.proxy.filter;
+
+import com.echo.proxy.config.EchoMode;
+import com.echo.proxy.config.ProxyConfiguration;
+import com.echo.proxy.model.EchoContext;
+import com.echo.proxy.model.ContentCodings;
+import com.echo.proxy.model.MatchingRules;
+import com.echo.proxy.model.ReplayResponse;
+import com.echo.proxy.model.TrafficRecord;
+import com.echo.proxy.service.RecordingOverlay;
+import com.echo.proxy.service.ReplayLatency;
+import com.echo.proxy.service.ReplayService;
+import com.echo.proxy.service.SpillFileWriter;
+import com.echo.proxy.service.TrafficPublishQueue;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.extension.ExtendWith;
+import org.mockito.ArgumentCaptor;
+import org.mockito.Mock;
+import org.mockito.junit.jupiter.MockitoExtension;
+import org.springframework.cloud.gateway.filter.GatewayFilterChain;
+import org.springframework.core.io.buffer.DataBuffer;
+import org.springframework.core.io.buffer.DataBufferUtils;
+import org.springframework.core.io.buffer.DefaultDataBufferFactory;
+import org.springframework.http.HttpHeaders;
+import org.springframework.http.HttpMethod;
+import org.springframework.http.HttpStatus;
+import org.springframework.http.MediaType;
+import org.springframework.mock.http.server.reactive.MockServerHttpRequest;
+import org.springframework.mock.web.server.MockServerWebExchange;
+import reactor.core.publisher.Flux;
+import reactor.core.publisher.Mono;
+
+import java.net.URI;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.time.Duration;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicReference;
+
+import static org.junit.jupiter.api.Assertions.*;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.Mockito.*;
+
+/**
+ * Unit tests for ReplayModeFilter in REPLAY_OR_RECORD mode, chained with RecordModeFilter.
+ */
+@ExtendWith(MockitoExtension.class)
+class ReplayModeFilterTest {
+
+    @Mock
+    private ReplayService replayService;
+
+    @Mock
+    private ReplayLatency replayLatency;
+
+    @Mock
+    private TrafficPublishQueue publishQueue;
+
+    @Mock
+    private RecordingOverlay recordingOverlay;
+
+    @Mock
+    private SpillFileWriter spillWriter;
+
+    private ProxyConfiguration proxyConfiguration;
+    private SimpleMeterRegistry meterRegistry;
+    private ReplayModeFilter replayModeFilter;
+    private RecordModeFilter recordModeFilter;
+    private final AtomicReference<String> upstreamBody = new AtomicReference<>();
+
+    @BeforeEach
+    void setUp() {
+        proxyConfiguration = new ProxyConfiguration();
+        proxyConfiguration.getCapture().setMaxInMemorySize(16);
+        meterRegistry = new SimpleMeterRegistry();
+        replayModeFilter = new ReplayModeFilter(proxyConfiguration, replayService, replayLatency, meterRegistry);
+        recordModeFilter = new RecordModeFilter(proxyConfiguration, publishQueue,
+                new BodyCaptureFactory(proxyConfiguration, spillWriter),
+                new RecordingRules(proxyConfiguration, MatchingRules.defaults(), meterRegistry),
+                recordingOverlay, meterRegistry);
+    }
+
+    @Test
+    void filter_shouldForwardMissWithBodyIntactAndRecordIt() {
+        // Given
+        when(replayService.findMatchingResponse(any(), any(), any(), any(), any())).thenReturn(Mono.empty());
+        MockServerWebExchange exchange = exchange("{\"id\": ", "42}");
+
+        // When
+        replayModeFilter.filter(exchange, recordThenUpstream()).block();
+
+        // Then
+        assertEquals("{\"id\": 42}", upstreamBody.get());
+        assertEquals(HttpStatus.CREATED, exchange.getResponse().getStatusCode());
+        assertEquals(1.0, forwardedCount());
+        TrafficRecord trafficRecord = submittedRecord();
+        assertEquals("{\"id\": 42}", new String(trafficRecord.getRequestBody(), StandardCharsets.UTF_8));
+        assertNotNull(trafficRecord.getRequestBodyHash());
+        assertEquals("created", new String(trafficRecord.getResponseBody(), StandardCharsets.UTF_8));
+        verify(recordingOverlay).add(trafficRecord);
+    }
+
+    @Test
+    void filter_shouldForwardBodyOverTheLimitWithoutLookingItUp() {
+        // Given
+        MockServerWebExchange exchange = exchange("{\"items\": [", "\"first\", \"second\", ", "\"third\"]}");
+
+        // When
+        replayModeFilter.filter(exchange, recordThenUpstream()).block();
+
+        // Then
+        assertEquals("{\"items\": [\"first\", \"second\", \"third\"]}", upstreamBody.get());
+        verifyNoInteractions(replayService);
+        assertEquals(1.0, forwardedCount());
+        assertEquals(upstreamBody.get().length(), submittedRecord().getRequestBodySize());
+    }
+
+    @Test
+    void filter_shouldForwardBodyDeclaredOverTheLimitWithoutLookingItUp() {
+        // Given
+        String body = "{\"name\": \"a body of forty bytes or so\"}";
+        MockServerWebExchange exchange = MockServerWebExchange.from(
+                MockServerHttpRequest.method(HttpMethod.POST, URI.create("http://proxy:8080/api/items"))
+                        .contentType(MediaType.APPLICATION_JSON)
+                        .body(body));
+        readThrough(exchange);
+
+        // When
+        replayModeFilter.filter(exchange, recordThenUpstream()).block();
+
+        // Then
+        assertEquals(body, upstreamBody.get());
+        verifyNoInteractions(replayService);
+    }
+
+    @Test
+    void filter_shouldNotRepeatRecordedVaryAcceptEncoding() {
+        // Given
+        ReplayResponse replayResponse = ReplayResponse.of(200,
+                Map.of(HttpHeaders.VARY, List.of("Origin, accept-encoding")),
+                ByteBuffer.wrap(ContentCodings.encode(ContentCodings.GZIP, "ok".getBytes(StandardCharsets.UTF_8))),
+                ContentCodings.GZIP, null);
+        when(replayService.findMatchingResponse(any(), any(), any(), any(), any()))
+                .thenReturn(Mono.just(replayResponse));
+        when(replayLatency.delayFor(any(), any(), any(), any())).thenReturn(Duration.ZERO);
+        MockServerWebExchange exchange = MockServerWebExchange.from(
+                MockServerHttpRequest.get("http://proxy:8080/api/items")
+                        .header(HttpHeaders.ACCEPT_ENCODING, "gzip"));
+        readThrough(exchange);
+
+        // When
+        replayModeFilter.filter(exchange, recordThenUpstream()).block();
+
+        // Then
+        assertEquals(List.of("Origin, accept-encoding"), exchange.getResponse().getHeaders().get(HttpHeaders.VARY));
+        assertEquals(ContentCodings.GZIP, exchange.getResponse().getHeaders().getFirst(HttpHeaders.CONTENT_ENCODING));
+    }
+
+    /**
+     * Runs RecordModeFilter in front of an upstream that reads the whole request body and answers 201 Created.
+     */
+    private GatewayFilterChain recordThenUpstream() {
+        GatewayFilterChain upstream = exchange -> DataBufferUtils.join(exchange.getRequest().getBody())
+                .map(dataBuffer -> {
+                    String body = dataBuffer.toString(StandardCharsets.UTF_8);
+                    DataBufferUtils.release(dataBuffer);
+                    return body;
+                })
+                .defaultIfEmpty("")
+                .flatMap(body -> {
+                    upstreamBody.set(body);
+                    exchange.getResponse().setStatusCode(HttpStatus.CREATED);
+                    return exchange.getResponse().writeWith(Mono.just(buffer("created")));
+                });
+        return exchange -> recordModeFilter.filter(exchange, upstream);
+    }
+
+    private MockServerWebExchange exchange(String... chunks) {
+        Flux<DataBuffer> body = Flux.defer(() -> Flux.fromArray(chunks).map(ReplayModeFilterTest::buffer));
+        MockServerWebExchange exchange = MockServerWebExchange.from(
+                MockServerHttpRequest.method(HttpMethod.POST, URI.create("http://proxy:8080/api/items"))
+                        .contentType(MediaType.APPLICATION_JSON)
+                        .body(body));
+        readThrough(exchange);
+        return exchange;
+    }
+
+    private static void readThrough(MockServerWebExchange exchange) {
+        exchange.getAttributes().put(SessionRoutingFilter.ECHO_CONTEXT_ATTR,
+                new EchoContext(EchoMode.REPLAY_OR_RECORD, "suite", null));
+    }
+
+    private TrafficRecord submittedRecord() {
+        ArgumentCaptor<TrafficRecord> submitted = ArgumentCaptor.forClass(TrafficRecord.class);
+        verify(publishQueue).submit(submitted.capture());
+        return submitted.getValue();
+    }
+
+    private double forwardedCount() {
+        return meterRegistry.get("echo.replay.requests").tag("outcome", "forwarded").counter().count();
+    }
+
+    private static DataBuffer buffer(String text) {
+        return DefaultDataBufferFactory.sharedInstance.wrap(text.getBytes(StandardCharsets.UTF_8));
+    }
+}
@@ -0,0 +1,86 @@
+package com.echo.proxy.filter;
+
+import org.junit.jupiter.api.Test;
+import org.springframework.core.io.buffer.DataBuffer;
+import org.springframework.core.io.buffer.DefaultDataBufferFactory;
+import org.springframework.http.MediaType;
+
+import java.nio.charset.StandardCharsets;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * Unit tests for RequestBodyHasher.
+ */
+class RequestBodyHasherTest {
+
+    private final DefaultDataBufferFactory bufferFactory = DefaultDataBufferFactory.sharedInstance;
+
+    @Test
+    void hexDigest_shouldIgnoreJsonWhitespaceAcrossChunks() {
+        // Given
+        String compact = hash(MediaType.APPLICATION_JSON, "{\"name\":\"Echo Platform\",\"tags\":[1,2]}");
+        String pretty = hash(MediaType.APPLICATION_JSON, "{\n  \"name\": \"Echo ", "Platform\",\n  \"tags\": [1, 2]\n}");
+
+        // Then
+        assertNotNull(compact);
+        assertEquals(64, compact.length());
+        assertEquals(compact, pretty);
+    }
+
+    @Test
+    void hexDigest_shouldKeepWhitespaceInsideJsonStrings() {
+        // Given
+        String first = hash(MediaType.APPLICATION_JSON, "{\"name\":\"Echo Platform\"}");
+        String second = hash(MediaType.APPLICATION_JSON, "{\"name\":\"EchoPlatform\"}");
+
+        // Then
+        assertNotEquals(first, second);
+    }
+
+    @Test
+    void hexDigest_shouldBeSensitiveToJsonKeyOrder() {
+        // Given
+        String first = hash(MediaType.APPLICATION_JSON, "{\"a\":1,\"b\":2}");
+        String second = hash(MediaType.APPLICATION_JSON, "{\"b\":2,\"a\":1}");
+
+        // Then
+        assertNotEquals(first, second);
+    }
+
+    @Test
+    void hexDigest_shouldHashNonJsonBodiesVerbatim() {
+        // Given
+        String first = hash(MediaType.TEXT_PLAIN, "a b");
+        String second = hash(MediaType.TEXT_PLAIN, "ab");
+
+        // Then
+        assertNotEquals(first, second);
+    }
+
+    @Test
+    void hexDigest_shouldReturnNullForEmptyBody() {
+        assertNull(hash(MediaType.APPLICATION_JSON));
+    }
+
+    @Test
+    void update_shouldNotConsumeBuffer() {
+        // Given
+        DataBuffer dataBuffer = bufferFactory.wrap("{\"a\": 1}".getBytes(StandardCharsets.UTF_8));
+        RequestBodyHasher hasher = RequestBodyHasher.forContentType(MediaType.APPLICATION_JSON);
+
+        // When
+        hasher.update(dataBuffer);
+
+        // Then
+        assertEquals(8, dataBuffer.readableByteCount());
+    }
+
+    private String hash(MediaType contentType, String... chunks) {
+        RequestBodyHasher hasher = RequestBodyHasher.forContentType(contentType);
+        for (String chunk : chunks) {
+            hasher.update(bufferFactory.wrap(chunk.getBytes(StandardCharsets.UTF_8)));
+        }
+        return hasher.hexDigest();
+    }
+}
@@ -0,0 +1,122 @@
+package com.echo.proxy.filter;
+
+import com.echo.proxy.config.EchoMode;
+import com.echo.proxy.config.ProxyConfiguration;
+import com.echo.proxy.model.EchoContext;
+import com.echo.proxy.model.EchoRoute;
+import com.echo.proxy.service.RouteRegistry;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.cloud.gateway.filter.GatewayFilterChain;
+import org.springframework.http.HttpStatus;
+import org.springframework.mock.http.server.reactive.MockServerHttpRequest;
+import org.springframework.mock.web.server.MockServerWebExchange;
+import org.springframework.web.server.ServerWebExchange;
+import reactor.core.publisher.Mono;
+
+import java.util.concurrent.atomic.AtomicReference;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * Unit tests for SessionRoutingFilter.
+ */
+class SessionRoutingFilterTest {
+
+    private ProxyConfiguration proxyConfiguration;
+    private RouteRegistry routeRegistry;
+    private SessionRoutingFilter filter;
+    private AtomicReference<ServerWebExchange> forwarded;
+    private GatewayFilterChain chain;
+
+    @BeforeEach
+    void setUp() {
+        proxyConfiguration = new ProxyConfiguration();
+        proxyConfiguration.setSessionId("global-session");
+        routeRegistry = new RouteRegistry(proxyConfiguration);
+        filter = new SessionRoutingFilter(proxyConfiguration, routeRegistry);
+        forwarded = new AtomicReference<>();
+        chain = exchange -> {
+            forwarded.set(exchange);
+            return Mono.empty();
+        };
+    }
+
+    @Test
+    void filter_shouldFallBackToConfiguredDefaults() {
+        // Given
+        MockServerWebExchange exchange = MockServerWebExchange.from(MockServerHttpRequest.get("/api/users"));
+
+        // When
+        filter.filter(exchange, chain).block();
+
+        // Then
+        assertEquals(new EchoContext(EchoMode.RECORD, "global-session", null), context());
+        assertSame(exchange, forwarded.get());
+    }
+
+    @Test
+    void filter_shouldSelectSessionAndModeFromHeadersWithoutForwardingThem() {
+        // Given
+        MockServerWebExchange exchange = MockServerWebExchange.from(MockServerHttpRequest.get("/api/users")
+                .header("X-Echo-Session", "suite-a")
+                .header("X-Echo-Mode", "replay"));
+
+        // When
+        filter.filter(exchange, chain).block();
+
+        // Then
+        assertEquals(new EchoContext(EchoMode.REPLAY, "suite-a", null), context());
+        assertFalse(forwarded.get().getRequest().getHeaders().containsKey("X-Echo-Session"));
+        assertFalse(forwarded.get().getRequest().getHeaders().containsKey("X-Echo-Mode"));
+    }
+
+    @Test
+    void filter_shouldSelectSessionAndModeFromPathPrefixAndStripIt() {
+        // Given
+        MockServerWebExchange exchange = MockServerWebExchange.from(
+                MockServerHttpRequest.get("/_echo/record/suite-b/api/users?page=2"));
+
+        // When
+        filter.filter(exchange, chain).block();
+
+        // Then
+        assertEquals(new EchoContext(EchoMode.RECORD, "suite-b", null), context());
+        assertEquals("/api/users", forwarded.get().getRequest().getPath().value());
+        assertEquals("page=2", forwarded.get().getRequest().getURI().getQuery());
+    }
+
+    @Test
+    void filter_shouldApplyRouteModeAndSessionNamespace() {
+        // Given
+        EchoRoute payments = EchoRoute.of("payments", null, "/payments", "http://payments:8080",
+                null, EchoMode.REPLAY, true);
+        routeRegistry.put(payments);
+        MockServerWebExchange exchange = MockServerWebExchange.from(
+                MockServerHttpRequest.get("/_echo/record/suite-c/payments/charges"));
+
+        // When
+        filter.filter(exchange, chain).block();
+
+        // Then
+        assertEquals(new EchoContext(EchoMode.RECORD, "suite-c:payments", payments), context());
+    }
+
+    @Test
+    void filter_shouldRejectUnknownMode() {
+        // Given
+        MockServerWebExchange exchange = MockServerWebExchange.from(MockServerHttpRequest.get("/api/users")
+                .header("X-Echo-Mode", "rewind"));
+
+        // When
+        filter.filter(exchange, chain).block();
+
+        // Then
+        assertEquals(HttpStatus.BAD_REQUEST, exchange.getResponse().getStatusCode());
+        assertNull(forwarded.get());
+    }
+
+    private EchoContext context() {
+        return forwarded.get().getAttribute(SessionRoutingFilter.ECHO_CONTEXT_ATTR);
+    }
+}
@@ -0,0 +1,108 @@
+package com.echo.proxy.filter;
+
+import com.echo.proxy.config.EchoMode;
+import com.echo.proxy.config.ProxyConfiguration;
+import com.echo.proxy.model.EchoContext;
+import com.echo.proxy.model.EchoRoute;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.cloud.gateway.filter.GatewayFilterChain;
+import org.springframework.http.HttpMethod;
+import org.springframework.mock.http.server.reactive.MockServerHttpRequest;
+import org.springframework.mock.web.server.MockServerWebExchange;
+import reactor.core.publisher.Mono;
+
+import java.net.URI;
+
+import static org.junit.jupiter.api.Assertions.*;
+import static org.springframework.cloud.gateway.support.ServerWebExchangeUtils.GATEWAY_REQUEST_URL_ATTR;
+
+/**
+ * Unit tests for UpstreamRoutingFilter.
+ */
+class UpstreamRoutingFilterTest {
+
+    private static final GatewayFilterChain CHAIN = exchange -> Mono.empty();
+
+    private ProxyConfiguration proxyConfiguration;
+    private UpstreamRoutingFilter filter;
+
+    @BeforeEach
+    void setUp() {
+        proxyConfiguration = new ProxyConfiguration();
+        proxyConfiguration.setTargetUrl("http://default:9000");
+        filter = new UpstreamRoutingFilter(proxyConfiguration);
+    }
+
+    @Test
+    void filter_shouldForwardToRuntimeDefaultTargetKeepingPathAndQuery() {
+        // Given
+        MockServerWebExchange before = exchange("/api/users?page=2&sort=name", null);
+        MockServerWebExchange after = exchange("/api/users?page=2&sort=name", null);
+
+        // When
+        filter.filter(before, CHAIN).block();
+        proxyConfiguration.setTargetUrl("https://staging:8443/base");
+        filter.filter(after, CHAIN).block();
+
+        // Then
+        assertEquals(URI.create("http://default:9000/api/users?page=2&sort=name"), upstream(before));
+        assertEquals(URI.create("https://staging:8443/base/api/users?page=2&sort=name"), upstream(after));
+    }
+
+    @Test
+    void filter_shouldSwapTargetAndStripPrefixOfRoute() {
+        // Given
+        EchoRoute route = EchoRoute.of("payments", null, "/payments", "http://payments:8080", null, null, true);
+        MockServerWebExchange exchange = exchange("/payments/v1/charges?id=%2F42", route);
+
+        // When
+        filter.filter(exchange, CHAIN).block();
+
+        // Then
+        assertEquals(URI.create("http://payments:8080/v1/charges?id=%2F42"), upstream(exchange));
+    }
+
+    @Test
+    void filter_shouldStripPrefixByMatchedSegmentsOfPathWithEmptySegments() {
+        // Given
+        EchoRoute route = EchoRoute.of("payments", null, "/payments", "http://payments:8080", null, null, true);
+        MockServerWebExchange exchange = exchange("//payments/x", route);
+
+        // When
+        filter.filter(exchange, CHAIN).block();
+
+        // Then
+        assertEquals(URI.create("http://payments:8080/x"), upstream(exchange));
+    }
+
+    @Test
+    void filter_shouldKeepPrefixOfRouteThatDoesNotStripIt() {
+        // Given
+        EchoRoute route = EchoRoute.of("users", null, "/users", "http://users:8080", null, EchoMode.RECORD, false);
+        MockServerWebExchange exchange = exchange("/users/42", route);
+
+        // When
+        filter.filter(exchange, CHAIN).block();
+
+        // Then
+        assertEquals(URI.create("http://users:8080/users/42"), upstream(exchange));
+    }
+
+    private static MockServerWebExchange exchange(String pathAndQuery, EchoRoute route) {
+        // Built from a URI, so the path and query stay exactly as sent
+        MockServerWebExchange exchange = MockServerWebExchange.from(
+                MockServerHttpRequest.method(HttpMethod.GET, URI.create("http://proxy:8080" + pathAndQuery)));
+        // The gateway resolves the catch-all route to the request's own path and query
+        exchange.getAttributes().put(GATEWAY_REQUEST_URL_ATTR, URI.create("http://catch-all:80" + pathAndQuery));
+        if (route != null) {
+            exchange.getAttributes().put(SessionRoutingFilter.ECHO_CONTEXT_ATTR,
+                    new EchoContext(EchoMode.RECORD, route.sessionIdFor("suite"), route));
+        }
+        return exchange;
+    }
+
+    private static URI upstream(MockServerWebExchange exchange) {
+        return exchange.getAttribute(GATEWAY_REQUEST_URL_ATTR);
+    }
+}
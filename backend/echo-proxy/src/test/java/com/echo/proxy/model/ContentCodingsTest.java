@@ -0,0 +1,64 @@
+package com.echo.proxy.model;
+
+import org.junit.jupiter.api.Test;
+
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.util.List;
+import java.util.Map;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * Unit tests for ContentCodings.
+ */
+class ContentCodingsTest {
+
+    @Test
+    void accepts_shouldHonourListsWildcardsAndZeroQuality() {
+        assertTrue(ContentCodings.accepts("gzip, deflate, br", "gzip"));
+        assertTrue(ContentCodings.accepts("br;q=1.0, *;q=0.1", "gzip"));
+        assertFalse(ContentCodings.accepts("gzip;q=0, *", "gzip"));
+        assertFalse(ContentCodings.accepts("deflate", "gzip"));
+        assertFalse(ContentCodings.accepts(null, "gzip"));
+        assertFalse(ContentCodings.accepts("gzip", "gzip, br"));
+    }
+
+    @Test
+    void normalize_shouldTreatIdentityAsUnencoded() {
+        assertNull(ContentCodings.normalize("identity"));
+        assertNull(ContentCodings.normalize(" "));
+        assertEquals("gzip", ContentCodings.normalize("GZIP"));
+    }
+
+    @Test
+    void decode_shouldReverseEncodeForGzipAndDeflate() {
+        // Given
+        byte[] body = "{\"name\": \"echo\"}".getBytes(StandardCharsets.UTF_8);
+
+        // When & Then
+        assertArrayEquals(body, ContentCodings.decode("gzip", ContentCodings.encode("gzip", body)));
+        assertArrayEquals(body, ContentCodings.decode("deflate", ContentCodings.encode("deflate", body)));
+        assertNull(ContentCodings.decode("br", body));
+        assertNull(ContentCodings.decode("gzip", body));
+    }
+
+    @Test
+    void getDecodedBody_shouldDecodeOnceAndKeepEncodedBody() {
+        // Given
+        byte[] body = "{\"name\": \"echo\"}".getBytes(StandardCharsets.UTF_8);
+        byte[] encoded = ContentCodings.encode("gzip", body);
+        ReplayResponse response = ReplayResponse.of(200, Map.of("Content-Encoding", List.of("gzip")),
+                ByteBuffer.wrap(encoded), "gzip", null);
+
+        // When
+        ByteBuffer decoded = response.getDecodedBody();
+
+        // Then
+        assertEquals("gzip", response.getContentEncoding());
+        assertNull(response.getHeaders().getFirst("Content-Encoding"));
+        assertEquals(encoded.length, response.getBodyLength());
+        assertEquals("{\"name\": \"echo\"}", StandardCharsets.UTF_8.decode(decoded).toString());
+        assertEquals(body.length, response.getDecodedBody().remaining());
+    }
+}
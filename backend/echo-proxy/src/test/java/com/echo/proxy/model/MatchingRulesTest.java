@@ -0,0 +1,58 @@
+package com.echo.proxy.model;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+
+/**
+ * Unit tests for MatchingRules.
+ */
+class MatchingRulesTest {
+
+    @Test
+    void indexKey_shouldCollapsePathsMatchingTemplate() {
+        // Given
+        MatchingRules rules = MatchingRules.compile(true, List.of(),
+                List.of("/users/{id}", "/users/{id}/orders/{orderId}"));
+
+        // When & Then
+        assertEquals("GET /users/{id}", rules.indexKey("GET", "/users/42", null));
+        assertEquals("GET /users/{id}/orders/{orderId}", rules.indexKey("GET", "/users/7/orders/99", null));
+        assertEquals("GET /users", rules.indexKey("GET", "/users", null));
+        assertEquals("GET /accounts/42", rules.indexKey("GET", "/accounts/42", null));
+    }
+
+    @Test
+    void indexKey_shouldPreferLiteralSegmentsOverVariables() {
+        // Given
+        MatchingRules rules = MatchingRules.compile(true, List.of(),
+                List.of("/users/{id}", "/users/{id}/profile", "/users/me/{section}"));
+
+        // When & Then
+        assertEquals("GET /users/me/{section}", rules.indexKey("GET", "/users/me/profile", null));
+        assertEquals("GET /users/{id}/profile", rules.indexKey("GET", "/users/42/profile", null));
+        assertEquals("GET /users/{id}", rules.indexKey("GET", "/users/me", null));
+    }
+
+    @Test
+    void indexKey_shouldDropIgnoredAndSortRemainingQueryParams() {
+        // Given
+        MatchingRules rules = MatchingRules.compile(true, List.of("ts", "_"), List.of());
+
+        // When & Then
+        assertEquals("GET /search?page=2&q=echo", rules.indexKey("GET", "/search", "q=echo&ts=1700000000&page=2"));
+        assertEquals("GET /search", rules.indexKey("GET", "/search", "_=123"));
+        assertEquals("GET /search", rules.indexKey("GET", "/search", ""));
+    }
+
+    @Test
+    void indexKey_shouldKeepParameterOrderWhenSortingDisabled() {
+        // Given
+        MatchingRules rules = MatchingRules.compile(false, List.of(), List.of());
+
+        // When & Then
+        assertEquals("GET /search?q=echo&page=2", rules.indexKey("GET", "/search", "q=echo&page=2"));
+    }
+}
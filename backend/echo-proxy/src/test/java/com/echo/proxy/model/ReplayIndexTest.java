@@ -0,0 +1,107 @@
+package com.echo.proxy.model;
+
+import org.junit.jupiter.api.Test;
+import org.springframework.http.HttpStatus;
+
+import java.nio.charset.StandardCharsets;
+import java.util.List;
+import java.util.Map;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * Unit tests for ReplayIndex.
+ */
+class ReplayIndexTest {
+
+    @Test
+    void find_shouldReturnMostRecentRecordingForKey() {
+        // Given
+        ReplayIndex index = ReplayIndex.builder("test-session", MatchingRules.defaults())
+                .add(record("GET", "/api/test", null, "{\"version\": 1}"))
+                .add(record("GET", "/api/test", "", "{\"version\": 2}"))
+                .build();
+
+        // When
+        ReplayResponse match = index.find("GET", "/api/test", null, null);
+
+        // Then
+        assertNotNull(match);
+        assertEquals("{\"version\": 2}", StandardCharsets.UTF_8.decode(match.getBody()).toString());
+        assertEquals(1, index.size());
+    }
+
+    @Test
+    void lookup_shouldKeepEveryRecordingForKeyInRecordedOrder() {
+        // Given
+        ReplayIndex index = ReplayIndex.builder("test-session", MatchingRules.defaults())
+                .add(record("GET", "/api/test", null, "{\"version\": 1}"))
+                .add(record("GET", "/api/test", null, "{\"version\": 2}"))
+                .build();
+
+        // When
+        ReplayIndex.Entry entry = index.lookup("GET", "/api/test", null, null);
+
+        // Then
+        assertNotNull(entry);
+        assertEquals(2, entry.size());
+        assertEquals("{\"version\": 1}", StandardCharsets.UTF_8.decode(entry.get(0).getBody()).toString());
+        assertSame(entry.get(1), entry.latest());
+    }
+
+    @Test
+    void find_shouldMatchNormalizedQueryAndFilterHeaders() {
+        // Given
+        ReplayIndex index = ReplayIndex.builder("test-session", MatchingRules.defaults())
+                .add(record("GET", "/api/search", "q=echo&page=2", "[]"))
+                .build();
+
+        // When
+        ReplayResponse match = index.find("GET", "/api/search", "page=2&q=echo", null);
+
+        // Then
+        assertNotNull(match);
+        assertEquals(HttpStatus.OK, match.getStatus());
+        assertEquals("application/json", match.getHeaders().getFirst("Content-Type"));
+        assertFalse(match.getHeaders().containsKey("Content-Length"));
+        assertFalse(match.getHeaders().containsKey("access-control-allow-origin"));
+        assertEquals(List.of("a=1", "b=2"), match.getHeaders().get("Set-Cookie"));
+        assertEquals(2, match.getBodyLength());
+        assertNull(index.find("POST", "/api/search", "page=2&q=echo", null));
+    }
+
+    @Test
+    void find_shouldDistinguishRecordingsByRequestBodyHash() {
+        // Given
+        TrafficRecord first = record("POST", "/api/orders", null, "{\"id\": 1}");
+        first.setRequestBodyHash("hash-1");
+        TrafficRecord second = record("POST", "/api/orders", null, "{\"id\": 2}");
+        second.setRequestBodyHash("hash-2");
+        ReplayIndex index = ReplayIndex.builder("test-session", MatchingRules.defaults())
+                .add(first)
+                .add(second)
+                .build();
+
+        // When & Then
+        assertEquals("{\"id\": 1}", StandardCharsets.UTF_8.decode(index.find("POST", "/api/orders", null, "hash-1").getBody()).toString());
+        assertEquals("{\"id\": 2}", StandardCharsets.UTF_8.decode(index.find("POST", "/api/orders", null, "hash-2").getBody()).toString());
+        assertNull(index.find("POST", "/api/orders", null, "hash-3"));
+    }
+
+    private TrafficRecord record(String method, String path, String queryParams, String responseBody) {
+        return TrafficRecord.builder()
+                .sessionId("test-session")
+                .method(method)
+                .path(path)
+                .queryParams(queryParams)
+                .requestBody("ignored".getBytes(StandardCharsets.UTF_8))
+                .statusCode(200)
+                .responseHeaders(Map.of(
+                        "Content-Type", List.of("application/json"),
+                        "Content-Length", List.of(String.valueOf(responseBody.length())),
+                        "Access-Control-Allow-Origin", List.of("*"),
+                        "Set-Cookie", List.of("a=1", "b=2")))
+                .responseBody(responseBody.getBytes(StandardCharsets.UTF_8))
+                .build();
+    }
+}
@@ -0,0 +1,84 @@
+package com.echo.proxy.model;
+
+import com.echo.proxy.config.EchoMode;
+import org.junit.jupiter.api.Test;
+
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * Unit tests for RouteTable.
+ */
+class RouteTableTest {
+
+    private static final EchoRoute API = route("api", null, "/api");
+    private static final EchoRoute PAYMENTS = route("payments", null, "/api/payments");
+    private static final EchoRoute PAYMENTS_HOST = route("payments-host", "pay.example.com", "/");
+
+    @Test
+    void match_shouldPickLongestPrefixOnWholeSegments() {
+        // Given
+        RouteTable table = RouteTable.of(List.of(API, PAYMENTS));
+
+        // When / Then
+        assertSame(PAYMENTS, table.match(null, "/api/payments/charges"));
+        assertSame(PAYMENTS, table.match(null, "/api/payments"));
+        assertSame(API, table.match(null, "/api/paymentsx"));
+        assertNull(table.match(null, "/apix"));
+    }
+
+    @Test
+    void match_shouldPreferRoutesBoundToHost() {
+        // Given
+        RouteTable table = RouteTable.of(List.of(API, PAYMENTS_HOST));
+
+        // When / Then
+        assertSame(PAYMENTS_HOST, table.match("PAY.example.com", "/api/charges"));
+        assertSame(API, table.match("other.example.com", "/api/charges"));
+    }
+
+    @Test
+    void withAndWithout_shouldLeaveOriginalTableUnchanged() {
+        // Given
+        RouteTable table = RouteTable.of(List.of(API));
+
+        // When
+        RouteTable added = table.with(PAYMENTS);
+        RouteTable removed = added.without("api");
+
+        // Then
+        assertEquals(1, table.size());
+        assertSame(PAYMENTS, added.match(null, "/api/payments"));
+        assertNull(removed.match(null, "/api/users"));
+        assertSame(table, table.without("missing"));
+    }
+
+    @Test
+    void forwardedPath_shouldStripPrefixWhenConfigured() {
+        // Given
+        EchoRoute route = EchoRoute.of("users", null, "/users/", "http://users:8080", null, EchoMode.RECORD, true);
+
+        // When / Then
+        assertEquals("/users", route.getPathPrefix());
+        assertEquals("/v1/42", route.forwardedPath("/users/v1/42"));
+        assertEquals("/", route.forwardedPath("/users"));
+        assertEquals("suite:users", route.sessionIdFor("suite"));
+    }
+
+    @Test
+    void forwardedPath_shouldStripPrefixByMatchedSegments() {
+        // Given
+        EchoRoute route = EchoRoute.of("payments", null, "/api//payments", "http://payments:8080", null, null, true);
+
+        // When / Then
+        assertSame(route, RouteTable.of(List.of(route)).match(null, "//api/payments/x"));
+        assertEquals("/x", route.forwardedPath("//api/payments/x"));
+        assertEquals("/x", route.forwardedPath("/api/payments/x"));
+        assertEquals("/", route.forwardedPath("//api/payments"));
+    }
+
+    private static EchoRoute route(String name, String host, String prefix) {
+        return EchoRoute.of(name, host, prefix, "http://" + name + ":8080", null, null, false);
+    }
+}
@@ -0,0 +1,161 @@
+package com.echo.proxy.model;
+
+import com.echo.api.dto.TrafficRecordDto;
+import com.echo.api.service.SessionArchiveWriter;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+import org.springframework.http.HttpStatus;
+
+import java.io.ByteArrayOutputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.time.Duration;
+import java.util.List;
+import java.util.Map;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * Unit tests for SessionArchive.
+ */
+class SessionArchiveTest {
+
+    @TempDir
+    Path tempDir;
+
+    @Test
+    void load_shouldServeBodiesFromMappedFile() throws IOException {
+        // Given
+        Path archive = tempDir.resolve("session.echoarc");
+        writeArchive(archive);
+
+        // When
+        ReplayIndex index = SessionArchive.load(archive, MatchingRules.defaults());
+
+        // Then
+        assertEquals("ci-session", index.getSessionId());
+        ReplayResponse users = index.find("GET", "/api/users", null, null);
+        assertNotNull(users);
+        assertEquals(HttpStatus.OK, users.getStatus());
+        assertEquals("application/json", users.getHeaders().getFirst("Content-Type"));
+        assertFalse(users.getHeaders().containsKey("Content-Length"));
+        assertEquals("[{\"id\": 1}]", StandardCharsets.UTF_8.decode(users.getBody()).toString());
+        assertEquals(Duration.ofMillis(42), users.getUpstreamDuration());
+        assertTrue(users.getBody().isReadOnly());
+
+        ReplayResponse created = index.find("POST", "/api/users", null, "body-hash");
+        assertNotNull(created);
+        assertEquals(HttpStatus.NO_CONTENT, created.getStatus());
+        assertEquals(0, created.getBodyLength());
+        assertNull(created.getUpstreamDuration());
+    }
+
+    @Test
+    void load_shouldReadArchivesWrittenBySessionArchiveWriter() throws IOException {
+        // Given
+        Path archive = tempDir.resolve("written.echoarc");
+        byte[] gzipped = ContentCodings.encode(ContentCodings.GZIP, "{\"ok\": true}".getBytes(StandardCharsets.UTF_8));
+        try (OutputStream out = Files.newOutputStream(archive);
+             SessionArchiveWriter writer = new SessionArchiveWriter(out, "ci-session")) {
+            writer.write(TrafficRecordDto.builder()
+                    .method("GET").path("/api/login").statusCode(200).upstreamDurationMs(7L)
+                    .responseHeaders(Map.of("Set-Cookie", List.of("a=1", "b=2")))
+                    .responseBody("welcome".getBytes(StandardCharsets.UTF_8))
+                    .build());
+            writer.write(TrafficRecordDto.builder()
+                    .method("GET").path("/api/status").queryParams("verbose=true").statusCode(200)
+                    .responseHeaders(Map.of("Content-Type", List.of("application/json")))
+                    .responseBody(gzipped).responseBodyEncoding(ContentCodings.GZIP)
+                    .build());
+            writer.write(TrafficRecordDto.builder()
+                    .method("DELETE").path("/api/users/1").requestBodyHash("body-hash").statusCode(204)
+                    .build());
+            assertEquals(3, writer.finish());
+        }
+
+        // When
+        ReplayIndex index = SessionArchive.load(archive, MatchingRules.defaults());
+
+        // Then
+        assertEquals("ci-session", index.getSessionId());
+        ReplayResponse login = index.find("GET", "/api/login", null, null);
+        assertEquals(HttpStatus.OK, login.getStatus());
+        assertEquals(List.of("a=1", "b=2"), login.getHeaders().get("Set-Cookie"));
+        assertEquals("welcome", StandardCharsets.UTF_8.decode(login.getBody()).toString());
+        assertNull(login.getContentEncoding());
+        assertEquals(Duration.ofMillis(7), login.getUpstreamDuration());
+
+        ReplayResponse status = index.find("GET", "/api/status", "verbose=true", null);
+        assertEquals(ContentCodings.GZIP, status.getContentEncoding());
+        assertEquals(gzipped.length, status.getBodyLength());
+        assertEquals("{\"ok\": true}", StandardCharsets.UTF_8.decode(status.getDecodedBody()).toString());
+
+        ReplayResponse deleted = index.find("DELETE", "/api/users/1", null, "body-hash");
+        assertEquals(HttpStatus.NO_CONTENT, deleted.getStatus());
+        assertEquals(0, deleted.getBodyLength());
+    }
+
+    @Test
+    void load_shouldRejectFilesThatAreNotArchives() throws IOException {
+        // Given
+        Path file = tempDir.resolve("not-an-archive.json");
+        Files.writeString(file, "{\"this\": \"is not an archive at all\"}");
+
+        // When & Then
+        assertThrows(IOException.class, () -> SessionArchive.load(file, MatchingRules.defaults()));
+    }
+
+    private static void writeArchive(Path target) throws IOException {
+        byte[] body = "[{\"id\": 1}]".getBytes(StandardCharsets.UTF_8);
+
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        DataOutputStream out = new DataOutputStream(bytes);
+        out.write(SessionArchive.MAGIC);
+        long bodyOffset = bytes.size();
+        out.write(body);
+
+        long indexOffset = bytes.size();
+        writeString(out, "ci-session");
+        writeRecord(out, "GET", "/api/users", null, 200, 42, "Content-Type", "application/json",
+                bodyOffset, body.length);
+        writeRecord(out, "POST", "/api/users", "body-hash", 204, -1, "Content-Length", "0",
+                indexOffset, 0);
+
+        out.writeLong(indexOffset);
+        out.writeInt(2);
+        out.write(SessionArchive.MAGIC);
+        Files.write(target, bytes.toByteArray());
+    }
+
+    private static void writeRecord(DataOutputStream out, String method, String path, String bodyHash, int status,
+                                    long durationMs, String headerName, String headerValue,
+                                    long bodyOffset, int bodyLength) throws IOException {
+        writeString(out, method);
+        writeString(out, path);
+        writeString(out, null);
+        writeString(out, bodyHash);
+        out.writeInt(status);
+        out.writeLong(durationMs);
+        out.writeLong(durationMs);
+        out.writeInt(1);
+        writeString(out, headerName);
+        writeString(out, headerValue);
+        writeString(out, null);
+        out.writeLong(bodyOffset);
+        out.writeInt(bodyLength);
+    }
+
+    private static void writeString(DataOutputStream out, String value) throws IOException {
+        if (value == null) {
+            out.writeInt(-1);
+            return;
+        }
+        byte[] bytes = value.getBytes(StandardCharsets.UTF_8);
+        out.writeInt(bytes.length);
+        out.write(bytes);
+    }
+}
@@ -0,0 +1,68 @@
+package com.echo.proxy.service;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.stream.IntStream;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * Unit tests for LogSampler.
+ */
+class LogSamplerTest {
+
+    @Test
+    void sample_shouldPickFirstAndThenEveryNthOccurrence() {
+        // Given
+        LogSampler sampler = new LogSampler(3);
+
+        // When
+        boolean[] sampled = new boolean[7];
+        for (int i = 0; i < sampled.length; i++) {
+            sampled[i] = sampler.sample();
+        }
+
+        // Then
+        assertArrayEquals(new boolean[] {true, false, false, true, false, false, true}, sampled);
+    }
+
+    @Test
+    void sample_shouldPickEveryOccurrenceWhenEveryIsOne() {
+        // Given
+        LogSampler sampler = new LogSampler(1);
+
+        // When & Then
+        assertTrue(sampler.sample());
+        assertTrue(sampler.sample());
+    }
+
+    @Test
+    void sample_shouldPickExactShareAcrossThreads() {
+        // Given
+        LogSampler sampler = new LogSampler();
+        AtomicInteger picked = new AtomicInteger();
+
+        // When
+        CompletableFuture.allOf(IntStream.range(0, 4)
+                .mapToObj(thread -> CompletableFuture.runAsync(() -> {
+                    for (int i = 0; i < 2500; i++) {
+                        if (sampler.sample()) {
+                            picked.incrementAndGet();
+                        }
+                    }
+                }))
+                .toArray(CompletableFuture[]::new))
+                .join();
+
+        // Then
+        assertEquals(10_000 / LogSampler.DEFAULT_EVERY, picked.get());
+    }
+
+    @Test
+    void constructor_shouldRejectEveryBelowOne() {
+        // When & Then
+        assertThrows(IllegalArgumentException.class, () -> new LogSampler(0));
+    }
+}
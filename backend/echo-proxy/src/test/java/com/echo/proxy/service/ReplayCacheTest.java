@@ -0,0 +1,94 @@
+package com.echo.proxy.service;
+
+import com.echo.proxy.config.ProxyConfiguration;
+import com.echo.proxy.model.ReplayKey;
+import com.echo.proxy.model.ReplayResponse;
+import com.echo.proxy.model.TrafficRecord;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import java.nio.charset.StandardCharsets;
+import java.util.Optional;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * Unit tests for ReplayCache.
+ */
+class ReplayCacheTest {
+
+    private ProxyConfiguration proxyConfiguration;
+    private ReplayCache replayCache;
+
+    @BeforeEach
+    void setUp() {
+        proxyConfiguration = new ProxyConfiguration();
+        replayCache = new ReplayCache(proxyConfiguration, new SimpleMeterRegistry());
+    }
+
+    @Test
+    void get_shouldReturnCachedMatch() {
+        // Given
+        ReplayResponse response = ReplayResponse.from(TrafficRecord.builder()
+                .sessionId("test-session")
+                .method("GET")
+                .path("/api/test")
+                .statusCode(200)
+                .responseBody("{\"status\": \"ok\"}".getBytes(StandardCharsets.UTF_8))
+                .build());
+        replayCache.put(ReplayKey.of("test-session", "GET /api/test?a=1&b=2", null), Optional.of(response));
+
+        // When
+        ReplayCache.Lookup cached = replayCache.get(ReplayKey.of("test-session", "GET /api/test?a=1&b=2", null));
+
+        // Then
+        assertTrue(cached.isCached());
+        assertSame(response, cached.getResult().orElseThrow());
+    }
+
+    @Test
+    void get_shouldReturnCachedMiss() {
+        // Given
+        ReplayKey key = ReplayKey.of("test-session", "GET /api/missing", null);
+        replayCache.put(key, Optional.empty());
+
+        // When
+        ReplayCache.Lookup cached = replayCache.get(ReplayKey.of("test-session", "GET /api/missing", null));
+
+        // Then
+        assertTrue(cached.isCached());
+        assertTrue(cached.getResult().isEmpty());
+    }
+
+    @Test
+    void invalidateSession_shouldOnlyRemoveThatSession() {
+        // Given
+        ReplayKey first = ReplayKey.of("session-a", "GET /api/test", null);
+        ReplayKey second = ReplayKey.of("session-b", "GET /api/test", null);
+        replayCache.put(first, Optional.empty());
+        replayCache.put(second, Optional.empty());
+
+        // When
+        int removed = replayCache.invalidateSession("session-a");
+
+        // Then
+        assertEquals(1, removed);
+        assertFalse(replayCache.get(first).isCached());
+        assertTrue(replayCache.get(second).isCached());
+    }
+
+    @Test
+    void get_shouldBypassCacheWhenDisabled() {
+        // Given
+        proxyConfiguration.getReplayCache().setEnabled(false);
+        ReplayCache disabledCache = new ReplayCache(proxyConfiguration, new SimpleMeterRegistry());
+        ReplayKey key = ReplayKey.of("test-session", "GET /api/test", null);
+
+        // When
+        disabledCache.put(key, Optional.empty());
+
+        // Then
+        assertFalse(disabledCache.get(key).isCached());
+    }
+}
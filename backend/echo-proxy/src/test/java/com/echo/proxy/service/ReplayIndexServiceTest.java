@@ -0,0 +1,219 @@
+package com.echo.proxy.service;
+
+import com.echo.proxy.config.ProxyConfiguration;
+import com.echo.proxy.model.MatchingRules;
+import com.echo.proxy.model.ReplayIndex;
+import com.echo.proxy.model.TrafficRecord;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.extension.ExtendWith;
+import org.mockito.Mock;
+import org.mockito.junit.jupiter.MockitoExtension;
+import reactor.core.publisher.Flux;
+import reactor.core.publisher.Sinks;
+
+import java.nio.charset.StandardCharsets;
+import java.time.Duration;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.stream.Stream;
+
+import static org.junit.jupiter.api.Assertions.*;
+import static org.mockito.Mockito.*;
+
+/**
+ * Unit tests for ReplayIndexService.
+ */
+@ExtendWith(MockitoExtension.class)
+class ReplayIndexServiceTest {
+
+    @Mock
+    private EchoApiClient echoApiClient;
+
+    @Mock
+    private ReplayCache replayCache;
+
+    private ProxyConfiguration proxyConfiguration;
+    private final AtomicLong nanos = new AtomicLong();
+    private ReplayIndexService replayIndexService;
+
+    @BeforeEach
+    void setUp() {
+        proxyConfiguration = new ProxyConfiguration();
+        proxyConfiguration.getPreload().setIdleTimeout(Duration.ofMinutes(30));
+        proxyConfiguration.getPreload().setMaxSessions(2);
+        replayIndexService = new ReplayIndexService(proxyConfiguration, echoApiClient, MatchingRules.defaults(),
+                replayCache, nanos::get);
+    }
+
+    @Test
+    void preloadIfAbsent_shouldStartOneLoadForRepeatedCalls() {
+        // Given
+        Sinks.Many<TrafficRecord> records = Sinks.many().unicast().onBackpressureBuffer();
+        when(echoApiClient.streamSession("test-session")).thenReturn(records.asFlux());
+
+        // When
+        replayIndexService.preloadIfAbsent("test-session");
+        replayIndexService.preloadIfAbsent("test-session");
+
+        // Then
+        assertEquals("LOADING", replayIndexService.status("test-session").get("status"));
+        assertNull(replayIndexService.getReadyIndex("test-session"));
+        records.tryEmitNext(record("/api/test"));
+        records.tryEmitComplete();
+        awaitStatus("test-session", "READY");
+        assertEquals(1, replayIndexService.getReadyIndex("test-session").size());
+        verify(echoApiClient, times(1)).streamSession("test-session");
+    }
+
+    @Test
+    void preloadIfAbsent_shouldRetryFailedLoadOnlyAfterTheBackoff() {
+        // Given
+        when(echoApiClient.streamSession("test-session")).thenReturn(Flux.error(new IllegalStateException("down")));
+        replayIndexService.preloadIfAbsent("test-session");
+        awaitStatus("test-session", "FAILED");
+
+        // When
+        for (int i = 0; i < 5; i++) {
+            nanos.addAndGet(Duration.ofSeconds(10).toNanos());
+            replayIndexService.getReadyIndex("test-session");
+            replayIndexService.preloadIfAbsent("test-session");
+        }
+        boolean retriedWithinBackoff = mockingDetails(echoApiClient).getInvocations().size() > 1;
+        nanos.addAndGet(Duration.ofSeconds(11).toNanos());
+        replayIndexService.preloadIfAbsent("test-session");
+
+        // Then
+        assertFalse(retriedWithinBackoff);
+        verify(echoApiClient, times(2)).streamSession("test-session");
+    }
+
+    @Test
+    void preloadIfAbsent_shouldNotReloadEvictedSessionWithinTheBackoff() {
+        // Given
+        proxyConfiguration.getPreload().setMaxSessions(1);
+        replayIndexService = new ReplayIndexService(proxyConfiguration, echoApiClient, MatchingRules.defaults(),
+                replayCache, nanos::get);
+        when(echoApiClient.streamSession(anyString())).thenReturn(Flux.just(record("/api/test")));
+        replayIndexService.preloadIfAbsent("session-1");
+        awaitStatus("session-1", "READY");
+        replayIndexService.preloadIfAbsent("session-2");
+        awaitStatus("session-2", "READY");
+
+        // When
+        for (int i = 0; i < 10; i++) {
+            replayIndexService.preloadIfAbsent("session-1");
+            replayIndexService.preloadIfAbsent("session-2");
+        }
+
+        // Then
+        verify(echoApiClient, times(1)).streamSession("session-1");
+        verify(echoApiClient, times(1)).streamSession("session-2");
+    }
+
+    @Test
+    void preloadIfAbsent_shouldDoNothingWhenPreloadIsDisabled() {
+        // Given
+        proxyConfiguration.getPreload().setEnabled(false);
+
+        // When
+        replayIndexService.preloadIfAbsent("test-session");
+
+        // Then
+        verifyNoInteractions(echoApiClient);
+        assertEquals("NOT_LOADED", replayIndexService.status("test-session").get("status"));
+    }
+
+    @Test
+    void getReadyIndex_shouldDropIndexIdleForTheTimeout() {
+        // Given
+        when(echoApiClient.streamSession("test-session")).thenReturn(Flux.just(record("/api/test")));
+        replayIndexService.preloadIfAbsent("test-session");
+        awaitStatus("test-session", "READY");
+
+        // When
+        nanos.addAndGet(Duration.ofMinutes(20).toNanos());
+        boolean readyAfterLookup = replayIndexService.getReadyIndex("test-session") != null;
+        nanos.addAndGet(Duration.ofMinutes(31).toNanos());
+
+        // Then
+        assertTrue(readyAfterLookup);
+        assertNull(replayIndexService.getReadyIndex("test-session"));
+        replayIndexService.preloadIfAbsent("test-session");
+        verify(echoApiClient, times(2)).streamSession("test-session");
+    }
+
+    @Test
+    void preloadIfAbsent_shouldKeepAtMostTheMaximumNumberOfSessions() {
+        // Given
+        when(echoApiClient.streamSession(anyString())).thenReturn(Flux.just(record("/api/test")));
+        replayIndexService.preloadIfAbsent("session-1");
+        awaitStatus("session-1", "READY");
+        replayIndexService.preloadIfAbsent("session-2");
+        awaitStatus("session-2", "READY");
+
+        // When
+        replayIndexService.preloadIfAbsent("session-3");
+
+        // Then
+        long loaded = Stream.of("session-1", "session-2", "session-3")
+                .filter(sessionId -> !"NOT_LOADED".equals(replayIndexService.status(sessionId).get("status")))
+                .count();
+        assertEquals(2, loaded);
+    }
+
+    @Test
+    void fold_shouldAddRecordingsToReadyIndex() {
+        // Given
+        when(echoApiClient.streamSession("test-session")).thenReturn(Flux.just(record("/api/test")));
+        replayIndexService.preloadIfAbsent("test-session");
+        awaitStatus("test-session", "READY");
+
+        // When
+        boolean folded = replayIndexService.fold("test-session", List.of(record("/api/test"), record("/api/new")));
+
+        // Then
+        assertTrue(folded);
+        ReplayIndex index = replayIndexService.getReadyIndex("test-session");
+        assertEquals(2, index.size());
+        assertEquals(2, index.lookup("GET", "/api/test", null, null).size());
+        assertNotNull(index.find("GET", "/api/new", null, null));
+    }
+
+    @Test
+    void fold_shouldAddRecordingsFoldedWhileLoadingToTheLoadedIndex() {
+        // Given
+        Sinks.Many<TrafficRecord> records = Sinks.many().unicast().onBackpressureBuffer();
+        when(echoApiClient.streamSession("test-session")).thenReturn(records.asFlux());
+        replayIndexService.preloadIfAbsent("test-session");
+
+        // When
+        boolean folded = replayIndexService.fold("test-session", List.of(record("/api/new")));
+        records.tryEmitNext(record("/api/test"));
+        records.tryEmitComplete();
+
+        // Then
+        assertFalse(folded);
+        awaitStatus("test-session", "READY");
+        assertNotNull(replayIndexService.getReadyIndex("test-session").find("GET", "/api/new", null, null));
+        assertFalse(replayIndexService.fold("other-session", List.of(record("/api/new"))));
+    }
+
+    private void awaitStatus(String sessionId, String status) {
+        long deadline = System.nanoTime() + Duration.ofSeconds(5).toNanos();
+        while (!status.equals(replayIndexService.status(sessionId).get("status"))) {
+            assertTrue(System.nanoTime() < deadline, "Session " + sessionId + " did not become " + status);
+            Thread.onSpinWait();
+        }
+    }
+
+    private static TrafficRecord record(String path) {
+        return TrafficRecord.builder()
+                .sessionId("test-session")
+                .method("GET")
+                .path(path)
+                .statusCode(200)
+                .responseBody("{}".getBytes(StandardCharsets.UTF_8))
+                .build();
+    }
+}
@@ -0,0 +1,104 @@
+package com.echo.proxy.service;
+
+import com.echo.proxy.config.LatencyMode;
+import com.echo.proxy.config.ProxyConfiguration;
+import com.echo.proxy.model.MatchingRules;
+import com.echo.proxy.model.ReplayIndex;
+import com.echo.proxy.model.ReplayResponse;
+import com.echo.proxy.model.TrafficRecord;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.extension.ExtendWith;
+import org.mockito.Mock;
+import org.mockito.junit.jupiter.MockitoExtension;
+
+import java.nio.charset.StandardCharsets;
+import java.time.Duration;
+import java.util.Map;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+import static org.mockito.Mockito.when;
+
+/**
+ * Unit tests for ReplayLatency.
+ */
+@ExtendWith(MockitoExtension.class)
+class ReplayLatencyTest {
+
+    @Mock
+    private ReplayIndexService replayIndexService;
+
+    private ProxyConfiguration proxyConfiguration;
+    private ReplayLatency replayLatency;
+
+    @BeforeEach
+    void setUp() {
+        proxyConfiguration = new ProxyConfiguration();
+        replayLatency = new ReplayLatency(proxyConfiguration, replayIndexService);
+    }
+
+    @Test
+    void delayFor_shouldNotDelayByDefault() {
+        // Given
+        ReplayResponse response = ReplayResponse.from(record("/api/test", 250L));
+
+        // When
+        Duration delay = replayLatency.delayFor("test-session", "GET", "/api/test", response);
+
+        // Then
+        assertEquals(Duration.ZERO, delay);
+    }
+
+    @Test
+    void delayFor_shouldScaleAndCapRecordedDuration() {
+        // Given
+        proxyConfiguration.getLatency().setMode(LatencyMode.RECORDED);
+        proxyConfiguration.getLatency().setScale(0.5);
+        proxyConfiguration.getLatency().setMaxDelay(Duration.ofMillis(100));
+
+        // When
+        Duration scaled = replayLatency.delayFor("test-session", "GET", "/api/test",
+                ReplayResponse.from(record("/api/test", 120L)));
+        Duration capped = replayLatency.delayFor("test-session", "GET", "/api/test",
+                ReplayResponse.from(record("/api/test", 1000L)));
+        Duration untimed = replayLatency.delayFor("test-session", "GET", "/api/test",
+                ReplayResponse.from(record("/api/test", null)));
+
+        // Then
+        assertEquals(Duration.ofMillis(60), scaled);
+        assertEquals(Duration.ofMillis(100), capped);
+        assertEquals(Duration.ZERO, untimed);
+    }
+
+    @Test
+    void delayFor_shouldSampleFromRecordingsOfThePath() {
+        // Given
+        proxyConfiguration.getLatency().setMode(LatencyMode.DISTRIBUTION);
+        ReplayIndex index = ReplayIndex.builder("test-session", MatchingRules.defaults())
+                .add(record("/api/test", 10L))
+                .add(record("/api/test", 20L))
+                .add(record("/api/other", 5000L))
+                .build();
+        when(replayIndexService.getReadyIndex("test-session")).thenReturn(index);
+        ReplayResponse response = index.find("GET", "/api/test", null, null);
+
+        // When & Then
+        for (int i = 0; i < 50; i++) {
+            long millis = replayLatency.delayFor("test-session", "GET", "/api/test", response).toMillis();
+            assertTrue(millis == 10 || millis == 20, "unexpected delay " + millis);
+        }
+    }
+
+    private static TrafficRecord record(String path, Long durationMs) {
+        return TrafficRecord.builder()
+                .sessionId("test-session")
+                .method("GET")
+                .path(path)
+                .statusCode(200)
+                .responseHeaders(Map.of())
+                .responseBody("{}".getBytes(StandardCharsets.UTF_8))
+                .upstreamDurationMs(durationMs)
+                .build();
+    }
+}
@@ -0,0 +1,210 @@
+package com.echo.proxy.service;
+
+import com.echo.proxy.config.ProxyConfiguration;
+import com.echo.proxy.model.MatchingRules;
+import com.echo.proxy.model.ReplayIndex;
+import com.echo.proxy.model.ReplayResponse;
+import com.echo.proxy.model.TrafficRecord;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.extension.ExtendWith;
+import org.mockito.Mock;
+import org.mockito.junit.jupiter.MockitoExtension;
+import org.springframework.http.HttpHeaders;
+import org.springframework.http.HttpStatus;
+import org.springframework.web.reactive.function.client.WebClientResponseException;
+import reactor.core.publisher.Mono;
+import reactor.core.publisher.Sinks;
+import reactor.test.StepVerifier;
+
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Path;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyString;
+import static org.mockito.ArgumentMatchers.eq;
+import static org.mockito.Mockito.*;
+
+/**
+ * Unit tests for ReplayService.
+ */
+@ExtendWith(MockitoExtension.class)
+class ReplayServiceTest {
+
+    @Mock
+    private EchoApiClient echoApiClient;
+
+    @Mock
+    private ReplayIndexService replayIndexService;
+
+    private MeterRegistry meterRegistry;
+    private RecordingOverlay recordingOverlay;
+    private ReplayService replayService;
+
+    @BeforeEach
+    void setUp() {
+        meterRegistry = new SimpleMeterRegistry();
+        ReplayCache replayCache = new ReplayCache(new ProxyConfiguration(), meterRegistry);
+        recordingOverlay = new RecordingOverlay(MatchingRules.defaults(), replayIndexService, replayCache,
+                new ProxyConfiguration(), meterRegistry);
+        replayService = new ReplayService(echoApiClient, replayCache, replayIndexService,
+                new SequenceCursors(), recordingOverlay, MatchingRules.defaults(), new ProxyConfiguration(), meterRegistry);
+    }
+
+    @Test
+    void findMatchingResponse_shouldShareInFlightLookupForIdenticalRequests() {
+        // Given
+        Sinks.One<TrafficRecord> upstream = Sinks.one();
+        when(echoApiClient.findMatch("test-session", "GET", "/api/test", null, "GET /api/test", null))
+                .thenReturn(upstream.asMono());
+
+        // When
+        Mono<ReplayResponse> first = replayService.findMatchingResponse("test-session", "GET", "/api/test", null, null);
+        Mono<ReplayResponse> second = replayService.findMatchingResponse("test-session", "GET", "/api/test", null, null);
+
+        // Then
+        StepVerifier.create(Mono.zip(first, second))
+                .then(() -> upstream.tryEmitValue(record("{\"status\": \"ok\"}")))
+                .assertNext(pair -> assertEquals(HttpStatus.OK, pair.getT1().getStatus()))
+                .verifyComplete();
+        verify(echoApiClient, times(1)).findMatch(anyString(), anyString(), anyString(), any(), anyString(), any());
+        assertEquals(1.0, meterRegistry.get("echo.replay.lookups.coalesced").counter().count());
+    }
+
+    @Test
+    void findMatchingResponse_shouldCacheConfirmedMiss() {
+        // Given
+        when(echoApiClient.findMatch(eq("test-session"), eq("GET"), eq("/api/missing"), any(), any(), any()))
+                .thenReturn(Mono.error(WebClientResponseException.create(
+                        404, "Not Found", HttpHeaders.EMPTY, new byte[0], null)));
+
+        // When & Then
+        StepVerifier.create(replayService.findMatchingResponse("test-session", "GET", "/api/missing", null, null))
+                .verifyComplete();
+        StepVerifier.create(replayService.findMatchingResponse("test-session", "GET", "/api/missing", "", null))
+                .verifyComplete();
+        verify(echoApiClient, times(1)).findMatch(anyString(), anyString(), anyString(), any(), anyString(), any());
+        assertEquals(2, meterRegistry.get("echo.replay.lookup").tag("outcome", "miss").timer().count());
+    }
+
+    @Test
+    void findMatchingResponse_shouldNotCacheTransportErrors() {
+        // Given
+        when(echoApiClient.findMatch(eq("test-session"), eq("GET"), eq("/api/test"), any(), any(), any()))
+                .thenReturn(Mono.error(new IllegalStateException("Connection refused")));
+
+        // When & Then
+        StepVerifier.create(replayService.findMatchingResponse("test-session", "GET", "/api/test", null, null))
+                .verifyComplete();
+        StepVerifier.create(replayService.findMatchingResponse("test-session", "GET", "/api/test", null, null))
+                .verifyComplete();
+        verify(echoApiClient, times(2)).findMatch(anyString(), anyString(), anyString(), any(), anyString(), any());
+        assertEquals(0.0, meterRegistry.get("echo.replay.lookups.inflight").gauge().value());
+    }
+
+    @Test
+    void findMatchingResponse_shouldLookUpCanonicalKeyWithoutAnIndex() {
+        // Given
+        when(echoApiClient.findMatch("test-session", "GET", "/api/search", "b=2&a=1", "GET /api/search?a=1&b=2", null))
+                .thenReturn(Mono.just(record("[]")));
+
+        // When & Then
+        StepVerifier.create(replayService.findMatchingResponse("test-session", "GET", "/api/search", "b=2&a=1", null))
+                .assertNext(response -> assertEquals(2, response.getBodyLength()))
+                .verifyComplete();
+        StepVerifier.create(replayService.findMatchingResponse("test-session", "GET", "/api/search", "a=1&b=2", null))
+                .assertNext(response -> assertEquals(2, response.getBodyLength()))
+                .verifyComplete();
+        verify(echoApiClient, times(1)).findMatch(anyString(), anyString(), anyString(), any(), anyString(), any());
+    }
+
+    @Test
+    void findMatchingResponse_shouldUsePreloadedIndexWithoutCallingEchoApi() {
+        // Given
+        TrafficRecord recorded = record("[]");
+        recorded.setMethod("GET");
+        recorded.setPath("/api/test");
+        when(replayIndexService.getReadyIndex("test-session"))
+                .thenReturn(ReplayIndex.builder("test-session", MatchingRules.defaults()).add(recorded).build());
+
+        // When & Then
+        StepVerifier.create(replayService.findMatchingResponse("test-session", "GET", "/api/test", null, null))
+                .assertNext(response -> assertEquals(2, response.getBodyLength()))
+                .verifyComplete();
+        verifyNoInteractions(echoApiClient);
+        assertEquals(1, meterRegistry.get("echo.replay.lookup").tag("outcome", "hit").timer().count());
+    }
+
+    @Test
+    void findMatchingResponse_shouldFallBackToReadThroughRecording() {
+        // Given
+        when(replayIndexService.getReadyIndex("test-session"))
+                .thenReturn(ReplayIndex.builder("test-session", MatchingRules.defaults()).build());
+        TrafficRecord recorded = record("{\"id\": 1}");
+        recorded.setMethod("POST");
+        recorded.setPath("/api/orders");
+        recorded.setRequestBodyHash("abc");
+        recordingOverlay.add(recorded);
+
+        // When & Then
+        StepVerifier.create(replayService.findMatchingResponse("test-session", "POST", "/api/orders", null, "abc"))
+                .assertNext(response -> assertEquals(9, response.getBodyLength()))
+                .verifyComplete();
+        StepVerifier.create(replayService.findMatchingResponse("test-session", "POST", "/api/orders", null, "def"))
+                .verifyComplete();
+    }
+
+    @Test
+    void findMatchingResponse_shouldWaitForReadThroughRecordingNotHeldInMemory() {
+        // Given
+        when(replayIndexService.getReadyIndex("test-session"))
+                .thenReturn(ReplayIndex.builder("test-session", MatchingRules.defaults()).build());
+        TrafficRecord recorded = record("{\"id\": 1}");
+        recorded.setMethod("GET");
+        recorded.setPath("/api/large");
+        recorded.setResponseBodySpill(Path.of("response.body"));
+        recordingOverlay.add(recorded);
+
+        // When & Then
+        StepVerifier.create(replayService.findMatchingResponse("test-session", "GET", "/api/large", null, null))
+                .then(() -> {
+                    // As the publisher thread does once the spilled body is read back
+                    recorded.setResponseBodySpill(null);
+                    recordingOverlay.settle(List.of(recorded));
+                })
+                .assertNext(response -> assertEquals(9, response.getBodyLength()))
+                .verifyComplete();
+        verify(replayIndexService).fold("test-session", List.of(recorded));
+    }
+
+    @Test
+    void findMatchingResponse_shouldStopWaitingForDroppedReadThroughRecording() {
+        // Given
+        when(replayIndexService.getReadyIndex("test-session"))
+                .thenReturn(ReplayIndex.builder("test-session", MatchingRules.defaults()).build());
+        TrafficRecord recorded = record("{\"id\": 1}");
+        recorded.setMethod("GET");
+        recorded.setPath("/api/large");
+        recorded.setResponseBodySpill(Path.of("response.body"));
+        recordingOverlay.add(recorded);
+
+        // When & Then
+        StepVerifier.create(replayService.findMatchingResponse("test-session", "GET", "/api/large", null, null))
+                .then(() -> recordingOverlay.discard(recorded))
+                .verifyComplete();
+        assertNull(recordingOverlay.awaitPending("test-session", "GET", "/api/large", null, null));
+    }
+
+    private TrafficRecord record(String responseBody) {
+        return TrafficRecord.builder()
+                .sessionId("test-session")
+                .statusCode(200)
+                .responseBody(responseBody.getBytes(StandardCharsets.UTF_8))
+                .build();
+    }
+}
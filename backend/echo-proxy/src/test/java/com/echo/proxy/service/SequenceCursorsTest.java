@@ -0,0 +1,109 @@
+package com.echo.proxy.service;
+
+import com.echo.proxy.config.SequencePolicy;
+import com.echo.proxy.model.MatchingRules;
+import com.echo.proxy.model.ReplayIndex;
+import com.echo.proxy.model.ReplayResponse;
+import com.echo.proxy.model.TrafficRecord;
+import org.junit.jupiter.api.Test;
+
+import java.nio.charset.StandardCharsets;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * Unit tests for SequenceCursors.
+ */
+class SequenceCursorsTest {
+
+    private final SequenceCursors sequenceCursors = new SequenceCursors();
+
+    @Test
+    void next_shouldStickToLastRecordingOnceExhausted() {
+        // Given
+        ReplayIndex.Entry entry = entry(3);
+
+        // When & Then
+        assertEquals("1", body(sequenceCursors.next("test-session", entry, SequencePolicy.STICK)));
+        assertEquals("2", body(sequenceCursors.next("test-session", entry, SequencePolicy.STICK)));
+        assertEquals("3", body(sequenceCursors.next("test-session", entry, SequencePolicy.STICK)));
+        assertEquals("3", body(sequenceCursors.next("test-session", entry, SequencePolicy.STICK)));
+    }
+
+    @Test
+    void next_shouldWrapToFirstRecordingOnceExhausted() {
+        // Given
+        ReplayIndex.Entry entry = entry(2);
+
+        // When & Then
+        assertEquals("1", body(sequenceCursors.next("test-session", entry, SequencePolicy.WRAP)));
+        assertEquals("2", body(sequenceCursors.next("test-session", entry, SequencePolicy.WRAP)));
+        assertEquals("1", body(sequenceCursors.next("test-session", entry, SequencePolicy.WRAP)));
+    }
+
+    @Test
+    void reset_shouldRewindOnlyTheGivenSession() {
+        // Given
+        ReplayIndex.Entry entry = entry(2);
+        sequenceCursors.next("test-session", entry, SequencePolicy.STICK);
+        sequenceCursors.next("other-session", entry, SequencePolicy.STICK);
+
+        // When
+        int reset = sequenceCursors.reset("test-session");
+
+        // Then
+        assertEquals(1, reset);
+        assertEquals("1", body(sequenceCursors.next("test-session", entry, SequencePolicy.STICK)));
+        assertEquals("2", body(sequenceCursors.next("other-session", entry, SequencePolicy.STICK)));
+    }
+
+    @Test
+    void next_shouldHandOutEachRecordingOnceUnderConcurrency() throws InterruptedException {
+        // Given
+        int calls = 64;
+        ReplayIndex.Entry entry = entry(calls);
+        Set<String> served = ConcurrentHashMap.newKeySet();
+        CountDownLatch start = new CountDownLatch(1);
+        ExecutorService executor = Executors.newFixedThreadPool(8);
+
+        // When
+        for (int i = 0; i < calls; i++) {
+            executor.submit(() -> {
+                start.await();
+                return served.add(body(sequenceCursors.next("test-session", entry, SequencePolicy.STICK)));
+            });
+        }
+        start.countDown();
+        executor.shutdown();
+
+        // Then
+        assertTrue(executor.awaitTermination(10, TimeUnit.SECONDS));
+        assertEquals(calls, served.size());
+    }
+
+    private static ReplayIndex.Entry entry(int recordings) {
+        ReplayIndex.Builder builder = ReplayIndex.builder("test-session", MatchingRules.defaults());
+        for (int i = 1; i <= recordings; i++) {
+            builder.add(TrafficRecord.builder()
+                    .sessionId("test-session")
+                    .method("GET")
+                    .path("/api/counter")
+                    .statusCode(200)
+                    .responseHeaders(Map.of())
+                    .responseBody(String.valueOf(i).getBytes(StandardCharsets.UTF_8))
+                    .build());
+        }
+        return builder.build().lookup("GET", "/api/counter", null, null);
+    }
+
+    private static String body(ReplayResponse response) {
+        return StandardCharsets.UTF_8.decode(response.getBody()).toString();
+    }
+}
@@ -0,0 +1,274 @@
+package com.echo.proxy.service;
+
+import com.echo.proxy.config.OverflowPolicy;
+import com.echo.proxy.config.ProxyConfiguration;
+import com.echo.proxy.model.TrafficRecord;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.extension.ExtendWith;
+import org.junit.jupiter.api.io.TempDir;
+import org.mockito.InOrder;
+import org.mockito.Mock;
+import org.mockito.junit.jupiter.MockitoExtension;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.time.Duration;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.*;
+import static org.mockito.ArgumentMatchers.anyList;
+import static org.mockito.Mockito.*;
+
+/**
+ * Unit tests for TrafficPublishQueue.
+ */
+@ExtendWith(MockitoExtension.class)
+class TrafficPublishQueueTest {
+
+    @Mock
+    private TrafficPublisher trafficPublisher;
+
+    @Mock
+    private TrafficSpool trafficSpool;
+
+    @Mock
+    private RecordingOverlay recordingOverlay;
+
+    @Mock
+    private SpillFileWriter spillWriter;
+
+    private ProxyConfiguration proxyConfiguration;
+    private SimpleMeterRegistry meterRegistry;
+    private TrafficPublishQueue publishQueue;
+
+    @BeforeEach
+    void setUp() {
+        proxyConfiguration = new ProxyConfiguration();
+        proxyConfiguration.getPublishing().setQueueCapacity(2);
+        meterRegistry = new SimpleMeterRegistry();
+        publishQueue = new TrafficPublishQueue(trafficPublisher, trafficSpool, recordingOverlay, spillWriter,
+                proxyConfiguration, meterRegistry);
+    }
+
+    @Test
+    void submit_shouldPublishOnPublisherThread() {
+        // Given
+        TrafficRecord trafficRecord = record("/api/test");
+        publishQueue.start();
+
+        // When
+        publishQueue.submit(trafficRecord);
+
+        // Then
+        verify(trafficPublisher, timeout(5000)).publishBatch(List.of(trafficRecord));
+        publishQueue.stop();
+        assertEquals(0, publishQueue.size());
+    }
+
+    @Test
+    void submit_shouldEvictOldestWhenFull(@TempDir Path tempDir) throws IOException {
+        // Given
+        Path spillFile = Files.writeString(tempDir.resolve("response.body"), "spilled");
+        TrafficRecord oldest = record("/api/1");
+        oldest.setResponseBodySpill(spillFile);
+        publishQueue.submit(oldest);
+        publishQueue.submit(record("/api/2"));
+
+        // When
+        publishQueue.submit(record("/api/3"));
+
+        // Then
+        assertEquals(2, publishQueue.size());
+        assertTrue(Files.exists(spillFile));
+        assertEquals(1.0, meterRegistry.counter("echo.publish.dropped", "record", "oldest").count());
+        publishQueue.start();
+        publishQueue.stop();
+        assertFalse(Files.exists(spillFile));
+    }
+
+    @Test
+    void submit_shouldEvictOldestWhenOverByteBudget() {
+        // Given
+        proxyConfiguration.getPublishing().setQueueCapacity(10);
+        proxyConfiguration.getPublishing().setQueueMaxBytes(3000);
+        TrafficRecord oldest = record("/api/1");
+        oldest.setResponseBody(new byte[1000]);
+        TrafficRecord newest = record("/api/2");
+        newest.setResponseBody(new byte[1000]);
+        publishQueue.submit(oldest);
+
+        // When
+        publishQueue.submit(newest);
+        publishQueue.start();
+        publishQueue.stop();
+
+        // Then
+        verify(trafficPublisher).publishBatch(List.of(newest));
+        verify(trafficPublisher, never()).publishBatch(List.of(oldest));
+        assertEquals(1.0, meterRegistry.counter("echo.publish.dropped", "record", "oldest").count());
+        assertEquals(0.0, meterRegistry.get("echo.publish.queue.bytes").gauge().value());
+    }
+
+    @Test
+    void submit_shouldQueueOversizedRecordWhenEmpty() {
+        // Given
+        proxyConfiguration.getPublishing().setQueueMaxBytes(100);
+        TrafficRecord trafficRecord = record("/api/large");
+        trafficRecord.setResponseBody(new byte[1000]);
+
+        // When
+        publishQueue.submit(trafficRecord);
+
+        // Then
+        assertEquals(1, publishQueue.size());
+        assertEquals(0.0, meterRegistry.counter("echo.publish.dropped", "record", "newest").count());
+    }
+
+    @Test
+    void submit_shouldDiscardNewestWhenFull() {
+        // Given
+        proxyConfiguration.getPublishing().setOverflowPolicy(OverflowPolicy.DROP_NEWEST);
+        publishQueue.submit(record("/api/1"));
+        publishQueue.submit(record("/api/2"));
+
+        // When
+        publishQueue.submit(record("/api/3"));
+
+        // Then
+        assertEquals(2, publishQueue.size());
+        assertEquals(1.0, meterRegistry.counter("echo.publish.dropped", "record", "newest").count());
+    }
+
+    @Test
+    void submit_shouldGiveUpBlockingAfterTimeout() {
+        // Given
+        proxyConfiguration.getPublishing().setOverflowPolicy(OverflowPolicy.BLOCK);
+        proxyConfiguration.getPublishing().setBlockTimeout(Duration.ofMillis(20));
+        publishQueue.submit(record("/api/1"));
+        publishQueue.submit(record("/api/2"));
+
+        // When
+        long start = System.nanoTime();
+        publishQueue.submit(record("/api/3"));
+
+        // Then
+        assertTrue(System.nanoTime() - start >= Duration.ofMillis(20).toNanos());
+        assertEquals(2, publishQueue.size());
+        assertEquals(1.0, meterRegistry.counter("echo.publish.dropped", "record", "newest").count());
+    }
+
+    @Test
+    void stop_shouldPublishQueuedRecordsInBatches() {
+        // Given
+        proxyConfiguration.getPublishing().setQueueCapacity(10);
+        proxyConfiguration.getPublishing().setBatchMaxRecords(2);
+        TrafficRecord first = record("/api/1");
+        TrafficRecord second = record("/api/2");
+        TrafficRecord third = record("/api/3");
+        publishQueue.submit(first);
+        publishQueue.submit(second);
+        publishQueue.submit(third);
+
+        // When
+        publishQueue.start();
+        publishQueue.stop();
+
+        // Then
+        verify(trafficPublisher).publishBatch(List.of(first, second));
+        verify(trafficPublisher).publishBatch(List.of(third));
+        assertEquals(3.0, meterRegistry.counter("echo.publish.published").count());
+        assertEquals(2, meterRegistry.summary("echo.publish.batch.size").count());
+    }
+
+    @Test
+    void stop_shouldCountEveryRecordOfFailedBatch() {
+        // Given
+        doThrow(new RuntimeException("broker down"))
+                .when(trafficPublisher).publishBatch(anyList());
+        publishQueue.submit(record("/api/1"));
+        publishQueue.submit(record("/api/2"));
+
+        // When
+        publishQueue.start();
+        publishQueue.stop();
+
+        // Then
+        verify(trafficPublisher, times(1)).publishBatch(anyList());
+        assertEquals(2.0, meterRegistry.counter("echo.publish.failed").count());
+        assertEquals(0.0, meterRegistry.counter("echo.publish.published").count());
+    }
+
+    @Test
+    void stop_shouldSpoolFailedBatchAndBypassBrokerAfterwards() {
+        // Given
+        proxyConfiguration.getPublishing().setQueueCapacity(10);
+        proxyConfiguration.getPublishing().setBatchMaxRecords(1);
+        when(trafficSpool.isEnabled()).thenReturn(true);
+        when(trafficSpool.append(anyList())).thenReturn(true);
+        doThrow(new RuntimeException("broker down"))
+                .when(trafficPublisher).publishBatch(anyList());
+        TrafficRecord first = record("/api/1");
+        TrafficRecord second = record("/api/2");
+        publishQueue.submit(first);
+        publishQueue.submit(second);
+
+        // When
+        publishQueue.start();
+        publishQueue.stop();
+
+        // Then
+        verify(trafficPublisher, times(1)).publishBatch(anyList());
+        verify(trafficSpool).append(List.of(first));
+        verify(trafficSpool).append(List.of(second));
+        assertEquals(2.0, meterRegistry.counter("echo.publish.spooled").count());
+    }
+
+    @Test
+    void stop_shouldSettleReadThroughRecordsBeforePublishing() {
+        // Given
+        TrafficRecord recorded = record("/api/1");
+        TrafficRecord readThrough = record("/api/2");
+        readThrough.setReadThrough(true);
+        publishQueue.submit(recorded);
+        publishQueue.submit(readThrough);
+
+        // When
+        publishQueue.start();
+        publishQueue.stop();
+
+        // Then
+        InOrder inOrder = inOrder(trafficPublisher, recordingOverlay);
+        inOrder.verify(trafficPublisher).prepare(readThrough);
+        inOrder.verify(recordingOverlay).settle(List.of(readThrough));
+        inOrder.verify(trafficPublisher).publishBatch(List.of(recorded, readThrough));
+        verify(trafficPublisher, never()).prepare(recorded);
+    }
+
+    @Test
+    void submit_shouldReleaseDroppedReadThroughRecord() {
+        // Given
+        proxyConfiguration.getPublishing().setOverflowPolicy(OverflowPolicy.DROP_NEWEST);
+        publishQueue.submit(record("/api/1"));
+        publishQueue.submit(record("/api/2"));
+        TrafficRecord readThrough = record("/api/3");
+        readThrough.setReadThrough(true);
+
+        // When
+        publishQueue.submit(readThrough);
+
+        // Then
+        verify(recordingOverlay).discard(readThrough);
+    }
+
+    private static TrafficRecord record(String path) {
+        return TrafficRecord.builder()
+                .sessionId("test-session")
+                .method("GET")
+                .path(path)
+                .statusCode(200)
+                .build();
+    }
+}
@@ -1,18 +1,35 @@
 package com.echo.proxy.service;
 
+import com.echo.proxy.config.ProxyConfiguration;
 import com.echo.proxy.config.RabbitMQConfiguration;
+import com.echo.proxy.model.ContentCodings;
+import com.echo.proxy.model.MatchingRules;
+import com.echo.proxy.model.TrafficBatch;
 import com.echo.proxy.model.TrafficRecord;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
 import org.junit.jupiter.api.BeforeEach;
 import org.junit.jupiter.api.Test;
 import org.junit.jupiter.api.extension.ExtendWith;
+import org.junit.jupiter.api.io.TempDir;
 import org.mockito.Mock;
 import org.mockito.junit.jupiter.MockitoExtension;
 import org.springframework.amqp.rabbit.core.RabbitTemplate;
 
+import java.nio.charset.StandardCharsets;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
 import java.time.Instant;
+import java.util.List;
 import java.util.Map;
 
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertSame;
 import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
 import static org.mockito.ArgumentMatchers.eq;
 import static org.mockito.Mockito.*;
 
@@ -25,11 +42,15 @@ class TrafficPublisherTest {
     @Mock
     private RabbitTemplate rabbitTemplate;
 
+    @Mock
+    private SpillFileWriter spillWriter;
+
     private TrafficPublisher trafficPublisher;
 
     @BeforeEach
     void setUp() {
-        trafficPublisher = new TrafficPublisher(rabbitTemplate);
+        trafficPublisher = new TrafficPublisher(rabbitTemplate, new ProxyConfiguration(), MatchingRules.defaults(),
+                spillWriter, new SimpleMeterRegistry());
     }
 
     @Test
@@ -39,11 +60,10 @@ class TrafficPublisherTest {
                 .sessionId("test-session")
                 .method("GET")
                 .path("/api/test")
-                .requestHeaders(Map.of("Content-Type", "application/json"))
-                .requestBody("")
+                .requestHeaders(Map.of("Content-Type", List.of("application/json")))
                 .statusCode(200)
-                .responseHeaders(Map.of("Content-Type", "application/json"))
-                .responseBody("{\"status\": \"ok\"}")
+                .responseHeaders(Map.of("Content-Type", List.of("application/json")))
+                .responseBody("{\"status\": \"ok\"}".getBytes(StandardCharsets.UTF_8))
                 .timestamp(Instant.now())
                 .build();
 
@@ -53,6 +73,114 @@ class TrafficPublisherTest {
         // Then
         verify(rabbitTemplate, times(1))
                 .convertAndSend(eq(RabbitMQConfiguration.TRAFFIC_QUEUE), eq(trafficRecord));
+        assertEquals("GET /api/test", trafficRecord.getMatchKey());
+    }
+
+    @Test
+    void publishTraffic_shouldInlineAndDeleteSpilledBody(@TempDir Path tempDir) throws IOException {
+        // Given
+        Path spillFile = Files.writeString(tempDir.resolve("response.body"), "{\"large\": true}");
+        TrafficRecord trafficRecord = TrafficRecord.builder()
+                .sessionId("test-session")
+                .method("GET")
+                .path("/api/large")
+                .statusCode(200)
+                .responseBodySpill(spillFile)
+                .responseBodySize(15L)
+                .build();
+
+        // When
+        trafficPublisher.publishTraffic(trafficRecord);
+
+        // Then
+        verify(spillWriter).awaitClosed(spillFile);
+        assertEquals("{\"large\": true}", new String(trafficRecord.getResponseBody(), StandardCharsets.UTF_8));
+        assertNull(trafficRecord.getResponseBodySpill());
+        assertFalse(Files.exists(spillFile));
+        verify(rabbitTemplate).convertAndSend(eq(RabbitMQConfiguration.TRAFFIC_QUEUE), eq(trafficRecord));
+    }
+
+    @Test
+    void publishTraffic_shouldTruncateSpilledBodyOverThePublishedSize(@TempDir Path tempDir) throws IOException {
+        // Given
+        ProxyConfiguration proxyConfiguration = new ProxyConfiguration();
+        proxyConfiguration.getCapture().setMaxPublishedSize(8);
+        trafficPublisher = new TrafficPublisher(rabbitTemplate, proxyConfiguration, MatchingRules.defaults(),
+                spillWriter, new SimpleMeterRegistry());
+        Path spillFile = Files.writeString(tempDir.resolve("request.body"), "0123456789abcdef");
+        TrafficRecord trafficRecord = TrafficRecord.builder()
+                .sessionId("test-session")
+                .method("POST")
+                .path("/api/upload")
+                .requestBodySpill(spillFile)
+                .requestBodySize(16L)
+                .statusCode(204)
+                .build();
+
+        // When
+        trafficPublisher.publishTraffic(trafficRecord);
+
+        // Then
+        assertEquals("01234567", new String(trafficRecord.getRequestBody(), StandardCharsets.UTF_8));
+        assertTrue(trafficRecord.getRequestBodyTruncated());
+        assertEquals(16L, trafficRecord.getRequestBodySize());
+        assertFalse(Files.exists(spillFile));
+    }
+
+    @Test
+    void publishTraffic_shouldCompressUncompressedResponseBody() {
+        // Given
+        byte[] body = "{\"items\": []}".repeat(200).getBytes(StandardCharsets.UTF_8);
+        TrafficRecord trafficRecord = TrafficRecord.builder()
+                .sessionId("test-session")
+                .method("GET")
+                .path("/api/items")
+                .statusCode(200)
+                .responseBody(body)
+                .build();
+
+        // When
+        trafficPublisher.publishTraffic(trafficRecord);
+
+        // Then
+        assertEquals(ContentCodings.GZIP, trafficRecord.getResponseBodyEncoding());
+        assertTrue(trafficRecord.getResponseBody().length < body.length);
+        assertArrayEquals(body, ContentCodings.decode(ContentCodings.GZIP, trafficRecord.getResponseBody()));
+    }
+
+    @Test
+    void publishTraffic_shouldKeepUpstreamEncodedBodyAsIs() {
+        // Given
+        byte[] brotli = new byte[4096];
+        TrafficRecord trafficRecord = TrafficRecord.builder()
+                .sessionId("test-session")
+                .method("GET")
+                .path("/api/items")
+                .statusCode(200)
+                .responseBody(brotli)
+                .responseBodyEncoding("br")
+                .build();
+
+        // When
+        trafficPublisher.publishTraffic(trafficRecord);
+
+        // Then
+        assertEquals("br", trafficRecord.getResponseBodyEncoding());
+        assertSame(brotli, trafficRecord.getResponseBody());
+    }
+
+    @Test
+    void publishBatch_shouldSendSeveralRecordsAsOneMessage() {
+        // Given
+        TrafficRecord first = TrafficRecord.builder().sessionId("test-session").method("GET").path("/api/1").build();
+        TrafficRecord second = TrafficRecord.builder().sessionId("test-session").method("GET").path("/api/2").build();
+
+        // When
+        trafficPublisher.publishBatch(List.of(first, second));
+
+        // Then
+        verify(rabbitTemplate, times(1)).convertAndSend(eq(RabbitMQConfiguration.TRAFFIC_QUEUE),
+                eq(new TrafficBatch(List.of(first, second))));
     }
 
     @Test
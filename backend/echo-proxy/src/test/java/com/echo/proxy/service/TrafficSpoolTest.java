@@ -0,0 +1,253 @@
+package com.echo.proxy.service;
+
+import com.echo.proxy.config.ProxyConfiguration;
+import com.echo.proxy.model.TrafficRecord;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.extension.ExtendWith;
+import org.junit.jupiter.api.io.TempDir;
+import org.mockito.ArgumentCaptor;
+import org.mockito.Mock;
+import org.mockito.junit.jupiter.MockitoExtension;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.stream.Stream;
+import java.util.zip.CRC32;
+
+import static org.junit.jupiter.api.Assertions.*;
+import static org.mockito.ArgumentMatchers.anyList;
+import static org.mockito.Mockito.*;
+
+/**
+ * Unit tests for TrafficSpool.
+ */
+@ExtendWith(MockitoExtension.class)
+class TrafficSpoolTest {
+
+    @Mock
+    private TrafficPublisher trafficPublisher;
+
+    @TempDir
+    private Path spoolDirectory;
+
+    private ProxyConfiguration proxyConfiguration;
+    private SimpleMeterRegistry meterRegistry;
+    private TrafficSpool trafficSpool;
+    private final List<TrafficSpool> started = new ArrayList<>();
+
+    @BeforeEach
+    void setUp() {
+        proxyConfiguration = new ProxyConfiguration();
+        proxyConfiguration.getSpool().setDirectory(spoolDirectory.toString());
+        // Replay is driven by the tests, not by the schedule
+        proxyConfiguration.getSpool().setReplayInterval(Duration.ofHours(1));
+        meterRegistry = new SimpleMeterRegistry();
+        trafficSpool = newSpool();
+    }
+
+    @AfterEach
+    void tearDown() {
+        started.forEach(TrafficSpool::stop);
+    }
+
+    @Test
+    void replay_shouldPublishSpooledRecordsAndDeleteSegment() throws IOException {
+        // Given
+        trafficSpool.append(List.of(record("/api/1"), record("/api/2")));
+        trafficSpool.append(List.of(record("/api/3")));
+
+        // When
+        trafficSpool.replay();
+
+        // Then
+        ArgumentCaptor<List<TrafficRecord>> batch = batchCaptor();
+        verify(trafficPublisher).publishBatch(batch.capture());
+        assertEquals(List.of("/api/1", "/api/2", "/api/3"),
+                batch.getValue().stream().map(TrafficRecord::getPath).toList());
+        assertArrayEquals("body".getBytes(StandardCharsets.UTF_8), batch.getValue().get(0).getResponseBody());
+        assertEquals(0, segments().size());
+        assertEquals(0, trafficSpool.size());
+        assertEquals(3.0, meterRegistry.counter("echo.spool.replayed").count());
+    }
+
+    @Test
+    void replay_shouldKeepSegmentWhileBrokerIsUnavailable() throws IOException {
+        // Given
+        trafficSpool.append(List.of(record("/api/1")));
+        doThrow(new RuntimeException("broker down"))
+                .doNothing()
+                .when(trafficPublisher).publishBatch(anyList());
+
+        // When
+        trafficSpool.replay();
+
+        // Then
+        assertEquals(1, segments().size());
+        trafficSpool.replay();
+        verify(trafficPublisher, times(2)).publishBatch(anyList());
+        assertEquals(0, segments().size());
+    }
+
+    @Test
+    void replay_shouldNotStartNewSegmentsWhileOlderOnesAreUnpublished() throws IOException {
+        // Given
+        doThrow(new RuntimeException("broker down")).when(trafficPublisher).publishBatch(anyList());
+        trafficSpool.append(List.of(record("/api/1")));
+        trafficSpool.replay();
+
+        // When
+        for (int i = 2; i < 6; i++) {
+            trafficSpool.append(List.of(record("/api/" + i)));
+            trafficSpool.replay();
+        }
+
+        // Then
+        assertEquals(2, segments().size());
+        doNothing().when(trafficPublisher).publishBatch(anyList());
+        trafficSpool.replay();
+        assertEquals(0, segments().size());
+        assertEquals(5.0, meterRegistry.counter("echo.spool.replayed").count());
+    }
+
+    @Test
+    void replay_shouldRecoverSegmentsAfterRestartAndSkipTornTail() throws IOException {
+        // Given
+        trafficSpool.append(List.of(record("/api/1")));
+        trafficSpool.stop();
+        Path segment = segments().get(0);
+        Files.write(segment, new byte[]{0, 0, 1, 0, 7}, StandardOpenOption.APPEND);
+        TrafficSpool restarted = newSpool();
+
+        // When
+        restarted.replay();
+
+        // Then
+        ArgumentCaptor<List<TrafficRecord>> batch = batchCaptor();
+        verify(trafficPublisher).publishBatch(batch.capture());
+        assertEquals(1, batch.getValue().size());
+        assertEquals("/api/1", batch.getValue().get(0).getPath());
+        assertEquals(0, segments().size());
+    }
+
+    @Test
+    void replay_shouldSkipUnreadableRecordAndCountIt() throws IOException {
+        // Given
+        trafficSpool.append(List.of(record("/api/1")));
+        trafficSpool.stop();
+        byte[] garbage = "not json".getBytes(StandardCharsets.UTF_8);
+        Files.write(segments().get(0), frame(garbage), StandardOpenOption.APPEND);
+        TrafficSpool restarted = newSpool();
+        restarted.append(List.of(record("/api/2")));
+
+        // When
+        restarted.replay();
+
+        // Then
+        ArgumentCaptor<List<TrafficRecord>> batch = batchCaptor();
+        verify(trafficPublisher, times(2)).publishBatch(batch.capture());
+        assertEquals(List.of("/api/1", "/api/2"),
+                batch.getAllValues().stream().flatMap(List::stream).map(TrafficRecord::getPath).toList());
+        assertEquals(0, segments().size());
+        assertEquals(1.0, meterRegistry.counter("echo.spool.dropped").count());
+    }
+
+    @Test
+    void replay_shouldCountCorruptRecordAndDropTheRestOfItsSegment() throws IOException {
+        // Given
+        trafficSpool.append(List.of(record("/api/1")));
+        trafficSpool.append(List.of(record("/api/2")));
+        trafficSpool.stop();
+        Path segment = segments().get(0);
+        byte[] bytes = Files.readAllBytes(segment);
+        bytes[bytes.length / 2 + 12] ^= 0x7F;
+        Files.write(segment, bytes);
+        TrafficSpool restarted = newSpool();
+
+        // When
+        restarted.replay();
+
+        // Then
+        verify(trafficPublisher).publishBatch(argThat(records -> records.size() == 1
+                && records.get(0).getPath().equals("/api/1")));
+        assertEquals(0, segments().size());
+        assertEquals(1.0, meterRegistry.counter("echo.spool.dropped").count());
+    }
+
+    @Test
+    void replay_shouldDoNothingOnceStopped() throws IOException {
+        // Given
+        trafficSpool.append(List.of(record("/api/1")));
+        trafficSpool.stop();
+
+        // When
+        trafficSpool.replay();
+
+        // Then
+        verify(trafficPublisher, never()).publishBatch(anyList());
+        assertEquals(1, segments().size());
+    }
+
+    @Test
+    void append_shouldDropRecordsBeyondMaxSize() {
+        // Given
+        proxyConfiguration.getSpool().setMaxSize(100);
+
+        // When
+        boolean spooled = trafficSpool.append(List.of(record("/api/1")));
+
+        // Then
+        assertFalse(spooled);
+        assertEquals(0, trafficSpool.size());
+        assertEquals(1.0, meterRegistry.counter("echo.spool.dropped").count());
+    }
+
+    private TrafficSpool newSpool() {
+        TrafficSpool spool = new TrafficSpool(trafficPublisher, new ObjectMapper().findAndRegisterModules(),
+                proxyConfiguration, meterRegistry);
+        spool.start();
+        started.add(spool);
+        return spool;
+    }
+
+    private static byte[] frame(byte[] payload) {
+        CRC32 crc = new CRC32();
+        crc.update(payload);
+        return ByteBuffer.allocate(Integer.BYTES * 2 + payload.length)
+                .putInt(payload.length)
+                .putInt((int) crc.getValue())
+                .put(payload)
+                .array();
+    }
+
+    private List<Path> segments() throws IOException {
+        try (Stream<Path> files = Files.list(spoolDirectory)) {
+            return files.sorted().toList();
+        }
+    }
+
+    @SuppressWarnings("unchecked")
+    private static ArgumentCaptor<List<TrafficRecord>> batchCaptor() {
+        return ArgumentCaptor.forClass(List.class);
+    }
+
+    private static TrafficRecord record(String path) {
+        return TrafficRecord.builder()
+                .sessionId("test-session")
+                .method("GET")
+                .path(path)
+                .statusCode(200)
+                .responseBody("body".getBytes(StandardCharsets.UTF_8))
+                .build();
+    }
+}
@@ -1,15 +1,21 @@
 package com.echo.ingestor.config;
 
+import com.echo.ingestor.model.TrafficBatch;
+import com.echo.ingestor.model.TrafficRecord;
+import com.fasterxml.jackson.databind.DeserializationFeature;
 import com.fasterxml.jackson.databind.ObjectMapper;
 import com.fasterxml.jackson.databind.SerializationFeature;
 import com.fasterxml.jackson.datatype.jsr310.JavaTimeModule;
 import org.springframework.amqp.rabbit.config.SimpleRabbitListenerContainerFactory;
 import org.springframework.amqp.rabbit.connection.ConnectionFactory;
+import org.springframework.amqp.support.converter.DefaultJackson2JavaTypeMapper;
 import org.springframework.amqp.support.converter.Jackson2JsonMessageConverter;
 import org.springframework.amqp.support.converter.MessageConverter;
 import org.springframework.context.annotation.Bean;
 import org.springframework.context.annotation.Configuration;
 
+import java.util.Map;
+
 /**
  * RabbitMQ configuration for consuming traffic records.
  */
@@ -17,7 +23,18 @@ import org.springframework.context.annotation.Configuration;
 public class RabbitMQConfiguration {
 
     /**
-     * Configures JSON message converter for RabbitMQ.
+     * Type IDs in the __TypeId__ header, as written by echo-proxy. The class
+     * name used before type IDs were introduced still maps to a single record.
+     */
+    public static final Map<String, Class<?>> MESSAGE_TYPES = Map.of(
+            "trafficRecord", TrafficRecord.class,
+            "trafficBatch", TrafficBatch.class,
+            "com.echo.proxy.model.TrafficRecord", TrafficRecord.class);
+
+    /**
+     * Configures JSON message converter for RabbitMQ. The payload type comes
+     * from the __TypeId__ header, which routes single records and batches to
+     * their handlers.
      *
      * @return MessageConverter instance
      */
@@ -26,7 +43,13 @@ public class RabbitMQConfiguration {
         ObjectMapper objectMapper = new ObjectMapper();
         objectMapper.registerModule(new JavaTimeModule());
         objectMapper.disable(SerializationFeature.WRITE_DATES_AS_TIMESTAMPS);
-        return new Jackson2JsonMessageConverter(objectMapper);
+        // Proxies without multi-value headers send a single string per header name
+        objectMapper.enable(DeserializationFeature.ACCEPT_SINGLE_VALUE_AS_ARRAY);
+        DefaultJackson2JavaTypeMapper typeMapper = new DefaultJackson2JavaTypeMapper();
+        typeMapper.setIdClassMapping(MESSAGE_TYPES);
+        Jackson2JsonMessageConverter converter = new Jackson2JsonMessageConverter(objectMapper);
+        converter.setJavaTypeMapper(typeMapper);
+        return converter;
     }
 
     /**
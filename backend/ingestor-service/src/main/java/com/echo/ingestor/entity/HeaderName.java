@@ -0,0 +1,31 @@
+package com.echo.ingestor.entity;
+
+import jakarta.persistence.*;
+import lombok.AllArgsConstructor;
+import lombok.Builder;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+/**
+ * JPA entity representing one entry of the shared header-name dictionary.
+ * Stored header blocks refer to header names by these IDs instead of
+ * repeating the names in every row.
+ */
+@Data
+@Builder
+@NoArgsConstructor
+@AllArgsConstructor
+@Entity
+@Table(name = "header_name")
+public class HeaderName {
+
+    @Id
+    @GeneratedValue(strategy = GenerationType.IDENTITY)
+    private Integer id;
+
+    /**
+     * Header name, exactly as recorded
+     */
+    @Column(name = "name", nullable = false, unique = true, columnDefinition = "TEXT")
+    private String name;
+}
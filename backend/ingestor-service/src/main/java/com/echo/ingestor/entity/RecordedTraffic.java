@@ -19,7 +19,8 @@ import java.time.Instant;
 @Entity
 @Table(name = "recorded_traffic", indexes = {
         @Index(name = "idx_session_id", columnList = "session_id"),
-        @Index(name = "idx_session_method_path", columnList = "session_id,method,path")
+        @Index(name = "idx_session_method_path", columnList = "session_id,method,path"),
+        @Index(name = "idx_session_method_path_body_hash", columnList = "session_id,method,path,request_body_hash")
 })
 public class RecordedTraffic {
 
@@ -52,16 +53,46 @@ public class RecordedTraffic {
     private String queryParams;
 
     /**
-     * Request headers as JSON string
+     * Canonical "METHOD path?query" key under the proxy's matching rules; null on rows recorded before it existed
+     */
+    @Column(name = "match_key", columnDefinition = "TEXT")
+    private String matchKey;
+
+    /**
+     * Request headers as JSON string; only set on rows recorded before header blocks
      */
     @Column(name = "request_headers", columnDefinition = "TEXT")
     private String requestHeaders;
 
     /**
-     * Request body
+     * Request headers as a binary block with dictionary-encoded names
+     */
+    @Column(name = "request_header_block", columnDefinition = "BYTEA")
+    private byte[] requestHeaderBlock;
+
+    /**
+     * Raw request body bytes
+     */
+    @Column(name = "request_body", columnDefinition = "BYTEA")
+    private byte[] requestBody;
+
+    /**
+     * SHA-256 of the canonicalized request body, used for body-aware replay matching
      */
-    @Column(name = "request_body", columnDefinition = "TEXT")
-    private String requestBody;
+    @Column(name = "request_body_hash", length = 64)
+    private String requestBodyHash;
+
+    /**
+     * Whether the stored request body was cut short by capture limits
+     */
+    @Column(name = "request_body_truncated")
+    private Boolean requestBodyTruncated;
+
+    /**
+     * Full size of the request body in bytes
+     */
+    @Column(name = "request_body_size")
+    private Long requestBodySize;
 
     /**
      * Response HTTP status code
@@ -70,16 +101,58 @@ public class RecordedTraffic {
     private Integer statusCode;
 
     /**
-     * Response headers as JSON string
+     * Response headers as JSON string; only set on rows recorded before header blocks
      */
     @Column(name = "response_headers", columnDefinition = "TEXT")
     private String responseHeaders;
 
     /**
-     * Response body
+     * Response headers as a binary block with dictionary-encoded names
+     */
+    @Column(name = "response_header_block", columnDefinition = "BYTEA")
+    private byte[] responseHeaderBlock;
+
+    /**
+     * Raw response body bytes; null when the body is stored in {@link ResponseBodyBlob}
+     */
+    @Column(name = "response_body", columnDefinition = "BYTEA")
+    private byte[] responseBody;
+
+    /**
+     * SHA-256 of the response body stored in {@link ResponseBodyBlob}, or null if the body is inline or empty
+     */
+    @Column(name = "response_body_hash", length = 64)
+    private String responseBodyHash;
+
+    /**
+     * Content coding of the stored response body, such as gzip, or null if it is stored uncompressed
+     */
+    @Column(name = "response_body_encoding", length = 32)
+    private String responseBodyEncoding;
+
+    /**
+     * Whether the stored response body was cut short by capture limits
+     */
+    @Column(name = "response_body_truncated")
+    private Boolean responseBodyTruncated;
+
+    /**
+     * Full size of the response body in bytes
+     */
+    @Column(name = "response_body_size")
+    private Long responseBodySize;
+
+    /**
+     * Milliseconds until the first upstream response byte
+     */
+    @Column(name = "upstream_ttfb_ms")
+    private Long upstreamTtfbMs;
+
+    /**
+     * Milliseconds until the upstream response completed
      */
-    @Column(name = "response_body", columnDefinition = "TEXT")
-    private String responseBody;
+    @Column(name = "upstream_duration_ms")
+    private Long upstreamDurationMs;
 
     /**
      * Timestamp when the traffic was recorded
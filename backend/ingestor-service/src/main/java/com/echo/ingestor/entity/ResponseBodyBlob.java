@@ -0,0 +1,40 @@
+package com.echo.ingestor.entity;
+
+import jakarta.persistence.*;
+import lombok.AllArgsConstructor;
+import lombok.Builder;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+/**
+ * JPA entity representing a response body stored once and shared by every
+ * recorded response with the same bytes. Rows are keyed by the SHA-256 of
+ * the body and count the recorded_traffic rows that point at them.
+ */
+@Data
+@Builder
+@NoArgsConstructor
+@AllArgsConstructor
+@Entity
+@Table(name = "response_body_blob")
+public class ResponseBodyBlob {
+
+    /**
+     * Hex-encoded SHA-256 of the body
+     */
+    @Id
+    @Column(name = "hash", length = 64)
+    private String hash;
+
+    /**
+     * Body bytes, as stored in recorded_traffic before deduplication
+     */
+    @Column(name = "body", nullable = false, columnDefinition = "BYTEA")
+    private byte[] body;
+
+    /**
+     * Number of recorded_traffic rows referencing this body
+     */
+    @Column(name = "ref_count", nullable = false)
+    private Long refCount;
+}
@@ -1,41 +1,153 @@
 package com.echo.ingestor.listener;
 
+import com.echo.ingestor.model.TrafficBatch;
 import com.echo.ingestor.model.TrafficRecord;
+import com.echo.ingestor.service.LogSampler;
 import com.echo.ingestor.service.TrafficIngestionService;
-import lombok.RequiredArgsConstructor;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
 import lombok.extern.slf4j.Slf4j;
+import org.springframework.amqp.AmqpRejectAndDontRequeueException;
+import org.springframework.amqp.rabbit.annotation.RabbitHandler;
 import org.springframework.amqp.rabbit.annotation.RabbitListener;
+import org.springframework.dao.RecoverableDataAccessException;
+import org.springframework.dao.TransientDataAccessException;
 import org.springframework.stereotype.Component;
+import org.springframework.transaction.CannotCreateTransactionException;
+
+import java.sql.SQLRecoverableException;
+import java.sql.SQLTransientException;
 
 /**
  * RabbitMQ listener for consuming traffic records.
  * Listens to the traffic.recorded queue and persists messages to the database.
+ * A message holds either a single record or a batch of records. Handling
+ * time, including the commit, is timed per handler as {@code echo.ingest.listener}.
+ * <p>
+ * Transient database failures, such as a lost connection or a deadlock, requeue
+ * the message. A batch that fails otherwise is retried record by record, and a
+ * record that still fails is rejected without requeueing, so it is dead-lettered
+ * if the queue has a dead-letter exchange and dropped if not, instead of being
+ * redelivered forever. Rejected records are counted as {@code echo.ingest.rejected}.
  */
 @Slf4j
 @Component
-@RequiredArgsConstructor
+@RabbitListener(queues = "${echo.rabbitmq.queue-name}")
 public class TrafficListener {
 
     private final TrafficIngestionService ingestionService;
+    private final Timer recordHandling;
+    private final Timer batchHandling;
+    private final Counter rejected;
+    private final LogSampler receiveLog = new LogSampler();
+
+    public TrafficListener(TrafficIngestionService ingestionService, MeterRegistry meterRegistry) {
+        this.ingestionService = ingestionService;
+        this.recordHandling = handlingTimer(meterRegistry, "record");
+        this.batchHandling = handlingTimer(meterRegistry, "batch");
+        this.rejected = Counter.builder("echo.ingest.rejected")
+                .description("Traffic records that could not be persisted and were not requeued")
+                .register(meterRegistry);
+    }
+
+    private static Timer handlingTimer(MeterRegistry meterRegistry, String listener) {
+        return Timer.builder("echo.ingest.listener")
+                .description("Time to handle a consumed message, including the commit")
+                .tag("listener", listener)
+                .register(meterRegistry);
+    }
 
     /**
-     * Consumes traffic records from RabbitMQ and persists them.
+     * Consumes a single traffic record from RabbitMQ and persists it.
      *
      * @param trafficRecord Traffic record message
      */
-    @RabbitListener(queues = "${echo.rabbitmq.queue-name}")
+    @RabbitHandler
     public void handleTrafficRecord(TrafficRecord trafficRecord) {
-        log.debug("Received traffic record: session={}, method={}, path={}",
-                trafficRecord.getSessionId(),
-                trafficRecord.getMethod(),
-                trafficRecord.getPath());
+        if (log.isDebugEnabled() && receiveLog.sample()) {
+            log.debug("Received traffic record: session={}, method={}, path={}",
+                    trafficRecord.getSessionId(),
+                    trafficRecord.getMethod(),
+                    trafficRecord.getPath());
+        }
 
         try {
-            ingestionService.ingestTraffic(trafficRecord);
-        } catch (Exception e) {
-            log.error("Failed to process traffic record: {}", e.getMessage(), e);
-            // In production, consider dead letter queue or retry mechanism
-            throw e;
+            recordHandling.record(() -> ingestionService.ingestTraffic(trafficRecord));
+        } catch (RuntimeException e) {
+            if (isTransient(e)) {
+                log.warn("Failed to process traffic record, requeueing: {}", e.getMessage());
+                throw e;
+            }
+            log.error("Rejecting traffic record: session={}, method={}, path={}",
+                    trafficRecord.getSessionId(), trafficRecord.getMethod(), trafficRecord.getPath(), e);
+            rejected.increment();
+            throw new AmqpRejectAndDontRequeueException("Traffic record cannot be persisted", e);
+        }
+    }
+
+    /**
+     * Consumes a batch of traffic records from RabbitMQ and persists them together.
+     *
+     * @param trafficBatch Traffic batch message
+     */
+    @RabbitHandler
+    public void handleTrafficBatch(TrafficBatch trafficBatch) {
+        if (log.isDebugEnabled() && receiveLog.sample()) {
+            log.debug("Received traffic batch of {} records", trafficBatch.getRecords().size());
+        }
+
+        try {
+            batchHandling.record(() -> ingestionService.ingestBatch(trafficBatch.getRecords()));
+        } catch (RuntimeException e) {
+            if (isTransient(e)) {
+                log.warn("Failed to process traffic batch, requeueing: {}", e.getMessage());
+                throw e;
+            }
+            log.warn("Failed to process traffic batch of {} records, retrying them one by one: {}",
+                    trafficBatch.getRecords().size(), e.getMessage());
+            ingestEach(trafficBatch);
+        }
+    }
+
+    /**
+     * Persists the records of a failed batch in their own transactions, skipping
+     * records that cannot be persisted. A transient failure requeues the whole
+     * message, so records persisted before it are persisted again on redelivery.
+     *
+     * @param trafficBatch Traffic batch message
+     */
+    private void ingestEach(TrafficBatch trafficBatch) {
+        for (TrafficRecord trafficRecord : trafficBatch.getRecords()) {
+            try {
+                ingestionService.ingestTraffic(trafficRecord);
+            } catch (RuntimeException e) {
+                if (isTransient(e)) {
+                    throw e;
+                }
+                log.error("Rejecting traffic record from batch: session={}, method={}, path={}",
+                        trafficRecord.getSessionId(), trafficRecord.getMethod(), trafficRecord.getPath(), e);
+                rejected.increment();
+            }
+        }
+    }
+
+    /**
+     * Checks whether a failure may succeed on redelivery.
+     *
+     * @param e Failure
+     * @return true if the failure or one of its causes is a transient database error
+     */
+    private static boolean isTransient(Throwable e) {
+        for (Throwable cause = e; cause != null; cause = cause.getCause()) {
+            if (cause instanceof TransientDataAccessException
+                    || cause instanceof RecoverableDataAccessException
+                    || cause instanceof CannotCreateTransactionException
+                    || cause instanceof SQLTransientException
+                    || cause instanceof SQLRecoverableException) {
+                return true;
+            }
         }
+        return false;
     }
-}
\ No newline at end of file
+}
@@ -0,0 +1,21 @@
+package com.echo.ingestor.model;
+
+import lombok.AllArgsConstructor;
+import lombok.Builder;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+import java.util.List;
+
+/**
+ * Data transfer object for batches of traffic records received from RabbitMQ.
+ * Mirrors the TrafficBatch from echo-proxy service.
+ */
+@Data
+@Builder
+@NoArgsConstructor
+@AllArgsConstructor
+public class TrafficBatch {
+
+    private List<TrafficRecord> records;
+}
@@ -6,6 +6,7 @@ import lombok.Data;
 import lombok.NoArgsConstructor;
 
 import java.time.Instant;
+import java.util.List;
 import java.util.Map;
 
 /**
@@ -21,11 +22,20 @@ public class TrafficRecord {
     private String sessionId;
     private String method;
     private String path;
-    private Map<String, String> requestHeaders;
-    private String requestBody;
+    private Map<String, List<String>> requestHeaders;
+    private byte[] requestBody;
+    private String requestBodyHash;
+    private Boolean requestBodyTruncated;
+    private Long requestBodySize;
     private Integer statusCode;
-    private Map<String, String> responseHeaders;
-    private String responseBody;
+    private Map<String, List<String>> responseHeaders;
+    private byte[] responseBody;
+    private String responseBodyEncoding;
+    private Boolean responseBodyTruncated;
+    private Long responseBodySize;
+    private Long upstreamTtfbMs;
+    private Long upstreamDurationMs;
     private Instant timestamp;
     private String queryParams;
+    private String matchKey;
 }
\ No newline at end of file
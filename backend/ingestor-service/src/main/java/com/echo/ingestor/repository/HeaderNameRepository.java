@@ -0,0 +1,33 @@
+package com.echo.ingestor.repository;
+
+import com.echo.ingestor.entity.HeaderName;
+import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.data.jpa.repository.Modifying;
+import org.springframework.data.jpa.repository.Query;
+import org.springframework.data.repository.query.Param;
+import org.springframework.stereotype.Repository;
+
+/**
+ * Repository for the shared header-name dictionary.
+ */
+@Repository
+public interface HeaderNameRepository extends JpaRepository<HeaderName, Integer> {
+
+    /**
+     * Adds a header name unless it is already in the dictionary.
+     *
+     * @param name Header name
+     */
+    @Modifying
+    @Query(value = "INSERT INTO header_name (name) VALUES (:name) ON CONFLICT (name) DO NOTHING", nativeQuery = true)
+    void insertIfAbsent(@Param("name") String name);
+
+    /**
+     * Finds the ID of a header name.
+     *
+     * @param name Header name
+     * @return ID, or null if the name is not in the dictionary
+     */
+    @Query(value = "SELECT id FROM header_name WHERE name = :name", nativeQuery = true)
+    Integer findIdByName(@Param("name") String name);
+}
@@ -0,0 +1,39 @@
+package com.echo.ingestor.repository;
+
+import com.echo.ingestor.entity.ResponseBodyBlob;
+import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.data.jpa.repository.Modifying;
+import org.springframework.data.jpa.repository.Query;
+import org.springframework.data.repository.query.Param;
+import org.springframework.stereotype.Repository;
+
+/**
+ * Repository for content-addressed response bodies.
+ */
+@Repository
+public interface ResponseBodyBlobRepository extends JpaRepository<ResponseBodyBlob, String> {
+
+    /**
+     * Adds references to a body that is already stored, without sending the body again.
+     *
+     * @param hash Body hash
+     * @param count References to add
+     * @return 1 if the body exists, 0 otherwise
+     */
+    @Modifying
+    @Query(value = "UPDATE response_body_blob SET ref_count = ref_count + :count WHERE hash = :hash", nativeQuery = true)
+    int incrementRefCount(@Param("hash") String hash, @Param("count") int count);
+
+    /**
+     * Stores a body with the given references, or adds them if a concurrent
+     * ingest stored it first.
+     *
+     * @param hash Body hash
+     * @param body Body bytes
+     * @param count References to add
+     */
+    @Modifying
+    @Query(value = "INSERT INTO response_body_blob (hash, body, ref_count) VALUES (:hash, :body, :count) "
+            + "ON CONFLICT (hash) DO UPDATE SET ref_count = response_body_blob.ref_count + :count", nativeQuery = true)
+    void insertOrIncrement(@Param("hash") String hash, @Param("body") byte[] body, @Param("count") int count);
+}
@@ -0,0 +1,56 @@
+package com.echo.ingestor.service;
+
+import java.io.ByteArrayOutputStream;
+import java.nio.charset.StandardCharsets;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Encodes headers into the compact binary block stored in recorded_traffic.
+ * A block is a format version byte followed by the header count and, per
+ * header, the dictionary ID of its name, its value count and each value as
+ * a length-prefixed UTF-8 string. All counts, IDs and lengths are unsigned
+ * LEB128 varints, so typical headers cost a byte or two besides their values.
+ */
+final class HeaderBlockCodec {
+
+    static final int VERSION = 1;
+
+    private HeaderBlockCodec() {
+    }
+
+    /**
+     * Encodes headers.
+     *
+     * @param headers Headers with all their values (may be null)
+     * @param nameIds Dictionary IDs of the header names
+     * @return Encoded block, or null if there are no headers
+     */
+    static byte[] encode(Map<String, List<String>> headers, Map<String, Integer> nameIds) {
+        if (headers == null || headers.isEmpty()) {
+            return null;
+        }
+        ByteArrayOutputStream out = new ByteArrayOutputStream(headers.size() * 32);
+        out.write(VERSION);
+        writeVarint(out, headers.size());
+        headers.forEach((name, values) -> {
+            List<String> present = values != null ? values : List.of();
+            writeVarint(out, nameIds.get(name));
+            writeVarint(out, present.size());
+            for (String value : present) {
+                byte[] bytes = (value != null ? value : "").getBytes(StandardCharsets.UTF_8);
+                writeVarint(out, bytes.length);
+                out.writeBytes(bytes);
+            }
+        });
+        return out.toByteArray();
+    }
+
+    private static void writeVarint(ByteArrayOutputStream out, int value) {
+        while ((value & ~0x7F) != 0) {
+            out.write((value & 0x7F) | 0x80);
+            value >>>= 7;
+        }
+        out.write(value);
+    }
+}
@@ -0,0 +1,69 @@
+package com.echo.ingestor.service;
+
+import com.echo.ingestor.repository.HeaderNameRepository;
+import lombok.RequiredArgsConstructor;
+import org.springframework.stereotype.Component;
+import org.springframework.transaction.support.TransactionSynchronization;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
+
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.TreeSet;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Maps header names to their IDs in the shared header_name dictionary.
+ * Known names are answered from memory; new names are added to the
+ * dictionary within the caller's transaction and remembered once it commits,
+ * so a rolled-back insert is never cached.
+ */
+@Component
+@RequiredArgsConstructor
+public class HeaderNameDictionary {
+
+    private final HeaderNameRepository repository;
+    private final Map<String, Integer> ids = new ConcurrentHashMap<>();
+
+    /**
+     * Resolves the IDs of header names, adding names not yet in the dictionary.
+     * New names are added in sorted order, so concurrent ingests adding the
+     * same names cannot deadlock on the unique index.
+     *
+     * @param names Header names
+     * @return IDs by name
+     */
+    public Map<String, Integer> resolve(Collection<String> names) {
+        Map<String, Integer> resolved = new HashMap<>();
+        TreeSet<String> missing = new TreeSet<>();
+        for (String name : names) {
+            Integer id = ids.get(name);
+            if (id != null) {
+                resolved.put(name, id);
+            } else {
+                missing.add(name);
+            }
+        }
+        if (missing.isEmpty()) {
+            return resolved;
+        }
+
+        Map<String, Integer> added = new HashMap<>();
+        for (String name : missing) {
+            repository.insertIfAbsent(name);
+            added.put(name, repository.findIdByName(name));
+        }
+        resolved.putAll(added);
+        if (TransactionSynchronizationManager.isSynchronizationActive()) {
+            TransactionSynchronizationManager.registerSynchronization(new TransactionSynchronization() {
+                @Override
+                public void afterCommit() {
+                    ids.putAll(added);
+                }
+            });
+        } else {
+            ids.putAll(added);
+        }
+        return resolved;
+    }
+}
@@ -0,0 +1,37 @@
+package com.echo.ingestor.service;
+
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Lets one in {@code every} occurrences of a per-message debug log through,
+ * starting with the first. The listener and the ingestion service see every
+ * consumed batch, so they log a sample and rely on their counters for totals.
+ */
+public final class LogSampler {
+
+    static final int DEFAULT_EVERY = 100;
+
+    private final int every;
+    private final AtomicLong occurrences = new AtomicLong();
+
+    public LogSampler() {
+        this(DEFAULT_EVERY);
+    }
+
+    public LogSampler(int every) {
+        if (every < 1) {
+            throw new IllegalArgumentException("every must be at least 1");
+        }
+        this.every = every;
+    }
+
+    /**
+     * Counts an occurrence. Callers check that the log level is enabled first,
+     * so disabled logging does not touch the shared counter.
+     *
+     * @return Whether this occurrence should be logged
+     */
+    public boolean sample() {
+        return occurrences.getAndIncrement() % every == 0;
+    }
+}
@@ -3,23 +3,71 @@ package com.echo.ingestor.service;
 import com.echo.ingestor.entity.RecordedTraffic;
 import com.echo.ingestor.model.TrafficRecord;
 import com.echo.ingestor.repository.RecordedTrafficRepository;
-import com.fasterxml.jackson.core.JsonProcessingException;
-import com.fasterxml.jackson.databind.ObjectMapper;
-import lombok.RequiredArgsConstructor;
+import com.echo.ingestor.repository.ResponseBodyBlobRepository;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
 import lombok.extern.slf4j.Slf4j;
 import org.springframework.stereotype.Service;
 import org.springframework.transaction.annotation.Transactional;
 
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.HexFormat;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.TreeMap;
+import java.util.concurrent.TimeUnit;
+import java.util.regex.Pattern;
+
 /**
  * Service responsible for persisting traffic records to the database.
+ * Response bodies are content-addressed: each distinct body is stored once in
+ * response_body_blob and recorded_traffic keeps its hash. The references a
+ * message adds are counted per hash and written in hash order, so concurrent
+ * consumers lock shared blob rows in the same order and cannot deadlock. Headers are stored
+ * as binary blocks whose names refer to the shared header-name dictionary.
+ * The database writes of each record or batch, up to but excluding the commit,
+ * are timed as {@code echo.ingest.insert}.
  */
 @Slf4j
 @Service
-@RequiredArgsConstructor
 public class TrafficIngestionService {
 
+    private static final Pattern CONTROL_CHARACTERS = Pattern.compile("[\\x00-\\x08\\x0B\\x0C\\x0E-\\x1F]");
+
     private final RecordedTrafficRepository repository;
-    private final ObjectMapper objectMapper;
+    private final ResponseBodyBlobRepository blobRepository;
+    private final HeaderNameDictionary headerNames;
+    private final Timer recordInserts;
+    private final Timer batchInserts;
+    private final Counter ingested;
+    private final LogSampler ingestLog = new LogSampler();
+
+    public TrafficIngestionService(RecordedTrafficRepository repository,
+                                   ResponseBodyBlobRepository blobRepository,
+                                   HeaderNameDictionary headerNames,
+                                   MeterRegistry meterRegistry) {
+        this.repository = repository;
+        this.blobRepository = blobRepository;
+        this.headerNames = headerNames;
+        this.recordInserts = insertTimer(meterRegistry, "record");
+        this.batchInserts = insertTimer(meterRegistry, "batch");
+        this.ingested = Counter.builder("echo.ingest.records")
+                .description("Traffic records persisted")
+                .register(meterRegistry);
+    }
+
+    private static Timer insertTimer(MeterRegistry meterRegistry, String message) {
+        return Timer.builder("echo.ingest.insert")
+                .description("Time spent writing a consumed message to the database, before commit")
+                .tag("message", message)
+                .register(meterRegistry);
+    }
 
     /**
      * Persists a traffic record to the database.
@@ -30,23 +78,16 @@ public class TrafficIngestionService {
     @Transactional
     public RecordedTraffic ingestTraffic(TrafficRecord trafficRecord) {
         try {
-            RecordedTraffic entity = RecordedTraffic.builder()
-                    .sessionId(sanitizeString(trafficRecord.getSessionId()))
-                    .method(sanitizeString(trafficRecord.getMethod()))
-                    .path(sanitizeString(trafficRecord.getPath()))
-                    .queryParams(sanitizeString(trafficRecord.getQueryParams()))
-                    .requestHeaders(convertMapToJson(trafficRecord.getRequestHeaders()))
-                    .requestBody(sanitizeString(trafficRecord.getRequestBody()))
-                    .statusCode(trafficRecord.getStatusCode())
-                    .responseHeaders(convertMapToJson(trafficRecord.getResponseHeaders()))
-                    .responseBody(sanitizeString(trafficRecord.getResponseBody()))
-                    .timestamp(trafficRecord.getTimestamp())
-                    .build();
-
-            RecordedTraffic saved = repository.save(entity);
-            log.info("Ingested traffic record: session={}, method={}, path={}, id={}",
-                    saved.getSessionId(), saved.getMethod(), saved.getPath(), saved.getId());
-
+            long startNanos = System.nanoTime();
+            Map<String, Integer> nameIds = headerNames.resolve(headerNamesOf(List.of(trafficRecord)));
+            String responseBodyHash = storeResponseBodies(List.of(trafficRecord)).get(0);
+            RecordedTraffic saved = repository.save(toEntity(trafficRecord, nameIds, responseBodyHash));
+            recordInserts.record(System.nanoTime() - startNanos, TimeUnit.NANOSECONDS);
+            ingested.increment();
+            if (log.isDebugEnabled() && ingestLog.sample()) {
+                log.debug("Ingested traffic record: session={}, method={}, path={}, id={}",
+                        saved.getSessionId(), saved.getMethod(), saved.getPath(), saved.getId());
+            }
             return saved;
         } catch (Exception e) {
             log.error("Failed to ingest traffic record: {}", e.getMessage(), e);
@@ -55,36 +96,128 @@ public class TrafficIngestionService {
     }
 
     /**
-     * Sanitizes a string by removing null bytes and other invalid UTF-8 characters
-     * that cause PostgreSQL encoding errors.
+     * Persists a batch of traffic records in a single transaction, so a batch
+     * costs one commit however many records it holds. Records still go out as
+     * one INSERT each: IDENTITY keys keep Hibernate from batching them.
      *
-     * @param input Input string
-     * @return Sanitized string
+     * @param trafficRecords Traffic records to persist
+     * @return Persisted entities
      */
-    private String sanitizeString(String input) {
-        if (input == null) {
-            return null;
+    @Transactional
+    public List<RecordedTraffic> ingestBatch(List<TrafficRecord> trafficRecords) {
+        try {
+            long startNanos = System.nanoTime();
+            Map<String, Integer> nameIds = headerNames.resolve(headerNamesOf(trafficRecords));
+            List<String> responseBodyHashes = storeResponseBodies(trafficRecords);
+            List<RecordedTraffic> entities = new ArrayList<>(trafficRecords.size());
+            for (int i = 0; i < trafficRecords.size(); i++) {
+                entities.add(toEntity(trafficRecords.get(i), nameIds, responseBodyHashes.get(i)));
+            }
+            List<RecordedTraffic> saved = repository.saveAll(entities);
+            batchInserts.record(System.nanoTime() - startNanos, TimeUnit.NANOSECONDS);
+            ingested.increment(saved.size());
+            if (log.isDebugEnabled() && ingestLog.sample()) {
+                log.debug("Ingested batch of {} traffic records", saved.size());
+            }
+            return saved;
+        } catch (Exception e) {
+            log.error("Failed to ingest traffic batch: {}", e.getMessage(), e);
+            throw new RuntimeException("Failed to persist traffic batch", e);
         }
-        // Remove null bytes (0x00) and other control characters except newlines and tabs
-        return input.replaceAll("\\x00", "")
-                    .replaceAll("[\\x01-\\x08\\x0B\\x0C\\x0E-\\x1F]", "");
+    }
+
+    private static Set<String> headerNamesOf(List<TrafficRecord> trafficRecords) {
+        Set<String> names = new HashSet<>();
+        for (TrafficRecord trafficRecord : trafficRecords) {
+            if (trafficRecord.getRequestHeaders() != null) {
+                names.addAll(trafficRecord.getRequestHeaders().keySet());
+            }
+            if (trafficRecord.getResponseHeaders() != null) {
+                names.addAll(trafficRecord.getResponseHeaders().keySet());
+            }
+        }
+        return names;
+    }
+
+    private RecordedTraffic toEntity(TrafficRecord trafficRecord, Map<String, Integer> nameIds,
+                                     String responseBodyHash) {
+        return RecordedTraffic.builder()
+                .sessionId(sanitizeString(trafficRecord.getSessionId()))
+                .method(sanitizeString(trafficRecord.getMethod()))
+                .path(sanitizeString(trafficRecord.getPath()))
+                .queryParams(sanitizeString(trafficRecord.getQueryParams()))
+                .matchKey(sanitizeString(trafficRecord.getMatchKey()))
+                .requestHeaderBlock(HeaderBlockCodec.encode(trafficRecord.getRequestHeaders(), nameIds))
+                .requestBody(trafficRecord.getRequestBody())
+                .requestBodyHash(trafficRecord.getRequestBodyHash())
+                .requestBodyTruncated(trafficRecord.getRequestBodyTruncated())
+                .requestBodySize(trafficRecord.getRequestBodySize())
+                .statusCode(trafficRecord.getStatusCode())
+                .responseHeaderBlock(HeaderBlockCodec.encode(trafficRecord.getResponseHeaders(), nameIds))
+                .responseBodyHash(responseBodyHash)
+                .responseBodyEncoding(trafficRecord.getResponseBodyEncoding())
+                .responseBodyTruncated(trafficRecord.getResponseBodyTruncated())
+                .responseBodySize(trafficRecord.getResponseBodySize())
+                .upstreamTtfbMs(trafficRecord.getUpstreamTtfbMs())
+                .upstreamDurationMs(trafficRecord.getUpstreamDurationMs())
+                .timestamp(trafficRecord.getTimestamp())
+                .build();
     }
 
     /**
-     * Converts a map to JSON string for storage.
+     * Stores each distinct response body once by its hash and takes one reference
+     * per record. Hashes are written in sorted order with all their references at
+     * once; a body that is already stored is only referenced, so its bytes are
+     * not written again.
      *
-     * @param map Map to convert
-     * @return JSON string representation
+     * @param trafficRecords Traffic records
+     * @return Body hash of each record, null where a record has no body
      */
-    private String convertMapToJson(java.util.Map<String, String> map) {
-        if (map == null || map.isEmpty()) {
-            return null;
+    private List<String> storeResponseBodies(List<TrafficRecord> trafficRecords) {
+        List<String> hashes = new ArrayList<>(trafficRecords.size());
+        TreeMap<String, byte[]> bodies = new TreeMap<>();
+        Map<String, Integer> references = new HashMap<>();
+        for (TrafficRecord trafficRecord : trafficRecords) {
+            byte[] body = trafficRecord.getResponseBody();
+            if (body == null || body.length == 0) {
+                hashes.add(null);
+                continue;
+            }
+            String hash = sha256Hex(body);
+            bodies.putIfAbsent(hash, body);
+            references.merge(hash, 1, Integer::sum);
+            hashes.add(hash);
         }
+        bodies.forEach((hash, body) -> {
+            int count = references.get(hash);
+            if (blobRepository.incrementRefCount(hash, count) == 0) {
+                blobRepository.insertOrIncrement(hash, body, count);
+            }
+        });
+        return hashes;
+    }
+
+    private static String sha256Hex(byte[] body) {
         try {
-            return objectMapper.writeValueAsString(map);
-        } catch (JsonProcessingException e) {
-            log.error("Failed to convert map to JSON: {}", e.getMessage());
+            return HexFormat.of().formatHex(MessageDigest.getInstance("SHA-256").digest(body));
+        } catch (NoSuchAlgorithmException e) {
+            throw new IllegalStateException("SHA-256 not available", e);
+        }
+    }
+
+    /**
+     * Sanitizes a text column value by removing null bytes and other invalid UTF-8
+     * characters that cause PostgreSQL encoding errors. Bodies are stored as raw
+     * bytes and are never sanitized.
+     *
+     * @param input Input string
+     * @return Sanitized string
+     */
+    private String sanitizeString(String input) {
+        if (input == null) {
             return null;
         }
+        // Remove null bytes (0x00) and other control characters except newlines and tabs
+        return CONTROL_CHARACTERS.matcher(input).replaceAll("");
     }
 }
\ No newline at end of file
@@ -0,0 +1,101 @@
+package com.echo.ingestor.listener;
+
+import com.echo.ingestor.model.TrafficBatch;
+import com.echo.ingestor.model.TrafficRecord;
+import com.echo.ingestor.service.TrafficIngestionService;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.extension.ExtendWith;
+import org.mockito.Mock;
+import org.mockito.junit.jupiter.MockitoExtension;
+import org.springframework.amqp.AmqpRejectAndDontRequeueException;
+import org.springframework.dao.CannotAcquireLockException;
+import org.springframework.dao.DataIntegrityViolationException;
+
+import java.time.Instant;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.*;
+import static org.mockito.ArgumentMatchers.anyList;
+import static org.mockito.Mockito.*;
+
+/**
+ * Unit tests for TrafficListener.
+ */
+@ExtendWith(MockitoExtension.class)
+class TrafficListenerTest {
+
+    @Mock
+    private TrafficIngestionService ingestionService;
+
+    private SimpleMeterRegistry meterRegistry;
+    private TrafficListener listener;
+
+    @BeforeEach
+    void setUp() {
+        meterRegistry = new SimpleMeterRegistry();
+        listener = new TrafficListener(ingestionService, meterRegistry);
+    }
+
+    @Test
+    void handleTrafficBatch_shouldRetryRecordsOneByOneAndSkipPoisonRecord() {
+        // Given
+        TrafficRecord good = record("/api/good");
+        TrafficRecord poison = record("/api/poison");
+        when(ingestionService.ingestBatch(anyList()))
+                .thenThrow(new RuntimeException("Failed to persist traffic batch",
+                        new DataIntegrityViolationException("value too long")));
+        lenient().when(ingestionService.ingestTraffic(poison))
+                .thenThrow(new RuntimeException("Failed to persist traffic record",
+                        new DataIntegrityViolationException("value too long")));
+
+        // When
+        listener.handleTrafficBatch(new TrafficBatch(List.of(good, poison)));
+
+        // Then
+        verify(ingestionService).ingestTraffic(good);
+        verify(ingestionService).ingestTraffic(poison);
+        assertEquals(1.0, meterRegistry.counter("echo.ingest.rejected").count());
+    }
+
+    @Test
+    void handleTrafficBatch_shouldRequeueOnTransientFailure() {
+        // Given
+        RuntimeException deadlock = new RuntimeException("Failed to persist traffic batch",
+                new CannotAcquireLockException("deadlock detected"));
+        when(ingestionService.ingestBatch(anyList())).thenThrow(deadlock);
+
+        // When
+        RuntimeException thrown = assertThrows(RuntimeException.class,
+                () -> listener.handleTrafficBatch(new TrafficBatch(List.of(record("/api/1")))));
+
+        // Then
+        assertSame(deadlock, thrown);
+        verify(ingestionService, never()).ingestTraffic(any());
+        assertEquals(0.0, meterRegistry.counter("echo.ingest.rejected").count());
+    }
+
+    @Test
+    void handleTrafficRecord_shouldRejectPoisonRecordWithoutRequeue() {
+        // Given
+        TrafficRecord poison = record("/api/poison");
+        when(ingestionService.ingestTraffic(poison))
+                .thenThrow(new RuntimeException("Failed to persist traffic record",
+                        new DataIntegrityViolationException("value too long")));
+
+        // When & Then
+        assertThrows(AmqpRejectAndDontRequeueException.class, () -> listener.handleTrafficRecord(poison));
+        assertEquals(1.0, meterRegistry.counter("echo.ingest.rejected").count());
+    }
+
+    private static TrafficRecord record(String path) {
+        return TrafficRecord.builder()
+                .sessionId("test-session")
+                .method("GET")
+                .path(path)
+                .statusCode(200)
+                .timestamp(Instant.now())
+                .build();
+    }
+}
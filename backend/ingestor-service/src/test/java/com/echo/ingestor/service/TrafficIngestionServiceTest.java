@@ -2,19 +2,29 @@ package com.echo.ingestor.service;
 
 import com.echo.ingestor.entity.RecordedTraffic;
 import com.echo.ingestor.model.TrafficRecord;
+import com.echo.ingestor.repository.HeaderNameRepository;
 import com.echo.ingestor.repository.RecordedTrafficRepository;
-import com.fasterxml.jackson.databind.ObjectMapper;
+import com.echo.ingestor.repository.ResponseBodyBlobRepository;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
 import org.junit.jupiter.api.BeforeEach;
 import org.junit.jupiter.api.Test;
 import org.junit.jupiter.api.extension.ExtendWith;
+import org.mockito.InOrder;
 import org.mockito.Mock;
 import org.mockito.junit.jupiter.MockitoExtension;
 
+import java.nio.charset.StandardCharsets;
 import java.time.Instant;
+import java.util.List;
 import java.util.Map;
 
 import static org.junit.jupiter.api.Assertions.*;
 import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyInt;
+import static org.mockito.ArgumentMatchers.anyList;
+import static org.mockito.ArgumentMatchers.anyString;
+import static org.mockito.ArgumentMatchers.eq;
 import static org.mockito.Mockito.*;
 
 /**
@@ -26,13 +36,20 @@ class TrafficIngestionServiceTest {
     @Mock
     private RecordedTrafficRepository repository;
 
+    @Mock
+    private ResponseBodyBlobRepository blobRepository;
+
+    @Mock
+    private HeaderNameRepository headerNameRepository;
+
+    private MeterRegistry meterRegistry;
     private TrafficIngestionService service;
-    private ObjectMapper objectMapper;
 
     @BeforeEach
     void setUp() {
-        objectMapper = new ObjectMapper();
-        service = new TrafficIngestionService(repository, objectMapper);
+        meterRegistry = new SimpleMeterRegistry();
+        service = new TrafficIngestionService(repository, blobRepository,
+                new HeaderNameDictionary(headerNameRepository), meterRegistry);
     }
 
     @Test
@@ -43,11 +60,11 @@ class TrafficIngestionServiceTest {
                 .method("GET")
                 .path("/api/test")
                 .queryParams("param=value")
-                .requestHeaders(Map.of("Content-Type", "application/json"))
-                .requestBody("{\"test\": true}")
+                .requestHeaders(Map.of("Content-Type", List.of("application/json")))
+                .requestBody("{\"test\": true}".getBytes(StandardCharsets.UTF_8))
                 .statusCode(200)
-                .responseHeaders(Map.of("Content-Type", "application/json"))
-                .responseBody("{\"result\": \"success\"}")
+                .responseHeaders(Map.of("Content-Type", List.of("application/json")))
+                .responseBody("{\"result\": \"success\"}".getBytes(StandardCharsets.UTF_8))
                 .timestamp(Instant.now())
                 .build();
 
@@ -59,6 +76,7 @@ class TrafficIngestionServiceTest {
                 .statusCode(200)
                 .build();
 
+        when(headerNameRepository.findIdByName("Content-Type")).thenReturn(1);
         when(repository.save(any(RecordedTraffic.class))).thenReturn(savedEntity);
 
         // When
@@ -95,4 +113,137 @@ class TrafficIngestionServiceTest {
         assertNotNull(result);
         verify(repository, times(1)).save(any(RecordedTraffic.class));
     }
-}
\ No newline at end of file
+
+    @Test
+    void ingestTraffic_shouldStoreNewResponseBodyOnceByHash() {
+        // Given
+        byte[] body = "{\"result\": \"success\"}".getBytes(StandardCharsets.UTF_8);
+        TrafficRecord trafficRecord = TrafficRecord.builder()
+                .sessionId("test-session")
+                .method("GET")
+                .path("/api/test")
+                .statusCode(200)
+                .responseBody(body)
+                .timestamp(Instant.now())
+                .build();
+
+        when(blobRepository.incrementRefCount(anyString(), eq(1))).thenReturn(0);
+        when(repository.save(any(RecordedTraffic.class))).thenAnswer(invocation -> invocation.getArgument(0));
+
+        // When
+        RecordedTraffic result = service.ingestTraffic(trafficRecord);
+
+        // Then
+        assertNull(result.getResponseBody());
+        assertEquals(64, result.getResponseBodyHash().length());
+        verify(blobRepository).insertOrIncrement(result.getResponseBodyHash(), body, 1);
+    }
+
+    @Test
+    void ingestTraffic_shouldOnlyReferenceAlreadyStoredResponseBody() {
+        // Given
+        TrafficRecord trafficRecord = TrafficRecord.builder()
+                .sessionId("test-session")
+                .method("GET")
+                .path("/api/test")
+                .statusCode(200)
+                .responseBody("{\"result\": \"success\"}".getBytes(StandardCharsets.UTF_8))
+                .timestamp(Instant.now())
+                .build();
+
+        when(blobRepository.incrementRefCount(anyString(), eq(1))).thenReturn(1);
+        when(repository.save(any(RecordedTraffic.class))).thenAnswer(invocation -> invocation.getArgument(0));
+
+        // When
+        RecordedTraffic result = service.ingestTraffic(trafficRecord);
+
+        // Then
+        assertNotNull(result.getResponseBodyHash());
+        verify(blobRepository, never()).insertOrIncrement(anyString(), any(), anyInt());
+    }
+
+    @Test
+    void ingestBatch_shouldPersistAllRecordsTogether() {
+        // Given
+        List<TrafficRecord> trafficRecords = List.of(
+                TrafficRecord.builder().sessionId("test-session").method("GET").path("/api/1")
+                        .statusCode(200).timestamp(Instant.now()).build(),
+                TrafficRecord.builder().sessionId("test-session").method("GET").path("/api/2")
+                        .statusCode(404).timestamp(Instant.now()).build());
+
+        when(repository.saveAll(anyList())).thenAnswer(invocation -> invocation.getArgument(0));
+
+        // When
+        List<RecordedTraffic> result = service.ingestBatch(trafficRecords);
+
+        // Then
+        assertEquals(2, result.size());
+        assertEquals("/api/2", result.get(1).getPath());
+        verify(repository, times(1)).saveAll(anyList());
+        verify(repository, never()).save(any(RecordedTraffic.class));
+        assertEquals(1, meterRegistry.get("echo.ingest.insert").tag("message", "batch").timer().count());
+        assertEquals(2.0, meterRegistry.get("echo.ingest.records").counter().count());
+    }
+
+    @Test
+    void ingestBatch_shouldReferenceEachBodyOnceInHashOrder() {
+        // Given
+        byte[] shared = "{\"items\": []}".getBytes(StandardCharsets.UTF_8);
+        byte[] other = "{\"error\": \"not found\"}".getBytes(StandardCharsets.UTF_8);
+        List<TrafficRecord> trafficRecords = List.of(
+                TrafficRecord.builder().sessionId("test-session").method("GET").path("/api/1")
+                        .statusCode(200).responseBody(shared).timestamp(Instant.now()).build(),
+                TrafficRecord.builder().sessionId("test-session").method("GET").path("/api/2")
+                        .statusCode(404).responseBody(other).timestamp(Instant.now()).build(),
+                TrafficRecord.builder().sessionId("test-session").method("GET").path("/api/3")
+                        .statusCode(200).responseBody(shared).timestamp(Instant.now()).build());
+
+        when(blobRepository.incrementRefCount(anyString(), anyInt())).thenReturn(1);
+        when(repository.saveAll(anyList())).thenAnswer(invocation -> invocation.getArgument(0));
+
+        // When
+        List<RecordedTraffic> result = service.ingestBatch(trafficRecords);
+
+        // Then
+        String sharedHash = result.get(0).getResponseBodyHash();
+        String otherHash = result.get(1).getResponseBodyHash();
+        assertEquals(sharedHash, result.get(2).getResponseBodyHash());
+        InOrder inOrder = inOrder(blobRepository);
+        if (sharedHash.compareTo(otherHash) < 0) {
+            inOrder.verify(blobRepository).incrementRefCount(sharedHash, 2);
+            inOrder.verify(blobRepository).incrementRefCount(otherHash, 1);
+        } else {
+            inOrder.verify(blobRepository).incrementRefCount(otherHash, 1);
+            inOrder.verify(blobRepository).incrementRefCount(sharedHash, 2);
+        }
+        verifyNoMoreInteractions(blobRepository);
+    }
+
+    @Test
+    void ingestTraffic_shouldStoreEveryHeaderValueInDictionaryCodedBlock() {
+        // Given
+        TrafficRecord trafficRecord = TrafficRecord.builder()
+                .sessionId("test-session")
+                .method("GET")
+                .path("/api/test")
+                .statusCode(200)
+                .responseHeaders(Map.of("Set-Cookie", List.of("a=1", "b=2")))
+                .timestamp(Instant.now())
+                .build();
+
+        when(headerNameRepository.findIdByName("Set-Cookie")).thenReturn(300);
+        when(repository.save(any(RecordedTraffic.class))).thenAnswer(invocation -> invocation.getArgument(0));
+
+        // When
+        RecordedTraffic first = service.ingestTraffic(trafficRecord);
+        RecordedTraffic second = service.ingestTraffic(trafficRecord);
+
+        // Then
+        assertArrayEquals(new byte[] {1, 1, (byte) 0xAC, 0x02, 2, 3, 'a', '=', '1', 3, 'b', '=', '2'},
+                first.getResponseHeaderBlock());
+        assertArrayEquals(first.getResponseHeaderBlock(), second.getResponseHeaderBlock());
+        assertNull(first.getResponseHeaders());
+        assertNull(first.getRequestHeaderBlock());
+        verify(headerNameRepository, times(1)).insertIfAbsent("Set-Cookie");
+    }
+}
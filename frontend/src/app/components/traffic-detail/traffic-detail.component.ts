@@ -72,16 +72,17 @@ import { EchoApiService } from '../../services/echo-api.service';
                 <div class="subsection">
                   <h4>Headers</h4>
                   <div class="headers">
-                    <div *ngFor="let header of objectToArray(record.requestHeaders)" class="header-row">
+                    <div *ngFor="let header of headerRows(record.requestHeaders)" class="header-row">
                       <span class="header-key">{{ header.key }}:</span>
                       <span class="header-value">{{ header.value }}</span>
                     </div>
                   </div>
                 </div>
 
-                <div class="subsection" *ngIf="record.requestBody">
+                <div class="subsection" *ngIf="record.requestBody || record.requestBodyText != null">
                   <h4>Body</h4>
-                  <pre><code>{{ formatJson(record.requestBody) }}</code></pre>
+                  <pre *ngIf="record.requestBodyText != null; else requestBinary"><code>{{ formatJson(record.requestBodyText) }}</code></pre>
+                  <ng-template #requestBinary><p class="binary-body">Body not shown as text ({{ base64Size(record.requestBody) }} bytes)</p></ng-template>
                 </div>
               </div>
 
@@ -92,16 +93,17 @@ import { EchoApiService } from '../../services/echo-api.service';
                 <div class="subsection">
                   <h4>Headers</h4>
                   <div class="headers">
-                    <div *ngFor="let header of objectToArray(record.responseHeaders)" class="header-row">
+                    <div *ngFor="let header of headerRows(record.responseHeaders)" class="header-row">
                       <span class="header-key">{{ header.key }}:</span>
                       <span class="header-value">{{ header.value }}</span>
                     </div>
                   </div>
                 </div>
 
-                <div class="subsection" *ngIf="record.responseBody">
+                <div class="subsection" *ngIf="record.responseBody || record.responseBodyText != null">
                   <h4>Body</h4>
-                  <pre><code>{{ formatJson(record.responseBody) }}</code></pre>
+                  <pre *ngIf="record.responseBodyText != null; else responseBinary"><code>{{ formatJson(record.responseBodyText) }}</code></pre>
+                  <ng-template #responseBinary><p class="binary-body">Body not shown as text ({{ base64Size(record.responseBody) }} bytes{{ record.responseBodyEncoding ? ', ' + record.responseBodyEncoding : '' }})</p></ng-template>
                 </div>
               </div>
 
@@ -256,6 +258,17 @@ import { EchoApiService } from '../../services/echo-api.service';
       margin: 0;
     }
 
+    .binary-body {
+      margin: 0;
+      padding: 12px 16px;
+      border-radius: 4px;
+      background-color: #eceff1;
+      color: #666;
+      font-family: 'Courier New', monospace;
+      font-size: 13px;
+      font-style: italic;
+    }
+
     .metadata {
       padding: 16px;
       background-color: #e3f2fd;
@@ -325,11 +338,13 @@ export class TrafficDetailComponent implements OnInit {
   }
 
   /**
-   * Utility: Convert object to array for *ngFor
+   * Utility: Flatten headers to one row per value for *ngFor,
+   * so a repeated header such as Set-Cookie shows as it did on the wire
    * Showcases: Data transformation for templates
    */
-  objectToArray(obj: { [key: string]: string }): { key: string; value: string }[] {
-    return Object.entries(obj).map(([key, value]) => ({ key, value }));
+  headerRows(headers: { [key: string]: string[] } | null): { key: string; value: string }[] {
+    return Object.entries(headers ?? {})
+      .flatMap(([key, values]) => values.map(value => ({ key, value })));
   }
 
   /**
@@ -344,6 +359,18 @@ export class TrafficDetailComponent implements OnInit {
     }
   }
 
+  /**
+   * Utility: Decoded size of a Base64-encoded body
+   * Showcases: Arithmetic on encoded lengths without decoding
+   */
+  base64Size(base64: string | undefined): number {
+    if (!base64) {
+      return 0;
+    }
+    const padding = base64.endsWith('==') ? 2 : base64.endsWith('=') ? 1 : 0;
+    return (base64.length / 4) * 3 - padding;
+  }
+
   /**
    * Utility: Format timestamp to readable date
    * Showcases: Date formatting
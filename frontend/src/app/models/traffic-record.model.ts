@@ -3,11 +3,21 @@ export interface TrafficRecord {
   sessionId: string;
   method: string;
   path: string;
-  requestHeaders: { [key: string]: string };
-  requestBody: string;
+  /** Every recorded value of each header, in recorded order */
+  requestHeaders: { [key: string]: string[] };
+  /** Raw request bytes, Base64-encoded; absent when the body is sent as text */
+  requestBody?: string;
+  /** UTF-8 text of the request body, sent when bodies are decoded; absent for binary or large bodies */
+  requestBodyText?: string;
   statusCode: number;
-  responseHeaders: { [key: string]: string };
-  responseBody: string;
+  /** Every recorded value of each header, in recorded order */
+  responseHeaders: { [key: string]: string[] };
+  /** Raw response bytes, Base64-encoded; absent when the body is sent as text */
+  responseBody?: string;
+  /** UTF-8 text of the decompressed response body, sent when bodies are decoded; absent for binary or large bodies */
+  responseBodyText?: string;
+  /** Content coding the stored response body is compressed with, e.g. gzip */
+  responseBodyEncoding?: string;
   timestamp: string;
   createdAt: string;
 }
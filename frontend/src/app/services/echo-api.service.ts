@@ -24,11 +24,13 @@ export class EchoApiService {
   }
 
   /**
-   * Fetch all traffic records for a specific session
-   * Showcases: Path parameters, error handling
+   * Fetch all traffic records for a specific session, with text bodies decoded
+   * Showcases: Path and query parameters, error handling
    */
   getTrafficBySession(sessionId: string): Observable<TrafficRecord[]> {
-    return this.http.get<TrafficRecord[]>(`${this.API_URL}/sessions/${sessionId}/traffic`)
+    return this.http.get<TrafficRecord[]>(`${this.API_URL}/sessions/${sessionId}/traffic`, {
+      params: { decodeBodies: true }
+    })
       .pipe(
         catchError(this.handleError)
       );
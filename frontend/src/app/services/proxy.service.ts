@@ -17,6 +17,8 @@ export interface ProxyResponse {
   duration: number;
 }
 
+export type EchoMode = 'RECORD' | 'REPLAY' | 'REPLAY_OR_RECORD';
+
 export interface ModeResponse {
   mode: string;
   sessionId?: string;
@@ -108,9 +110,9 @@ export class ProxyService {
   }
 
   /**
-   * Switch proxy mode between RECORD and REPLAY
+   * Switch proxy mode between RECORD, REPLAY and REPLAY_OR_RECORD
    */
-  switchMode(mode: 'RECORD' | 'REPLAY'): Observable<ModeResponse> {
+  switchMode(mode: EchoMode): Observable<ModeResponse> {
     return this.http.post<ModeResponse>(`${this.PROXY_URL}/api/mode`, { mode });
   }
 